@@ -0,0 +1,159 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.subsystems.benchmark;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import br.com.c8tech.tools.maven.osgi.lib.mojo.archivers.SubsystemCompositeArchiver;
+import br.com.c8tech.tools.maven.plugin.subsystems.EntryCompressionPolicy;
+import br.com.c8tech.tools.maven.plugin.subsystems.SubsystemArchiveWriter;
+
+/**
+ * Measures the creation of an ESA file holding a fixed amount of embedded
+ * artifacts of several sizes, comparing the plexus archiver with the
+ * {@link SubsystemArchiveWriter} deflating, storing and incrementally copying
+ * the artifacts.
+ * <p>
+ * The artifacts are filled with random bytes, as jars are already compressed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ArchiveCreationBenchmark {
+
+    private static final int ARTIFACTS = 32;
+
+    @Param({ "16384", "1048576", "8388608" })
+    public int artifactSize;
+
+    private final List<Path> artifacts = new ArrayList<>();
+
+    private Path esa;
+
+    private Path manifest;
+
+    private Path workDirectory;
+
+    private static void deleteRecursively(Path pDirectory) throws IOException {
+        try (Stream<Path> paths = Files.walk(pDirectory)) {
+            for (Path path : (Iterable<Path>) paths
+                    .sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        workDirectory = Files.createTempDirectory("esa-benchmark");
+        manifest = workDirectory.resolve("SUBSYSTEM.MF");
+        Files.write(manifest, Arrays.asList("Subsystem-ManifestVersion: 1",
+                "Subsystem-SymbolicName: br.com.c8tech.synthetic.composite",
+                "Subsystem-Version: 1.0.0",
+                "Subsystem-Type: osgi.subsystem.composite", ""),
+                StandardCharsets.UTF_8);
+        Random random = new Random(artifactSize);
+        byte[] content = new byte[artifactSize];
+        for (int i = 0; i < ARTIFACTS; i++) {
+            random.nextBytes(content);
+            Path artifact = workDirectory.resolve("artifact-" + i + ".jar");
+            Files.write(artifact, content);
+            artifacts.add(artifact);
+        }
+        esa = workDirectory.resolve("benchmark.esa");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        deleteRecursively(workDirectory);
+    }
+
+    @Benchmark
+    public long plexusArchiver() throws Exception {
+        SubsystemCompositeArchiver archiver = new SubsystemCompositeArchiver();
+        archiver.setManifest(manifest.toFile());
+        archiver.setGenerateEsaMimeEntry(true);
+        archiver.setIncludeEmptyDirs(false);
+        archiver.setDestFile(esa.toFile());
+        archiver.setForced(true);
+        for (Path artifact : artifacts) {
+            archiver.addFile(artifact.toFile(),
+                    artifact.getFileName().toString());
+        }
+        archiver.createArchive();
+        return Files.size(esa);
+    }
+
+    private long writeArchive(List<String> pStoredPatterns, int pThreads,
+            boolean pIncremental) throws IOException {
+        SubsystemArchiveWriter writer = new SubsystemArchiveWriter(esa);
+        writer.setManifest(manifest);
+        writer.setGenerateEsaMimeEntry(true);
+        writer.setCompressionPolicy(new EntryCompressionPolicy(pStoredPatterns));
+        writer.setThreads(pThreads);
+        writer.setIncremental(pIncremental);
+        for (Path artifact : artifacts) {
+            writer.addFile(artifact, artifact.getFileName().toString());
+        }
+        writer.createArchive();
+        return Files.size(esa);
+    }
+
+    @Benchmark
+    public long writerDeflated() throws IOException {
+        return writeArchive(Collections.emptyList(), 1, false);
+    }
+
+    @Benchmark
+    public long writerDeflatedParallel() throws IOException {
+        return writeArchive(Collections.emptyList(),
+                Runtime.getRuntime().availableProcessors(), false);
+    }
+
+    @Benchmark
+    public long writerIncremental() throws IOException {
+        return writeArchive(Collections.singletonList("*.jar"), 1, true);
+    }
+
+    @Benchmark
+    public long writerStored() throws IOException {
+        return writeArchive(Collections.singletonList("*.jar"), 1, false);
+    }
+}
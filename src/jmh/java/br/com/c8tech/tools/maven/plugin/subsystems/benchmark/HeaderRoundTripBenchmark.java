@@ -0,0 +1,125 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.subsystems.benchmark;
+
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.apache.aries.subsystem.core.archive.ExportPackageHeader;
+import org.apache.aries.subsystem.core.archive.ImportPackageHeader;
+import org.apache.aries.subsystem.core.archive.SubsystemContentHeader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.osgi.framework.Constants;
+
+import br.com.c8tech.tools.maven.plugin.subsystems.ClauseListHeader;
+import br.com.c8tech.tools.maven.plugin.subsystems.ManifestHeaderParser;
+import br.com.c8tech.tools.maven.plugin.subsystems.fixtures.SyntheticSubsystemFixture;
+
+/**
+ * Measures the round trip done for each Aries header while a manifest is
+ * generated: the value is parsed, its clauses are turned back into strings
+ * and joined, and the joined value is parsed again. The <code>*Clauses</code>
+ * methods measure the typed alternative, which parses the value once and
+ * renders the header straight from its clauses.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HeaderRoundTripBenchmark {
+
+    @Param({ "1", "10", "100" })
+    public int bundles;
+
+    private String exportPackage;
+
+    private String importPackage;
+
+    private String subsystemContent;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(bundles);
+        StringBuilder exports = new StringBuilder();
+        StringBuilder imports = new StringBuilder();
+        for (int i = 0; i < bundles; i++) {
+            if (i > 0) {
+                exports.append(',');
+                imports.append(',');
+            }
+            exports.append(SyntheticSubsystemFixture.exportPackage(i));
+            imports.append(
+                    SyntheticSubsystemFixture.importPackage(bundles, random));
+        }
+        exportPackage = exports.toString();
+        importPackage = imports.toString();
+        subsystemContent = SyntheticSubsystemFixture.subsystemContent(0,
+                bundles);
+    }
+
+    @Benchmark
+    public ExportPackageHeader exportPackageHeader() {
+        String joined = new ExportPackageHeader(exportPackage).getClauses()
+                .stream().map(Object::toString)
+                .collect(Collectors.joining(", "));
+        return new ExportPackageHeader(joined);
+    }
+
+    @Benchmark
+    public ClauseListHeader exportPackageClauses() {
+        return new ClauseListHeader(Constants.EXPORT_PACKAGE,
+                ManifestHeaderParser.parse(exportPackage));
+    }
+
+    @Benchmark
+    public ClauseListHeader exportPackageClausesWithoutUses() {
+        return new ClauseListHeader(Constants.EXPORT_PACKAGE,
+                ManifestHeaderParser.parse(exportPackage,
+                        Collections.singleton(Constants.USES_DIRECTIVE)));
+    }
+
+    @Benchmark
+    public ClauseListHeader importPackageClauses() {
+        return new ClauseListHeader(Constants.IMPORT_PACKAGE,
+                ManifestHeaderParser.parse(importPackage));
+    }
+
+    @Benchmark
+    public ImportPackageHeader importPackageHeader() {
+        String joined = new ImportPackageHeader(importPackage).getClauses()
+                .stream().map(Object::toString)
+                .collect(Collectors.joining(", "));
+        return new ImportPackageHeader(joined);
+    }
+
+    @Benchmark
+    public SubsystemContentHeader subsystemContentHeader() {
+        String joined = new SubsystemContentHeader(subsystemContent)
+                .getClauses().stream().map(Object::toString)
+                .collect(Collectors.joining(", "));
+        return new SubsystemContentHeader(joined);
+    }
+}
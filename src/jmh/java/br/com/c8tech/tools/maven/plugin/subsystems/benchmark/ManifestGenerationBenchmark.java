@@ -0,0 +1,120 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.subsystems.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.aries.subsystem.core.archive.SubsystemContentHeader;
+import org.apache.aries.subsystem.core.archive.SubsystemManifest;
+import org.apache.aries.subsystem.core.archive.SubsystemManifestVersionHeader;
+import org.apache.aries.subsystem.core.archive.SubsystemTypeHeader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import br.com.c8tech.tools.maven.plugin.subsystems.CompositeHeadersAggregator;
+import br.com.c8tech.tools.maven.plugin.subsystems.ParallelTasks;
+import br.com.c8tech.tools.maven.plugin.subsystems.fixtures.SyntheticSubsystemFixture;
+
+/**
+ * Measures the generation of the manifest of a composite subsystem holding a
+ * growing amount of bundles, as done by the
+ * <code>generateSubsystemManifest</code> mojo once the artifact headers were
+ * read: the clauses of every bundle are aggregated, the sharing policy headers
+ * are built and the manifest is written. The headers are also aggregated
+ * using one thread per available processor, as done for large subsystems.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ManifestGenerationBenchmark {
+
+    @Param({ "10", "100", "1000", "10000" })
+    public int trackers;
+
+    private List<Map<String, String>> bundles;
+
+    private String subsystemContent;
+
+    @Setup
+    public void setUp() {
+        bundles = SyntheticSubsystemFixture.allBundleHeaders(trackers, 42);
+        subsystemContent = SyntheticSubsystemFixture.subsystemContent(0,
+                trackers);
+    }
+
+    @Benchmark
+    public CompositeHeadersAggregator aggregateHeaders() {
+        CompositeHeadersAggregator aggregator = newAggregator();
+        for (Map<String, String> headers : bundles) {
+            aggregator.addArtifactHeaders(headers);
+        }
+        return aggregator;
+    }
+
+    @Benchmark
+    public CompositeHeadersAggregator aggregateHeadersParallel()
+            throws IOException {
+        CompositeHeadersAggregator aggregator = newAggregator();
+        ParallelTasks.map(bundles, ParallelTasks.effectiveThreads(0),
+                headers -> {
+                    aggregator.addArtifactHeaders(headers);
+                    return headers;
+                });
+        return aggregator;
+    }
+
+    @Benchmark
+    public byte[] generateManifest() throws IOException {
+        CompositeHeadersAggregator aggregator = aggregateHeaders();
+        SubsystemManifest.Builder builder = new SubsystemManifest.Builder();
+        builder.header(new SubsystemManifestVersionHeader());
+        builder.version("1.0.0");
+        builder.symbolicName("br.com.c8tech.synthetic.composite");
+        builder.type(new SubsystemTypeHeader(new SubsystemTypeHeader.Clause(
+                "osgi.subsystem.composite")));
+        builder.header(new SubsystemContentHeader(subsystemContent));
+        builder.header(aggregator.buildExportServiceHeader(null));
+        builder.header(aggregator.buildImportServiceHeader(null));
+        builder.header(aggregator.buildProvideCapabilityHeader(null));
+        builder.header(aggregator.buildRequireCapabilityHeader(null));
+        builder.header(aggregator.buildImportPackageHeader(null));
+        builder.header(aggregator.buildExportPackageHeader(null));
+        builder.header(aggregator.buildRequireBundleHeader(null));
+        builder.header(aggregator.buildPreferredProviderHeader(null));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        builder.build().write(out);
+        return out.toByteArray();
+    }
+
+    private static CompositeHeadersAggregator newAggregator() {
+        return new CompositeHeadersAggregator().withExportPackages(true)
+                .withImportPackages(true).withGenericCapabilities(true)
+                .withGenericRequirements(true).withExportServices(true)
+                .withImportServices(true).withRequireBundle(true);
+    }
+}
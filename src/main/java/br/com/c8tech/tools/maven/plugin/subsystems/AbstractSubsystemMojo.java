@@ -12,18 +12,32 @@
 package br.com.c8tech.tools.maven.plugin.subsystems;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.TreeSet;
 
 import org.apache.aries.subsystem.core.archive.SubsystemContentHeader.Clause;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.plugin.MojoExecution;
 import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.repository.LocalRepositoryManager;
 
 import br.com.c8tech.tools.maven.osgi.lib.mojo.AbstractCustomPackagingMojo;
 import br.com.c8tech.tools.maven.osgi.lib.mojo.CommonMojoConstants;
@@ -31,6 +45,9 @@ import br.com.c8tech.tools.maven.osgi.lib.mojo.beans.MavenArtifactSet;
 import br.com.c8tech.tools.maven.osgi.lib.mojo.beans.VersionConverter;
 import br.com.c8tech.tools.maven.osgi.lib.mojo.handlers.AbstractSubsystemArtifactHandler;
 import br.com.c8tech.tools.maven.osgi.lib.mojo.handlers.BundleArtifactHandler;
+import br.com.c8tech.tools.maven.osgi.lib.mojo.incremental.ArtifactTracker;
+import br.com.c8tech.tools.maven.osgi.lib.mojo.incremental.ArtifactTrackerManager;
+import br.com.c8tech.tools.maven.osgi.lib.mojo.incremental.ArtifactTrackerManagerBuilder;
 import io.takari.incrementalbuild.Incremental;
 import io.takari.incrementalbuild.Incremental.Configuration;
 
@@ -155,6 +172,19 @@ public abstract class AbstractSubsystemMojo
     @Parameter()
     private MavenArtifactSet mavenArtifactSet;
 
+    /**
+     * Whether the {@link #mavenArtifactSet} is the empty one created in the
+     * lack of its configuration.
+     */
+    private boolean mavenArtifactSetDefaulted;
+
+    /**
+     * The current mojo execution, used to identify the filtering configuration
+     * when sharing the artifact trackers among the subsystem mojos.
+     */
+    @Parameter(defaultValue = "${mojoExecution}", readonly = true)
+    private MojoExecution mojoExecution;
+
     /**
      * Indicates to this plugin whether it must consider any optional
      * dependencies in order to generate the subsystem archive.
@@ -165,6 +195,46 @@ public abstract class AbstractSubsystemMojo
             property = "subsystem.optionalConsidered")
     private boolean optionalConsidered;
 
+    /**
+     * Indicates whether the artifacts must be used straight from their files
+     * in the local repository, instead of from their copies in the
+     * {@link #cacheDirectory}.
+     * <p>
+     * When enabled, the artifact caching only resolves the artifacts, without
+     * copying them, and the subsequent mojos read their manifests and pack
+     * their contents from the repository files, so their bytes are not
+     * written once more into the cache, while their entries keep the names
+     * of the cached copies. When any artifact has no repository
+     * file, as the ones resolved from the workspace, the artifacts are copied
+     * as usual and only the ones with a repository file are used from it.
+     */
+    @Parameter(defaultValue = "false", property = "subsystem.directEmbedding")
+    private boolean directEmbedding;
+
+    /**
+     * Indicates whether the manifest headers read from the cached artifacts
+     * must be kept in a persistent index inside the {@link #cacheDirectory},
+     * so unchanged artifacts are not opened again on subsequent builds.
+     */
+    @Parameter(defaultValue = "true",
+            property = "subsystem.manifestHeadersIndexed")
+    @Incremental(configuration = Configuration.ignore)
+    private boolean manifestHeadersIndexed;
+
+    /**
+     * The maximum number of threads the plugin may use to process the resolved
+     * artifacts in parallel, as for example when reading their manifests.
+     * <p>
+     * The default value <code>1</code> keeps the processing serial. Use
+     * <code>0</code> to use one thread per available processor. Virtual
+     * threads are used when the running JVM supports them.
+     * <p>
+     * The results are always collected in the same order of a serial run.
+     */
+    @Parameter(defaultValue = "1", property = "subsystem.parallelThreads")
+    @Incremental(configuration = Configuration.ignore)
+    private int parallelThreads;
+
     /**
      * Set this to <code>true</code> to skip the plugin execution.
      */
@@ -172,6 +242,20 @@ public abstract class AbstractSubsystemMojo
     @Incremental(configuration = Configuration.ignore)
     private boolean skip;
 
+    /**
+     * Indicates whether a JSON report with the wall and CPU time spent on each
+     * phase of the mojo, and with the time and bytes of each artifact
+     * processed, must be written into the
+     * <code>target/subsystem-timings</code> directory.
+     */
+    @Parameter(defaultValue = "false", property = "subsystem.timingReport")
+    @Incremental(configuration = Configuration.ignore)
+    private boolean timingReport;
+
+    private BuildTimings buildTimings;
+
+    private Map<String, Path> projectArtifactFiles;
+
     /**
      * Indicates to this plugin whether it must consider the transitive
      * dependencies of those direct declared in order to generate the subsystem
@@ -310,12 +394,198 @@ public abstract class AbstractSubsystemMojo
         this.validSubsystemTypes.add(validType);
     }
 
+    /**
+     * @param pBversion
+     *                      An OSGi version.
+     * @return the range holding only the informed version, not quoted.
+     */
     protected final String computeFixedRange(String pBversion) {
 
-        String versionFixed = VersionConverter.fromOsgiVersion(pBversion)
-                .toOSGi().getFixedVersionRangeString();
+        return VersionConverter.fromOsgiVersion(pBversion).toOSGi()
+                .getFixedVersionRangeString();
+    }
+
+    /**
+     * Builds a new artifact tracker manager using the filtering configuration
+     * of this mojo.
+     *
+     * @param pPreviousCachingRequired
+     *                                     Whether the artifacts must have been
+     *                                     previously copied to the cache
+     *                                     directory.
+     * @return a new, not yet resolved, artifact tracker manager.
+     */
+    protected final ArtifactTrackerManager buildArtifactTrackerManager(
+            boolean pPreviousCachingRequired) {
+        return ArtifactTrackerManagerBuilder
+                .newBuilder(getMavenSession(), getCacheDirectory())
+                .withGroupingByTypeDirectory(true).withVerbose(isVerbose())
+                .withPreviousCachingRequired(
+                        pPreviousCachingRequired && !directEmbedding)
+                .mavenSetup().withDependenciesHelper(getDependenciesHelper())
+                .withRepositorySystem(getRepositorySystem()).workspaceSetup()
+                .withAssemblyUrlProtocolAllowed(isWorkspaceResolutionAllowed())
+                .withPackOnTheFlyAllowed(isWorkspaceResolutionAllowed())
+                .endWorkspaceSetup().mavenFiltering()
+                .withOptional(isOptionalConsidered())
+                .withTransitive(isTransitiveConsidered())
+                .withScopes(getManifestScopes())
+                .withScopes(getEmbeddableScopes())
+                .withMavenArtifactSet(getMavenArtifactSet())
+                .withExcludedDependencies(getExcludedArtifacts())
+                .endMavenFiltering().endMavenSetup().build();
+    }
+
+    /**
+     * Computes the key that identifies the effective filtering configuration
+     * used to build an artifact tracker manager. Two mojos of the same project
+     * producing the same key will resolve the very same artifact trackers.
+     *
+     * @param pPreviousCachingRequired
+     *                                     Whether the artifacts must have been
+     *                                     previously copied to the cache
+     *                                     directory.
+     * @return the key representing the filtering configuration, or
+     *         <code>null</code> when the configuration can not be compared
+     *         and so the trackers must not be shared.
+     */
+    protected final String computeArtifactTrackerManagerKey(
+            boolean pPreviousCachingRequired) {
+        StringBuilder key = new StringBuilder();
+        key.append("cache=").append(getCacheDirectory());
+        key.append("|cachingRequired=")
+                .append(pPreviousCachingRequired && !directEmbedding);
+        key.append("|manifestScopes=")
+                .append(new TreeSet<>(getManifestScopes()));
+        key.append("|embeddableScopes=")
+                .append(new TreeSet<>(getEmbeddableScopes()));
+        key.append("|optional=").append(isOptionalConsidered());
+        key.append("|transitive=").append(isTransitiveConsidered());
+        key.append("|workspace=").append(isWorkspaceResolutionAllowed());
+        key.append("|excluded=")
+                .append(new TreeSet<>(getExcludedArtifacts()));
+        key.append("|artifactSet=");
+        Xpp3Dom artifactSetConfig = mojoExecution != null
+                && mojoExecution.getConfiguration() != null
+                        ? mojoExecution.getConfiguration()
+                                .getChild("mavenArtifactSet")
+                        : null;
+        if (artifactSetConfig != null) {
+            appendConfiguration(key, artifactSetConfig);
+        } else
+            if (mavenArtifactSet != null && !mavenArtifactSetDefaulted) {
+                // without its configuration the set can not be compared
+                return null;
+            }
+        return key.toString();
+    }
+
+    private static void appendConfiguration(StringBuilder pKey,
+            Xpp3Dom pConfiguration) {
+        pKey.append('<').append(pConfiguration.getName());
+        String[] attributeNames = pConfiguration.getAttributeNames();
+        Arrays.sort(attributeNames);
+        for (String attributeName : attributeNames) {
+            pKey.append(' ').append(attributeName).append("=\"")
+                    .append(pConfiguration.getAttribute(attributeName))
+                    .append('"');
+        }
+        pKey.append('>');
+        if (pConfiguration.getChildCount() == 0) {
+            String value = pConfiguration.getValue();
+            pKey.append(value == null ? "" : value.trim());
+        }
+        for (Xpp3Dom child : pConfiguration.getChildren()) {
+            appendConfiguration(pKey, child);
+        }
+        pKey.append("</").append(pConfiguration.getName()).append('>');
+    }
+
+    /**
+     * Releases the artifact trackers registered for the current project,
+     * unless any of the given subsequent mojos is going to run in this
+     * session and so may reuse them.
+     *
+     * @param pNextPhase
+     *                       The earliest phase the subsequent mojos are bound
+     *                       to.
+     * @param pNextGoals
+     *                       The goals of the subsequent mojos.
+     */
+    protected final void releaseArtifactTrackerManager(String pNextPhase,
+            String... pNextGoals) {
+        if (!ArtifactTrackerManagerRegistry.isRequested(
+                getMavenSession().getGoals(), pNextPhase, pNextGoals)) {
+            getArtifactTrackerManagerRegistry().release(getProject());
+        }
+    }
+
+    /**
+     * Returns the resolved artifact tracker manager for the current project.
+     * <p>
+     * When a previous mojo of this project, running in the same maven session,
+     * has already resolved the artifacts using the same filtering
+     * configuration its manager is reused. Otherwise a new one is built,
+     * resolved and registered to be used by the subsequent mojos.
+     *
+     * @param pPreviousCachingRequired
+     *                                     Whether the artifacts must have been
+     *                                     previously copied to the cache
+     *                                     directory.
+     * @return a resolved artifact tracker manager.
+     * @throws MojoExecutionException
+     *                                    when the artifacts could not be
+     *                                    resolved.
+     * @throws MojoFailureException
+     *                                    when the artifacts could not be
+     *                                    resolved.
+     */
+    protected final ArtifactTrackerManager lookupArtifactTrackerManager(
+            boolean pPreviousCachingRequired)
+            throws MojoExecutionException, MojoFailureException {
+        String key = computeArtifactTrackerManagerKey(
+                pPreviousCachingRequired);
+        ArtifactTrackerManagerRegistry registry = getArtifactTrackerManagerRegistry();
+        try (BuildEvents.Event event = BuildEvents
+                .begin(BuildEvents.Kind.TRACKER_RESOLUTION)
+                .artifact(getProject().getId())) {
+            ArtifactTrackerManager artifactTrackerManager = key == null ? null
+                    : registry.lookup(getProject(), key);
+            if (artifactTrackerManager != null) {
+                event.outcome(BuildEvents.OUTCOME_HIT);
+                if (isVerbose()) {
+                    getLog().info(
+                            "Reusing the artifact trackers already resolved for project "
+                                    + getProject().getArtifactId());
+                }
+                return artifactTrackerManager;
+            }
+            BuildTimings.Phase trackerBuilding = getBuildTimings()
+                    .phase(BuildTimings.TRACKER_BUILDING);
+            try {
+                artifactTrackerManager = buildArtifactTrackerManager(
+                        pPreviousCachingRequired);
+            } finally {
+                trackerBuilding.close();
+            }
+            BuildTimings.Phase dependencyResolution = getBuildTimings()
+                    .phase(BuildTimings.DEPENDENCY_RESOLUTION);
+            try {
+                artifactTrackerManager
+                        .resolveMavenArtifacts(getEmbeddableScopes());
+            } finally {
+                dependencyResolution.close();
+            }
+            if (key != null) {
+                registry.register(getProject(), key, artifactTrackerManager);
+            }
+            event.outcome(BuildEvents.OUTCOME_MISS);
+            return artifactTrackerManager;
+        }
+    }
 
-        return "\"" + versionFixed + "\"";
+    protected final ArtifactTrackerManagerRegistry getArtifactTrackerManagerRegistry() {
+        return ArtifactTrackerManagerRegistry.forSession(getMavenSession());
     }
 
     @Override
@@ -329,80 +599,65 @@ public abstract class AbstractSubsystemMojo
             throws MojoExecutionException {
     }
 
-    protected final Clause fullfillBundleDependencyClause(final String pBsn,
-            final String pBversion, boolean pIsOptional, boolean pIsFragment,
-            final Optional<Clause> pOptionalClause) {
+    protected final ManifestClause fullfillBundleDependencyClause(
+            final String pBsn, final String pBversion, boolean pIsOptional,
+            boolean pIsFragment,
+            final Optional<ManifestClause> pOptionalClause) {
 
         if (pOptionalClause.isPresent() && ((pBsn == null || pBsn.isEmpty()) // NOSONAR
                 || (pBversion == null || pBversion.isEmpty()))) {
             return pOptionalClause.get();
 
         }
-        StringBuilder clauseStr = new StringBuilder();
-        if (!pOptionalClause.isPresent()) {
-            clauseStr.append(pBsn);
-        } else {
-            clauseStr.append(pOptionalClause.get().getSymbolicName());
-        }
-        if (pIsFragment) {
-            clauseStr.append(";" + Clause.ATTRIBUTE_TYPE + "="
-                    + CommonMojoConstants.OSGI_FRAGMENT_TYPE);
-        } else {
-            clauseStr.append(";" + Clause.ATTRIBUTE_TYPE + "="
-                    + CommonMojoConstants.OSGI_BUNDLES_TYPE);
-        }
-        clauseStr.append(";" + Clause.ATTRIBUTE_VERSION + "="
-                + computeFixedRange(pBversion));
-        if (pIsOptional) {
-            clauseStr.append(
-                    ";" + Clause.DIRECTIVE_RESOLUTION + ":=" + "optional");
-        } else {
-            clauseStr.append(
-                    ";" + Clause.DIRECTIVE_RESOLUTION + ":=" + "mandatory");
-        }
-        if (pOptionalClause.isPresent()) {
-            clauseStr.append(";" + Clause.DIRECTIVE_STARTORDER + ":="
-                    + pOptionalClause.get().getStartOrder());
-        }
-        return new Clause(clauseStr.toString());
-    }
-
-    protected final Clause fullfillSubsystemDependencyClause(final String ssn,
-            final String sversion, final String stype, boolean isOptional,
-            final Optional<Clause> pOptionalClause) {
+        Map<String, String> attributes = new LinkedHashMap<>();
+        attributes.put(Clause.ATTRIBUTE_TYPE,
+                pIsFragment ? CommonMojoConstants.OSGI_FRAGMENT_TYPE
+                        : CommonMojoConstants.OSGI_BUNDLES_TYPE);
+        attributes.put(Clause.ATTRIBUTE_VERSION, computeFixedRange(pBversion));
+        return newContentClause(
+                pOptionalClause.isPresent() ? pOptionalClause.get().getPath()
+                        : pBsn.split(";")[0].trim(),
+                attributes, pIsOptional, pOptionalClause);
+    }
+
+    protected final ManifestClause fullfillSubsystemDependencyClause(
+            final String ssn, final String sversion, final String stype,
+            boolean isOptional,
+            final Optional<ManifestClause> pOptionalClause) {
 
         if (ssn == null || ssn.isEmpty() || sversion == null
                 || sversion.isEmpty()) {
             return null;
         }
-        StringBuilder clause = new StringBuilder();
-        if (!pOptionalClause.isPresent()) {
-            clause.append(ssn);
-            clause.append(
-                    ";" + Clause.ATTRIBUTE_TYPE + "=" + stype.split(";")[0]);
+        Map<String, String> attributes = new LinkedHashMap<>();
+        if (stype == null && pOptionalClause.isPresent()) {
+            attributes.put(Clause.ATTRIBUTE_TYPE,
+                    pOptionalClause.get().getAttribute(Clause.ATTRIBUTE_TYPE));
         } else {
-            clause.append(pOptionalClause.get().getSymbolicName());
-            clause.append(";" + Clause.DIRECTIVE_STARTORDER + ":="
-                    + pOptionalClause.get().getStartOrder());
-            if (stype == null) {
-                clause.append(";" + Clause.ATTRIBUTE_TYPE + "="
-                        + pOptionalClause.get().getType());
-            } else {
-                clause.append(";" + Clause.ATTRIBUTE_TYPE + "="
-                        + stype.split(";")[0]);
-            }
+            attributes.put(Clause.ATTRIBUTE_TYPE, stype.split(";")[0]);
         }
-        clause.append(";" + Clause.ATTRIBUTE_VERSION + "="
-                + computeFixedRange(sversion));
-        if (isOptional) {
-            clause.append(
-                    ";" + Clause.DIRECTIVE_RESOLUTION + ":=" + "optional");
-        } else {
-            clause.append(
-                    ";" + Clause.DIRECTIVE_RESOLUTION + ":=" + "mandatory");
+        attributes.put(Clause.ATTRIBUTE_VERSION, computeFixedRange(sversion));
+        return newContentClause(
+                pOptionalClause.isPresent() ? pOptionalClause.get().getPath()
+                        : ssn.split(";")[0].trim(),
+                attributes, isOptional, pOptionalClause);
+    }
+
+    private static ManifestClause newContentClause(String pSymbolicName,
+            Map<String, String> pAttributes, boolean pIsOptional,
+            Optional<ManifestClause> pOptionalClause) {
+        Map<String, String> directives = new LinkedHashMap<>();
+        directives.put(Clause.DIRECTIVE_RESOLUTION,
+                pIsOptional ? "optional" : "mandatory");
+        // the configured start order is kept
+        String startOrder = pOptionalClause
+                .map(c -> c.getDirective(Clause.DIRECTIVE_STARTORDER))
+                .orElse(null);
+        if (startOrder != null) {
+            directives.put(Clause.DIRECTIVE_STARTORDER, startOrder);
         }
-
-        return new Clause(clause.toString());
+        return new ManifestClause(Collections.singletonList(pSymbolicName),
+                pAttributes, directives);
     }
 
     @Override
@@ -410,6 +665,55 @@ public abstract class AbstractSubsystemMojo
         return cacheDirectory.toPath();
     }
 
+    private static String artifactKey(String pGroupId, String pArtifactId,
+            String pVersion) {
+        return pGroupId + ":" + pArtifactId + ":" + pVersion;
+    }
+
+    /**
+     * Returns the file an artifact must be read from: its file in the local
+     * repository, when {@link #directEmbedding} is enabled, or its copy in
+     * the cache directory.
+     *
+     * @param pArtifactTracker
+     *                             The artifact.
+     * @return the file, or <code>null</code> when the artifact has none.
+     */
+    protected final Path getArtifactFile(ArtifactTracker pArtifactTracker) {
+        if (directEmbedding) {
+            Path repositoryFile = lookupRepositoryFile(pArtifactTracker);
+            if (repositoryFile != null) {
+                return repositoryFile;
+            }
+        }
+        // also materialized as a link, without the library marking it cached
+        Path cachedFile = pArtifactTracker.getCachedFilePath();
+        return cachedFile != null && Files.isRegularFile(cachedFile)
+                ? cachedFile
+                : null;
+    }
+
+    /**
+     * Returns the name of an artifact's entry in the archive, which is always
+     * the name of its copy in the cache directory, even when it is embedded
+     * straight from the local repository.
+     *
+     * @param pArtifactTracker
+     *                             The artifact.
+     * @return the entry name, or <code>null</code> when the artifact has no
+     *         file.
+     */
+    protected final String getArtifactEntryName(
+            ArtifactTracker pArtifactTracker) {
+        Path cachedFile = pArtifactTracker.getCachedFilePath();
+        if (cachedFile != null) {
+            return cachedFile.getFileName().toString();
+        }
+        Path artifactFile = getArtifactFile(pArtifactTracker);
+        return artifactFile != null ? artifactFile.getFileName().toString()
+                : null;
+    }
+
     protected final Set<String> getEmbeddableScopes() {
         return embeddableScopes;
     }
@@ -428,10 +732,24 @@ public abstract class AbstractSubsystemMojo
     protected final MavenArtifactSet getMavenArtifactSet() {
         if (mavenArtifactSet == null) {
             mavenArtifactSet = new MavenArtifactSet();
+            mavenArtifactSetDefaulted = true;
         }
         return mavenArtifactSet;
     }
 
+    /**
+     * Returns the timings of this execution, which are only recorded when the
+     * {@link #timingReport} was enabled.
+     *
+     * @return the timings.
+     */
+    protected final synchronized BuildTimings getBuildTimings() {
+        if (buildTimings == null) {
+            buildTimings = new BuildTimings(timingReport);
+        }
+        return buildTimings;
+    }
+
     protected final Path getSubsystemManifestFile()
             throws MojoExecutionException {
         return getWorkSubDirectory(DEFAULT_SUBSYSTEM_DIRECTORY)
@@ -439,6 +757,146 @@ public abstract class AbstractSubsystemMojo
                 .resolve(CommonMojoConstants.OSGI_SUBSYSTEM_MANIFEST_XML_NAME);
     }
 
+    private synchronized Map<String, Path> getProjectArtifactFiles() {
+        if (projectArtifactFiles == null) {
+            projectArtifactFiles = new HashMap<>();
+            for (Artifact artifact : getProject().getArtifacts()) {
+                if (artifact.getFile() != null
+                        && artifact.getFile().isFile()) {
+                    projectArtifactFiles.put(
+                            artifactKey(artifact.getGroupId(),
+                                    artifact.getArtifactId(),
+                                    artifact.getVersion()),
+                            artifact.getFile().toPath());
+                }
+            }
+        }
+        return projectArtifactFiles;
+    }
+
+    protected final int getParallelThreads() {
+        return ParallelTasks.effectiveThreads(parallelThreads);
+    }
+
+    /**
+     * Reads the manifest headers of the informed artifacts, using up to
+     * {@link #parallelThreads} threads.
+     * <p>
+     * When {@link #manifestHeadersIndexed} is enabled the headers of cached
+     * artifacts that have not changed since the last build are taken from the
+     * persistent index instead of being read from the artifact file.
+     *
+     * @param pArtifactTrackers
+     *                              The artifacts whose headers must be read.
+     * @return the headers of each artifact, in the same order of the informed
+     *         list.
+     * @throws IOException
+     *                         when a manifest could not be read.
+     */
+    protected final List<Map<String, String>> readManifestHeaders(
+            List<ArtifactTracker> pArtifactTrackers) throws IOException {
+        BuildTimings.Phase manifestReading = getBuildTimings()
+                .phase(BuildTimings.MANIFEST_READING);
+        try {
+            if (!manifestHeadersIndexed) {
+                return ParallelTasks.map(pArtifactTrackers,
+                        getParallelThreads(),
+                        tracker -> readManifestHeaders(null, tracker));
+            }
+            ManifestHeadersIndex index = ManifestHeadersIndex
+                    .load(getCacheDirectory()
+                            .resolve(ManifestHeadersIndex.INDEX_FILE_NAME));
+            List<Map<String, String>> allHeaders = ParallelTasks.map(
+                    pArtifactTrackers, getParallelThreads(),
+                    tracker -> readManifestHeaders(index, tracker));
+            if (index.isModified()) {
+                index.save();
+            }
+            return allHeaders;
+        } finally {
+            manifestReading.close();
+        }
+    }
+
+    private static Map<String, String> loadManifestHeaders(
+            ArtifactTracker pArtifactTracker, Path pFile) throws IOException {
+        Map<String, String> headers = pArtifactTracker.getManifestHeaders();
+        if ((headers == null || headers.isEmpty()) && pFile != null
+                && !pFile.equals(pArtifactTracker.getCachedFilePath())) {
+            // the tracker only knows how to read its cached copy
+            headers = ArtifactManifests.read(pFile);
+        }
+        return headers;
+    }
+
+    private Map<String, String> readManifestHeaders(
+            ManifestHeadersIndex pIndex, ArtifactTracker pArtifactTracker)
+            throws IOException {
+        BuildTimings timings = getBuildTimings();
+        long start = System.nanoTime();
+        try (BuildEvents.Event event = BuildEvents
+                .begin(BuildEvents.Kind.MANIFEST_READ)) {
+            Path file = getArtifactFile(pArtifactTracker);
+            Map<String, String> headers;
+            String outcome;
+            if (pIndex == null || file == null) {
+                headers = loadManifestHeaders(pArtifactTracker, file);
+                outcome = BuildEvents.OUTCOME_READ;
+            } else {
+                headers = pIndex.lookup(file);
+                outcome = BuildEvents.OUTCOME_HIT;
+                if (headers == null) {
+                    outcome = BuildEvents.OUTCOME_MISS;
+                    headers = loadManifestHeaders(pArtifactTracker, file);
+                    if (headers != null) {
+                        pIndex.put(file, headers);
+                    }
+                }
+            }
+            if (timings.isEnabled() || event.isRecording()) {
+                long bytes = file != null ? Files.size(file) : 0;
+                event.artifact(BuildEvents.coordinatesOf(pArtifactTracker))
+                        .bytes(bytes).outcome(outcome);
+                timings.recordArtifact(BuildTimings.MANIFEST_READING,
+                        pArtifactTracker.getArtifactId(), bytes,
+                        System.nanoTime() - start);
+            }
+            return headers;
+        }
+    }
+
+    /**
+     * Returns the file of an artifact in the local repository.
+     *
+     * @param pArtifactTracker
+     *                             The artifact.
+     * @return the file, or <code>null</code> when the artifact is not a
+     *         regular file of the local repository, as the ones resolved from
+     *         the workspace.
+     */
+    protected final Path lookupRepositoryFile(
+            ArtifactTracker pArtifactTracker) {
+        Path file = getProjectArtifactFiles().get(artifactKey(
+                pArtifactTracker.getGroupId(),
+                pArtifactTracker.getArtifactId(),
+                pArtifactTracker.getVersion()));
+        if (file != null) {
+            return file;
+        }
+        // artifacts resolved by the plugin itself are not project artifacts
+        LocalRepositoryManager localRepositoryManager = getMavenSession()
+                .getRepositorySession().getLocalRepositoryManager();
+        String extension = pArtifactTracker.getTypeHandler() != null
+                ? pArtifactTracker.getTypeHandler().getExtension()
+                : "jar";
+        file = localRepositoryManager.getRepository().getBasedir().toPath()
+                .resolve(localRepositoryManager.getPathForLocalArtifact(
+                        new DefaultArtifact(pArtifactTracker.getGroupId(),
+                                pArtifactTracker.getArtifactId(), extension,
+                                pArtifactTracker.getVersion())));
+        return Files.isRegularFile(file) ? file : null;
+    }
+
     protected final List<String> getValidBundleTypes() {
         return validBundleTypes;
     }
@@ -451,6 +909,10 @@ public abstract class AbstractSubsystemMojo
         return this.workspaceResolutionAllowed;
     }
 
+    protected final boolean isDirectEmbedding() {
+        return directEmbedding;
+    }
+
     protected final boolean isOptionalConsidered() {
         return optionalConsidered;
     }
@@ -464,6 +926,39 @@ public abstract class AbstractSubsystemMojo
         return transitiveConsidered;
     }
 
+    /**
+     * Returns the id of the current mojo execution, used to keep apart the
+     * files of different executions of the same mojo.
+     *
+     * @return the execution id.
+     */
+    protected final String getExecutionId() {
+        return mojoExecution != null && mojoExecution.getExecutionId() != null
+                ? mojoExecution.getExecutionId()
+                : "default";
+    }
+
+    /**
+     * Writes the timing report of this execution, when enabled. A failure is
+     * only logged, as the report must never break the build.
+     */
+    protected final void writeBuildTimings() {
+        BuildTimings timings = getBuildTimings();
+        if (!timings.isEnabled()) {
+            return;
+        }
+        String goal = mojoExecution != null ? mojoExecution.getGoal()
+                : getClass().getSimpleName();
+        Path reportFile = Paths.get(getProject().getBuild().getDirectory(),
+                "subsystem-timings", goal + "-" + getExecutionId() + ".json");
+        try {
+            timings.write(reportFile, getProject().getId(), goal);
+        } catch (IOException e) {
+            getLog().warn("The timing report could not be written at "
+                    + reportFile, e);
+        }
+    }
+
     public void setWorkspaceResolutionAllowed(
             boolean pAllowsWorkspaceResolution) {
         this.workspaceResolutionAllowed = pAllowsWorkspaceResolution;
@@ -0,0 +1,238 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.subsystems;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The entry manifest kept next to a subsystem archive, recording for each
+ * entry the file it came from and where its data is found inside the
+ * archive.
+ * <p>
+ * It allows the next build to copy the entries whose source files have not
+ * changed straight from the previous archive, without compressing them again.
+ * The index is only trusted while the archive keeps the same size and
+ * modification time it had when the index was written.
+ *
+ * @author Cristiano Gavião
+ *
+ */
+final class ArchiveEntryIndex {
+
+    /**
+     * The recorded state of an archive entry.
+     */
+    static final class Record {
+
+        private final long compressedSize;
+
+        private final long crc;
+
+        private final long dataOffset;
+
+        private final int method;
+
+        private final long size;
+
+        private final String source;
+
+        private final long sourceLastModified;
+
+        private final long sourceSize;
+
+        private final long time;
+
+        Record(String pSource, long pSourceSize, long pSourceLastModified,
+                int pMethod, long pCrc, long pCompressedSize, long pSize,
+                long pTime, long pDataOffset) {
+            source = pSource;
+            sourceSize = pSourceSize;
+            sourceLastModified = pSourceLastModified;
+            method = pMethod;
+            crc = pCrc;
+            compressedSize = pCompressedSize;
+            size = pSize;
+            time = pTime;
+            dataOffset = pDataOffset;
+        }
+
+        long getDataOffset() {
+            return dataOffset;
+        }
+
+        ZipChannelWriter.EntryInfo toEntryInfo(String pName) {
+            return new ZipChannelWriter.EntryInfo(pName, method, crc,
+                    compressedSize, size, time);
+        }
+    }
+
+    /**
+     * The suffix appended to the archive file name to name its index.
+     */
+    static final String INDEX_FILE_SUFFIX = ".entries";
+
+    private static final int FORMAT_VERSION = 1;
+
+    private static final int MAGIC = 0x53534549; // SSEI
+
+    private long archiveLastModified;
+
+    private long archiveSize;
+
+    private final Map<String, Record> records = new HashMap<>();
+
+    static Path indexFileOf(Path pArchive) {
+        return pArchive.resolveSibling(
+                pArchive.getFileName().toString() + INDEX_FILE_SUFFIX);
+    }
+
+    /**
+     * Loads the index of the archive. A missing, outdated or corrupted index,
+     * or one whose archive was changed by someone else, results in an empty
+     * index.
+     */
+    static ArchiveEntryIndex load(Path pArchive) {
+        ArchiveEntryIndex index = new ArchiveEntryIndex();
+        byte[] content;
+        BasicFileAttributes attributes;
+        try {
+            content = Files.readAllBytes(indexFileOf(pArchive));
+            attributes = Files.readAttributes(pArchive,
+                    BasicFileAttributes.class);
+        } catch (IOException e) { // NOSONAR
+            return index;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(content))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                return index;
+            }
+            index.archiveSize = in.readLong();
+            index.archiveLastModified = in.readLong();
+            if (index.archiveSize != attributes.size()
+                    || index.archiveLastModified != attributes
+                            .lastModifiedTime().toMillis()) {
+                return index;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String name = readString(in);
+                Record record = new Record(readString(in), in.readLong(),
+                        in.readLong(), in.readUnsignedShort(), in.readLong(),
+                        in.readLong(), in.readLong(), in.readLong(),
+                        in.readLong());
+                if (record.dataOffset + record.compressedSize > index.archiveSize) {
+                    index.records.clear();
+                    return index;
+                }
+                index.records.put(name, record);
+            }
+        } catch (IOException e) { // NOSONAR
+            index.records.clear();
+        }
+        return index;
+    }
+
+    private static String readString(DataInputStream pIn) throws IOException {
+        byte[] bytes = new byte[pIn.readInt()];
+        pIn.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static String sourceKey(Path pSource) {
+        return pSource.toAbsolutePath().normalize().toString();
+    }
+
+    private static void writeString(DataOutputStream pOut, String pValue)
+            throws IOException {
+        byte[] bytes = pValue.getBytes(StandardCharsets.UTF_8);
+        pOut.writeInt(bytes.length);
+        pOut.write(bytes);
+    }
+
+    boolean isEmpty() {
+        return records.isEmpty();
+    }
+
+    /**
+     * Returns the record of the entry when it can be copied from the previous
+     * archive, that is, it came from the same source file, which has not
+     * changed, and it was written with the same compression method.
+     */
+    Record lookup(String pName, String pSource,
+            BasicFileAttributes pSourceAttributes, int pMethod) {
+        Record record = records.get(pName);
+        if (record == null || !record.source.equals(pSource)
+                || record.method != pMethod
+                || record.sourceSize != pSourceAttributes.size()
+                || record.sourceLastModified != pSourceAttributes
+                        .lastModifiedTime().toMillis()) {
+            return null;
+        }
+        return record;
+    }
+
+    void put(String pName, Record pRecord) {
+        records.put(pName, pRecord);
+    }
+
+    /**
+     * Writes the index next to the archive, which must be already complete.
+     */
+    void save(Path pArchive) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(pArchive,
+                BasicFileAttributes.class);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(attributes.size());
+            out.writeLong(attributes.lastModifiedTime().toMillis());
+            out.writeInt(records.size());
+            for (Map.Entry<String, Record> entry : records.entrySet()) {
+                Record record = entry.getValue();
+                writeString(out, entry.getKey());
+                writeString(out, record.source);
+                out.writeLong(record.sourceSize);
+                out.writeLong(record.sourceLastModified);
+                out.writeShort(record.method);
+                out.writeLong(record.crc);
+                out.writeLong(record.compressedSize);
+                out.writeLong(record.size);
+                out.writeLong(record.time);
+                out.writeLong(record.dataOffset);
+            }
+        }
+        Path indexFile = indexFileOf(pArchive);
+        Path tempFile = Files.createTempFile(indexFile.getParent(),
+                indexFile.getFileName().toString(), ".tmp");
+        try {
+            Files.write(tempFile, bytes.toByteArray());
+            Files.move(tempFile, indexFile,
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.subsystems;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import br.com.c8tech.tools.maven.osgi.lib.mojo.CommonMojoConstants;
+
+/**
+ * Helper methods used to read the manifest headers straight from an artifact
+ * file, as one of the local repository that was not copied into the cache
+ * directory.
+ *
+ * @author Cristiano Gavião
+ *
+ */
+public final class ArtifactManifests {
+
+    private static final String BUNDLE_MANIFEST_LOCATION = "META-INF/MANIFEST.MF";
+
+    private ArtifactManifests() {
+    }
+
+    /**
+     * Reads the main headers of an artifact's manifest: the subsystem
+     * manifest of a subsystem archive, told apart by its extension, or the
+     * jar manifest of any other artifact.
+     *
+     * @param pFile
+     *                  The artifact file.
+     * @return the headers, or <code>null</code> when the artifact has no
+     *         manifest.
+     * @throws IOException
+     *                         when the artifact could not be read.
+     */
+    public static Map<String, String> read(Path pFile) throws IOException {
+        try (ZipFile zip = new ZipFile(pFile.toFile())) {
+            ZipEntry entry = zip.getEntry(isSubsystemArchive(pFile)
+                    ? CommonMojoConstants.OSGI_SUBSYSTEM_MANIFEST_LOCATION
+                    : BUNDLE_MANIFEST_LOCATION);
+            if (entry == null) {
+                return null;
+            }
+            Manifest manifest;
+            try (InputStream in = zip.getInputStream(entry)) {
+                manifest = new Manifest(in);
+            }
+            Map<String, String> headers = new LinkedHashMap<>();
+            manifest.getMainAttributes().forEach(
+                    (name, value) -> headers.put(name.toString(),
+                            (String) value));
+            return headers;
+        }
+    }
+
+    private static boolean isSubsystemArchive(Path pFile) {
+        return pFile.getFileName().toString()
+                .endsWith("." + CommonMojoConstants.OSGI_SUBSYSTEM_EXTENSION);
+    }
+}
@@ -0,0 +1,113 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.subsystems;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import br.com.c8tech.tools.maven.osgi.lib.mojo.incremental.ArtifactTracker;
+import br.com.c8tech.tools.maven.osgi.lib.mojo.incremental.ArtifactTrackerManager;
+
+/**
+ * Hash indexes over the artifact trackers of a project, built once per mojo
+ * execution, so looking up a tracker by its artifactId or by its cached file
+ * does not scan all the trackers for each artifact or clause.
+ * <p>
+ * When a lookup misses the index the search is delegated to the
+ * {@link ArtifactTrackerManager}, so the results are never worse than the
+ * ones of the manager's own searches.
+ *
+ * @author Cristiano Gavião
+ *
+ */
+public final class ArtifactTrackerIndex {
+
+    private final Map<String, ArtifactTracker> byArtifactId;
+
+    private final Map<Path, ArtifactTracker> byPath;
+
+    private final ArtifactTrackerManager manager;
+
+    /**
+     * @param pManager
+     *                     The manager holding the trackers. It may be
+     *                     <code>null</code> when no artifacts were resolved.
+     */
+    public ArtifactTrackerIndex(ArtifactTrackerManager pManager) {
+        this(pManager, ArtifactTracker::getCachedFilePath);
+    }
+
+    /**
+     * @param pManager
+     *                         The manager holding the trackers. It may be
+     *                         <code>null</code> when no artifacts were
+     *                         resolved.
+     * @param pFileMapper
+     *                         Maps each tracker to the file it is searched
+     *                         by, as its file in the local repository. It may
+     *                         return <code>null</code>.
+     */
+    public ArtifactTrackerIndex(ArtifactTrackerManager pManager,
+            Function<ArtifactTracker, Path> pFileMapper) {
+        manager = pManager;
+        List<ArtifactTracker> trackers = pManager == null ? null
+                : pManager.getAllArtifactTrackers();
+        int capacity = trackers == null ? 16 : trackers.size() * 2;
+        byArtifactId = new HashMap<>(capacity);
+        byPath = new HashMap<>(capacity);
+        if (trackers == null) {
+            return;
+        }
+        for (ArtifactTracker tracker : trackers) {
+            // keeps the first one, as a scan over the trackers would do
+            byArtifactId.putIfAbsent(tracker.getArtifactId(), tracker);
+            Path file = pFileMapper.apply(tracker);
+            if (file != null) {
+                byPath.putIfAbsent(normalize(file), tracker);
+            }
+        }
+    }
+
+    private static Path normalize(Path pPath) {
+        return pPath.toAbsolutePath().normalize();
+    }
+
+    /**
+     * @param pArtifactId
+     *                        The artifactId.
+     * @return the tracker, or <code>null</code> when there is none.
+     */
+    public ArtifactTracker searchByArtifactId(String pArtifactId) {
+        ArtifactTracker tracker = byArtifactId.get(pArtifactId);
+        if (tracker == null && manager != null) {
+            tracker = manager.searchByArtifactId(pArtifactId);
+        }
+        return tracker;
+    }
+
+    /**
+     * @param pPath
+     *                  The path of the artifact file.
+     * @return the tracker, or <code>null</code> when there is none.
+     */
+    public ArtifactTracker searchByPath(String pPath) {
+        ArtifactTracker tracker = byPath.get(normalize(Paths.get(pPath)));
+        if (tracker == null && manager != null) {
+            tracker = manager.searchByPath(pPath);
+        }
+        return tracker;
+    }
+}
@@ -0,0 +1,195 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.subsystems;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.project.MavenProject;
+import org.eclipse.aether.SessionData;
+
+import br.com.c8tech.tools.maven.osgi.lib.mojo.incremental.ArtifactTrackerManager;
+
+/**
+ * A per session registry that holds the artifact tracker manager built for
+ * each project, allowing the subsequent mojos of the subsystem lifecycle to
+ * reuse the already resolved trackers instead of resolving the project's
+ * dependencies and reading their manifests again.
+ * <p>
+ * A registered manager is only reused when it was built with the same
+ * effective filtering configuration, identified by a key computed by the
+ * mojo.
+ * <p>
+ * The registry is kept in the repository session data, so it lives as long as
+ * the maven session and is shared by all projects of a reactor build. Each
+ * mojo releases the entry of its project when no subsequent subsystem mojo is
+ * going to run for it, so the trackers are not kept until the session ends.
+ *
+ * @author Cristiano Gavião
+ *
+ */
+public final class ArtifactTrackerManagerRegistry {
+
+    /**
+     * The phases of the maven default lifecycle, in their execution order.
+     */
+    private static final List<String> DEFAULT_LIFECYCLE_PHASES = Arrays.asList(
+            "validate", "initialize", "generate-sources", "process-sources",
+            "generate-resources", "process-resources", "compile",
+            "process-classes", "generate-test-sources",
+            "process-test-sources", "generate-test-resources",
+            "process-test-resources", "test-compile", "process-test-classes",
+            "test", "prepare-package", "package", "pre-integration-test",
+            "integration-test", "post-integration-test", "verify", "install",
+            "deploy");
+
+    private static final Object SESSION_DATA_KEY = ArtifactTrackerManagerRegistry.class
+            .getName();
+
+    private static final class Entry {
+
+        private final String key;
+
+        private final ArtifactTrackerManager manager;
+
+        private Entry(String pKey, ArtifactTrackerManager pManager) {
+            key = pKey;
+            manager = pManager;
+        }
+    }
+
+    private final Map<String, Entry> entriesByProject = new ConcurrentHashMap<>();
+
+    private ArtifactTrackerManagerRegistry() {
+    }
+
+    /**
+     * Returns the registry bound to the maven session, creating it when
+     * necessary.
+     *
+     * @param pSession
+     *                     The current maven session.
+     * @return the registry shared by all mojos running in the session.
+     */
+    public static ArtifactTrackerManagerRegistry forSession(
+            MavenSession pSession) {
+        SessionData data = pSession.getRepositorySession().getData();
+        Object registry = data.get(SESSION_DATA_KEY);
+        if (registry == null) {
+            data.set(SESSION_DATA_KEY, null,
+                    new ArtifactTrackerManagerRegistry());
+            registry = data.get(SESSION_DATA_KEY);
+        }
+        return (ArtifactTrackerManagerRegistry) registry;
+    }
+
+    /**
+     * Tells whether the tasks requested for a maven session, as the ones
+     * given in its command line, lead to the execution of any of the given
+     * goals, either invoked directly or bound to a lifecycle phase.
+     *
+     * @param pTasks
+     *                     The requested tasks, as phases or goals in the
+     *                     <code>[prefix|groupId:artifactId[:version]]:goal[@execution]</code>
+     *                     form.
+     * @param pPhase
+     *                     The earliest phase the goals are bound to.
+     * @param pGoals
+     *                     The names of the goals.
+     * @return <code>true</code> when any of the goals is going to run.
+     */
+    public static boolean isRequested(List<String> pTasks, String pPhase,
+            String... pGoals) {
+        int phaseIndex = DEFAULT_LIFECYCLE_PHASES.indexOf(pPhase);
+        List<String> goals = Arrays.asList(pGoals);
+        for (String task : pTasks) {
+            int separator = task.lastIndexOf(':');
+            if (separator < 0) {
+                int taskIndex = DEFAULT_LIFECYCLE_PHASES.indexOf(task);
+                if (taskIndex >= 0 && taskIndex >= phaseIndex) {
+                    return true;
+                }
+                continue;
+            }
+            String goal = task.substring(separator + 1);
+            int execution = goal.indexOf('@');
+            if (goals.contains(
+                    execution < 0 ? goal : goal.substring(0, execution))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String projectId(MavenProject pProject) {
+        return pProject.getGroupId() + ":" + pProject.getArtifactId() + ":"
+                + pProject.getVersion();
+    }
+
+    /**
+     * Returns the manager registered for the project when it was built using
+     * the same key.
+     *
+     * @param pProject
+     *                     The project being built.
+     * @param pKey
+     *                     The key representing the filtering configuration.
+     * @return the registered manager or <code>null</code> when none matches.
+     */
+    public ArtifactTrackerManager lookup(MavenProject pProject, String pKey) {
+        Entry entry = entriesByProject.get(projectId(pProject));
+        if (entry != null && entry.key.equals(pKey)) {
+            return entry.manager;
+        }
+        return null;
+    }
+
+    /**
+     * Tells whether a manager is registered for the project, whatever its
+     * key.
+     *
+     * @param pProject
+     *                     The project being built.
+     * @return <code>true</code> when a manager is registered.
+     */
+    public boolean isRegistered(MavenProject pProject) {
+        return entriesByProject.containsKey(projectId(pProject));
+    }
+
+    /**
+     * Registers a manager for the project, replacing any previous one.
+     *
+     * @param pProject
+     *                     The project being built.
+     * @param pKey
+     *                     The key representing the filtering configuration.
+     * @param pManager
+     *                     The manager to be shared.
+     */
+    public void register(MavenProject pProject, String pKey,
+            ArtifactTrackerManager pManager) {
+        entriesByProject.put(projectId(pProject), new Entry(pKey, pManager));
+    }
+
+    /**
+     * Discards the manager registered for the project, if any.
+     *
+     * @param pProject
+     *                     The project being built.
+     */
+    public void release(MavenProject pProject) {
+        entriesByProject.remove(projectId(pProject));
+    }
+}
@@ -0,0 +1,163 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.subsystems;
+
+import br.com.c8tech.tools.maven.osgi.lib.mojo.incremental.ArtifactTracker;
+
+/**
+ * Emits Java Flight Recorder events for the work done on each artifact, so a
+ * recording of a maven build shows where the subsystem mojos spent their
+ * time.
+ * <p>
+ * The events are only created when the running JVM has the flight recorder
+ * and a recording has enabled them. Otherwise {@link #begin(Kind)} returns a
+ * shared event that does nothing, so the instrumented code only pays for a
+ * field read.
+ *
+ * @author Cristiano Gavião
+ *
+ */
+public final class BuildEvents {
+
+    /**
+     * An event being measured. It is committed when closed.
+     */
+    public interface Event extends AutoCloseable {
+
+        /**
+         * @param pArtifact
+         *                      The artifact coordinates, entry or header name.
+         * @return this event.
+         */
+        Event artifact(String pArtifact);
+
+        /**
+         * @param pBytes
+         *                   The bytes read or written.
+         * @return this event.
+         */
+        Event bytes(long pBytes);
+
+        @Override
+        void close();
+
+        /**
+         * Tells whether the event will be recorded, so the callers only
+         * compute its fields when they are needed.
+         *
+         * @return true when the event is recorded.
+         */
+        boolean isRecording();
+
+        /**
+         * @param pOutcome
+         *                     How the work ended, as a cache hit or miss.
+         * @return this event.
+         */
+        Event outcome(String pOutcome);
+    }
+
+    /**
+     * The kinds of work that are recorded.
+     */
+    public enum Kind {
+        ARCHIVE_ENTRY, CACHE_COPY, HEADER_MERGE, HEADER_PARSE, MANIFEST_READ,
+        TRACKER_RESOLUTION
+    }
+
+    public static final String OUTCOME_CONFLICT = "conflict";
+
+    public static final String OUTCOME_COPIED = "copied";
+
+    public static final String OUTCOME_DEFLATED = "deflated";
+
+    public static final String OUTCOME_HIT = "hit";
+
+    public static final String OUTCOME_LINKED = "linked";
+
+    public static final String OUTCOME_MERGED = "merged";
+
+    public static final String OUTCOME_MISS = "miss";
+
+    public static final String OUTCOME_READ = "read";
+
+    public static final String OUTCOME_REUSED = "reused";
+
+    public static final String OUTCOME_STORED = "stored";
+
+    static final Event DISABLED = new Event() {
+
+        @Override
+        public Event artifact(String pArtifact) {
+            return this;
+        }
+
+        @Override
+        public Event bytes(long pBytes) {
+            return this;
+        }
+
+        @Override
+        public void close() {
+            // nothing was started
+        }
+
+        @Override
+        public boolean isRecording() {
+            return false;
+        }
+
+        @Override
+        public Event outcome(String pOutcome) {
+            return this;
+        }
+    };
+
+    private static final boolean FLIGHT_RECORDER_AVAILABLE = isFlightRecorderAvailable();
+
+    private BuildEvents() {
+    }
+
+    /**
+     * Starts an event.
+     *
+     * @param pKind
+     *                  The kind of work.
+     * @return the event, to be closed when the work ends.
+     */
+    public static Event begin(Kind pKind) {
+        // the flight recorder classes are only loaded when they exist
+        return FLIGHT_RECORDER_AVAILABLE ? FlightEvents.begin(pKind) : DISABLED;
+    }
+
+    /**
+     * @param pArtifactTracker
+     *                             The artifact.
+     * @return the groupId:artifactId:version coordinates of the artifact.
+     */
+    public static String coordinatesOf(ArtifactTracker pArtifactTracker) {
+        return pArtifactTracker.getGroupId() + ":"
+                + pArtifactTracker.getArtifactId() + ":"
+                + pArtifactTracker.getVersion();
+    }
+
+    private static boolean isFlightRecorderAvailable() {
+        try {
+            Class.forName("jdk.jfr.FlightRecorder", false,
+                    BuildEvents.class.getClassLoader());
+            return FlightEvents.isAvailable();
+        } catch (ClassNotFoundException | LinkageError e) { // NOSONAR
+            // older runtimes have no flight recorder api
+            return false;
+        }
+    }
+}
@@ -0,0 +1,254 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.subsystems;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects the wall and CPU time spent on each phase of a mojo execution, and
+ * the time and bytes of each artifact processed, in order to write them as a
+ * JSON report.
+ * <p>
+ * The CPU time is the one of the thread running the mojo, so the work done by
+ * the worker threads of a parallel phase only shows up on its wall time and on
+ * the artifact records. When the timings are disabled nothing is recorded.
+ *
+ * @author Cristiano Gavião
+ *
+ */
+public final class BuildTimings {
+
+    /**
+     * A phase being timed. It is recorded when closed, usually in a finally
+     * block, as it is never referenced inside the timed code.
+     */
+    public final class Phase implements AutoCloseable {
+
+        private final long cpuStart;
+
+        private final String name;
+
+        private final long wallStart;
+
+        private Phase(String pName) {
+            name = pName;
+            wallStart = enabled ? System.nanoTime() : 0;
+            cpuStart = enabled ? currentThreadCpuTime() : 0;
+        }
+
+        @Override
+        public void close() {
+            if (enabled) {
+                recordPhase(name, System.nanoTime() - wallStart,
+                        currentThreadCpuTime() - cpuStart);
+            }
+        }
+    }
+
+    private static final class ArtifactRecord {
+
+        private final long bytes;
+
+        private final String name;
+
+        private final long nanos;
+
+        private final String phase;
+
+        private ArtifactRecord(String pPhase, String pName, long pBytes,
+                long pNanos) {
+            phase = pPhase;
+            name = pName;
+            bytes = pBytes;
+            nanos = pNanos;
+        }
+    }
+
+    public static final String ARCHIVE_FINALIZATION = "archive-finalization";
+
+    public static final String ARTIFACT_CACHING = "artifact-caching";
+
+    public static final String COMPRESSION = "compression";
+
+    public static final String DEPENDENCY_RESOLUTION = "dependency-resolution";
+
+    public static final String DEPLOYMENT_RESOLUTION = "deployment-resolution";
+
+    public static final String HEADER_EXTRACTION = "header-extraction";
+
+    public static final String INPUT_REGISTRATION = "input-registration";
+
+    public static final String MANIFEST_READING = "manifest-reading";
+
+    public static final String MANIFEST_WRITE = "manifest-write";
+
+    public static final String OUTPUT_CACHE = "output-cache";
+
+    public static final String REPOSITORY_INDEXING = "repository-indexing";
+
+    public static final String TRACKER_BUILDING = "tracker-building";
+
+    private static final ThreadMXBean THREADS = ManagementFactory
+            .getThreadMXBean();
+
+    private final List<ArtifactRecord> artifacts = new ArrayList<>();
+
+    private final boolean enabled;
+
+    // wall nanos, cpu nanos and count of each phase
+    private final Map<String, long[]> phases = new LinkedHashMap<>();
+
+    private final long started = System.nanoTime();
+
+    /**
+     * @param pEnabled
+     *                     Whether the timings must be recorded.
+     */
+    public BuildTimings(boolean pEnabled) {
+        enabled = pEnabled;
+    }
+
+    private static void appendString(StringBuilder pBuilder, String pValue) {
+        pBuilder.append('"');
+        for (int i = 0; i < pValue.length(); i++) {
+            char c = pValue.charAt(i);
+            if (c == '"' || c == '\\') {
+                pBuilder.append('\\').append(c);
+            } else if (c < 0x20) {
+                pBuilder.append(String.format("\\u%04x", (int) c));
+            } else {
+                pBuilder.append(c);
+            }
+        }
+        pBuilder.append('"');
+    }
+
+    private static long currentThreadCpuTime() {
+        return THREADS.isCurrentThreadCpuTimeSupported()
+                ? THREADS.getCurrentThreadCpuTime()
+                : 0;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Starts timing a phase. Phases with the same name are summed.
+     *
+     * @param pName
+     *                  The phase name.
+     * @return the phase, to be closed when it ends.
+     */
+    public Phase phase(String pName) {
+        return new Phase(pName);
+    }
+
+    /**
+     * Records the work done on one artifact. It may be called concurrently.
+     *
+     * @param pPhase
+     *                   The phase the work belongs to.
+     * @param pName
+     *                   The artifact or entry name.
+     * @param pBytes
+     *                   The size of the artifact.
+     * @param pNanos
+     *                   The time spent, in nanoseconds.
+     */
+    public void recordArtifact(String pPhase, String pName, long pBytes,
+            long pNanos) {
+        if (enabled) {
+            synchronized (artifacts) {
+                artifacts.add(
+                        new ArtifactRecord(pPhase, pName, pBytes, pNanos));
+            }
+        }
+    }
+
+    private synchronized void recordPhase(String pName, long pWallNanos,
+            long pCpuNanos) {
+        long[] totals = phases.computeIfAbsent(pName, k -> new long[3]);
+        totals[0] += pWallNanos;
+        totals[1] += pCpuNanos;
+        totals[2]++;
+    }
+
+    /**
+     * Writes the report, unless the timings are disabled.
+     *
+     * @param pFile
+     *                     The report file.
+     * @param pProject
+     *                     The project id.
+     * @param pGoal
+     *                     The mojo goal.
+     * @throws IOException
+     *                         when the report could not be written.
+     */
+    public void write(Path pFile, String pProject, String pGoal)
+            throws IOException {
+        if (!enabled) {
+            return;
+        }
+        StringBuilder json = new StringBuilder(1024);
+        json.append("{\n  \"project\" : ");
+        appendString(json, pProject);
+        json.append(",\n  \"goal\" : ");
+        appendString(json, pGoal);
+        json.append(",\n  \"wallNanos\" : ").append(System.nanoTime() - started);
+        json.append(",\n  \"phases\" : [");
+        synchronized (this) {
+            String separator = "\n";
+            for (Map.Entry<String, long[]> phase : phases.entrySet()) {
+                json.append(separator).append("    { \"name\" : ");
+                appendString(json, phase.getKey());
+                json.append(", \"count\" : ").append(phase.getValue()[2])
+                        .append(", \"wallNanos\" : ")
+                        .append(phase.getValue()[0])
+                        .append(", \"cpuNanos\" : ")
+                        .append(phase.getValue()[1]).append(" }");
+                separator = ",\n";
+            }
+        }
+        json.append(" ],\n  \"artifacts\" : [");
+        synchronized (artifacts) {
+            String separator = "\n";
+            for (ArtifactRecord artifact : artifacts) {
+                json.append(separator).append("    { \"phase\" : ");
+                appendString(json, artifact.phase);
+                json.append(", \"name\" : ");
+                appendString(json, artifact.name);
+                json.append(", \"bytes\" : ").append(artifact.bytes)
+                        .append(", \"nanos\" : ").append(artifact.nanos)
+                        .append(" }");
+                separator = ",\n";
+            }
+        }
+        json.append(" ]\n}\n");
+        Files.createDirectories(pFile.getParent());
+        try (Writer writer = Files.newBufferedWriter(pFile,
+                StandardCharsets.UTF_8)) {
+            writer.write(json.toString());
+        }
+    }
+}
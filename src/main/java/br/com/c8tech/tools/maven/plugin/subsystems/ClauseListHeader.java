@@ -0,0 +1,100 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.subsystems;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.aries.subsystem.core.archive.Clause;
+import org.apache.aries.subsystem.core.archive.GenericHeader;
+import org.apache.aries.subsystem.core.archive.Header;
+
+/**
+ * A manifest header whose value is rendered straight from its
+ * {@link ManifestClause}s, so it can be handed to a
+ * {@link org.apache.aries.subsystem.core.archive.SubsystemManifest.Builder}
+ * without joining the clauses into a string that Aries would parse again.
+ * <p>
+ * The Aries clauses are only parsed if {@link #getClauses()} is called, and
+ * the value is only rendered if {@link #getValue()} is called. Neither
+ * happens when the manifest is written by the {@link SubsystemManifestWriter}.
+ *
+ * @author Cristiano Gavião
+ *
+ */
+public final class ClauseListHeader implements Header<Clause> {
+
+    private Collection<Clause> clauses;
+
+    private final List<ManifestClause> manifestClauses;
+
+    private final String name;
+
+    private String value;
+
+    /**
+     * @param pName
+     *                     The header name.
+     * @param pClauses
+     *                     The clauses of the header. It must not be empty.
+     */
+    public ClauseListHeader(String pName, List<ManifestClause> pClauses) {
+        if (pClauses.isEmpty()) {
+            throw new IllegalArgumentException(
+                    "A header must have at least one clause: " + pName);
+        }
+        name = pName;
+        manifestClauses = Collections.unmodifiableList(pClauses);
+    }
+
+    @Override
+    public synchronized Collection<Clause> getClauses() {
+        if (clauses == null) {
+            clauses = new GenericHeader(name, getValue()).getClauses();
+        }
+        return clauses;
+    }
+
+    /**
+     * @return the clauses of the header, in the order they were informed.
+     */
+    public List<ManifestClause> getManifestClauses() {
+        return manifestClauses;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public synchronized String getValue() {
+        if (value == null) {
+            StringBuilder builder = new StringBuilder(
+                    manifestClauses.size() * 32);
+            for (ManifestClause clause : manifestClauses) {
+                if (builder.length() > 0) {
+                    builder.append(", ");
+                }
+                clause.appendTo(builder);
+            }
+            value = builder.toString();
+        }
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return name + ": " + getValue();
+    }
+}
@@ -0,0 +1,220 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.subsystems;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.osgi.framework.Constants;
+import org.osgi.framework.Version;
+import org.osgi.framework.VersionRange;
+
+/**
+ * Merges the clauses collected from the artifacts of a composite subsystem by
+ * their meaning, instead of by their text.
+ * <p>
+ * Requirements (Import-Package, Require-Bundle, Require-Capability and the
+ * imported services) that target the same package, bundle or namespace and
+ * filter are merged into a single clause: the version ranges of the
+ * mandatory ones are intersected and the optional ones are dropped, as the
+ * mandatory requirement is wired anyway and an optional range never narrows
+ * it. Clauses that are all optional are merged into an optional one. When
+ * the ranges do not overlap, no version satisfies all of them, so the merged
+ * clause spans them all and a conflict is reported. Capabilities
+ * (Export-Package, Provide-Capability and the exported services) are only
+ * deduplicated, as the same package may be exported in several versions.
+ *
+ * @author Cristiano Gavião
+ *
+ */
+public final class ClauseMerger {
+
+    private ClauseMerger() {
+    }
+
+    /**
+     * The clause without the parameters being merged, whose equality does not
+     * depend on the order of the parameters.
+     */
+    private static ManifestClause groupKey(ManifestClause pClause,
+            String pVersionAttribute) {
+        ManifestClause key = pClause
+                .withDirective(Constants.RESOLUTION_DIRECTIVE, null);
+        return pVersionAttribute == null ? key
+                : key.withAttribute(pVersionAttribute, null);
+    }
+
+    private static boolean isOptional(ManifestClause pClause) {
+        return Constants.RESOLUTION_OPTIONAL.equals(
+                pClause.getDirective(Constants.RESOLUTION_DIRECTIVE));
+    }
+
+    /**
+     * Deduplicates capability clauses, ignoring the order of their parameters
+     * and the <code>uses</code> directive.
+     *
+     * @param pClauses
+     *                     The collected clauses.
+     * @return the distinct clauses, one per path.
+     */
+    public static List<ManifestClause> mergeCapabilities(
+            Collection<ManifestClause> pClauses) {
+        Set<ManifestClause> distinct = new LinkedHashSet<>();
+        for (ManifestClause clause : pClauses) {
+            for (ManifestClause single : clause.splitPaths()) {
+                distinct.add(
+                        single.withDirective(Constants.USES_DIRECTIVE, null));
+            }
+        }
+        return new ArrayList<>(distinct);
+    }
+
+    private static VersionRange rangeOf(ManifestClause pClause,
+            String pVersionAttribute) {
+        String version = pVersionAttribute == null ? null
+                : pClause.getAttribute(pVersionAttribute);
+        return version == null ? null : new VersionRange(version);
+    }
+
+    /**
+     * The smallest range including all the informed ones.
+     */
+    private static VersionRange span(List<VersionRange> pRanges) {
+        VersionRange first = pRanges.get(0);
+        char leftType = first.getLeftType();
+        Version left = first.getLeft();
+        char rightType = first.getRightType();
+        Version right = first.getRight();
+        for (VersionRange range : pRanges) {
+            int comparison = range.getLeft().compareTo(left);
+            if (comparison < 0 || comparison == 0
+                    && range.getLeftType() == VersionRange.LEFT_CLOSED) {
+                left = range.getLeft();
+                leftType = range.getLeftType();
+            }
+            if (right != null) {
+                comparison = range.getRight() == null ? 1
+                        : range.getRight().compareTo(right);
+                if (comparison > 0 || comparison == 0
+                        && range.getRightType() == VersionRange.RIGHT_CLOSED) {
+                    right = range.getRight();
+                    rightType = range.getRightType();
+                }
+            }
+        }
+        return new VersionRange(leftType, left, right,
+                right == null ? VersionRange.RIGHT_OPEN : rightType);
+    }
+
+    private static List<ManifestClause> mergeGroup(String pHeaderName,
+            List<ManifestClause> pGroup, String pVersionAttribute,
+            List<String> pConflicts) {
+        if (pGroup.size() == 1) {
+            return pGroup;
+        }
+        List<ManifestClause> mandatory = new ArrayList<>();
+        List<ManifestClause> optional = new ArrayList<>();
+        for (ManifestClause clause : pGroup) {
+            (isOptional(clause) ? optional : mandatory).add(clause);
+        }
+        return mandatory.isEmpty()
+                ? intersect(pHeaderName, optional, pVersionAttribute, true,
+                        pConflicts)
+                : intersect(pHeaderName, mandatory, pVersionAttribute, false,
+                        pConflicts);
+    }
+
+    /**
+     * Merges clauses of the same resolution into one, intersecting their
+     * version ranges, or spanning them when they do not overlap.
+     */
+    private static List<ManifestClause> intersect(String pHeaderName,
+            List<ManifestClause> pClauses, String pVersionAttribute,
+            boolean pOptional, List<String> pConflicts) {
+        if (pClauses.size() == 1) {
+            return new ArrayList<>(pClauses);
+        }
+        VersionRange range = null;
+        List<VersionRange> ranges = new ArrayList<>();
+        for (ManifestClause clause : pClauses) {
+            VersionRange clauseRange = rangeOf(clause, pVersionAttribute);
+            if (clauseRange != null) {
+                ranges.add(clauseRange);
+                range = range == null ? clauseRange
+                        : range.intersection(clauseRange);
+            }
+        }
+        if (range != null && range.isEmpty()) {
+            range = span(ranges);
+            pConflicts.add(String.format(
+                    "%s: the version ranges %s required for %s do not overlap, they were widened to %s.",
+                    pHeaderName,
+                    ranges.stream().map(Object::toString)
+                            .collect(Collectors.joining(", ")),
+                    pClauses.get(0).getPath(), range));
+        }
+        ManifestClause merged = pClauses.get(0).withDirective(
+                Constants.RESOLUTION_DIRECTIVE,
+                pOptional ? Constants.RESOLUTION_OPTIONAL : null);
+        if (range != null) {
+            merged = merged.withAttribute(pVersionAttribute,
+                    range.toString());
+        }
+        List<ManifestClause> result = new ArrayList<>(1);
+        result.add(merged);
+        return result;
+    }
+
+    /**
+     * Merges requirement clauses targeting the same package, bundle or
+     * namespace.
+     *
+     * @param pHeaderName
+     *                              The name of the header, used on the
+     *                              conflict messages.
+     * @param pClauses
+     *                              The collected clauses.
+     * @param pVersionAttribute
+     *                              The attribute holding the version range, as
+     *                              <code>version</code> or
+     *                              <code>bundle-version</code>, or
+     *                              <code>null</code> when the clauses have
+     *                              none.
+     * @param pConflicts
+     *                              Where the conflicts found are reported.
+     * @return the merged clauses, one per path.
+     */
+    public static List<ManifestClause> mergeRequirements(String pHeaderName,
+            Collection<ManifestClause> pClauses, String pVersionAttribute,
+            List<String> pConflicts) {
+        Map<ManifestClause, List<ManifestClause>> groups = new LinkedHashMap<>();
+        for (ManifestClause clause : pClauses) {
+            for (ManifestClause single : clause.splitPaths()) {
+                groups.computeIfAbsent(
+                        groupKey(single, pVersionAttribute),
+                        k -> new ArrayList<>()).add(single);
+            }
+        }
+        List<ManifestClause> merged = new ArrayList<>(groups.size());
+        for (List<ManifestClause> group : groups.values()) {
+            merged.addAll(mergeGroup(pHeaderName, group, pVersionAttribute,
+                    pConflicts));
+        }
+        return merged;
+    }
+}
@@ -0,0 +1,354 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.subsystems;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.aries.subsystem.core.archive.Clause;
+import org.apache.aries.subsystem.core.archive.Header;
+import org.osgi.framework.Constants;
+import org.osgi.service.subsystem.SubsystemConstants;
+
+/**
+ * Accumulates the clauses of the headers of the artifacts that are part of a
+ * composite subsystem, in order to compute the sharing policy headers of its
+ * manifest.
+ * <p>
+ * Only the headers that were enabled are computed. The values informed in
+ * the plugin configuration are merged with the computed clauses when the
+ * headers are built, using a {@link ClauseMerger}, so the clauses that target
+ * the same package, bundle or namespace end up as a single clause. The merged
+ * clauses are rendered by a {@link ClauseListHeader}, so they are parsed only
+ * once, when collected.
+ * <p>
+ * The artifact headers may be added concurrently. The collected clauses are
+ * sorted by their paths before being merged, so the built headers do not
+ * depend on the order the artifacts were added.
+ *
+ * @author Cristiano Gavião
+ *
+ */
+public final class CompositeHeadersAggregator {
+
+    private static final Comparator<ManifestClause> CLAUSE_ORDER = Comparator
+            .comparing(ManifestClause::getPath)
+            .thenComparing(ManifestClause::toString);
+
+    private static final Set<String> SKIPPED_CAPABILITY_DIRECTIVES = Collections
+            .singleton(Constants.USES_DIRECTIVE);
+
+    private boolean computeExportPackages;
+
+    private boolean computeExportServices;
+
+    private boolean computeGenericCapabilities;
+
+    private boolean computeGenericRequirements;
+
+    private boolean computeImportPackages;
+
+    private boolean computeImportServices;
+
+    private boolean computeRequireBundle;
+
+    private final List<String> conflicts = new ArrayList<>();
+
+    private final Set<ManifestClause> exportPackageClauses = ConcurrentHashMap
+            .newKeySet();
+
+    private final Set<ManifestClause> exportServiceClauses = ConcurrentHashMap
+            .newKeySet();
+
+    private final Set<ManifestClause> importPackageClauses = ConcurrentHashMap
+            .newKeySet();
+
+    private final Set<ManifestClause> importServiceClauses = ConcurrentHashMap
+            .newKeySet();
+
+    private final Set<ManifestClause> preferredProviderClauses = ConcurrentHashMap
+            .newKeySet();
+
+    private final Set<ManifestClause> provideCapabilityClauses = ConcurrentHashMap
+            .newKeySet();
+
+    private final Set<ManifestClause> requireBundleClauses = ConcurrentHashMap
+            .newKeySet();
+
+    private final Set<ManifestClause> requireCapabilityClauses = ConcurrentHashMap
+            .newKeySet();
+
+    private static void collect(String pHeaderValue,
+            Set<ManifestClause> pClauses) {
+        // the same clause is usually declared by many artifacts
+        pClauses.addAll(ManifestHeaderParser.parse(pHeaderValue));
+    }
+
+    private static void collectCapabilities(String pHeaderValue,
+            Set<ManifestClause> pClauses) {
+        // the uses lists are dropped when merging, so they are never copied
+        pClauses.addAll(ManifestHeaderParser.parse(pHeaderValue,
+                SKIPPED_CAPABILITY_DIRECTIVES));
+    }
+
+    /**
+     * Returns the clauses in a deterministic order, as the order they were
+     * collected depends on how the artifacts were scheduled.
+     */
+    private static List<ManifestClause> sorted(Set<ManifestClause> pClauses) {
+        List<ManifestClause> clauses = new ArrayList<>(pClauses);
+        clauses.sort(CLAUSE_ORDER);
+        return clauses;
+    }
+
+    private static Header<Clause> toHeader(String pHeaderName,
+            List<ManifestClause> pClauses) {
+        return pClauses.isEmpty() ? null
+                : new ClauseListHeader(pHeaderName, pClauses);
+    }
+
+    /**
+     * Adds the clauses of the enabled headers found in an artifact's manifest.
+     * It may be called concurrently for different artifacts.
+     *
+     * @param pManifestHeaders
+     *                             The artifact's manifest headers.
+     */
+    public void addArtifactHeaders(Map<String, String> pManifestHeaders) {
+        if (computeImportPackages) {
+            collect(pManifestHeaders.get(Constants.IMPORT_PACKAGE),
+                    importPackageClauses);
+        }
+        if (computeExportPackages) {
+            collectCapabilities(
+                    pManifestHeaders.get(Constants.EXPORT_PACKAGE),
+                    exportPackageClauses);
+        }
+        if (computeImportServices) {
+            collect(pManifestHeaders
+                    .get(SubsystemConstants.SUBSYSTEM_IMPORTSERVICE),
+                    importServiceClauses);
+        }
+        if (computeExportServices) {
+            collectCapabilities(pManifestHeaders
+                    .get(SubsystemConstants.SUBSYSTEM_EXPORTSERVICE),
+                    exportServiceClauses);
+        }
+        if (computeGenericRequirements) {
+            collect(pManifestHeaders.get(Constants.REQUIRE_CAPABILITY),
+                    requireCapabilityClauses);
+        }
+        if (computeGenericCapabilities) {
+            collectCapabilities(
+                    pManifestHeaders.get(Constants.PROVIDE_CAPABILITY),
+                    provideCapabilityClauses);
+        }
+        if (computeRequireBundle) {
+            collect(pManifestHeaders.get(Constants.REQUIRE_BUNDLE),
+                    requireBundleClauses);
+        }
+    }
+
+    private Header<Clause> mergeCapabilities(String pHeaderName,
+            String pConfigured, Set<ManifestClause> pClauses) {
+        try (BuildEvents.Event event = BuildEvents
+                .begin(BuildEvents.Kind.HEADER_MERGE).artifact(pHeaderName)) {
+            collectCapabilities(pConfigured, pClauses);
+            List<ManifestClause> merged = ClauseMerger
+                    .mergeCapabilities(sorted(pClauses));
+            event.outcome(BuildEvents.OUTCOME_MERGED);
+            return toHeader(pHeaderName, merged);
+        }
+    }
+
+    private Header<Clause> mergeRequirements(String pHeaderName,
+            String pConfigured, Set<ManifestClause> pClauses,
+            String pVersionAttribute) {
+        try (BuildEvents.Event event = BuildEvents
+                .begin(BuildEvents.Kind.HEADER_MERGE).artifact(pHeaderName)) {
+            collect(pConfigured, pClauses);
+            int conflictCount = conflicts.size();
+            List<ManifestClause> merged = ClauseMerger.mergeRequirements(
+                    pHeaderName, sorted(pClauses), pVersionAttribute,
+                    conflicts);
+            event.outcome(conflicts.size() > conflictCount
+                    ? BuildEvents.OUTCOME_CONFLICT
+                    : BuildEvents.OUTCOME_MERGED);
+            return toHeader(pHeaderName, merged);
+        }
+    }
+
+    /**
+     * @param pConfigured
+     *                        The value informed in the plugin configuration.
+     * @return the header, or <code>null</code> when it has no clauses.
+     */
+    public Header<Clause> buildExportPackageHeader(String pConfigured) {
+        return mergeCapabilities(Constants.EXPORT_PACKAGE, pConfigured,
+                exportPackageClauses);
+    }
+
+    /**
+     * @param pConfigured
+     *                        The value informed in the plugin configuration.
+     * @return the header, or <code>null</code> when it has no clauses.
+     */
+    public Header<Clause> buildExportServiceHeader(String pConfigured) {
+        return mergeCapabilities(SubsystemConstants.SUBSYSTEM_EXPORTSERVICE,
+                pConfigured, exportServiceClauses);
+    }
+
+    /**
+     * @param pConfigured
+     *                        The value informed in the plugin configuration.
+     * @return the header, or <code>null</code> when it has no clauses.
+     */
+    public Header<Clause> buildImportPackageHeader(String pConfigured) {
+        return mergeRequirements(Constants.IMPORT_PACKAGE, pConfigured,
+                importPackageClauses, Constants.VERSION_ATTRIBUTE);
+    }
+
+    /**
+     * @param pConfigured
+     *                        The value informed in the plugin configuration.
+     * @return the header, or <code>null</code> when it has no clauses.
+     */
+    public Header<Clause> buildImportServiceHeader(String pConfigured) {
+        return mergeRequirements(SubsystemConstants.SUBSYSTEM_IMPORTSERVICE,
+                pConfigured, importServiceClauses, null);
+    }
+
+    /**
+     * @param pConfigured
+     *                        The value informed in the plugin configuration.
+     * @return the header, or <code>null</code> when it has no clauses.
+     */
+    public Header<Clause> buildPreferredProviderHeader(String pConfigured) {
+        return mergeCapabilities(SubsystemConstants.PREFERRED_PROVIDER,
+                pConfigured, preferredProviderClauses);
+    }
+
+    /**
+     * @param pConfigured
+     *                        The value informed in the plugin configuration.
+     * @return the header, or <code>null</code> when it has no clauses.
+     */
+    public Header<Clause> buildProvideCapabilityHeader(String pConfigured) {
+        return mergeCapabilities(Constants.PROVIDE_CAPABILITY, pConfigured,
+                provideCapabilityClauses);
+    }
+
+    /**
+     * @param pConfigured
+     *                        The value informed in the plugin configuration.
+     * @return the header, or <code>null</code> when it has no clauses.
+     */
+    public Header<Clause> buildRequireBundleHeader(String pConfigured) {
+        return mergeRequirements(Constants.REQUIRE_BUNDLE, pConfigured,
+                requireBundleClauses, Constants.BUNDLE_VERSION_ATTRIBUTE);
+    }
+
+    /**
+     * @param pConfigured
+     *                        The value informed in the plugin configuration.
+     * @return the header, or <code>null</code> when it has no clauses.
+     */
+    public Header<Clause> buildRequireCapabilityHeader(String pConfigured) {
+        return mergeRequirements(Constants.REQUIRE_CAPABILITY, pConfigured,
+                requireCapabilityClauses, null);
+    }
+
+    /**
+     * Returns the conflicts found while the requirements were merged, as
+     * version ranges of the same package that do not overlap.
+     *
+     * @return the description of each conflict.
+     */
+    public List<String> getConflicts() {
+        return Collections.unmodifiableList(conflicts);
+    }
+
+    /**
+     * Returns the names of the artifact headers read by
+     * {@link #addArtifactHeaders(Map)}, which are the ones of the enabled
+     * headers.
+     *
+     * @return the header names.
+     */
+    public List<String> getConsumedHeaderNames() {
+        List<String> names = new ArrayList<>();
+        if (computeImportPackages) {
+            names.add(Constants.IMPORT_PACKAGE);
+        }
+        if (computeExportPackages) {
+            names.add(Constants.EXPORT_PACKAGE);
+        }
+        if (computeImportServices) {
+            names.add(SubsystemConstants.SUBSYSTEM_IMPORTSERVICE);
+        }
+        if (computeExportServices) {
+            names.add(SubsystemConstants.SUBSYSTEM_EXPORTSERVICE);
+        }
+        if (computeGenericRequirements) {
+            names.add(Constants.REQUIRE_CAPABILITY);
+        }
+        if (computeGenericCapabilities) {
+            names.add(Constants.PROVIDE_CAPABILITY);
+        }
+        if (computeRequireBundle) {
+            names.add(Constants.REQUIRE_BUNDLE);
+        }
+        return names;
+    }
+
+    public CompositeHeadersAggregator withExportPackages(boolean pCompute) {
+        computeExportPackages = pCompute;
+        return this;
+    }
+
+    public CompositeHeadersAggregator withExportServices(boolean pCompute) {
+        computeExportServices = pCompute;
+        return this;
+    }
+
+    public CompositeHeadersAggregator withGenericCapabilities(
+            boolean pCompute) {
+        computeGenericCapabilities = pCompute;
+        return this;
+    }
+
+    public CompositeHeadersAggregator withGenericRequirements(
+            boolean pCompute) {
+        computeGenericRequirements = pCompute;
+        return this;
+    }
+
+    public CompositeHeadersAggregator withImportPackages(boolean pCompute) {
+        computeImportPackages = pCompute;
+        return this;
+    }
+
+    public CompositeHeadersAggregator withImportServices(boolean pCompute) {
+        computeImportServices = pCompute;
+        return this;
+    }
+
+    public CompositeHeadersAggregator withRequireBundle(boolean pCompute) {
+        computeRequireBundle = pCompute;
+        return this;
+    }
+}
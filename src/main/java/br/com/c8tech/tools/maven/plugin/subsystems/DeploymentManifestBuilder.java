@@ -0,0 +1,625 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.subsystems;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.aries.subsystem.core.archive.GenericHeader;
+import org.apache.aries.subsystem.core.archive.Header;
+import org.osgi.framework.Constants;
+import org.osgi.framework.Filter;
+import org.osgi.framework.FrameworkUtil;
+import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.framework.Version;
+import org.osgi.framework.VersionRange;
+import org.osgi.service.subsystem.SubsystemConstants;
+
+import br.com.c8tech.tools.maven.osgi.lib.mojo.CommonMojoConstants;
+
+/**
+ * Computes the deployment manifest of a subsystem, the
+ * <code>OSGI-INF/DEPLOYMENT.MF</code> that lets the runtime install it
+ * without running its resolver.
+ * <p>
+ * The resolution runs at build time over the manifests of the resolved
+ * artifacts only. Each Subsystem-Content clause is deployed as the highest
+ * version of the matching artifact. Then the Import-Package, Require-Bundle,
+ * Fragment-Host and Require-Capability requirements of the deployed bundles
+ * are followed: the ones not satisfied by the deployed bundles are provided
+ * by the highest version of a matching artifact, which becomes a
+ * Provision-Resource, and the ones no artifact satisfies are left for the
+ * runtime, as the packages of the framework. A generic requirement is
+ * satisfied by a Provide-Capability clause of its namespace matching its
+ * filter, while the execution environment and native code ones are always
+ * left for the framework. When the filter of a mandatory requirement can not
+ * be evaluated, no deployment is computed at all.
+ * <p>
+ * The Provision-Resource is only allowed by the
+ * <code>acceptDependencies</code> provision policy of the Subsystem-Type
+ * header. Under <code>rejectDependencies</code>, its default, a deployment
+ * requiring any dependency would not be installed by the runtime, so none is
+ * computed either.
+ * <p>
+ * For an application subsystem, the requirements of its content that its
+ * content does not satisfy are also declared as the Import-Package,
+ * Require-Bundle and Require-Capability headers, as the runtime would do.
+ *
+ * @author Cristiano Gavião
+ *
+ */
+public final class DeploymentManifestBuilder {
+
+    /**
+     * A resolved artifact, as a bundle, a fragment or a subsystem.
+     */
+    private static final class Resource {
+
+        private final List<ManifestClause> capabilities;
+
+        private final List<ManifestClause> exports;
+
+        private final Map<String, String> headers;
+
+        private final String symbolicName;
+
+        private final String type;
+
+        private final Version version;
+
+        private Resource(String pSymbolicName, Version pVersion, String pType,
+                Map<String, String> pHeaders) {
+            symbolicName = pSymbolicName;
+            version = pVersion;
+            type = pType;
+            headers = pHeaders;
+            exports = splitPaths(
+                    pHeaders.get(Constants.EXPORT_PACKAGE));
+            capabilities = splitPaths(
+                    pHeaders.get(Constants.PROVIDE_CAPABILITY));
+        }
+
+        private boolean isBundle() {
+            return CommonMojoConstants.OSGI_BUNDLES_TYPE.equals(type)
+                    || CommonMojoConstants.OSGI_FRAGMENT_TYPE.equals(type);
+        }
+
+        private ManifestClause toClause() {
+            Map<String, String> attributes = new LinkedHashMap<>();
+            attributes.put(DEPLOYED_VERSION_ATTRIBUTE, version.toString());
+            attributes.put(TYPE_ATTRIBUTE, type);
+            return new ManifestClause(Collections.singletonList(symbolicName),
+                    attributes, Collections.<String, String>emptyMap());
+        }
+    }
+
+    public static final String DEPLOYED_CONTENT = "Deployed-Content";
+
+    public static final String DEPLOYED_VERSION_ATTRIBUTE = "deployed-version";
+
+    public static final String DEPLOYMENT_MANIFEST_NAME = "DEPLOYMENT.MF";
+
+    public static final String PROVISION_RESOURCE = "Provision-Resource";
+
+    private static final Comparator<ManifestClause> CLAUSE_ORDER = Comparator
+            .comparing(ManifestClause::getPath)
+            .thenComparing(ManifestClause::toString);
+
+    // the highest version first, then by name, so the choices are stable
+    private static final Comparator<Resource> PREFERENCE_ORDER = Comparator
+            .comparing((Resource r) -> r.version).reversed()
+            .thenComparing(r -> r.symbolicName).thenComparing(r -> r.type);
+
+    private static final String TYPE_ATTRIBUTE = "type";
+
+    private static final Set<String> FRAMEWORK_NAMESPACES = new HashSet<>(
+            Arrays.asList("osgi.ee", "osgi.native"));
+
+    private final List<String> conflicts = new ArrayList<>();
+
+    private final List<String> rejectedDependencies = new ArrayList<>();
+
+    private final List<Resource> resources = new ArrayList<>();
+
+    private final Map<String, String> subsystemHeaders;
+
+    private final List<String> unresolvedContent = new ArrayList<>();
+
+    private final Set<String> unresolvedRequirements = new LinkedHashSet<>();
+
+    private final Set<String> unevaluatedRequirements = new LinkedHashSet<>();
+
+    /**
+     * @param pSubsystemHeaders
+     *                              The headers of the subsystem manifest.
+     */
+    public DeploymentManifestBuilder(Map<String, String> pSubsystemHeaders) {
+        subsystemHeaders = pSubsystemHeaders;
+    }
+
+    private static boolean includes(VersionRange pRange,
+            ManifestClause pExport) {
+        try {
+            return pRange.includes(versionOf(pExport));
+        } catch (IllegalArgumentException e) { // NOSONAR
+            return false;
+        }
+    }
+
+    /**
+     * Whether the requirement is one the framework itself provides, as the
+     * execution environment, so it is never provisioned.
+     */
+    private static boolean isProvidedByFramework(ManifestClause pRequirement) {
+        return FRAMEWORK_NAMESPACES.contains(pRequirement.getPath());
+    }
+
+    /**
+     * Whether the requirement is effective at resolve time, the only one a
+     * resolver considers.
+     */
+    private static boolean isEffective(ManifestClause pRequirement) {
+        String effective = pRequirement
+                .getDirective(Constants.EFFECTIVE_DIRECTIVE);
+        return effective == null
+                || Constants.EFFECTIVE_RESOLVE.equals(effective.trim());
+    }
+
+    private static Object toAttributeValue(String pType, String pValue) {
+        switch (pType) {
+        case "Version":
+            return Version.parseVersion(pValue.trim());
+        case "Long":
+            return Long.valueOf(pValue.trim());
+        case "Double":
+            return Double.valueOf(pValue.trim());
+        default:
+            return pValue;
+        }
+    }
+
+    /**
+     * Converts the attributes of a Provide-Capability clause to the types
+     * declared as <code>name:Type</code>, so the filters compare them as the
+     * framework would.
+     */
+    private static Map<String, Object> typedAttributesOf(
+            ManifestClause pCapability) {
+        Map<String, Object> attributes = new HashMap<>();
+        for (Map.Entry<String, String> attribute : pCapability.getAttributes()
+                .entrySet()) {
+            String name = attribute.getKey();
+            String type = "String";
+            int colon = name.indexOf(':');
+            if (colon > 0) {
+                type = name.substring(colon + 1).trim();
+                name = name.substring(0, colon).trim();
+            }
+            if (type.startsWith("List<") && type.endsWith(">")) {
+                String elementType = type.substring(5, type.length() - 1)
+                        .trim();
+                List<Object> values = new ArrayList<>();
+                for (String value : attribute.getValue().split(",")) {
+                    values.add(toAttributeValue(elementType, value.trim()));
+                }
+                attributes.put(name, values);
+            } else {
+                attributes.put(name,
+                        toAttributeValue(type, attribute.getValue()));
+            }
+        }
+        return attributes;
+    }
+
+    private static boolean isOptional(ManifestClause pClause) {
+        return Constants.RESOLUTION_OPTIONAL.equals(
+                pClause.getDirective(Constants.RESOLUTION_DIRECTIVE));
+    }
+
+    private static String pathOf(String pHeaderValue) {
+        return pHeaderValue == null ? null
+                : pHeaderValue.split(";")[0].trim();
+    }
+
+    private static VersionRange rangeOf(ManifestClause pClause,
+            String pAttribute) {
+        String range = pClause.getAttribute(pAttribute);
+        return new VersionRange(range == null ? "0.0.0" : range.trim());
+    }
+
+    private static List<ManifestClause> splitPaths(String pHeaderValue) {
+        List<ManifestClause> clauses = new ArrayList<>();
+        for (ManifestClause clause : ManifestHeaderParser
+                .parse(pHeaderValue)) {
+            clauses.addAll(clause.splitPaths());
+        }
+        return clauses;
+    }
+
+    private static Version versionOf(ManifestClause pClause) {
+        String version = pClause.getAttribute(Constants.VERSION_ATTRIBUTE);
+        if (version == null) {
+            version = pClause.getAttribute("specification-version");
+        }
+        return Version.parseVersion(version == null ? null : version.trim());
+    }
+
+    private static List<ManifestClause> toClauses(List<Resource> pResources) {
+        List<ManifestClause> clauses = new ArrayList<>(pResources.size());
+        for (Resource resource : pResources) {
+            clauses.add(resource.toClause());
+        }
+        return clauses;
+    }
+
+    private static ClauseListHeader toHeader(String pName,
+            List<ManifestClause> pClauses) {
+        return pClauses.isEmpty() ? null
+                : new ClauseListHeader(pName, pClauses);
+    }
+
+    /**
+     * Adds an artifact that may be deployed or provisioned. Artifacts with no
+     * symbolic name or with an invalid version are ignored.
+     *
+     * @param pManifestHeaders
+     *                             The artifact's manifest headers.
+     */
+    public void addResource(Map<String, String> pManifestHeaders) {
+        if (pManifestHeaders == null) {
+            return;
+        }
+        String symbolicName;
+        String version;
+        String type;
+        if (pManifestHeaders
+                .get(CommonMojoConstants.OSGI_BUNDLE_HEADER_SN) != null) {
+            symbolicName = pManifestHeaders
+                    .get(CommonMojoConstants.OSGI_BUNDLE_HEADER_SN);
+            version = pManifestHeaders
+                    .get(CommonMojoConstants.OSGI_BUNDLE_HEADER_VERSION);
+            type = pManifestHeaders.get(
+                    CommonMojoConstants.OSGI_BUNDLE_HEADER_FRAGMENT_HOST) == null
+                            ? CommonMojoConstants.OSGI_BUNDLES_TYPE
+                            : CommonMojoConstants.OSGI_FRAGMENT_TYPE;
+        } else if (pManifestHeaders
+                .get(CommonMojoConstants.OSGI_SUBSYSTEM_SN) != null) {
+            symbolicName = pManifestHeaders
+                    .get(CommonMojoConstants.OSGI_SUBSYSTEM_SN);
+            version = pManifestHeaders
+                    .get(CommonMojoConstants.OSGI_SUBSYSTEM_VERSION);
+            type = pathOf(pManifestHeaders
+                    .get(CommonMojoConstants.OSGI_SUBSYSTEM_TYPE));
+            if (type == null) {
+                type = SubsystemConstants.SUBSYSTEM_TYPE_APPLICATION;
+            }
+        } else {
+            return;
+        }
+        try {
+            resources.add(new Resource(pathOf(symbolicName),
+                    Version.parseVersion(
+                            version == null ? null : version.trim()),
+                    type, pManifestHeaders));
+        } catch (IllegalArgumentException e) { // NOSONAR
+            // not a valid OSGi artifact, so it is not deployable
+        }
+    }
+
+    /**
+     * Resolves the deployment.
+     *
+     * @return the headers of the deployment manifest, or <code>null</code>
+     *         when a mandatory content could not be found among the
+     *         artifacts, a filter could not be evaluated or a dependency is
+     *         rejected by the provision policy, so the deployment must be
+     *         computed by the runtime.
+     */
+    public List<Header<?>> build() {
+        resources.sort(PREFERENCE_ORDER);
+        List<Resource> deployed = new ArrayList<>();
+        for (ManifestClause clause : splitPaths(
+                subsystemHeaders.get(SubsystemConstants.SUBSYSTEM_CONTENT))) {
+            Resource resource = findContent(clause);
+            if (resource != null) {
+                if (!deployed.contains(resource)) {
+                    deployed.add(resource);
+                }
+            } else if (!isOptional(clause)) {
+                unresolvedContent.add(clause.toString());
+            }
+        }
+        if (!unresolvedContent.isEmpty()) {
+            return null;
+        }
+        List<Resource> provisioned = resolveDependencies(deployed);
+        if (!unevaluatedRequirements.isEmpty()) {
+            return null;
+        }
+        if (!provisioned.isEmpty() && !isAcceptingDependencies()) {
+            for (ManifestClause clause : toClauses(provisioned)) {
+                rejectedDependencies.add(clause.toString());
+            }
+            return null;
+        }
+
+        List<Header<?>> headers = new ArrayList<>();
+        headers.add(new GenericHeader(SubsystemConstants.SUBSYSTEM_SYMBOLICNAME,
+                pathOf(subsystemHeaders
+                        .get(SubsystemConstants.SUBSYSTEM_SYMBOLICNAME))));
+        String version = subsystemHeaders
+                .get(SubsystemConstants.SUBSYSTEM_VERSION);
+        headers.add(new GenericHeader(SubsystemConstants.SUBSYSTEM_VERSION,
+                Version.parseVersion(version == null ? null : version.trim())
+                        .toString()));
+        headers.add(toHeader(DEPLOYED_CONTENT, toClauses(deployed)));
+        headers.add(toHeader(PROVISION_RESOURCE, toClauses(provisioned)));
+        if (SubsystemConstants.SUBSYSTEM_TYPE_APPLICATION.equals(pathOf(
+                subsystemHeaders.get(SubsystemConstants.SUBSYSTEM_TYPE)))) {
+            addApplicationImports(headers, deployed);
+        }
+        headers.removeIf(h -> h == null);
+        return headers;
+    }
+
+    private boolean isAcceptingDependencies() {
+        for (ManifestClause clause : ManifestHeaderParser.parse(
+                subsystemHeaders.get(SubsystemConstants.SUBSYSTEM_TYPE))) {
+            String policy = clause.getDirective(
+                    SubsystemConstants.PROVISION_POLICY_DIRECTIVE);
+            return policy != null
+                    && SubsystemConstants.PROVISION_POLICY_ACCEPT_DEPENDENCIES
+                            .equals(policy.trim());
+        }
+        return false;
+    }
+
+    private void addApplicationImports(List<Header<?>> pHeaders,
+            List<Resource> pDeployed) {
+        List<ManifestClause> importPackages = new ArrayList<>();
+        List<ManifestClause> requireBundles = new ArrayList<>();
+        List<ManifestClause> requireCapabilities = new ArrayList<>();
+        for (Resource resource : pDeployed) {
+            if (!resource.isBundle()) {
+                continue;
+            }
+            for (ManifestClause clause : splitPaths(
+                    resource.headers.get(Constants.IMPORT_PACKAGE))) {
+                if (!clause.getPath().startsWith("java.")
+                        && findExporter(clause, pDeployed) == null) {
+                    importPackages.add(clause);
+                }
+            }
+            for (ManifestClause clause : splitPaths(
+                    resource.headers.get(Constants.REQUIRE_BUNDLE))) {
+                if (findBundle(clause, Constants.BUNDLE_VERSION_ATTRIBUTE,
+                        pDeployed) == null) {
+                    requireBundles.add(clause);
+                }
+            }
+            for (ManifestClause clause : splitPaths(
+                    resource.headers.get(Constants.REQUIRE_CAPABILITY))) {
+                if (!isEffective(clause)
+                        || findCapabilityProvider(clause, pDeployed) == null) {
+                    requireCapabilities.add(clause);
+                }
+            }
+        }
+        pHeaders.add(toHeader(Constants.IMPORT_PACKAGE,
+                merge(Constants.IMPORT_PACKAGE, importPackages,
+                        Constants.VERSION_ATTRIBUTE)));
+        pHeaders.add(toHeader(Constants.REQUIRE_BUNDLE,
+                merge(Constants.REQUIRE_BUNDLE, requireBundles,
+                        Constants.BUNDLE_VERSION_ATTRIBUTE)));
+        pHeaders.add(toHeader(Constants.REQUIRE_CAPABILITY,
+                merge(Constants.REQUIRE_CAPABILITY, requireCapabilities,
+                        null)));
+    }
+
+    private Resource findBundle(ManifestClause pRequirement,
+            String pVersionAttribute, List<Resource> pCandidates) {
+        VersionRange range = rangeOf(pRequirement, pVersionAttribute);
+        for (Resource resource : pCandidates) {
+            if (CommonMojoConstants.OSGI_BUNDLES_TYPE.equals(resource.type)
+                    && resource.symbolicName.equals(pRequirement.getPath())
+                    && range.includes(resource.version)) {
+                return resource;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds a resource providing a capability of the requirement's namespace
+     * that matches its filter. An invalid filter is recorded as not
+     * evaluated and matches nothing.
+     */
+    private Resource findCapabilityProvider(ManifestClause pRequirement,
+            List<Resource> pCandidates) {
+        String filterValue = pRequirement
+                .getDirective(Constants.FILTER_DIRECTIVE);
+        Filter filter = null;
+        if (filterValue != null) {
+            try {
+                filter = FrameworkUtil.createFilter(filterValue.trim());
+            } catch (InvalidSyntaxException e) { // NOSONAR
+                if (!isOptional(pRequirement)) {
+                    unevaluatedRequirements.add(pRequirement.toString());
+                }
+                return null;
+            }
+        }
+        for (Resource resource : pCandidates) {
+            for (ManifestClause capability : resource.capabilities) {
+                try {
+                    if (capability.getPath().equals(pRequirement.getPath())
+                            && (filter == null || filter
+                                    .matches(typedAttributesOf(capability)))) {
+                        return resource;
+                    }
+                } catch (IllegalArgumentException e) { // NOSONAR
+                    // a capability with an invalid typed value matches nothing
+                }
+            }
+        }
+        return null;
+    }
+
+    private Resource findContent(ManifestClause pClause) {
+        VersionRange range = rangeOf(pClause, Constants.VERSION_ATTRIBUTE);
+        String type = pClause.getAttribute(TYPE_ATTRIBUTE);
+        for (Resource resource : resources) {
+            if (resource.symbolicName.equals(pClause.getPath())
+                    && range.includes(resource.version)
+                    && (type == null ? resource.isBundle()
+                            : type.equals(resource.type))) {
+                return resource;
+            }
+        }
+        return null;
+    }
+
+    private Resource findExporter(ManifestClause pImport,
+            List<Resource> pCandidates) {
+        VersionRange range = rangeOf(pImport, Constants.VERSION_ATTRIBUTE);
+        for (Resource resource : pCandidates) {
+            for (ManifestClause export : resource.exports) {
+                if (export.getPath().equals(pImport.getPath())
+                        && includes(range, export)) {
+                    return resource;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the conflicts found while the application's requirements were
+     * merged, as version ranges of the same package that do not overlap.
+     *
+     * @return the description of each conflict.
+     */
+    public List<String> getConflicts() {
+        return Collections.unmodifiableList(conflicts);
+    }
+
+    /**
+     * @return the dependencies the deployment would provision, which the
+     *         <code>rejectDependencies</code> provision policy does not
+     *         allow.
+     */
+    public List<String> getRejectedDependencies() {
+        return Collections.unmodifiableList(rejectedDependencies);
+    }
+
+    /**
+     * @return the mandatory Subsystem-Content clauses that no artifact
+     *         matched.
+     */
+    public List<String> getUnresolvedContent() {
+        return Collections.unmodifiableList(unresolvedContent);
+    }
+
+    /**
+     * @return the mandatory requirements whose filter could not be evaluated,
+     *         which leave the deployment to the runtime.
+     */
+    public List<String> getUnevaluatedRequirements() {
+        return new ArrayList<>(unevaluatedRequirements);
+    }
+
+    /**
+     * @return the requirements of the deployed and provisioned bundles that
+     *         no artifact satisfied, which are left for the runtime.
+     */
+    public List<String> getUnresolvedRequirements() {
+        return new ArrayList<>(unresolvedRequirements);
+    }
+
+    private List<ManifestClause> merge(String pHeaderName,
+            List<ManifestClause> pClauses, String pVersionAttribute) {
+        pClauses.sort(CLAUSE_ORDER);
+        return ClauseMerger.mergeRequirements(pHeaderName, pClauses,
+                pVersionAttribute, conflicts);
+    }
+
+    private List<Resource> resolveDependencies(List<Resource> pDeployed) {
+        List<Resource> selected = new ArrayList<>(pDeployed);
+        List<Resource> provisioned = new ArrayList<>();
+        Deque<Resource> pending = new ArrayDeque<>(pDeployed);
+        while (!pending.isEmpty()) {
+            Resource resource = pending.removeFirst();
+            if (!resource.isBundle()) {
+                // a subsystem has its own deployment
+                continue;
+            }
+            Map<ManifestClause, Resource> providers = new HashMap<>();
+            for (ManifestClause clause : splitPaths(
+                    resource.headers.get(Constants.IMPORT_PACKAGE))) {
+                if (!isOptional(clause)
+                        && !clause.getPath().startsWith("java.")
+                        && findExporter(clause, selected) == null) {
+                    providers.put(clause, findExporter(clause, resources));
+                }
+            }
+            List<ManifestClause> requiredBundles = splitPaths(
+                    resource.headers.get(Constants.REQUIRE_BUNDLE));
+            requiredBundles.addAll(splitPaths(resource.headers
+                    .get(Constants.FRAGMENT_HOST)));
+            for (ManifestClause clause : requiredBundles) {
+                if (!isOptional(clause)
+                        && !Constants.SYSTEM_BUNDLE_SYMBOLICNAME
+                                .equals(clause.getPath())
+                        && findBundle(clause,
+                                Constants.BUNDLE_VERSION_ATTRIBUTE,
+                                selected) == null) {
+                    providers.put(clause, findBundle(clause,
+                            Constants.BUNDLE_VERSION_ATTRIBUTE, resources));
+                }
+            }
+            for (ManifestClause clause : splitPaths(
+                    resource.headers.get(Constants.REQUIRE_CAPABILITY))) {
+                if (!isOptional(clause) && isEffective(clause)
+                        && !isProvidedByFramework(clause)
+                        && findCapabilityProvider(clause, selected) == null) {
+                    providers.put(clause,
+                            findCapabilityProvider(clause, resources));
+                }
+            }
+            List<ManifestClause> requirements = new ArrayList<>(
+                    providers.keySet());
+            requirements.sort(CLAUSE_ORDER);
+            for (ManifestClause requirement : requirements) {
+                Resource provider = providers.get(requirement);
+                if (provider == null) {
+                    unresolvedRequirements.add(requirement.toString());
+                } else if (!selected.contains(provider)) {
+                    selected.add(provider);
+                    provisioned.add(provider);
+                    pending.addLast(provider);
+                }
+            }
+        }
+        return provisioned;
+    }
+}
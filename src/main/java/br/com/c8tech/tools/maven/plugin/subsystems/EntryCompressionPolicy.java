@@ -0,0 +1,107 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.subsystems;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+
+/**
+ * Decides which compression method is used for each archive entry.
+ * <p>
+ * Entries whose names match any of the configured glob patterns are stored
+ * without compression, the remaining ones are deflated. A pattern without a
+ * <code>/</code> is matched against the entry's file name only, as for
+ * example <code>*.jar</code>, otherwise against the entry's full name, where
+ * <code>**</code> matches across directories.
+ *
+ * @author Cristiano Gavião
+ *
+ */
+public final class EntryCompressionPolicy {
+
+    private final List<Pattern> fullNamePatterns = new ArrayList<>();
+
+    private final List<Pattern> fileNamePatterns = new ArrayList<>();
+
+    /**
+     * @param pStoredPatterns
+     *                            The glob patterns of the entries that must be
+     *                            stored uncompressed.
+     */
+    public EntryCompressionPolicy(Collection<String> pStoredPatterns) {
+        for (String glob : pStoredPatterns) {
+            String trimmed = glob.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            if (trimmed.indexOf('/') < 0) {
+                fileNamePatterns.add(toRegex(trimmed));
+            } else {
+                fullNamePatterns.add(toRegex(trimmed));
+            }
+        }
+    }
+
+    private static Pattern toRegex(String pGlob) {
+        StringBuilder regex = new StringBuilder();
+        for (int i = 0; i < pGlob.length(); i++) {
+            char c = pGlob.charAt(i);
+            if (c == '*') {
+                if (i + 1 < pGlob.length() && pGlob.charAt(i + 1) == '*') {
+                    regex.append(".*");
+                    i++;
+                } else {
+                    regex.append("[^/]*");
+                }
+            } else if (c == '?') {
+                regex.append("[^/]");
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    /**
+     * Indicates whether any pattern was configured.
+     *
+     * @return <code>true</code> when no entry will be stored.
+     */
+    public boolean isEmpty() {
+        return fileNamePatterns.isEmpty() && fullNamePatterns.isEmpty();
+    }
+
+    /**
+     * Returns the compression method for the entry.
+     *
+     * @param pEntryName
+     *                       The name of the entry inside the archive.
+     * @return either {@link ZipEntry#STORED} or {@link ZipEntry#DEFLATED}.
+     */
+    public int methodFor(String pEntryName) {
+        String fileName = pEntryName.substring(pEntryName.lastIndexOf('/') + 1);
+        for (Pattern pattern : fileNamePatterns) {
+            if (pattern.matcher(fileName).matches()) {
+                return ZipEntry.STORED;
+            }
+        }
+        for (Pattern pattern : fullNamePatterns) {
+            if (pattern.matcher(pEntryName).matches()) {
+                return ZipEntry.STORED;
+            }
+        }
+        return ZipEntry.DEFLATED;
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.subsystems;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Helper methods used to compute the content digest of files.
+ *
+ * @author Cristiano Gavião
+ *
+ */
+public final class FileDigests {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private FileDigests() {
+    }
+
+    /**
+     * Creates a new SHA-256 message digest.
+     *
+     * @return a new message digest.
+     */
+    public static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Computes the SHA-256 digest of a file's content.
+     *
+     * @param pFile
+     *                  The file to digest.
+     * @return the digest bytes.
+     * @throws IOException
+     *                         when the file could not be read.
+     */
+    public static byte[] sha256(Path pFile) throws IOException {
+        MessageDigest digest = newSha256();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream in = Files.newInputStream(pFile)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return digest.digest();
+    }
+
+    /**
+     * Computes the SHA-256 digest of a file's content.
+     *
+     * @param pFile
+     *                  The file to digest.
+     * @return the digest as a lower case hexadecimal string.
+     * @throws IOException
+     *                         when the file could not be read.
+     */
+    public static String sha256Hex(Path pFile) throws IOException {
+        return toHex(sha256(pFile));
+    }
+
+    /**
+     * Converts the digest bytes to a lower case hexadecimal string.
+     *
+     * @param pBytes
+     *                   The bytes to convert.
+     * @return the hexadecimal representation.
+     */
+    public static String toHex(byte[] pBytes) {
+        char[] chars = new char[pBytes.length * 2];
+        for (int i = 0; i < pBytes.length; i++) {
+            chars[i * 2] = HEX[(pBytes[i] >> 4) & 0x0F];
+            chars[i * 2 + 1] = HEX[pBytes[i] & 0x0F];
+        }
+        return new String(chars);
+    }
+}
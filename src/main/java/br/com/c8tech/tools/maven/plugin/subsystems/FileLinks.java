@@ -0,0 +1,313 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.subsystems;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Helper methods used to replace a file by a link to another file with the
+ * same content.
+ * <p>
+ * Whether the file systems involved support each kind of link is detected on
+ * the first attempt and remembered, so unsupported links are not tried again
+ * for every file.
+ *
+ * @author Cristiano Gavião
+ *
+ */
+public final class FileLinks {
+
+    /**
+     * The kinds of link supported.
+     */
+    public enum LinkType {
+        /**
+         * A hard link, sharing the same file system node.
+         */
+        HARDLINK,
+        /**
+         * A copy-on-write clone, supported by file systems as btrfs, xfs and
+         * apfs.
+         */
+        REFLINK,
+        /**
+         * A symbolic link.
+         */
+        SYMLINK
+    }
+
+    /**
+     * How a file was {@link FileLinks#materialize(Path, Path, LinkType...)
+     * materialized}.
+     */
+    public enum Materialization {
+        /**
+         * The file was already up to date and it was kept.
+         */
+        KEPT,
+        /**
+         * The file was created as a link.
+         */
+        LINKED,
+        /**
+         * The file was created as a copy, as no link could be created.
+         */
+        COPIED
+    }
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final Map<String, Boolean> CAPABILITIES = new ConcurrentHashMap<>();
+
+    private static final String OS_NAME = System.getProperty("os.name", "")
+            .toLowerCase(Locale.ROOT);
+
+    private FileLinks() {
+    }
+
+    private static String capabilityKey(LinkType pType, Path pSource,
+            Path pDirectory) {
+        try {
+            return pType + ":" + Files.getFileStore(pSource) + "->"
+                    + Files.getFileStore(pDirectory);
+        } catch (IOException e) { // NOSONAR
+            return pType + ":" + pSource.getParent() + "->" + pDirectory;
+        }
+    }
+
+    private static boolean cloneFile(Path pLink, Path pSource) {
+        List<String> command;
+        if (OS_NAME.contains("linux")) {
+            command = Arrays.asList("cp", "--reflink=always",
+                    pSource.toString(), pLink.toString());
+        } else if (OS_NAME.contains("mac")) {
+            command = Arrays.asList("cp", "-c", pSource.toString(),
+                    pLink.toString());
+        } else {
+            return false;
+        }
+        try {
+            Process process = new ProcessBuilder(command)
+                    .redirectErrorStream(true).start();
+            try (InputStream in = process.getInputStream()) {
+                byte[] buffer = new byte[1024];
+                while (in.read(buffer) != -1) { // NOSONAR
+                    // discards the process output
+                }
+            }
+            return process.waitFor() == 0 && Files.isRegularFile(pLink);
+        } catch (IOException e) { // NOSONAR
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static boolean createLink(Path pLink, Path pSource,
+            LinkType pType) {
+        try {
+            switch (pType) {
+            case HARDLINK:
+                Files.createLink(pLink, pSource);
+                return true;
+            case SYMLINK:
+                Files.createSymbolicLink(pLink, pSource.toAbsolutePath());
+                return true;
+            default:
+                return cloneFile(pLink, pSource);
+            }
+        } catch (IOException | UnsupportedOperationException
+                | SecurityException e) { // NOSONAR
+            return false;
+        }
+    }
+
+    /**
+     * Compares the content of two files.
+     *
+     * @param pFile
+     *                   A file.
+     * @param pOther
+     *                   The other file.
+     * @return <code>true</code> when both have the same bytes.
+     * @throws IOException
+     *                         when the files could not be read.
+     */
+    public static boolean hasSameContent(Path pFile, Path pOther)
+            throws IOException {
+        if (Files.size(pFile) != Files.size(pOther)) {
+            return false;
+        }
+        byte[] buffer = new byte[BUFFER_SIZE];
+        byte[] otherBuffer = new byte[BUFFER_SIZE];
+        try (InputStream in = Files.newInputStream(pFile);
+                InputStream otherIn = Files.newInputStream(pOther)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                int otherRead = 0;
+                while (otherRead < read) {
+                    int count = otherIn.read(otherBuffer, otherRead,
+                            read - otherRead);
+                    if (count == -1) {
+                        return false;
+                    }
+                    otherRead += count;
+                }
+                for (int i = 0; i < read; i++) {
+                    if (buffer[i] != otherBuffer[i]) {
+                        return false;
+                    }
+                }
+            }
+            return otherIn.read() == -1;
+        }
+    }
+
+    /**
+     * Indicates whether the file is a hard link or a symbolic link to the
+     * source file. Clones can not be told apart from copies.
+     *
+     * @param pFile
+     *                    The file to check.
+     * @param pSource
+     *                    The file it could be linked to.
+     * @return <code>true</code> when both names lead to the same file.
+     * @throws IOException
+     *                         when the files could not be checked.
+     */
+    public static boolean isLinkedTo(Path pFile, Path pSource)
+            throws IOException {
+        return Files.exists(pFile) && Files.exists(pSource)
+                && Files.isSameFile(pFile, pSource);
+    }
+
+    /**
+     * Creates the file as a link to the source file, trying the informed
+     * kinds of link in order, or as a copy when none of them is supported,
+     * without copying the source first. Clones and copies keep the source's
+     * modification time and are made writable, as they do not share the
+     * source's node. A file already linked to the source, or a clone or copy
+     * keeping its size and modification time, is kept as it is.
+     *
+     * @param pFile
+     *                    The file to be created or replaced.
+     * @param pSource
+     *                    The file holding the content.
+     * @param pTypes
+     *                    The kinds of link to try, in order of preference.
+     * @return how the file was materialized.
+     * @throws IOException
+     *                         when the file could not be created.
+     */
+    public static Materialization materialize(Path pFile, Path pSource,
+            LinkType... pTypes) throws IOException {
+        if (isLinkedTo(pFile, pSource)) {
+            return Materialization.KEPT;
+        }
+        BasicFileAttributes source = Files.readAttributes(pSource,
+                BasicFileAttributes.class);
+        if (Files.isRegularFile(pFile, LinkOption.NOFOLLOW_LINKS)) {
+            BasicFileAttributes file = Files.readAttributes(pFile,
+                    BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            if (file.size() == source.size() && file.lastModifiedTime()
+                    .equals(source.lastModifiedTime())) {
+                return Materialization.KEPT;
+            }
+        }
+        for (LinkType type : pTypes) {
+            if (replaceWithLink(pFile, pSource, type)) {
+                if (type == LinkType.REFLINK) {
+                    detachAttributes(pFile, source);
+                }
+                return Materialization.LINKED;
+            }
+        }
+        Path directory = pFile.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory,
+                pFile.getFileName().toString(), ".copy");
+        try {
+            Files.copy(pSource, temp, StandardCopyOption.REPLACE_EXISTING);
+            detachAttributes(temp, source);
+            Files.move(temp, pFile, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return Materialization.COPIED;
+    }
+
+    private static void detachAttributes(Path pFile,
+            BasicFileAttributes pSource) throws IOException {
+        Files.setLastModifiedTime(pFile, pSource.lastModifiedTime());
+        // a read-only source, as a store entry, must not make it read-only
+        pFile.toFile().setWritable(true, true); // NOSONAR
+    }
+
+    /**
+     * Replaces the file, atomically, by a link of the informed type to the
+     * source file, which is expected to hold the same content.
+     *
+     * @param pFile
+     *                    The file to be replaced.
+     * @param pSource
+     *                    The file to link to.
+     * @param pType
+     *                    The kind of link to create.
+     * @return <code>true</code> when the link was created, or
+     *         <code>false</code> when the file systems do not support it and
+     *         the file was kept untouched.
+     * @throws IOException
+     *                         when the link could not replace the file.
+     */
+    public static boolean replaceWithLink(Path pFile, Path pSource,
+            LinkType pType) throws IOException {
+        Path directory = pFile.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        String key = capabilityKey(pType, pSource, directory);
+        Boolean capable = CAPABILITIES.get(key);
+        if (Boolean.FALSE.equals(capable)) {
+            return false;
+        }
+        Path temp = Files.createTempFile(directory,
+                pFile.getFileName().toString(), ".link");
+        Files.delete(temp);
+        try {
+            if (!createLink(temp, pSource, pType)) {
+                if (capable == null) {
+                    CAPABILITIES.putIfAbsent(key, Boolean.FALSE);
+                }
+                return false;
+            }
+            CAPABILITIES.putIfAbsent(key, Boolean.TRUE);
+            Files.move(temp, pFile, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } finally {
+            if (Files.exists(temp, LinkOption.NOFOLLOW_LINKS)) {
+                Files.delete(temp);
+            }
+        }
+    }
+}
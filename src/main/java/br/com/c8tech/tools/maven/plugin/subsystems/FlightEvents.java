@@ -0,0 +1,165 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.subsystems;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The flight recorder events of the {@link BuildEvents}. It is the only class
+ * using the <code>jdk.jfr</code> api, and it is only loaded when the running
+ * JVM has it.
+ *
+ * @author Cristiano Gavião
+ *
+ */
+final class FlightEvents {
+
+    @Category({ "Maven", "OSGi Subsystem" })
+    abstract static class SubsystemEvent extends jdk.jfr.Event {
+
+        @Label("Artifact")
+        @Description("The artifact coordinates, entry or header name")
+        String artifact;
+
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+
+        @Label("Outcome")
+        String outcome;
+    }
+
+    @Name("br.com.c8tech.subsystem.ArchiveEntry")
+    @Label("Archive Entry")
+    @Description("Compresses or reuses an entry of the subsystem archive")
+    static final class ArchiveEntry extends SubsystemEvent {
+    }
+
+    @Name("br.com.c8tech.subsystem.CacheCopy")
+    @Label("Cache Copy")
+    @Description("Copies or links an artifact into the cache directory")
+    static final class CacheCopy extends SubsystemEvent {
+    }
+
+    @Name("br.com.c8tech.subsystem.HeaderMerge")
+    @Label("Header Merge")
+    @Description("Merges the clauses of a composite subsystem header")
+    static final class HeaderMerge extends SubsystemEvent {
+    }
+
+    @Name("br.com.c8tech.subsystem.HeaderParse")
+    @Label("Header Parse")
+    @Description("Parses the headers of an artifact manifest")
+    static final class HeaderParse extends SubsystemEvent {
+    }
+
+    @Name("br.com.c8tech.subsystem.ManifestRead")
+    @Label("Manifest Read")
+    @Description("Reads the manifest headers of an artifact")
+    static final class ManifestRead extends SubsystemEvent {
+    }
+
+    @Name("br.com.c8tech.subsystem.TrackerResolution")
+    @Label("Tracker Resolution")
+    @Description("Builds and resolves the artifact trackers of a project")
+    static final class TrackerResolution extends SubsystemEvent {
+    }
+
+    private static final class RecordedEvent implements BuildEvents.Event {
+
+        private final SubsystemEvent event;
+
+        private RecordedEvent(SubsystemEvent pEvent) {
+            event = pEvent;
+            event.begin();
+        }
+
+        @Override
+        public BuildEvents.Event artifact(String pArtifact) {
+            event.artifact = pArtifact;
+            return this;
+        }
+
+        @Override
+        public BuildEvents.Event bytes(long pBytes) {
+            event.bytes = pBytes;
+            return this;
+        }
+
+        @Override
+        public void close() {
+            event.commit();
+        }
+
+        @Override
+        public boolean isRecording() {
+            return true;
+        }
+
+        @Override
+        public BuildEvents.Event outcome(String pOutcome) {
+            event.outcome = pOutcome;
+            return this;
+        }
+    }
+
+    // one instance of each event type, only used to ask whether it is enabled
+    private static final Map<BuildEvents.Kind, SubsystemEvent> PROBES = new EnumMap<>(
+            BuildEvents.Kind.class);
+
+    static {
+        for (BuildEvents.Kind kind : BuildEvents.Kind.values()) {
+            PROBES.put(kind, newEvent(kind));
+        }
+    }
+
+    private FlightEvents() {
+    }
+
+    static BuildEvents.Event begin(BuildEvents.Kind pKind) {
+        if (!PROBES.get(pKind).isEnabled()) {
+            return BuildEvents.DISABLED;
+        }
+        return new RecordedEvent(newEvent(pKind));
+    }
+
+    static boolean isAvailable() {
+        return FlightRecorder.isAvailable();
+    }
+
+    private static SubsystemEvent newEvent(BuildEvents.Kind pKind) {
+        switch (pKind) {
+        case ARCHIVE_ENTRY:
+            return new ArchiveEntry();
+        case CACHE_COPY:
+            return new CacheCopy();
+        case HEADER_MERGE:
+            return new HeaderMerge();
+        case HEADER_PARSE:
+            return new HeaderParse();
+        case MANIFEST_READ:
+            return new ManifestRead();
+        case TRACKER_RESOLUTION:
+            return new TrackerResolution();
+        default:
+            throw new IllegalArgumentException("Unknown event kind " + pKind);
+        }
+    }
+}
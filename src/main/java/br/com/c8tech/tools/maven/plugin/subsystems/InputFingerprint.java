@@ -0,0 +1,162 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.subsystems;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+
+/**
+ * A digest of the files and values some other files are generated from,
+ * stored in a state file to tell whether those files must be generated
+ * again.
+ * <p>
+ * As the incremental build context does, the files are compared by their
+ * path, size and modification time, so none of them is read. The generated
+ * files are compared the same way, so they are generated again when they
+ * were changed or deleted. A state is not stored while any input was
+ * modified too close to the current time, as its later changes could keep
+ * the same modification time.
+ *
+ * @author Cristiano Gavião
+ *
+ */
+public final class InputFingerprint {
+
+    /**
+     * The coarsest modification time granularity among the usual file
+     * systems.
+     */
+    private static final long RACY_WINDOW_MILLIS = 2000;
+
+    private final MessageDigest digest = FileDigests.newSha256();
+
+    private String inputs;
+
+    private long lastModified = Long.MIN_VALUE;
+
+    private void update(String pValue) {
+        digest.update(pValue.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    private String stampOf(boolean pInputs, Path... pFiles)
+            throws IOException {
+        StringBuilder stamp = new StringBuilder();
+        for (Path file : pFiles) {
+            stamp.append(file).append('=');
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(file,
+                        BasicFileAttributes.class);
+                long modified = attributes.lastModifiedTime().toMillis();
+                if (pInputs) {
+                    lastModified = Math.max(lastModified, modified);
+                }
+                stamp.append(attributes.size()).append('@').append(modified);
+            } catch (NoSuchFileException e) { // NOSONAR
+                stamp.append("missing");
+            }
+            stamp.append('\n');
+        }
+        return stamp.toString();
+    }
+
+    private String inputs() {
+        if (inputs == null) {
+            inputs = FileDigests.toHex(digest.digest());
+        }
+        return inputs;
+    }
+
+    private String stateOf(Path[] pOutputs) throws IOException {
+        MessageDigest outputs = FileDigests.newSha256();
+        outputs.update(
+                stampOf(false, pOutputs).getBytes(StandardCharsets.UTF_8));
+        return inputs() + " " + FileDigests.toHex(outputs.digest());
+    }
+
+    /**
+     * Adds a value the files are generated from.
+     *
+     * @param pValue
+     *                   The value.
+     * @return this fingerprint.
+     */
+    public InputFingerprint add(Object pValue) {
+        update(String.valueOf(pValue));
+        return this;
+    }
+
+    /**
+     * Adds a file the files are generated from. A missing file is also
+     * fingerprinted, as such.
+     *
+     * @param pFile
+     *                  The file.
+     * @return this fingerprint.
+     * @throws IOException
+     *                         when the file attributes could not be read.
+     */
+    public InputFingerprint addFile(Path pFile) throws IOException {
+        update(stampOf(true, pFile));
+        return this;
+    }
+
+    /**
+     * Tells whether the state file was stored for the same inputs and the
+     * generated files were not changed since.
+     *
+     * @param pStateFile
+     *                       The state file.
+     * @param pOutputs
+     *                       The generated files.
+     * @return <code>true</code> when the files need not be generated again.
+     * @throws IOException
+     *                         when a file could not be read.
+     */
+    public boolean isUpToDate(Path pStateFile, Path... pOutputs)
+            throws IOException {
+        String stored;
+        try {
+            stored = new String(Files.readAllBytes(pStateFile),
+                    StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) { // NOSONAR
+            return false;
+        }
+        return stored.equals(stateOf(pOutputs));
+    }
+
+    /**
+     * Stores the state of the inputs and of the files just generated from
+     * them, or deletes it when any input is too recent to be trusted.
+     *
+     * @param pStateFile
+     *                       The state file.
+     * @param pOutputs
+     *                       The generated files.
+     * @throws IOException
+     *                         when the state file could not be written.
+     */
+    public void store(Path pStateFile, Path... pOutputs) throws IOException {
+        String state = stateOf(pOutputs);
+        if (System.currentTimeMillis() - lastModified < RACY_WINDOW_MILLIS) {
+            Files.deleteIfExists(pStateFile);
+            return;
+        }
+        Files.createDirectories(pStateFile.getParent());
+        Files.write(pStateFile, state.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,224 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.subsystems;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+/**
+ * A clause of an OSGi manifest header, made of one or more paths followed by
+ * its attributes and directives.
+ * <p>
+ * The attribute names keep their declared type, as in
+ * <code>objectClass:List&lt;String&gt;</code>, and the values are kept
+ * unquoted.
+ *
+ * @author Cristiano Gavião
+ *
+ */
+public final class ManifestClause {
+
+    private static final Pattern TOKEN = Pattern.compile("[\\w.\\-]+");
+
+    private final Map<String, String> attributes;
+
+    private final Map<String, String> directives;
+
+    private final List<String> paths;
+
+    /**
+     * @param pPaths
+     *                        The paths of the clause.
+     * @param pAttributes
+     *                        The attributes, by name.
+     * @param pDirectives
+     *                        The directives, by name.
+     */
+    public ManifestClause(List<String> pPaths, Map<String, String> pAttributes,
+            Map<String, String> pDirectives) {
+        paths = pPaths;
+        attributes = pAttributes;
+        directives = pDirectives;
+    }
+
+    private static void appendParameter(StringBuilder pBuilder, String pName,
+            String pSeparator, String pValue) {
+        pBuilder.append(';').append(pName).append(pSeparator);
+        if (TOKEN.matcher(pValue).matches()) {
+            pBuilder.append(pValue);
+            return;
+        }
+        pBuilder.append('"');
+        for (int i = 0; i < pValue.length(); i++) {
+            char c = pValue.charAt(i);
+            if (c == '"' || c == '\\') {
+                pBuilder.append('\\');
+            }
+            pBuilder.append(c);
+        }
+        pBuilder.append('"');
+    }
+
+    private static String untypedName(String pName) {
+        int colon = pName.indexOf(':');
+        return colon < 0 ? pName : pName.substring(0, colon);
+    }
+
+    /**
+     * Appends the textual form of this clause to a builder.
+     *
+     * @param pBuilder
+     *                     The builder.
+     */
+    public void appendTo(StringBuilder pBuilder) {
+        for (int i = 0; i < paths.size(); i++) {
+            if (i > 0) {
+                pBuilder.append(';');
+            }
+            pBuilder.append(paths.get(i));
+        }
+        attributes.forEach((n, v) -> appendParameter(pBuilder, n, "=", v));
+        directives.forEach((n, v) -> appendParameter(pBuilder, n, ":=", v));
+    }
+
+    /**
+     * Two clauses are equal when they have the same paths, in the same
+     * order, and the same attributes and directives, in any order.
+     */
+    @Override
+    public boolean equals(Object pOther) {
+        if (this == pOther) {
+            return true;
+        }
+        if (!(pOther instanceof ManifestClause)) {
+            return false;
+        }
+        ManifestClause other = (ManifestClause) pOther;
+        return paths.equals(other.paths) && attributes.equals(other.attributes)
+                && directives.equals(other.directives);
+    }
+
+    /**
+     * Returns the value of an attribute, whatever its declared type.
+     *
+     * @param pName
+     *                  The attribute name.
+     * @return the value, or <code>null</code> when it was not declared.
+     */
+    public String getAttribute(String pName) {
+        String value = attributes.get(pName);
+        if (value != null) {
+            return value;
+        }
+        for (Map.Entry<String, String> entry : attributes.entrySet()) {
+            if (untypedName(entry.getKey()).equals(pName)) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    public Map<String, String> getAttributes() {
+        return Collections.unmodifiableMap(attributes);
+    }
+
+    public String getDirective(String pName) {
+        return directives.get(pName);
+    }
+
+    public Map<String, String> getDirectives() {
+        return Collections.unmodifiableMap(directives);
+    }
+
+    /**
+     * @return the first path of the clause.
+     */
+    public String getPath() {
+        return paths.get(0);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(paths, attributes, directives);
+    }
+
+    public List<String> getPaths() {
+        return Collections.unmodifiableList(paths);
+    }
+
+    /**
+     * Splits the clause in one clause per path, each one with the same
+     * attributes and directives.
+     *
+     * @return the clauses.
+     */
+    public List<ManifestClause> splitPaths() {
+        if (paths.size() == 1) {
+            return Collections.singletonList(this);
+        }
+        List<ManifestClause> clauses = new ArrayList<>(paths.size());
+        for (String path : paths) {
+            clauses.add(new ManifestClause(Collections.singletonList(path),
+                    attributes, directives));
+        }
+        return clauses;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        appendTo(builder);
+        return builder.toString();
+    }
+
+    /**
+     * Returns a copy of this clause with one attribute changed.
+     *
+     * @param pName
+     *                   The attribute name.
+     * @param pValue
+     *                   The new value, or <code>null</code> to remove it.
+     * @return the new clause.
+     */
+    public ManifestClause withAttribute(String pName, String pValue) {
+        Map<String, String> newAttributes = new LinkedHashMap<>(attributes);
+        newAttributes.keySet().removeIf(n -> untypedName(n).equals(pName));
+        if (pValue != null) {
+            newAttributes.put(pName, pValue);
+        }
+        return new ManifestClause(paths, newAttributes, directives);
+    }
+
+    /**
+     * Returns a copy of this clause with one directive changed.
+     *
+     * @param pName
+     *                   The directive name.
+     * @param pValue
+     *                   The new value, or <code>null</code> to remove it.
+     * @return the new clause.
+     */
+    public ManifestClause withDirective(String pName, String pValue) {
+        Map<String, String> newDirectives = new LinkedHashMap<>(directives);
+        if (pValue == null) {
+            newDirectives.remove(pName);
+        } else {
+            newDirectives.put(pName, pValue);
+        }
+        return new ManifestClause(paths, attributes, newDirectives);
+    }
+}
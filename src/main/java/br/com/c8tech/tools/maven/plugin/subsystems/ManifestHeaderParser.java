@@ -0,0 +1,200 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.subsystems;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Parses the value of an OSGi manifest header into its clauses, following
+ * the common header syntax of the OSGi core specification:
+ *
+ * <pre>
+ * header    ::= clause ( ',' clause ) *
+ * clause    ::= path ( ';' path ) * ( ';' parameter ) *
+ * parameter ::= directive | attribute
+ * directive ::= name ':=' value
+ * attribute ::= name ( ':' type ) ? '=' value
+ * </pre>
+ *
+ * The value is scanned once, without splitting it in intermediate strings,
+ * and only the tokens kept in the clauses are copied. Directives that are not
+ * wanted, as the long <code>uses</code> lists bnd adds to the exported
+ * packages, can be skipped without ever being copied or unquoted.
+ *
+ * @author Cristiano Gavião
+ *
+ */
+public final class ManifestHeaderParser {
+
+    private ManifestHeaderParser() {
+    }
+
+    private static boolean isWhitespace(char pChar) {
+        return pChar == ' ' || pChar == '\t' || pChar == '\r'
+                || pChar == '\n';
+    }
+
+    /**
+     * Parses a header value.
+     *
+     * @param pHeaderValue
+     *                         The header value. It may be <code>null</code>.
+     * @return the clauses, in the declared order.
+     * @throws IllegalArgumentException
+     *                                      when a clause has no path.
+     */
+    public static List<ManifestClause> parse(String pHeaderValue) {
+        return parse(pHeaderValue, Collections.emptySet());
+    }
+
+    /**
+     * Parses a header value, leaving some directives out of the clauses.
+     *
+     * @param pHeaderValue
+     *                               The header value. It may be
+     *                               <code>null</code>.
+     * @param pSkippedDirectives
+     *                               The names of the directives to be left
+     *                               out.
+     * @return the clauses, in the declared order.
+     * @throws IllegalArgumentException
+     *                                      when a clause has no path.
+     */
+    public static List<ManifestClause> parse(String pHeaderValue,
+            Set<String> pSkippedDirectives) {
+        List<ManifestClause> clauses = new ArrayList<>();
+        if (pHeaderValue == null) {
+            return clauses;
+        }
+        int length = pHeaderValue.length();
+        int position = 0;
+        while (position < length) {
+            int clauseStart = position;
+            List<String> paths = new ArrayList<>(1);
+            Map<String, String> attributes = new LinkedHashMap<>();
+            Map<String, String> directives = new LinkedHashMap<>();
+            boolean hasParameters = false;
+            char separator = ',';
+            do {
+                int start = skipWhitespace(pHeaderValue, position);
+                int end = scan(pHeaderValue, start, true);
+                if (end < length && pHeaderValue.charAt(end) == '=') {
+                    hasParameters = true;
+                    int valueStart = skipWhitespace(pHeaderValue, end + 1);
+                    position = scan(pHeaderValue, valueStart, false);
+                    String name = pHeaderValue.substring(start,
+                            trimEnd(pHeaderValue, start, end));
+                    if (name.endsWith(":")) {
+                        name = name.substring(0, name.length() - 1).trim();
+                        if (!pSkippedDirectives.contains(name)) {
+                            directives.put(name, unquote(pHeaderValue,
+                                    valueStart, trimEnd(pHeaderValue,
+                                            valueStart, position)));
+                        }
+                    } else {
+                        attributes.put(name,
+                                unquote(pHeaderValue, valueStart, trimEnd(
+                                        pHeaderValue, valueStart, position)));
+                    }
+                } else {
+                    position = end;
+                    int pathEnd = trimEnd(pHeaderValue, start, end);
+                    if (pathEnd > start) {
+                        if (hasParameters) {
+                            throw new IllegalArgumentException(
+                                    "A path must come before the parameters: "
+                                            + pHeaderValue.substring(
+                                                    clauseStart, end));
+                        }
+                        paths.add(pHeaderValue.substring(start, pathEnd));
+                    }
+                }
+                separator = position < length ? pHeaderValue.charAt(position)
+                        : ',';
+                position++;
+            } while (separator == ';');
+            if (paths.isEmpty()) {
+                if (!hasParameters) {
+                    continue;
+                }
+                throw new IllegalArgumentException(
+                        "Missing the path of clause: " + pHeaderValue
+                                .substring(clauseStart,
+                                        Math.min(position - 1, length)));
+            }
+            clauses.add(new ManifestClause(paths, attributes, directives));
+        }
+        return clauses;
+    }
+
+    /**
+     * Returns the position of the next separator out of a quoted string: a
+     * ';' or a ',', or also a '=' when a name or path is being scanned.
+     */
+    private static int scan(String pValue, int pStart, boolean pName) {
+        boolean quoted = false;
+        int i = pStart;
+        for (; i < pValue.length(); i++) {
+            char c = pValue.charAt(i);
+            if (c == '\\' && quoted) {
+                i++;
+            } else if (c == '"') {
+                quoted = !quoted;
+            } else if (!quoted
+                    && (c == ';' || c == ',' || pName && c == '=')) {
+                break;
+            }
+        }
+        return Math.min(i, pValue.length());
+    }
+
+    private static int skipWhitespace(String pValue, int pStart) {
+        int i = pStart;
+        while (i < pValue.length() && isWhitespace(pValue.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int trimEnd(String pValue, int pStart, int pEnd) {
+        int end = pEnd;
+        while (end > pStart && isWhitespace(pValue.charAt(end - 1))) {
+            end--;
+        }
+        return end;
+    }
+
+    private static String unquote(String pValue, int pStart, int pEnd) {
+        if (pEnd - pStart < 2 || pValue.charAt(pStart) != '"'
+                || pValue.charAt(pEnd - 1) != '"') {
+            return pValue.substring(pStart, pEnd);
+        }
+        int escape = pValue.indexOf('\\', pStart + 1);
+        if (escape < 0 || escape >= pEnd - 1) {
+            return pValue.substring(pStart + 1, pEnd - 1);
+        }
+        StringBuilder unquoted = new StringBuilder(pEnd - pStart);
+        for (int i = pStart + 1; i < pEnd - 1; i++) {
+            char c = pValue.charAt(i);
+            if (c == '\\' && i + 1 < pEnd - 1) {
+                c = pValue.charAt(++i);
+            }
+            unquoted.append(c);
+        }
+        return unquoted.toString();
+    }
+}
@@ -0,0 +1,281 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.subsystems;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A persistent index holding the manifest headers already read from the
+ * cached artifacts, avoiding to open every jar again when nothing has
+ * changed.
+ * <p>
+ * Each entry is keyed by the artifact's file path and it is considered valid
+ * while the file keeps the same size and modification time, so neither a hit
+ * nor a miss reads the artifact more than it is needed to read its manifest.
+ * Only a file modified too close to the moment it was indexed, whose later
+ * changes could keep the same modification time, has its content digest
+ * stored and checked, as the size and modification time alone can not tell
+ * those changes apart.
+ * <p>
+ * The index is stored in a compact binary file that is loaded in a single
+ * read.
+ *
+ * @author Cristiano Gavião
+ *
+ */
+public final class ManifestHeadersIndex {
+
+    private static final class Entry {
+
+        private final byte[] digest;
+
+        private final Map<String, String> headers;
+
+        private final long lastModified;
+
+        private final long size;
+
+        private Entry(long pSize, long pLastModified, byte[] pDigest,
+                Map<String, String> pHeaders) {
+            size = pSize;
+            lastModified = pLastModified;
+            digest = pDigest;
+            headers = pHeaders;
+        }
+    }
+
+    /**
+     * The name of the index file created inside the cache directory.
+     */
+    public static final String INDEX_FILE_NAME = ".subsystem-manifest-headers.idx";
+
+    private static final byte[] NO_DIGEST = new byte[0];
+
+    private static final int FORMAT_VERSION = 2;
+
+    private static final int MAGIC = 0x53534D48; // SSMH
+
+    /**
+     * The coarsest modification time granularity among the usual file
+     * systems.
+     */
+    private static final long RACY_WINDOW_MILLIS = 2000;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final Path indexFile;
+
+    private volatile boolean modified;
+
+    private ManifestHeadersIndex(Path pIndexFile) {
+        indexFile = pIndexFile;
+    }
+
+    /**
+     * Loads the index stored in the informed file. A missing, outdated or
+     * corrupted file results in an empty index.
+     *
+     * @param pIndexFile
+     *                       The index file.
+     * @return the loaded index.
+     */
+    public static ManifestHeadersIndex load(Path pIndexFile) {
+        ManifestHeadersIndex index = new ManifestHeadersIndex(pIndexFile);
+        byte[] content;
+        try {
+            content = Files.readAllBytes(pIndexFile);
+        } catch (IOException e) { // NOSONAR
+            return index;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(content))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                return index;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String path = readString(in);
+                long size = in.readLong();
+                long lastModified = in.readLong();
+                byte[] digest = new byte[in.readUnsignedShort()];
+                in.readFully(digest);
+                int headerCount = in.readInt();
+                Map<String, String> headers = new LinkedHashMap<>();
+                for (int j = 0; j < headerCount; j++) {
+                    headers.put(readString(in), readString(in));
+                }
+                index.entries.put(path, new Entry(size, lastModified, digest,
+                        Collections.unmodifiableMap(headers)));
+            }
+        } catch (IOException e) { // NOSONAR
+            index.entries.clear();
+        }
+        return index;
+    }
+
+    private static String readString(DataInputStream pIn) throws IOException {
+        byte[] bytes = new byte[pIn.readInt()];
+        pIn.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(DataOutputStream pOut, String pValue)
+            throws IOException {
+        byte[] bytes = pValue.getBytes(StandardCharsets.UTF_8);
+        pOut.writeInt(bytes.length);
+        pOut.write(bytes);
+    }
+
+    private static String key(Path pFile) {
+        return pFile.toAbsolutePath().normalize().toString();
+    }
+
+    private static boolean isRacy(long pLastModified) {
+        return System.currentTimeMillis() - pLastModified < RACY_WINDOW_MILLIS;
+    }
+
+    /**
+     * Returns the headers stored for the file when it has not changed since
+     * they were indexed.
+     *
+     * @param pFile
+     *                  The artifact file.
+     * @return the stored headers or <code>null</code> when they must be read
+     *         again.
+     * @throws IOException
+     *                         when the file attributes could not be read.
+     */
+    public Map<String, String> lookup(Path pFile) throws IOException {
+        String key = key(pFile);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(pFile,
+                    BasicFileAttributes.class);
+        } catch (NoSuchFileException e) { // NOSONAR
+            entries.remove(key);
+            modified = true;
+            return null;
+        }
+        if (attributes.size() != entry.size || attributes.lastModifiedTime()
+                .toMillis() != entry.lastModified) {
+            return null;
+        }
+        if (entry.digest.length == 0) {
+            return entry.headers;
+        }
+        // indexed right after being written, so it may have changed since
+        if (!Arrays.equals(FileDigests.sha256(pFile), entry.digest)) {
+            return null;
+        }
+        if (!isRacy(entry.lastModified)) {
+            entries.put(key, new Entry(entry.size, entry.lastModified,
+                    NO_DIGEST, entry.headers));
+            modified = true;
+        }
+        return entry.headers;
+    }
+
+    /**
+     * Stores the headers read from the file.
+     *
+     * @param pFile
+     *                     The artifact file.
+     * @param pHeaders
+     *                     The headers read from its manifest.
+     * @throws IOException
+     *                         when the file attributes could not be read.
+     */
+    public void put(Path pFile, Map<String, String> pHeaders)
+            throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(pFile,
+                BasicFileAttributes.class);
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        entries.put(key(pFile), new Entry(attributes.size(), lastModified,
+                isRacy(lastModified) ? FileDigests.sha256(pFile) : NO_DIGEST,
+                Collections.unmodifiableMap(new LinkedHashMap<>(pHeaders))));
+        modified = true;
+    }
+
+    /**
+     * Indicates whether the index has changed since it was loaded.
+     *
+     * @return <code>true</code> when the index must be saved.
+     */
+    public boolean isModified() {
+        return modified;
+    }
+
+    /**
+     * Writes the index back to its file, discarding the entries of files that
+     * do not exist anymore. The file is replaced atomically, so concurrent
+     * builds sharing the same cache directory always read a complete index.
+     *
+     * @throws IOException
+     *                         when the index could not be written.
+     */
+    public void save() throws IOException {
+        entries.keySet().removeIf(path -> !Files.exists(indexFile
+                .getFileSystem().getPath(path)));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            Map<String, Entry> snapshot = new LinkedHashMap<>(entries);
+            out.writeInt(snapshot.size());
+            for (Map.Entry<String, Entry> mapEntry : snapshot.entrySet()) {
+                Entry entry = mapEntry.getValue();
+                writeString(out, mapEntry.getKey());
+                out.writeLong(entry.size);
+                out.writeLong(entry.lastModified);
+                out.writeShort(entry.digest.length);
+                out.write(entry.digest);
+                out.writeInt(entry.headers.size());
+                for (Map.Entry<String, String> header : entry.headers
+                        .entrySet()) {
+                    writeString(out, header.getKey());
+                    writeString(out, header.getValue());
+                }
+            }
+        }
+        Files.createDirectories(indexFile.getParent());
+        Path tempFile = Files.createTempFile(indexFile.getParent(),
+                INDEX_FILE_NAME, ".tmp");
+        try {
+            Files.write(tempFile, bytes.toByteArray());
+            Files.move(tempFile, indexFile,
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+        modified = false;
+    }
+}
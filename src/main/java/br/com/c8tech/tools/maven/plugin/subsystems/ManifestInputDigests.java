@@ -0,0 +1,159 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.subsystems;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Writes, for each artifact, a small file holding the digest of only the
+ * manifest headers the subsystem manifest is computed from. These files are
+ * registered as the inputs of the manifest generation instead of the
+ * artifacts themselves.
+ * <p>
+ * A digest file is only rewritten when its content changes, so rebuilding an
+ * artifact whose relevant headers are the same, as one whose classes were
+ * changed, does not make the manifest to be generated again.
+ *
+ * @author Cristiano Gavião
+ *
+ */
+public final class ManifestInputDigests {
+
+    public static final String DIRECTORY_NAME = ".subsystem-manifest-inputs";
+
+    private static final String FILE_EXTENSION = ".sha256";
+
+    private final Path directory;
+
+    private final List<String> headerNames;
+
+    private final Set<Path> updated = new HashSet<>();
+
+    /**
+     * @param pDirectory
+     *                        The directory where the digest files are kept,
+     *                        which must not be shared with other mojo
+     *                        executions, as the stale files are deleted.
+     * @param pHeaderNames
+     *                        The names of the headers that are digested.
+     */
+    public ManifestInputDigests(Path pDirectory,
+            Collection<String> pHeaderNames) {
+        directory = pDirectory;
+        headerNames = new ArrayList<>(new HashSet<>(pHeaderNames));
+        headerNames.sort(null);
+    }
+
+    // the digest of the key, so no two keys share the same file
+    private static String fileName(String pArtifactKey) {
+        return FileDigests.toHex(FileDigests.newSha256()
+                .digest(pArtifactKey.getBytes(StandardCharsets.UTF_8)))
+                + FILE_EXTENSION;
+    }
+
+    private static void update(MessageDigest pDigest, String pValue) {
+        pDigest.update(pValue.getBytes(StandardCharsets.UTF_8));
+        pDigest.update((byte) 0);
+    }
+
+    /**
+     * Computes the digest of an artifact.
+     *
+     * @param pArtifactDescription
+     *                                 The artifact's data that the manifest
+     *                                 depends on, besides its headers.
+     * @param pManifestHeaders
+     *                                 The artifact's manifest headers. It may be
+     *                                 <code>null</code>.
+     * @return the digest as a hexadecimal string.
+     */
+    public String digest(String pArtifactDescription,
+            Map<String, String> pManifestHeaders) {
+        MessageDigest digest = FileDigests.newSha256();
+        update(digest, pArtifactDescription);
+        for (String headerName : headerNames) {
+            String value = pManifestHeaders == null ? null
+                    : pManifestHeaders.get(headerName);
+            if (value != null) {
+                update(digest, headerName);
+                update(digest, value);
+            }
+        }
+        return FileDigests.toHex(digest.digest());
+    }
+
+    /**
+     * Deletes the digest files of the artifacts that were not updated by this
+     * instance, as the ones that are not part of the subsystem anymore.
+     *
+     * @throws IOException
+     *                         when a file could not be deleted.
+     */
+    public void deleteStale() throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory,
+                "*" + FILE_EXTENSION)) {
+            for (Path file : files) {
+                if (!updated.contains(file)) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the digest file of an artifact, unless it already holds the
+     * same digest.
+     *
+     * @param pArtifactKey
+     *                                 A key that is unique to the artifact,
+     *                                 used to name the digest file.
+     * @param pArtifactDescription
+     *                                 The artifact's data that the manifest
+     *                                 depends on, besides its headers.
+     * @param pManifestHeaders
+     *                                 The artifact's manifest headers. It may be
+     *                                 <code>null</code>.
+     * @return the digest file.
+     * @throws IOException
+     *                         when the file could not be written.
+     */
+    public Path update(String pArtifactKey, String pArtifactDescription,
+            Map<String, String> pManifestHeaders) throws IOException {
+        Path file = directory.resolve(fileName(pArtifactKey));
+        byte[] content = (digest(pArtifactDescription, pManifestHeaders)
+                + "\n").getBytes(StandardCharsets.US_ASCII);
+        if (!Files.isRegularFile(file)
+                || !Arrays.equals(Files.readAllBytes(file), content)) {
+            Files.createDirectories(directory);
+            Files.write(file, content);
+        }
+        synchronized (updated) {
+            updated.add(file);
+        }
+        return file;
+    }
+}
@@ -11,24 +11,35 @@
  */
 package br.com.c8tech.tools.maven.plugin.subsystems;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+
 import javax.inject.Inject;
 
+import org.apache.maven.artifact.ArtifactUtils;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.plugins.annotations.ResolutionScope;
 import org.apache.maven.project.MavenProject;
 
+import br.com.c8tech.tools.maven.osgi.lib.mojo.incremental.ArtifactTracker;
 import br.com.c8tech.tools.maven.osgi.lib.mojo.incremental.ArtifactTrackerManager;
-import br.com.c8tech.tools.maven.osgi.lib.mojo.incremental.ArtifactTrackerManagerBuilder;
 import br.com.c8tech.tools.maven.osgi.lib.mojo.incremental.BuildContextWithUrl;
 
 /**
  * This mojo is aimed to resolve the declared dependencies against the
  * registered local and remote maven repositories, filter the valid ones and
  * copy them into the cache directory in order to be processed by the subsequent
- * mojos in the lifecycle.
+ * mojos in the lifecycle. When the direct embedding is enabled and all of them
+ * have a file in the local repository, they are only resolved, as the
+ * subsequent mojos read them from there.
  * <p>
  * <br>
  * The artifacts will be filtered by:
@@ -61,6 +72,50 @@ public class MojoDownloadAndCacheArtifacts extends AbstractSubsystemMojo {
 
     private final BuildContextWithUrl copyBuildContext;
 
+    /**
+     * A directory holding a content addressed store of the cached artifacts,
+     * keyed by their SHA-256 digest, that can be shared by all the projects of
+     * a reactor and across builds.
+     * <p>
+     * When set, each artifact is interned into the store and created in the
+     * cache directory as a reflink, or a hard link, to its store entry, so the
+     * same bundle is kept only once on disk. When the file systems support
+     * neither, the project keeps its own copy. The kind of link can be chosen
+     * with {@link #cacheMaterialization}.
+     * <p>
+     * Snapshot artifacts are never shared, as their content may change while
+     * keeping the same file name.
+     */
+    @Parameter(property = "subsystem.sharedCacheDirectory")
+    private File sharedCacheDirectory;
+
+    /**
+     * How the artifacts are materialized in the cache directory. One of:
+     * <ul>
+     * <li><b>copy</b>: each artifact is copied, as it always was.</li>
+     * <li><b>reflink</b>: each artifact is created as a copy-on-write clone of
+     * its file in the local repository, or in the {@link #sharedCacheDirectory}
+     * when set, supported by file systems as btrfs, xfs and apfs.</li>
+     * <li><b>hardlink</b>: same as above, using hard links when no clone can be
+     * created.</li>
+     * <li><b>symlink</b>: same as above, using symbolic links when no clone can
+     * be created.</li>
+     * </ul>
+     * Each link is created in place of the copy, never after it. Clones are
+     * always tried first, as a hard or symbolic link into the local repository
+     * shares the repository's file, which a later rewrite of the cached file
+     * would corrupt. The support of the file system is detected once and, when
+     * no link can be created, the artifact is copied. Snapshot artifacts, and
+     * all of them when some artifact has no file in the local repository, are
+     * always copied.
+     * <p>
+     * The cached files keep their paths, so they are still tracked as the
+     * outputs of the incremental build context.
+     */
+    @Parameter(defaultValue = "copy",
+            property = "subsystem.cacheMaterialization")
+    private String cacheMaterialization;
+
     @Inject
     public MojoDownloadAndCacheArtifacts(MavenProject pProject,
             BuildContextWithUrl pCopyBuildContext) {
@@ -84,26 +139,241 @@ public class MojoDownloadAndCacheArtifacts extends AbstractSubsystemMojo {
                 "Setting up download and caching of artifacts for project "
                         + getProject().getArtifactId());
 
-        ArtifactTrackerManager artifactTrackerManager = ArtifactTrackerManagerBuilder
-                .newBuilder(getMavenSession(), getCacheDirectory())
-                .withGroupingByTypeDirectory(true).withVerbose(isVerbose())
-                .withPreviousCachingRequired(false).mavenSetup()
-                .withDependenciesHelper(getDependenciesHelper())
-                .withRepositorySystem(getRepositorySystem()).workspaceSetup()
-                .withAssemblyUrlProtocolAllowed(isWorkspaceResolutionAllowed())
-                .withPackOnTheFlyAllowed(isWorkspaceResolutionAllowed())
-                .endWorkspaceSetup().mavenFiltering()
-                .withOptional(isOptionalConsidered())
-                .withTransitive(isTransitiveConsidered())
-                .withScopes(getManifestScopes())
-                .withScopes(getEmbeddableScopes())
-                .withMavenArtifactSet(getMavenArtifactSet())
-                .withExcludedDependencies(getExcludedArtifacts())
-                .endMavenFiltering().endMavenSetup().build();
-
-        artifactTrackerManager.resolveMavenArtifacts(getEmbeddableScopes());
-
-        artifactTrackerManager.copyMavenArtifactsToCache(copyBuildContext);
+        BuildTimings timings = getBuildTimings();
+        try {
+            // computed before the manager is built, which sets up the
+            // artifact set when it was not configured
+            String key = computeArtifactTrackerManagerKey(true);
+            ArtifactTrackerManager artifactTrackerManager;
+            BuildTimings.Phase trackerBuilding = timings
+                    .phase(BuildTimings.TRACKER_BUILDING);
+            try {
+                artifactTrackerManager = buildArtifactTrackerManager(false);
+            } finally {
+                trackerBuilding.close();
+            }
+
+            BuildTimings.Phase dependencyResolution = timings
+                    .phase(BuildTimings.DEPENDENCY_RESOLUTION);
+            try {
+                artifactTrackerManager
+                        .resolveMavenArtifacts(getEmbeddableScopes());
+            } finally {
+                dependencyResolution.close();
+            }
+
+            BuildTimings.Phase artifactCaching = timings
+                    .phase(BuildTimings.ARTIFACT_CACHING);
+            try {
+                if (isDirectEmbedding() && allArtifactsInRepository(
+                        artifactTrackerManager)) {
+                    if (isVerbose()) {
+                        getLog().info(
+                                "All artifacts will be read from the local repository, skipping their caching.");
+                    }
+                    // the cache is left untouched, as no copy was made
+                    copyBuildContext.markSkipExecution();
+                } else {
+                    cacheArtifacts(artifactTrackerManager);
+                }
+            } finally {
+                artifactCaching.close();
+            }
+
+            // shares the resolved trackers with the subsequent mojos, which
+            // require the artifacts to be cached or, with direct embedding,
+            // only resolved, as they are now
+            if (key != null) {
+                getArtifactTrackerManagerRegistry().register(getProject(),
+                        key, artifactTrackerManager);
+                releaseArtifactTrackerManager("process-resources",
+                        "generateSubsystemManifest", "packESA");
+            }
+        } finally {
+            writeBuildTimings();
+        }
+    }
+
+    private boolean allArtifactsInRepository(
+            ArtifactTrackerManager pArtifactTrackerManager) {
+        for (ArtifactTracker tracker : pArtifactTrackerManager
+                .getAllArtifactTrackers()) {
+            if (lookupRepositoryFile(tracker) == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void cacheArtifacts(ArtifactTrackerManager pArtifactTrackerManager)
+            throws MojoExecutionException {
+        FileLinks.LinkType linkType = parseCacheMaterialization();
+        List<ArtifactTracker> trackers = pArtifactTrackerManager
+                .getAllArtifactTrackers();
+        boolean linking = sharedCacheDirectory != null || linkType != null;
+        if (linking && allArtifactsInRepository(pArtifactTrackerManager)
+                && allArtifactsHaveCachedPath(trackers)) {
+            // the links are created in place of the library's copies
+            copyBuildContext.markSkipExecution();
+            materializeCachedArtifacts(trackers, linkType);
+            return;
+        }
+        if (linking || isDirectEmbedding()) {
+            getLog().info(
+                    "Some artifacts have no file in the local repository, the artifacts will be copied into the cache.");
+        }
+        try {
+            // a previous build may have linked them into the local repository
+            for (ArtifactTracker tracker : trackers) {
+                detachFromRepository(tracker);
+            }
+        } catch (IOException e) {
+            throw new MojoExecutionException(
+                    "Failure occurred while detaching the cached artifacts", e);
+        }
+        try (BuildEvents.Event event = BuildEvents
+                .begin(BuildEvents.Kind.CACHE_COPY)
+                .artifact(getProject().getId())) {
+            pArtifactTrackerManager.copyMavenArtifactsToCache(copyBuildContext);
+            event.outcome(BuildEvents.OUTCOME_COPIED);
+        }
+    }
+
+    private static boolean allArtifactsHaveCachedPath(
+            List<ArtifactTracker> pTrackers) {
+        for (ArtifactTracker tracker : pTrackers) {
+            if (tracker.getCachedFilePath() == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void detachFromRepository(ArtifactTracker pTracker)
+            throws IOException {
+        Path cachedFile = pTracker.getCachedFilePath();
+        Path repositoryFile = lookupRepositoryFile(pTracker);
+        if (cachedFile == null || repositoryFile == null
+                || !FileLinks.isLinkedTo(cachedFile, repositoryFile)) {
+            return;
+        }
+        if (Files.isSymbolicLink(cachedFile)) {
+            FileLinks.materialize(cachedFile, repositoryFile);
+        } else {
+            OutputCache.detach(cachedFile);
+        }
+    }
+
+    private FileLinks.LinkType parseCacheMaterialization()
+            throws MojoExecutionException {
+        String mode = cacheMaterialization == null ? ""
+                : cacheMaterialization.trim().toUpperCase(Locale.ROOT);
+        if (mode.isEmpty() || "COPY".equals(mode)) {
+            return null;
+        }
+        try {
+            return FileLinks.LinkType.valueOf(mode);
+        } catch (IllegalArgumentException e) {
+            throw new MojoExecutionException("Invalid cacheMaterialization '"
+                    + cacheMaterialization
+                    + "'. Use one of: copy, hardlink, symlink or reflink.", e);
+        }
+    }
+
+    private FileLinks.LinkType[] linkTypesFor(FileLinks.LinkType pLinkType) {
+        if (sharedCacheDirectory != null) {
+            // the store entries are private read-only copies
+            return pLinkType == null
+                    ? new FileLinks.LinkType[] { FileLinks.LinkType.REFLINK,
+                            FileLinks.LinkType.HARDLINK }
+                    : new FileLinks.LinkType[] { pLinkType };
+        }
+        if (pLinkType == FileLinks.LinkType.REFLINK) {
+            return new FileLinks.LinkType[] { pLinkType };
+        }
+        // a clone never shares the repository's file, so it comes first
+        return new FileLinks.LinkType[] { FileLinks.LinkType.REFLINK,
+                pLinkType };
+    }
+
+    private void materializeCachedArtifacts(List<ArtifactTracker> pTrackers,
+            FileLinks.LinkType pLinkType) throws MojoExecutionException {
+        FileLinks.LinkType[] linkTypes = linkTypesFor(pLinkType);
+        SharedArtifactStore store = sharedCacheDirectory == null ? null
+                : new SharedArtifactStore(sharedCacheDirectory.toPath());
+        try {
+            List<FileLinks.Materialization> materializations = ParallelTasks
+                    .map(pTrackers, getParallelThreads(), tracker -> {
+                        Path cachedFile = tracker.getCachedFilePath();
+                        Path repositoryFile = lookupRepositoryFile(tracker);
+                        if (ArtifactUtils.isSnapshot(tracker.getVersion())) {
+                            return materialize(tracker, () -> FileLinks
+                                    .materialize(cachedFile, repositoryFile));
+                        }
+                        return store != null
+                                ? materialize(tracker,
+                                        () -> store.materialize(repositoryFile,
+                                                cachedFile, linkTypes))
+                                : materialize(tracker,
+                                        () -> FileLinks.materialize(cachedFile,
+                                                repositoryFile, linkTypes));
+                    });
+            int linked = 0;
+            int copied = 0;
+            for (FileLinks.Materialization materialization : materializations) {
+                if (materialization == FileLinks.Materialization.LINKED) {
+                    linked++;
+                } else
+                    if (materialization == FileLinks.Materialization.COPIED) {
+                        copied++;
+                    }
+            }
+            if (linked == 0 && copied > 0 && pLinkType != null) {
+                getLog().warn("The file system does not support "
+                        + cacheMaterialization
+                        + " links here, the artifacts were copied into the cache.");
+            } else if (isVerbose()) {
+                getLog().info(linked + " artifacts were linked and " + copied
+                        + " were copied into the cache, "
+                        + (pTrackers.size() - linked - copied)
+                        + " were up to date.");
+            }
+        } catch (IOException e) {
+            throw new MojoExecutionException(
+                    "Failure occurred while linking the cached artifacts", e);
+        }
+    }
+
+    private static FileLinks.Materialization materialize(
+            ArtifactTracker pTracker, Materializer pMaterializer)
+            throws IOException {
+        try (BuildEvents.Event event = BuildEvents
+                .begin(BuildEvents.Kind.CACHE_COPY)) {
+            FileLinks.Materialization materialization = pMaterializer
+                    .materialize();
+            if (event.isRecording()) {
+                event.artifact(BuildEvents.coordinatesOf(pTracker))
+                        .bytes(Files.size(pTracker.getCachedFilePath()))
+                        .outcome(outcomeOf(materialization));
+            }
+            return materialization;
+        }
+    }
+
+    private static String outcomeOf(
+            FileLinks.Materialization pMaterialization) {
+        switch (pMaterialization) {
+        case KEPT:
+            return BuildEvents.OUTCOME_HIT;
+        case LINKED:
+            return BuildEvents.OUTCOME_LINKED;
+        default:
+            return BuildEvents.OUTCOME_COPIED;
+        }
+    }
 
+    @FunctionalInterface
+    private interface Materializer {
+        FileLinks.Materialization materialize() throws IOException;
     }
 }
@@ -13,32 +13,26 @@ package br.com.c8tech.tools.maven.plugin.subsystems;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.Optional;
 
 import javax.inject.Inject;
 
-import org.apache.aries.subsystem.core.archive.ExportPackageHeader;
 import org.apache.aries.subsystem.core.archive.GenericHeader;
-import org.apache.aries.subsystem.core.archive.ImportPackageHeader;
-import org.apache.aries.subsystem.core.archive.PreferredProviderHeader;
-import org.apache.aries.subsystem.core.archive.ProvideCapabilityHeader;
-import org.apache.aries.subsystem.core.archive.RequireBundleHeader;
-import org.apache.aries.subsystem.core.archive.RequireCapabilityHeader;
 import org.apache.aries.subsystem.core.archive.SubsystemContentHeader;
-import org.apache.aries.subsystem.core.archive.SubsystemContentHeader.Clause;
-import org.apache.aries.subsystem.core.archive.SubsystemExportServiceHeader;
-import org.apache.aries.subsystem.core.archive.SubsystemImportServiceHeader;
 import org.apache.aries.subsystem.core.archive.SubsystemManifest;
 import org.apache.aries.subsystem.core.archive.SubsystemManifest.Builder;
 import org.apache.aries.subsystem.core.archive.SubsystemManifestVersionHeader;
 import org.apache.aries.subsystem.core.archive.SubsystemTypeHeader;
-import org.apache.aries.subsystem.core.archive.VersionRangeAttribute;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
@@ -47,6 +41,7 @@ import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.plugins.annotations.ResolutionScope;
 import org.apache.maven.project.MavenProject;
 import org.osgi.framework.Constants;
+import org.osgi.framework.VersionRange;
 import org.osgi.service.subsystem.SubsystemConstants;
 
 import br.com.c8tech.tools.maven.osgi.lib.mojo.CommonMojoConstants;
@@ -55,8 +50,9 @@ import br.com.c8tech.tools.maven.osgi.lib.mojo.handlers.AbstractSubsystemArtifac
 import br.com.c8tech.tools.maven.osgi.lib.mojo.handlers.BundleArtifactHandler;
 import br.com.c8tech.tools.maven.osgi.lib.mojo.incremental.ArtifactTracker;
 import br.com.c8tech.tools.maven.osgi.lib.mojo.incremental.ArtifactTrackerManager;
-import br.com.c8tech.tools.maven.osgi.lib.mojo.incremental.ArtifactTrackerManagerBuilder;
 import br.com.c8tech.tools.maven.plugin.subsystems.PojoSubsystemManifestConfiguration.ProvisionPolicy;
+import io.takari.incrementalbuild.Incremental;
+import io.takari.incrementalbuild.Incremental.Configuration;
 import io.takari.incrementalbuild.Output;
 import io.takari.incrementalbuild.aggregator.AggregatorBuildContext;
 import io.takari.incrementalbuild.aggregator.InputSet;
@@ -158,6 +154,19 @@ public class MojoGenerateSubsystemManifest extends AbstractSubsystemMojo {
     @Parameter(required = true, defaultValue = "true")
     private boolean allowComputeSubsystemContent;
 
+    /**
+     * The minimum number of artifacts a subsystem must have before their
+     * headers are extracted by up to <code>parallelThreads</code> threads.
+     * Smaller subsystems are always processed serially, as the cost of
+     * dispatching the work would exceed the parsing itself.
+     * <p>
+     * The generated manifest is the same whatever the number of threads.
+     */
+    @Parameter(defaultValue = "256",
+            property = "subsystem.parallelExtractionThreshold")
+    @Incremental(configuration = Configuration.ignore)
+    private int parallelExtractionThreshold;
+
     /**
      * Subsystem manifest generation instructions.
      * <p>
@@ -178,11 +187,10 @@ public class MojoGenerateSubsystemManifest extends AbstractSubsystemMojo {
     private void buidSubsystemManifestFromParametersOnly(Output<File> pOutput)
             throws IOException {
 
-        Set<File> files = new HashSet<>();
-
         final String subsystemContent = manifest.getSubsystemContent();
         if (subsystemContent != null && !subsystemContent.isEmpty()) {
-            generateSubsystemManifestOutput(pOutput, files, null);
+            generateSubsystemManifestOutput(pOutput, Collections.emptyList(),
+                    Collections.emptyList(), null);
         } else {
             getLog().warn("No content was set for the subsystem ");
         }
@@ -191,101 +199,22 @@ public class MojoGenerateSubsystemManifest extends AbstractSubsystemMojo {
                         + pOutput.getResource());
     }
 
-    private SubsystemContentHeader buildSubsystemContentHeader(
-            Collection<SubsystemContentHeader.Clause> pSubsystemContentHeaderClauses,
-            Collection<SubsystemContentHeader.Clause> pCollection) {
-
-        SubsystemContentHeader subsystemContentHeader = null;
-        Set<SubsystemContentHeader.Clause> newSet = new HashSet<>(
-                pSubsystemContentHeaderClauses);
-        if (pCollection != null) {
-            newSet.addAll(pCollection);
-        }
-        String joined = newSet.stream().map(Object::toString)
-                .collect(Collectors.joining(", "));
-        if (!joined.isEmpty())
-            subsystemContentHeader = new SubsystemContentHeader(joined);
-        return subsystemContentHeader;
-    }
-
-    private ExportPackageHeader buildSubsystemExportPackageHeader(
-            Set<String> pExportPackageHeaderClauses) {
-        ExportPackageHeader exportPackageHeader = null;
-        if (isCompositeSubsystemProject()) {
-            String exportPackage = manifest.getExportPackage();
-            if (exportPackage != null && !exportPackage.isEmpty()) {
-                ExportPackageHeader header = new ExportPackageHeader(
-                        exportPackage);
-                pExportPackageHeaderClauses.add(header.toString());
-            }
-
-            String joined = pExportPackageHeaderClauses.stream()
-                    .map(Object::toString).collect(Collectors.joining(", "));
-
-            if (!joined.isEmpty())
-                exportPackageHeader = new ExportPackageHeader(joined);
-        }
-        return exportPackageHeader;
-    }
-
-    private SubsystemExportServiceHeader buildSubsystemExportServiceHeader(
-            Set<String> pExportServiceHeaderClauses) {
-        SubsystemExportServiceHeader subsystemExportServiceHeader = null;
-        if (isCompositeSubsystemProject()) {
-            String exportService = manifest.getSubsystemExportService();
-            if (exportService != null && !exportService.isEmpty()) {
-                SubsystemExportServiceHeader clause = new SubsystemExportServiceHeader(
-                        exportService);
-                pExportServiceHeaderClauses.add(clause.toString());
-            }
-
-            String joined = pExportServiceHeaderClauses.stream()
-                    .map(Object::toString).collect(Collectors.joining(", "));
-            if (!joined.isEmpty())
-                subsystemExportServiceHeader = new SubsystemExportServiceHeader(
-                        joined);
-        }
-        return subsystemExportServiceHeader;
-    }
-
-    private ImportPackageHeader buildSubsystemImportPackageHeader(
-            Set<String> pImportPackageHeaderClauses) {
-        ImportPackageHeader importPackageHeader = null;
-        if (isCompositeSubsystemProject()) {
-            String importPackage = manifest.getImportPackage();
-            if (importPackage != null && !importPackage.isEmpty()) {
-                ImportPackageHeader clause = new ImportPackageHeader(
-                        importPackage);
-                pImportPackageHeaderClauses.add(clause.toString());
-            }
+    private static ClauseListHeader buildSubsystemContentHeader(
+            Collection<ManifestClause> pComputedClauses,
+            Collection<ManifestClause> pConfiguredClauses) {
 
-            String joined = pImportPackageHeaderClauses.stream()
-                    .map(Object::toString).collect(Collectors.joining(", "));
-            if (!joined.isEmpty())
-                importPackageHeader = new ImportPackageHeader(joined);
+        // a computed clause replaces the configured one of the same content
+        Map<String, ManifestClause> clauses = new LinkedHashMap<>();
+        for (ManifestClause clause : pConfiguredClauses) {
+            clauses.putIfAbsent(clause.getPath(), clause);
         }
-        return importPackageHeader;
-    }
-
-    private SubsystemImportServiceHeader buildSubsystemImportServiceHeader(
-            Set<String> pImportServiceHeaderClauses) {
-        SubsystemImportServiceHeader subsystemImportServiceHeader = null;
-        if (isCompositeSubsystemProject()) {
-            String importService = manifest.getSubsystemImportService();
-            if (importService != null && !importService.isEmpty()) {
-                SubsystemImportServiceHeader clause = new SubsystemImportServiceHeader(
-                        importService);
-                pImportServiceHeaderClauses.add(clause.toString());
-            }
-
-            String joined = pImportServiceHeaderClauses.stream()
-                    .map(Object::toString).collect(Collectors.joining(", "));
-            if (!joined.isEmpty())
-                subsystemImportServiceHeader = new SubsystemImportServiceHeader(
-                        joined);
+        for (ManifestClause clause : pComputedClauses) {
+            clauses.put(clause.getPath(), clause);
         }
-
-        return subsystemImportServiceHeader;
+        // the clauses are sorted when the manifest is written
+        return clauses.isEmpty() ? null
+                : new ClauseListHeader(SubsystemConstants.SUBSYSTEM_CONTENT,
+                        new ArrayList<>(clauses.values()));
     }
 
     private void buildSubsystemManifestCategory(
@@ -392,81 +321,6 @@ public class MojoGenerateSubsystemManifest extends AbstractSubsystemMojo {
                 new SubsystemTypeHeader.Clause(clauseStr.toString())));
     }
 
-    private PreferredProviderHeader buildSubsystemPreferredProviderHeader(
-            Set<String> pPreferredProviderHeaderClauses) {
-        PreferredProviderHeader preferredProviderHeader = null;
-
-        if (isCompositeSubsystemProject()) {
-            String requireBundle = manifest.getPreferredProvider();
-            if (requireBundle != null && !requireBundle.isEmpty()) {
-                PreferredProviderHeader clause = new PreferredProviderHeader(
-                        requireBundle);
-                pPreferredProviderHeaderClauses.add(clause.toString());
-            }
-
-            String joined = pPreferredProviderHeaderClauses.stream()
-                    .map(Object::toString).collect(Collectors.joining(", "));
-            if (!joined.isEmpty())
-                preferredProviderHeader = new PreferredProviderHeader(joined);
-        }
-        return preferredProviderHeader;
-    }
-
-    private ProvideCapabilityHeader buildSubsystemProvideCapabilityHeader(
-            Set<String> pProvideCapabilityHeaderClauses) {
-        ProvideCapabilityHeader provideCapabilityHeader = null;
-        if (isCompositeSubsystemProject()) {
-            String provideCapability = manifest.getProvideCapability();
-            if (provideCapability != null && !provideCapability.isEmpty()) {
-                ProvideCapabilityHeader clause = new ProvideCapabilityHeader(
-                        provideCapability);
-                pProvideCapabilityHeaderClauses.add(clause.toString());
-            }
-            String joined = pProvideCapabilityHeaderClauses.stream()
-                    .map(Object::toString).collect(Collectors.joining(", "));
-            if (!joined.isEmpty())
-                provideCapabilityHeader = new ProvideCapabilityHeader(joined);
-        }
-        return provideCapabilityHeader;
-    }
-
-    private RequireBundleHeader buildSubsystemRequireBundleHeader(
-            Set<String> pRequireBundleHeaderClauses) {
-        RequireBundleHeader requireBundleHeader = null;
-
-        if (isCompositeSubsystemProject()) {
-            String requireBundle = manifest.getRequireBundle();
-            if (requireBundle != null && !requireBundle.isEmpty()) {
-                RequireBundleHeader clause = new RequireBundleHeader(
-                        requireBundle);
-                pRequireBundleHeaderClauses.add(clause.toString());
-            }
-            String joined = pRequireBundleHeaderClauses.stream()
-                    .map(Object::toString).collect(Collectors.joining(", "));
-            if (!joined.isEmpty())
-                requireBundleHeader = new RequireBundleHeader(joined);
-        }
-        return requireBundleHeader;
-    }
-
-    private RequireCapabilityHeader buildSubsystemRequireCapabilityHeader(
-            Set<String> pRequireCapabilityHeaderClauses) {
-        RequireCapabilityHeader requireCapabilityHeader = null;
-        if (isCompositeSubsystemProject()) {
-            String requireCapability = manifest.getRequireCapability();
-            if (requireCapability != null && !requireCapability.isEmpty()) {
-                RequireCapabilityHeader clause = new RequireCapabilityHeader(
-                        requireCapability);
-                pRequireCapabilityHeaderClauses.add(clause.toString());
-            }
-            String joined = pRequireCapabilityHeaderClauses.stream()
-                    .map(Object::toString).collect(Collectors.joining(", "));
-            if (!joined.isEmpty())
-                requireCapabilityHeader = new RequireCapabilityHeader(joined);
-        }
-        return requireCapabilityHeader;
-    }
-
     @Override
     public void executeMojo()
             throws MojoExecutionException, MojoFailureException {
@@ -483,151 +337,106 @@ public class MojoGenerateSubsystemManifest extends AbstractSubsystemMojo {
 
         Path outputFile = getSubsystemManifestFile();
 
-        if (getManifestScopes().isEmpty() || getManifestScopes()
-                .contains(CommonMojoConstants.EMPTY_VALUE)) {
+        try {
+            if (getManifestScopes().isEmpty() || getManifestScopes()
+                    .contains(CommonMojoConstants.EMPTY_VALUE)) {
+
+                // no dependencies will be evaluated
+                getLog().warn("The parameter manifestScopes was not declared. "
+                        + "Building subsystem manifest based on the subsystemContent parameter only.");
+                prepareGenerateSubsystemManifestFromContentParameterOnly(
+                        manifestAggregatorBuildContext.newInputSet(),
+                        outputFile);
+                return;
+            }
 
-            // no dependencies will be evaluated
-            getLog().warn("The parameter manifestScopes was not declared. "
-                    + "Building subsystem manifest based on the subsystemContent parameter only.");
-            prepareGenerateSubsystemManifestFromContentParameterOnly(
-                    manifestAggregatorBuildContext.newInputSet(), outputFile);
-            return;
-        }
+            ArtifactTrackerManager artifactTrackerManager = lookupArtifactTrackerManager(
+                    true);
 
-        ArtifactTrackerManager artifactTrackerManager = ArtifactTrackerManagerBuilder
-                .newBuilder(getMavenSession(), getCacheDirectory())
-                .withGroupingByTypeDirectory(true).withVerbose(isVerbose())
-                .withPreviousCachingRequired(true).mavenSetup()
-                .withDependenciesHelper(getDependenciesHelper())
-                .withRepositorySystem(getRepositorySystem()).workspaceSetup()
-                .withAssemblyUrlProtocolAllowed(isWorkspaceResolutionAllowed())
-                .withPackOnTheFlyAllowed(isWorkspaceResolutionAllowed())
-                .endWorkspaceSetup().mavenFiltering()
-                .withOptional(isOptionalConsidered())
-                .withTransitive(isTransitiveConsidered())
-                .withScopes(getManifestScopes())
-                .withScopes(getEmbeddableScopes())
-                .withMavenArtifactSet(getMavenArtifactSet())
-                .withExcludedDependencies(getExcludedArtifacts())
-                .endMavenFiltering().endMavenSetup().build();
-
-        artifactTrackerManager.resolveMavenArtifacts(getEmbeddableScopes());
-
-        if (isVerbose()) {
-            getLog().info(
-                    "Registering the artifacts into the OSGi Subsystem manifest generation incremental build context.");
+            if (isVerbose()) {
+                getLog().info(
+                        "Registering the artifacts into the OSGi Subsystem manifest generation incremental build context.");
+            }
+            prepareForSubsystemManifestGeneration(outputFile,
+                    artifactTrackerManager);
+        } finally {
+            releaseArtifactTrackerManager("package", "packESA");
+            writeBuildTimings();
         }
-        prepareForSubsystemManifestGeneration(outputFile,
-                artifactTrackerManager);
     }
 
     /**
+     * Parses the configured Subsystem-Content clauses. A clause without a
+     * version gets the fixed range of the version of the artifact with the
+     * same id, and the type and resolution defaults are made explicit.
      *
-     * @param pArtifactTrackerManager
+     * @param pArtifactTrackerIndex
+     *                                   The index of the artifacts.
      * @param subsystemContentConfig
-     * @param path
-     * @return
+     *                                   The configured header value.
+     * @return the clauses, in the configured order.
      */
-    private Set<SubsystemContentHeader.Clause> extractContentClausesFromString(
-            ArtifactTrackerManager pArtifactTrackerManager,
+    private List<ManifestClause> extractContentClausesFromString(
+            ArtifactTrackerIndex pArtifactTrackerIndex,
             final String subsystemContentConfig) {
-        Set<SubsystemContentHeader.Clause> clauses = new HashSet<>();
-
-        if (subsystemContentConfig != null
-                && !subsystemContentConfig.isEmpty()) {
-            SubsystemContentHeader header = new SubsystemContentHeader(
-                    subsystemContentConfig);
-            for (Clause clause : header.getClauses()) {
-                String version = clause.getVersionRange().toString();
+        List<ManifestClause> clauses = new ArrayList<>();
+
+        for (ManifestClause parsed : ManifestHeaderParser
+                .parse(subsystemContentConfig)) {
+            for (ManifestClause clause : parsed.splitPaths()) {
+                String version = clause
+                        .getAttribute(SubsystemContentHeader.Clause.ATTRIBUTE_VERSION);
+                version = version == null ? ZERO
+                        : new VersionRange(version).toString();
                 if (ZERO.equals(version)) {
-                    ArtifactTracker tracker = pArtifactTrackerManager
-                            .searchByArtifactId(clause.getSymbolicName());
+                    ArtifactTracker tracker = pArtifactTrackerIndex
+                            .searchByArtifactId(clause.getPath());
                     if (tracker == null) {
                         throw new IllegalArgumentException("The version '"
                                 + version + "', for artifact '"
-                                + clause.getSymbolicName()
+                                + clause.getPath()
                                 + "', is not valid. A subsystem content must have a valid fixed version range.");
                     } else {
                         version = tracker.getVersion();
                     }
                 }
-                StringBuilder newClause = new StringBuilder(clause.getPath());
-                newClause.append(";version=");
-                newClause.append(computeFixedRange(version));
-                newClause.append(";");
-                newClause.append(
-                        clause.getDirectives().stream().map(Object::toString)
-                                .collect(Collectors.joining(";")));
-                newClause.append(";");
-                newClause.append(clause.getAttributes().stream()
-                        .filter(p -> !(p instanceof VersionRangeAttribute))
-                        .map(Object::toString)
-                        .collect(Collectors.joining(";")));
-                Clause processedClause = new SubsystemContentHeader.Clause(
-                        newClause.toString());
-                clauses.add(processedClause);
+                clause = clause.withAttribute(
+                        SubsystemContentHeader.Clause.ATTRIBUTE_VERSION,
+                        computeFixedRange(version));
+                if (clause.getAttribute(
+                        SubsystemContentHeader.Clause.ATTRIBUTE_TYPE) == null) {
+                    clause = clause.withAttribute(
+                            SubsystemContentHeader.Clause.ATTRIBUTE_TYPE,
+                            CommonMojoConstants.OSGI_BUNDLES_TYPE);
+                }
+                if (clause.getDirective(
+                        SubsystemContentHeader.Clause.DIRECTIVE_RESOLUTION) == null) {
+                    clause = clause.withDirective(
+                            SubsystemContentHeader.Clause.DIRECTIVE_RESOLUTION,
+                            "mandatory");
+                }
+                clauses.add(clause);
             }
         }
         return clauses;
     }
 
-    private void extractExportPackageHeader(final String pHeaderValue,
-            Set<String> pExportPackageHeaderClauses) {
-        if (!isCompositeSubsystemProject())
-            return;
-        if (allowComputeExportPackages && pHeaderValue != null) {
-
-            String processed = pHeaderValue.replaceAll("(;uses:=\"[^\\\"]*\")",
-                    "");
-
-            ExportPackageHeader header = new ExportPackageHeader(processed);
-            header.getClauses().forEach(
-                    c -> pExportPackageHeaderClauses.add(c.toString()));
-        }
-    }
-
-    private void extractImportPackageHeader(final String pHeaderValue,
-            Set<String> pImportPackageHeaderClauses) {
-        if (!isCompositeSubsystemProject())
-            return;
-        if (allowComputeImportPackages && pHeaderValue != null) {
-            ImportPackageHeader header = new ImportPackageHeader(pHeaderValue);
-            header.getClauses().forEach(
-                    c -> pImportPackageHeaderClauses.add(c.toString()));
-        }
-    }
-
-    // private void extractPreferredProviderHeader(String pHeaderValue,
-    // Set<String> pPreferedProviderHeaderClauses) {
-    //
-    // if (!isCompositeSubsystemProject())
-    // return;
-    // if (allowComputePreferredProvider && pHeaderValue != null) {
-    // PreferredProviderHeader header = new PreferredProviderHeader(
-    // pHeaderValue);
-    // header.getClauses().forEach(
-    // c -> pPreferedProviderHeaderClauses.add(c.toString()));
-    // }
-    // }
-
-    private void extractRequireBundleHeader(String pHeaderValue,
-            Set<String> pRequireBundleHeaderClauses) {
-        if (!isCompositeSubsystemProject())
-            return;
-        if (allowComputeRequireBundle && pHeaderValue != null) {
-            RequireBundleHeader header = new RequireBundleHeader(pHeaderValue);
-            header.getClauses().forEach(
-                    c -> pRequireBundleHeaderClauses.add(c.toString()));
+    private static long headersLength(Map<String, String> pManifestHeaders) {
+        long length = 0;
+        if (pManifestHeaders != null) {
+            for (String value : pManifestHeaders.values()) {
+                length += value == null ? 0 : value.length();
+            }
         }
+        return length;
     }
 
-    private void extractSubsystemContentHeader(
+    private ManifestClause extractSubsystemContentHeader(
             final ArtifactTracker pArtifactTracker,
             final Map<String, String> pManifestHeaders,
-            final Set<SubsystemContentHeader.Clause> pContentsFromConfiguration,
-            final Map<String, SubsystemContentHeader.Clause> pSubsystemContentHeaderClauses) {
+            final Map<String, ManifestClause> pContentsFromConfiguration) {
 
-        SubsystemContentHeader.Clause clause = null;
+        ManifestClause clause = null;
 
         if (pArtifactTracker
                 .getTypeHandler() instanceof BundleArtifactHandler) {
@@ -642,10 +451,8 @@ public class MojoGenerateSubsystemManifest extends AbstractSubsystemMojo {
                         pArtifactTracker.isOptional(),
                         pManifestHeaders.get(
                                 CommonMojoConstants.OSGI_BUNDLE_HEADER_FRAGMENT_HOST) != null,
-                        pContentsFromConfiguration.stream()
-                                .filter(t -> t.getSymbolicName().equals(key))
-                                .findFirst());
-                pSubsystemContentHeaderClauses.put(key, clause);
+                        Optional.ofNullable(
+                                pContentsFromConfiguration.get(key)));
             }
         } else
             if (pArtifactTracker
@@ -665,67 +472,16 @@ public class MojoGenerateSubsystemManifest extends AbstractSubsystemMojo {
                     }
                     clause = fullfillSubsystemDependencyClause(ssn, sversion,
                             stype, pArtifactTracker.isOptional(),
-                            pContentsFromConfiguration.stream().filter(
-                                    t -> t.getSymbolicName().equals(key))
-                                    .findFirst());
-
-                    pSubsystemContentHeaderClauses.put(key, clause);
+                            Optional.ofNullable(
+                                    pContentsFromConfiguration.get(key)));
                 }
             }
-    }
-
-    private void extractSubsystemExportServiceHeader(String pHeaderValue,
-            Set<String> pExportServiceHeaderClauses) {
-        if (!isCompositeSubsystemProject())
-            return;
-        if (allowComputeExportServices && pHeaderValue != null) {
-            SubsystemExportServiceHeader header = new SubsystemExportServiceHeader(
-                    pHeaderValue);
-            header.getClauses().forEach(
-                    c -> pExportServiceHeaderClauses.add(c.toString()));
-        }
-    }
-
-    private void extractSubsystemImportServiceHeader(final String pHeaderValue,
-            Set<String> pImportServiceHeaderClauses) {
-        if (!isCompositeSubsystemProject())
-            return;
-        if (allowComputeImportServices && pHeaderValue != null) {
-            SubsystemImportServiceHeader header = new SubsystemImportServiceHeader(
-                    pHeaderValue);
-            header.getClauses().forEach(
-                    c -> pImportServiceHeaderClauses.add(c.toString()));
-        }
-
-    }
-
-    private void extractSubsystemProvideCapabilityHeader(String pHeaderValue,
-            Set<String> pProvideCapabilityHeaderClauses) {
-        if (!isCompositeSubsystemProject())
-            return;
-        if (allowComputeGenericCapabilities && pHeaderValue != null) {
-            ProvideCapabilityHeader header = new ProvideCapabilityHeader(
-                    pHeaderValue);
-
-            header.getClauses().forEach(
-                    c -> pProvideCapabilityHeaderClauses.add(c.toString()));
-        }
-    }
-
-    private void extractSubsystemRequireCapabilityHeader(String pHeaderValue,
-            Set<String> pRequireCapabilityHeaderClauses) {
-        if (!isCompositeSubsystemProject())
-            return;
-        if (allowComputeGenericRequirements && pHeaderValue != null) {
-            RequireCapabilityHeader header = new RequireCapabilityHeader(
-                    pHeaderValue);
-            header.getClauses().forEach(
-                    c -> pRequireCapabilityHeaderClauses.add(c.toString()));
-        }
+        return clause;
     }
 
     private void generateSubsystemManifestOutput(Output<File> pOutputFile,
-            Iterable<File> pInputFiles,
+            List<ArtifactTracker> pArtifactTrackers,
+            List<Map<String, String>> pAllManifestHeaders,
             ArtifactTrackerManager pArtifactTrackerManager) throws IOException {
 
         final SubsystemManifest.Builder subsystemManifestBuilder = new SubsystemManifest.Builder();
@@ -733,102 +489,112 @@ public class MojoGenerateSubsystemManifest extends AbstractSubsystemMojo {
         // build body of the manifest. it doesn't need have any contents
         buildSubsystemManifestMainBody(subsystemManifestBuilder);
 
-        Set<SubsystemContentHeader.Clause> contentsFromConfiguration = extractContentClausesFromString(
-                pArtifactTrackerManager, manifest.getSubsystemContent());
-        Map<String, SubsystemContentHeader.Clause> subsystemContentHeaderClauses = new HashMap<>();
-        Set<String> exportPackageHeaderClauses = new HashSet<>();
-        Set<String> subsystemExportServiceHeaderClauses = new HashSet<>();
-        Set<String> importPackageHeaderClauses = new HashSet<>();
-        Set<String> subsystemImportServiceHeaderClauses = new HashSet<>();
-        Set<String> provideCapabilityHeaderClauses = new HashSet<>();
-        Set<String> requireCapabilityHeaderClauses = new HashSet<>();
-        Set<String> requireBundleHeaderClauses = new HashSet<>();
-        Set<String> preferredProviderHeaderClauses = new HashSet<>();
-
-        for (File processingArtifactFile : pInputFiles) {
-            ArtifactTracker artifactProperty = pArtifactTrackerManager
-                    .searchByPath(processingArtifactFile.getPath());
-            if (artifactProperty == null) {
-                getLog().warn("Ignoring file '" + processingArtifactFile
-                        + "' due a missing metadata.");
-                continue;
-            }
-            Map<String, String> manifestHeaders = artifactProperty
-                    .getManifestHeaders();
+        // built once, so no lookup has to scan the trackers or the clauses
+        ArtifactTrackerIndex artifactTrackerIndex = new ArtifactTrackerIndex(
+                pArtifactTrackerManager);
+        List<ManifestClause> contentsFromConfiguration = extractContentClausesFromString(
+                artifactTrackerIndex, manifest.getSubsystemContent());
+        Map<String, ManifestClause> contentsBySymbolicName = new HashMap<>();
+        for (ManifestClause clause : contentsFromConfiguration) {
+            contentsBySymbolicName.putIfAbsent(clause.getPath(), clause);
+        }
+        Map<String, ManifestClause> subsystemContentHeaderClauses = new LinkedHashMap<>();
+        CompositeHeadersAggregator compositeHeaders = newCompositeHeadersAggregator();
 
-            if (allowComputeSubsystemContent)
-                extractSubsystemContentHeader(artifactProperty, manifestHeaders,
-                        contentsFromConfiguration,
-                        subsystemContentHeaderClauses);
+        BuildTimings.Phase headerExtraction = getBuildTimings()
+                .phase(BuildTimings.HEADER_EXTRACTION);
+        try {
+            List<Integer> indexes = new ArrayList<>(pArtifactTrackers.size());
+            for (int i = 0; i < pArtifactTrackers.size(); i++) {
+                indexes.add(i);
+            }
+            int threads = pArtifactTrackers.size() >= parallelExtractionThreshold
+                    ? getParallelThreads()
+                    : 1;
+            boolean composite = isCompositeSubsystemProject();
+            // the composite headers are accumulated concurrently and sorted when
+            // built, the content clauses are collected in the artifacts order
+            List<ManifestClause> contentClauses = ParallelTasks
+                    .map(indexes, threads, i -> {
+                        Map<String, String> manifestHeaders = pAllManifestHeaders
+                                .get(i);
+                        try (BuildEvents.Event event = BuildEvents
+                                .begin(BuildEvents.Kind.HEADER_PARSE)) {
+                            if (event.isRecording()) {
+                                event.artifact(BuildEvents.coordinatesOf(
+                                        pArtifactTrackers.get(i)))
+                                        .bytes(headersLength(manifestHeaders));
+                            }
+                            if (composite) {
+                                compositeHeaders
+                                        .addArtifactHeaders(manifestHeaders);
+                            }
+                            return allowComputeSubsystemContent
+                                    ? extractSubsystemContentHeader(
+                                            pArtifactTrackers.get(i),
+                                            manifestHeaders,
+                                            contentsBySymbolicName)
+                                    : null;
+                        }
+                    });
+            for (ManifestClause clause : contentClauses) {
+                if (clause != null) {
+                    subsystemContentHeaderClauses.put(clause.getPath(), clause);
+                }
+            }
+            subsystemManifestBuilder.header(buildSubsystemContentHeader(
+                    subsystemContentHeaderClauses.values(),
+                    contentsFromConfiguration));
 
             if (isCompositeSubsystemProject()) {
+                subsystemManifestBuilder.header(compositeHeaders.buildExportServiceHeader(
+                        manifest.getSubsystemExportService()));
 
-                extractImportPackageHeader(manifestHeaders.get(IMPORTPACKAGE),
-                        importPackageHeaderClauses);
-
-                extractExportPackageHeader(manifestHeaders.get(EXPORTPACKAGE),
-                        exportPackageHeaderClauses);
+                subsystemManifestBuilder.header(compositeHeaders.buildImportServiceHeader(
+                        manifest.getSubsystemImportService()));
 
-                extractSubsystemImportServiceHeader(
-                        manifestHeaders.get(IMPORTSERVICE),
-                        subsystemImportServiceHeaderClauses);
+                subsystemManifestBuilder.header(compositeHeaders.buildProvideCapabilityHeader(
+                        manifest.getProvideCapability()));
 
-                extractSubsystemExportServiceHeader(
-                        manifestHeaders.get(EXPORTSERVICE),
-                        subsystemExportServiceHeaderClauses);
+                subsystemManifestBuilder.header(compositeHeaders.buildRequireCapabilityHeader(
+                        manifest.getRequireCapability()));
 
-                extractSubsystemRequireCapabilityHeader(
-                        manifestHeaders.get(REQUIRE_CAPABILITY),
-                        requireCapabilityHeaderClauses);
+                subsystemManifestBuilder.header(compositeHeaders.buildImportPackageHeader(
+                        manifest.getImportPackage()));
 
-                extractSubsystemProvideCapabilityHeader(
-                        manifestHeaders.get(PROVIDE_CAPABILITY),
-                        provideCapabilityHeaderClauses);
+                subsystemManifestBuilder.header(compositeHeaders.buildExportPackageHeader(
+                        manifest.getExportPackage()));
 
-                extractRequireBundleHeader(manifestHeaders.get(REQUIRE_BUNDLE),
-                        requireBundleHeaderClauses);
+                subsystemManifestBuilder.header(compositeHeaders.buildRequireBundleHeader(
+                        manifest.getRequireBundle()));
 
-                // extractPreferredProviderHeader(
-                // manifestHeaders.get(PREFERRED_PROVIDER),
-                // preferredProviderHeaderClauses);
+                subsystemManifestBuilder.header(compositeHeaders.buildPreferredProviderHeader(
+                        manifest.getPreferredProvider()));
 
+                for (String conflict : compositeHeaders.getConflicts()) {
+                    getLog().warn(conflict);
+                }
             }
+        } finally {
+            headerExtraction.close();
         }
-        subsystemManifestBuilder.header(buildSubsystemContentHeader(
-                subsystemContentHeaderClauses.values(),
-                contentsFromConfiguration));
-
-        if (isCompositeSubsystemProject()) {
-            subsystemManifestBuilder.header(buildSubsystemExportServiceHeader(
-                    subsystemExportServiceHeaderClauses));
-
-            subsystemManifestBuilder.header(buildSubsystemImportServiceHeader(
-                    subsystemImportServiceHeaderClauses));
-
-            subsystemManifestBuilder
-                    .header(buildSubsystemProvideCapabilityHeader(
-                            provideCapabilityHeaderClauses));
-
-            subsystemManifestBuilder
-                    .header(buildSubsystemRequireCapabilityHeader(
-                            requireCapabilityHeaderClauses));
-
-            subsystemManifestBuilder.header(buildSubsystemImportPackageHeader(
-                    importPackageHeaderClauses));
-
-            subsystemManifestBuilder.header(buildSubsystemExportPackageHeader(
-                    exportPackageHeaderClauses));
-
-            subsystemManifestBuilder.header(buildSubsystemRequireBundleHeader(
-                    requireBundleHeaderClauses));
-
-            subsystemManifestBuilder
-                    .header(buildSubsystemPreferredProviderHeader(
-                            preferredProviderHeaderClauses));
+        BuildTimings.Phase manifestWrite = getBuildTimings()
+                .phase(BuildTimings.MANIFEST_WRITE);
+        try {
+            SubsystemManifest subsystemManifestPojo = subsystemManifestBuilder
+                    .build();
+            boolean changed = UnchangedFileOutputStream.write(
+                    pOutputFile.getResource().toPath(),
+                    pOutputFile::newOutputStream,
+                    out -> SubsystemManifestWriter.write(subsystemManifestPojo,
+                            out));
+            if (!changed && isVerbose()) {
+                getLog().info(
+                        "The generated Subsystem manifest is unchanged, keeping the existing file.");
+            }
+        } finally {
+            manifestWrite.close();
         }
-        SubsystemManifest subsystemManifestPojo = subsystemManifestBuilder
-                .build();
-        subsystemManifestPojo.write(pOutputFile.newOutputStream());
 
     }
 
@@ -836,22 +602,110 @@ public class MojoGenerateSubsystemManifest extends AbstractSubsystemMojo {
         return TYPE_COMPOSITE.equals(getProject().getPackaging());
     }
 
+    private CompositeHeadersAggregator newCompositeHeadersAggregator() {
+        return new CompositeHeadersAggregator()
+                .withExportPackages(allowComputeExportPackages)
+                .withExportServices(allowComputeExportServices)
+                .withGenericCapabilities(allowComputeGenericCapabilities)
+                .withGenericRequirements(allowComputeGenericRequirements)
+                .withImportPackages(allowComputeImportPackages)
+                .withImportServices(allowComputeImportServices)
+                .withRequireBundle(allowComputeRequireBundle);
+    }
+
+    /**
+     * Returns the artifact's data, besides its manifest headers, that the
+     * generated manifest depends on.
+     */
+    private static String describeArtifact(ArtifactTracker pArtifactTracker) {
+        return BuildEvents.coordinatesOf(pArtifactTracker) + ":"
+                + pArtifactTracker.getType() + ":"
+                + pArtifactTracker.isOptional() + ":"
+                + (pArtifactTracker.getTypeHandler() == null ? ""
+                        : pArtifactTracker.getTypeHandler().getClass()
+                                .getName());
+    }
+
+    private List<String> getConsumedHeaderNames() {
+        List<String> names = new ArrayList<>(Arrays.asList(
+                CommonMojoConstants.OSGI_BUNDLE_HEADER_SN,
+                CommonMojoConstants.OSGI_BUNDLE_HEADER_VERSION,
+                CommonMojoConstants.OSGI_BUNDLE_HEADER_FRAGMENT_HOST,
+                CommonMojoConstants.OSGI_SUBSYSTEM_SN,
+                CommonMojoConstants.OSGI_SUBSYSTEM_VERSION,
+                CommonMojoConstants.OSGI_SUBSYSTEM_TYPE));
+        if (isCompositeSubsystemProject()) {
+            names.addAll(newCompositeHeadersAggregator()
+                    .getConsumedHeaderNames());
+        }
+        return names;
+    }
+
+    /**
+     * Registers, as the inputs of the manifest generation, the digests of the
+     * headers read from each artifact file instead of the artifact files.
+     * So the manifest is only generated again when any of those headers, or
+     * the set of artifacts, has changed.
+     */
     private void prepareForSubsystemManifestGeneration(final Path outputFile,
             final ArtifactTrackerManager pArtifactTrackerManager)
             throws MojoExecutionException {
-        InputSet manifestInputSet = registerArtifactsIntoAggregatorBuildContext(
-                pArtifactTrackerManager.getAllArtifactTrackers(),
-                manifestAggregatorBuildContext, true);
-
         try {
+            List<ArtifactTracker> artifactTrackers = new ArrayList<>();
+            for (ArtifactTracker tracker : pArtifactTrackerManager
+                    .getAllArtifactTrackers()) {
+                if (getArtifactFile(tracker) != null) {
+                    artifactTrackers.add(tracker);
+                }
+            }
+            List<Map<String, String>> allManifestHeaders = readManifestHeaders(
+                    artifactTrackers);
+
+            InputSet manifestInputSet = manifestAggregatorBuildContext
+                    .newInputSet();
+            // the digest file name of each artifact's position on the lists
+            Map<String, Integer> positionsByInput = new HashMap<>();
+            BuildTimings.Phase inputRegistration = getBuildTimings()
+                    .phase(BuildTimings.INPUT_REGISTRATION);
+            try {
+                ManifestInputDigests digests = new ManifestInputDigests(
+                        getCacheDirectory()
+                                .resolve(ManifestInputDigests.DIRECTORY_NAME)
+                                .resolve(getExecutionId()),
+                        getConsumedHeaderNames());
+                for (int i = 0; i < artifactTrackers.size(); i++) {
+                    ArtifactTracker tracker = artifactTrackers.get(i);
+                    Path digestFile = digests.update(
+                            manifestInputKeyOf(tracker),
+                            describeArtifact(tracker),
+                            allManifestHeaders.get(i));
+                    manifestInputSet.addInput(digestFile.toFile());
+                    positionsByInput.put(digestFile.getFileName().toString(),
+                            i);
+                }
+                digests.deleteStale();
+            } finally {
+                inputRegistration.close();
+            }
+
             // build the contents only when necessary
             if (manifestInputSet.aggregateIfNecessary(outputFile.toFile(),
                     (output, inputs) -> {
                         getLog().info(
                                 "Starting generation of the Subsystem manifest file for project "
                                         + getProject().getArtifactId());
-                        generateSubsystemManifestOutput(output, inputs,
-                                pArtifactTrackerManager);
+                        List<ArtifactTracker> trackers = new ArrayList<>();
+                        List<Map<String, String>> headers = new ArrayList<>();
+                        for (File input : inputs) {
+                            Integer position = positionsByInput
+                                    .get(input.getName());
+                            if (position != null) {
+                                trackers.add(artifactTrackers.get(position));
+                                headers.add(allManifestHeaders.get(position));
+                            }
+                        }
+                        generateSubsystemManifestOutput(output, trackers,
+                                headers, pArtifactTrackerManager);
                     })) {
                 getLog().info(String.format(
                         "OSGi Subsystem manifest file was successfully generated at : %s",
@@ -864,6 +718,27 @@ public class MojoGenerateSubsystemManifest extends AbstractSubsystemMojo {
         }
     }
 
+    /**
+     * The unique key of the artifact's digest file. The coordinates and type
+     * alone are not enough, as two artifacts may differ only by classifier,
+     * so the artifact's cached file path, relative to the cache directory,
+     * is used instead, or its file name when it has no cached file.
+     */
+    private String manifestInputKeyOf(ArtifactTracker pArtifactTracker) {
+        Path cachedFile = pArtifactTracker.getCachedFilePath();
+        if (cachedFile != null) {
+            Path cacheDirectory = getCacheDirectory().toAbsolutePath()
+                    .normalize();
+            Path file = cachedFile.toAbsolutePath().normalize();
+            return (file.startsWith(cacheDirectory)
+                    ? cacheDirectory.relativize(file)
+                    : file.getFileName()).toString();
+        }
+        return BuildEvents.coordinatesOf(pArtifactTracker) + ":"
+                + pArtifactTracker.getType() + ":"
+                + getArtifactFile(pArtifactTracker).getFileName();
+    }
+
     private void prepareGenerateSubsystemManifestFromContentParameterOnly(
             InputSet pInputSet, Path outputFile) throws MojoExecutionException {
 
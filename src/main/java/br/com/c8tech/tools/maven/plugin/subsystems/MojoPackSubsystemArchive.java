@@ -13,12 +13,27 @@ package br.com.c8tech.tools.maven.plugin.subsystems;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
 
 import javax.inject.Inject;
 
+import org.apache.aries.subsystem.core.archive.Header;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
@@ -32,7 +47,8 @@ import br.com.c8tech.tools.maven.osgi.lib.mojo.CommonMojoConstants;
 import br.com.c8tech.tools.maven.osgi.lib.mojo.archivers.AbstractSubsystemArchiver;
 import br.com.c8tech.tools.maven.osgi.lib.mojo.incremental.ArtifactTracker;
 import br.com.c8tech.tools.maven.osgi.lib.mojo.incremental.ArtifactTrackerManager;
-import br.com.c8tech.tools.maven.osgi.lib.mojo.incremental.ArtifactTrackerManagerBuilder;
+import io.takari.incrementalbuild.Incremental;
+import io.takari.incrementalbuild.Incremental.Configuration;
 import io.takari.incrementalbuild.Output;
 import io.takari.incrementalbuild.aggregator.AggregatorBuildContext;
 import io.takari.incrementalbuild.aggregator.InputSet;
@@ -51,8 +67,31 @@ import io.takari.incrementalbuild.aggregator.InputSet;
         threadSafe = true)
 public class MojoPackSubsystemArchive extends AbstractSubsystemMojo {
 
+    // 1980-02-01T00:00:00Z, safely after the start of the MS-DOS times
+    private static final long DEFAULT_REPRODUCIBLE_TIME = 318211200000L;
+
+    // the generated files written next to the subsystem manifest
+    private static final List<Path> METADATA_LOCATIONS = Arrays.asList(
+            Paths.get(CommonMojoConstants.OSGI_SUBSYSTEM_MANIFEST_FOLDER,
+                    DeploymentManifestBuilder.DEPLOYMENT_MANIFEST_NAME),
+            Paths.get(CommonMojoConstants.OSGI_SUBSYSTEM_MANIFEST_FOLDER,
+                    RepositoryIndexWriter.INDEX_NAME),
+            Paths.get(CommonMojoConstants.OSGI_SUBSYSTEM_MANIFEST_FOLDER,
+                    RepositoryIndexWriter.COMPRESSED_INDEX_NAME));
+
+    // the state of the inputs the metadata was last written from
+    private static final String METADATA_INPUTS_PREFIX = ".subsystem-metadata-inputs-";
+
+    private static final String OUTPUT_CACHE_ARCHIVE = "subsystem.esa";
+
+    // changed whenever the same inputs start to produce a different archive
+    private static final String OUTPUT_CACHE_FORMAT = "1";
+
     private final AggregatorBuildContext aggregatorBuildContext;
 
+    // the repository index and the output cache key digest the same files
+    private final Map<Path, byte[]> digestsByPath = new ConcurrentHashMap<>();
+
     /**
      * Use this to enable the generation of the mime-type tag file entry in the
      * generated subsystem archive.
@@ -63,6 +102,165 @@ public class MojoPackSubsystemArchive extends AbstractSubsystemMojo {
     @Parameter(defaultValue = "false")
     protected boolean generateEsaMimeEntry;
 
+    /**
+     * Use this to compute the deployment of the subsystem at build time and
+     * to write it as the <code>OSGI-INF/DEPLOYMENT.MF</code> entry of the
+     * generated archive, so the runtime installs it without running its
+     * resolver.
+     * <p>
+     * Each Subsystem-Content clause is deployed as the matching resolved
+     * artifact, and the package and bundle requirements of the deployed
+     * bundles are resolved against the other resolved artifacts, which are
+     * declared as Provision-Resource. The requirements that no artifact
+     * satisfies are left for the runtime. When a mandatory content is not
+     * among the resolved artifacts, no deployment manifest is written, as
+     * when any Provision-Resource is needed and the configured
+     * <code>provisionPolicy</code> is <code>rejectDependencies</code>.
+     */
+    @Parameter(defaultValue = "false",
+            property = "subsystem.generateDeploymentManifest")
+    protected boolean generateDeploymentManifest;
+
+    /**
+     * Use this to write an OSGi Repository index of the embedded artifacts as
+     * the <code>OSGI-INF/repository.xml</code> entry of the generated archive,
+     * so the runtime can know their capabilities without opening each of
+     * them.
+     * <p>
+     * It holds the <code>osgi.identity</code> and <code>osgi.content</code>
+     * capabilities of each artifact, the latter with its SHA-256 digest, and
+     * the exported and imported packages of the bundles, all taken from the
+     * manifest headers already read.
+     */
+    @Parameter(defaultValue = "false",
+            property = "subsystem.generateRepositoryIndex")
+    protected boolean generateRepositoryIndex;
+
+    /**
+     * Use this to gzip the repository index written when
+     * {@link #generateRepositoryIndex} is enabled, whose entry is then named
+     * <code>OSGI-INF/repository.xml.gz</code>.
+     */
+    @Parameter(defaultValue = "false",
+            property = "subsystem.repositoryIndexCompressed")
+    protected boolean repositoryIndexCompressed;
+
+    /**
+     * Use this to compress the archive entries concurrently, using up to
+     * <code>parallelThreads</code> threads, instead of the plexus archiver.
+     * <p>
+     * The entries are written in the same order of a serial run and the
+     * <code>mimetype</code> entry, when generated, is kept as the first one
+     * and uncompressed.
+     */
+    @Parameter(defaultValue = "false", property = "subsystem.parallelArchiving")
+    protected boolean parallelArchiving;
+
+    /**
+     * Use this to update the generated archive incrementally. An index of its
+     * entries is kept next to it and, when the archive must be generated
+     * again, the entries whose files have not changed are copied from the
+     * previous archive as they are, only the new or changed ones being
+     * compressed.
+     * <p>
+     * When enabled, the archive is written by the plugin's own writer, the
+     * same used by {@link #parallelArchiving}.
+     */
+    @Parameter(defaultValue = "false",
+            property = "subsystem.incrementalArchiving")
+    protected boolean incrementalArchiving;
+
+    /**
+     * The time of the archive entries of a reproducible build, as an ISO 8601
+     * date-time, as <code>2019-01-01T00:00:00Z</code>, or as the seconds since
+     * the epoch. It defaults to the <code>project.build.outputTimestamp</code>
+     * property, the one honored by the other maven plugins. A value of a
+     * single character is ignored.
+     * <p>
+     * It is only used when {@link #reproducibleArchiving} is enabled, so
+     * setting the property alone does not change how the archive is
+     * written.
+     */
+    @Parameter(defaultValue = "${project.build.outputTimestamp}")
+    protected String outputTimestamp;
+
+    /**
+     * Use this to generate a reproducible archive, whose bytes are always the
+     * same for the same files. Its entries are sorted by name, after the
+     * <code>mimetype</code> entry and the subsystem manifest, and all of them
+     * get the time informed by {@link #outputTimestamp}, or
+     * <code>1980-02-01T00:00:00Z</code> when none was informed.
+     * <p>
+     * When enabled, the archive is written by the plugin's own writer, the
+     * same used by {@link #parallelArchiving}.
+     */
+    @Parameter(defaultValue = "false",
+            property = "subsystem.reproducibleArchiving")
+    protected boolean reproducibleArchiving;
+
+    /**
+     * A list of glob patterns of the archive entries that must be stored
+     * without compression, as the embedded bundles and subsystems, which are
+     * already compressed. Their bytes are copied as they are into the
+     * generated archive. The remaining entries are deflated.
+     * <p>
+     * A pattern without a <code>/</code> is matched against the entry's file
+     * name only.
+     * <p>
+     * When set, the archive is written by the plugin's own writer, the same
+     * used by {@link #parallelArchiving}.
+     * <p>
+     * Example:
+     *
+     * <pre>
+     * {@code
+     * <storedEntries>
+     *   <storedEntry>*.jar</storedEntry>
+     *   <storedEntry>*.esa</storedEntry>
+     * </storedEntries>}
+     * </pre>
+     */
+    @Parameter()
+    protected List<String> storedEntries = new ArrayList<>();
+
+    /**
+     * A directory holding a local cache of the generated subsystem archives,
+     * that can be shared by all the projects of a reactor and across builds,
+     * as after a branch switch or a <code>mvn clean</code>.
+     * <p>
+     * Each archive is stored under a key computed from the manifest bytes, the
+     * content digests of the embedded artifacts and resources and the archiver
+     * settings. When an archive with the same key is found, it is restored as
+     * a hard link, or a copy, and nothing is compressed. The cache is bounded
+     * by {@link #outputCacheMaxSize} and {@link #outputCacheMaxAge}.
+     * <p>
+     * The entry times are not part of the key, so a restored archive may hold
+     * the times of the files it was first generated from. They are always the
+     * same when {@link #reproducibleArchiving} is enabled.
+     */
+    @Parameter(property = "subsystem.outputCacheDirectory")
+    @Incremental(configuration = Configuration.ignore)
+    protected File outputCacheDirectory;
+
+    /**
+     * The maximum size, in megabytes, of the {@link #outputCacheDirectory}.
+     * After an archive is stored, the archives restored least recently are
+     * evicted until the cache fits it. Zero means no limit.
+     */
+    @Parameter(defaultValue = "2048",
+            property = "subsystem.outputCacheMaxSize")
+    @Incremental(configuration = Configuration.ignore)
+    protected long outputCacheMaxSize;
+
+    /**
+     * The number of days an archive is kept in the
+     * {@link #outputCacheDirectory} without being restored. Zero means no
+     * limit.
+     */
+    @Parameter(defaultValue = "30", property = "subsystem.outputCacheMaxAge")
+    @Incremental(configuration = Configuration.ignore)
+    protected long outputCacheMaxAge;
+
     /**
      *
      * @param project
@@ -106,54 +304,53 @@ public class MojoPackSubsystemArchive extends AbstractSubsystemMojo {
                 "Setting up generation of the Subsystem archive for project "
                         + getProject().getArtifactId());
 
-        ArtifactTrackerManager artifactTrackerManager = ArtifactTrackerManagerBuilder
-                .newBuilder(getMavenSession(), getCacheDirectory())
-                .withGroupingByTypeDirectory(true).withVerbose(isVerbose())
-                .withPreviousCachingRequired(true).mavenSetup()
-                .withDependenciesHelper(getDependenciesHelper())
-                .withRepositorySystem(getRepositorySystem()).workspaceSetup()
-                .withAssemblyUrlProtocolAllowed(isWorkspaceResolutionAllowed())
-                .withPackOnTheFlyAllowed(isWorkspaceResolutionAllowed())
-                .endWorkspaceSetup().mavenFiltering()
-                .withOptional(isOptionalConsidered())
-                .withTransitive(isTransitiveConsidered())
-                .withScopes(getManifestScopes())
-                .withScopes(getEmbeddableScopes())
-                .withMavenArtifactSet(getMavenArtifactSet())
-                .withExcludedDependencies(getExcludedArtifacts())
-                .endMavenFiltering().endMavenSetup().build();
-
-        artifactTrackerManager.resolveMavenArtifacts(getEmbeddableScopes());
-        if (isVerbose()) {
-            getLog().info("Registering artifacts into the OSGi Subsystem "
-                    + "archive generation incremental build context.");
-        }
-
-        prepareForSubsystemArchiveGeneration(artifactTrackerManager);
+        try {
+            ArtifactTrackerManager artifactTrackerManager = lookupArtifactTrackerManager(
+                    true);
+            if (isVerbose()) {
+                getLog().info("Registering artifacts into the OSGi Subsystem "
+                        + "archive generation incremental build context.");
+            }
+
+            prepareForSubsystemArchiveGeneration(artifactTrackerManager);
+        } finally {
+            // this is the last mojo of the lifecycle using the trackers
+            getArtifactTrackerManagerRegistry().release(getProject());
+            writeBuildTimings();
+        }
     }
 
     private void generateSubsystemArchive(
             ArtifactTrackerManager pArtifactTrackers, Output<File> pOutputFile,
-            Iterable<File> pInputFiles) throws IOException {
+            Iterable<File> pInputFiles, OptionalLong pReproducibleTime)
+            throws IOException {
         getLog().info(
                 "Starting to pack the items of the OSGi Subsystem archive for project "
                         + getProject().getArtifactId());
-        Archiver esaArchiver = getDependenciesHelper()
-                .lookupArchiver(getProject().getPackaging());
+        File manifestFile = null;
+        ArtifactTrackerIndex artifactTrackerIndex = new ArtifactTrackerIndex(
+                pArtifactTrackers, this::getArtifactFile);
+        Map<Path, String> entries = new LinkedHashMap<>();
         for (File file : pInputFiles) {
             Path source;
             Path target;
 
             if (file.toPath().endsWith("SUBSYSTEM.MF")) {
-                ((AbstractSubsystemArchiver) esaArchiver).setManifest(file);
+                manifestFile = file;
                 continue;
+            } else if (metadataLocationOf(file.toPath()) != null) {
+                source = file.toPath();
+                target = metadataLocationOf(source);
             } else {
-                ArtifactTracker artifact = pArtifactTrackers
+                ArtifactTracker artifact = artifactTrackerIndex
                         .searchByPath(file.getPath());
-                if (artifact != null && artifact.isCached()
-                        && artifact.isToBeEmbedded()) {
-                    source = artifact.getCachedFilePath();
-                    target = file.toPath().getFileName();
+                Path artifactFile = artifact != null
+                        && artifact.isToBeEmbedded()
+                                ? getArtifactFile(artifact)
+                                : null;
+                if (artifactFile != null) {
+                    source = artifactFile;
+                    target = Paths.get(getArtifactEntryName(artifact));
                 } else {
                     source = file.toPath();
                     target = Paths
@@ -161,40 +358,405 @@ public class MojoPackSubsystemArchive extends AbstractSubsystemMojo {
                             .relativize(file.toPath());
                 }
             }
-            esaArchiver.addFile(source.toFile(), target.toString());
+            entries.put(source, target.toString());
             if (isVerbose()) {
                 getLog().info("    included file: " + target);
             }
         }
 
-        ((AbstractSubsystemArchiver) esaArchiver)
-                .setGenerateEsaMimeEntry(generateEsaMimeEntry);
-        esaArchiver.setIncludeEmptyDirs(false);
-        esaArchiver.setDestFile(pOutputFile.getResource());
-        esaArchiver.createArchive();
+        boolean pluginWriter = parallelArchiving || incrementalArchiving
+                || !storedEntries.isEmpty() || pReproducibleTime.isPresent();
+        Path archiveFile = pOutputFile.getResource().toPath();
+        OutputCache outputCache = null;
+        String outputCacheKey = null;
+        if (outputCacheDirectory != null) {
+            outputCache = new OutputCache(outputCacheDirectory.toPath());
+            BuildTimings.Phase outputCaching = getBuildTimings()
+                    .phase(BuildTimings.OUTPUT_CACHE);
+            try {
+                outputCacheKey = computeOutputCacheKey(manifestFile, entries,
+                        pluginWriter, pReproducibleTime);
+                if (restoreCachedArchive(outputCache, outputCacheKey,
+                        archiveFile)) {
+                    return;
+                }
+            } finally {
+                outputCaching.close();
+            }
+            // a restored archive shares its content with the cache entry
+            OutputCache.detach(archiveFile);
+        }
+
+        if (pluginWriter) {
+            writeSubsystemArchive(pOutputFile, manifestFile, entries,
+                    pReproducibleTime);
+        } else {
+            Archiver esaArchiver = getDependenciesHelper()
+                    .lookupArchiver(getProject().getPackaging());
+            if (manifestFile != null) {
+                ((AbstractSubsystemArchiver) esaArchiver)
+                        .setManifest(manifestFile);
+            }
+            for (Map.Entry<Path, String> entry : entries.entrySet()) {
+                esaArchiver.addFile(entry.getKey().toFile(), entry.getValue());
+            }
+            ((AbstractSubsystemArchiver) esaArchiver)
+                    .setGenerateEsaMimeEntry(generateEsaMimeEntry);
+            esaArchiver.setIncludeEmptyDirs(false);
+            esaArchiver.setDestFile(pOutputFile.getResource());
+            // the plexus archiver compresses and finalizes in a single step
+            BuildTimings.Phase archiveFinalization = getBuildTimings()
+                    .phase(BuildTimings.ARCHIVE_FINALIZATION);
+            try {
+                esaArchiver.createArchive();
+            } finally {
+                archiveFinalization.close();
+            }
+        }
+        if (outputCache != null) {
+            // the manifest is part of the key and of the archive, so only
+            // the archive is kept
+            outputCache.store(outputCacheKey, OUTPUT_CACHE_ARCHIVE,
+                    archiveFile);
+            int evicted = outputCache.evict(outputCacheMaxSize * 1024 * 1024,
+                    TimeUnit.DAYS.toMillis(outputCacheMaxAge));
+            if (evicted > 0 && isVerbose()) {
+                getLog().info(evicted
+                        + " archives were evicted from the output cache.");
+            }
+        }
         getLog().info("OSGi Subsystem archive was successfully generated at "
                 + pOutputFile.getResource());
     }
 
+    private String computeOutputCacheKey(File pManifestFile,
+            Map<Path, String> pEntries, boolean pPluginWriter,
+            OptionalLong pReproducibleTime) throws IOException {
+        OutputCache.KeyBuilder key = new OutputCache.KeyBuilder(
+                OUTPUT_CACHE_FORMAT)
+                        .add("packaging", getProject().getPackaging())
+                        .add("writer", pPluginWriter ? "plugin" : "plexus")
+                        .add("generateEsaMimeEntry", generateEsaMimeEntry)
+                        .add("storedEntries", storedEntries)
+                        .add("reproducibleTime",
+                                pReproducibleTime.isPresent()
+                                        ? pReproducibleTime.getAsLong()
+                                        : null);
+        if (pManifestFile != null) {
+            key.addDigest(CommonMojoConstants.OSGI_SUBSYSTEM_MANIFEST_LOCATION,
+                    FileDigests.sha256(pManifestFile.toPath()));
+        }
+        List<Path> sources = new ArrayList<>(pEntries.keySet());
+        List<byte[]> digests = ParallelTasks.map(sources, getParallelThreads(),
+                this::digestOf);
+        for (int i = 0; i < sources.size(); i++) {
+            key.addDigest(pEntries.get(sources.get(i)), digests.get(i));
+        }
+        return key.build();
+    }
+
+    private byte[] digestOf(Path pFile) throws IOException {
+        byte[] digest = digestsByPath.get(pFile);
+        if (digest == null) {
+            digest = FileDigests.sha256(pFile);
+            digestsByPath.put(pFile, digest);
+        }
+        return digest;
+    }
+
+    private static Path metadataLocationOf(Path pFile) {
+        for (Path location : METADATA_LOCATIONS) {
+            if (pFile.endsWith(location)) {
+                return location;
+            }
+        }
+        return null;
+    }
+
+    private boolean restoreCachedArchive(OutputCache pOutputCache,
+            String pKey, Path pArchiveFile) throws IOException {
+        if (!pOutputCache.restore(pKey, OUTPUT_CACHE_ARCHIVE, pArchiveFile)) {
+            return false;
+        }
+        // the entry index describes an archive that is not there anymore
+        Files.deleteIfExists(ArchiveEntryIndex.indexFileOf(pArchiveFile));
+        getLog().info("OSGi Subsystem archive was restored from the output cache at "
+                + pArchiveFile);
+        return true;
+    }
+
+    private void writeSubsystemArchive(Output<File> pOutputFile,
+            File pManifestFile, Map<Path, String> pEntries,
+            OptionalLong pReproducibleTime) throws IOException {
+        SubsystemArchiveWriter writer = new SubsystemArchiveWriter(
+                pOutputFile.getResource().toPath());
+        if (pManifestFile != null) {
+            writer.setManifest(pManifestFile.toPath());
+        }
+        for (Map.Entry<Path, String> entry : pEntries.entrySet()) {
+            writer.addFile(entry.getKey(), entry.getValue());
+        }
+        writer.setGenerateEsaMimeEntry(generateEsaMimeEntry);
+        writer.setCompressionPolicy(new EntryCompressionPolicy(storedEntries));
+        writer.setThreads(parallelArchiving ? getParallelThreads() : 1);
+        writer.setIncremental(incrementalArchiving);
+        writer.setBuildTimings(getBuildTimings());
+        if (pReproducibleTime.isPresent()) {
+            writer.setReproducibleTime(pReproducibleTime.getAsLong());
+        }
+        writer.createArchive();
+        if (incrementalArchiving && isVerbose()) {
+            getLog().info("    entries copied from the previous archive: "
+                    + writer.getReusedEntryCount());
+        }
+    }
+
+    /**
+     * Returns the time of the entries of a reproducible archive, following
+     * the same rules of the <code>project.build.outputTimestamp</code>
+     * handling of the maven archiver.
+     */
+    private OptionalLong resolveReproducibleTime()
+            throws MojoExecutionException {
+        if (!reproducibleArchiving) {
+            return OptionalLong.empty();
+        }
+        if (outputTimestamp != null && outputTimestamp.trim().length() > 1) {
+            String timestamp = outputTimestamp.trim();
+            try {
+                if (timestamp.chars().allMatch(Character::isDigit)) {
+                    return OptionalLong.of(Long.parseLong(timestamp) * 1000);
+                }
+                return OptionalLong.of(OffsetDateTime.parse(timestamp)
+                        .toInstant().toEpochMilli());
+            } catch (DateTimeParseException | NumberFormatException e) {
+                throw new MojoExecutionException("Invalid outputTimestamp '"
+                        + outputTimestamp
+                        + "'. Use an ISO 8601 date-time or the seconds since the epoch.",
+                        e);
+            }
+        }
+        return OptionalLong.of(DEFAULT_REPRODUCIBLE_TIME);
+    }
+
+    private Map<String, String> readSubsystemManifestHeaders()
+            throws IOException, MojoExecutionException {
+        Manifest subsystemManifest;
+        try (InputStream in = Files
+                .newInputStream(getSubsystemManifestFile())) {
+            subsystemManifest = new Manifest(in);
+        }
+        Map<String, String> headers = new HashMap<>();
+        for (Map.Entry<Object, Object> entry : subsystemManifest
+                .getMainAttributes().entrySet()) {
+            headers.put(((Attributes.Name) entry.getKey()).toString(),
+                    (String) entry.getValue());
+        }
+        return headers;
+    }
+
+    private void writeDeploymentManifest(
+            ArtifactTrackerManager pArtifactTrackerManager)
+            throws IOException, MojoExecutionException {
+        Path deploymentManifest = getSubsystemManifestFile().resolveSibling(
+                DeploymentManifestBuilder.DEPLOYMENT_MANIFEST_NAME);
+        if (!generateDeploymentManifest) {
+            Files.deleteIfExists(deploymentManifest);
+            return;
+        }
+        BuildTimings.Phase deploymentResolution = getBuildTimings()
+                .phase(BuildTimings.DEPLOYMENT_RESOLUTION);
+        try {
+            DeploymentManifestBuilder builder = new DeploymentManifestBuilder(
+                    readSubsystemManifestHeaders());
+            List<ArtifactTracker> artifactTrackers = new ArrayList<>();
+            for (ArtifactTracker tracker : pArtifactTrackerManager
+                    .getAllArtifactTrackers()) {
+                if (getArtifactFile(tracker) != null) {
+                    artifactTrackers.add(tracker);
+                }
+            }
+            for (Map<String, String> headers : readManifestHeaders(
+                    artifactTrackers)) {
+                builder.addResource(headers);
+            }
+            List<Header<?>> headers = builder.build();
+            if (headers == null) {
+                if (!builder.getRejectedDependencies().isEmpty()) {
+                    getLog().warn(
+                            "The deployment manifest was not generated, as the provision policy rejects these dependencies: "
+                                    + builder.getRejectedDependencies());
+                } else if (builder.getUnresolvedContent().isEmpty()) {
+                    getLog().warn(
+                            "The deployment manifest was not generated, as the filters of these requirements could not be evaluated: "
+                                    + builder.getUnevaluatedRequirements());
+                } else {
+                    getLog().warn(
+                            "The deployment manifest was not generated, as these Subsystem-Content clauses match no resolved artifact: "
+                                    + builder.getUnresolvedContent());
+                }
+                Files.deleteIfExists(deploymentManifest);
+                return;
+            }
+            for (String conflict : builder.getConflicts()) {
+                getLog().warn(conflict);
+            }
+            if (isVerbose()) {
+                for (String requirement : builder
+                        .getUnresolvedRequirements()) {
+                    getLog().info("    left for the runtime: " + requirement);
+                }
+            }
+            UnchangedFileOutputStream.write(deploymentManifest,
+                    out -> SubsystemManifestWriter.write(headers, out));
+        } finally {
+            deploymentResolution.close();
+        }
+    }
+
+    /**
+     * Writes the deployment manifest and the repository index, unless the
+     * artifacts and the subsystem manifest they are computed from did not
+     * change since they were last written, so a build with no change neither
+     * resolves the deployment nor digests the artifacts again.
+     */
+    private void writeMetadata(ArtifactTrackerManager pArtifactTrackerManager)
+            throws IOException, MojoExecutionException {
+        Path workDirectory = getWorkSubDirectory(DEFAULT_SUBSYSTEM_DIRECTORY);
+        Path[] outputs = new Path[METADATA_LOCATIONS.size()];
+        for (int i = 0; i < outputs.length; i++) {
+            outputs[i] = workDirectory.resolve(METADATA_LOCATIONS.get(i));
+        }
+        Path stateFile = getCacheDirectory().resolve(
+                METADATA_INPUTS_PREFIX + getExecutionId());
+        InputFingerprint fingerprint = new InputFingerprint()
+                .add(generateDeploymentManifest).add(generateRepositoryIndex)
+                .add(repositoryIndexCompressed).add(isDirectEmbedding())
+                .addFile(getSubsystemManifestFile());
+        for (ArtifactTracker tracker : pArtifactTrackerManager
+                .getAllArtifactTrackers()) {
+            Path artifactFile = getArtifactFile(tracker);
+            fingerprint.add(BuildEvents.coordinatesOf(tracker))
+                    .add(tracker.getType()).add(artifactFile);
+            if (artifactFile != null) {
+                fingerprint.addFile(artifactFile);
+            }
+        }
+        for (ArtifactTracker tracker : pArtifactTrackerManager
+                .lookupEmbeddableArtifactTrackers()) {
+            fingerprint.add(BuildEvents.coordinatesOf(tracker))
+                    .add(tracker.isToBeEmbedded())
+                    .add(getArtifactEntryName(tracker));
+        }
+        if (fingerprint.isUpToDate(stateFile, outputs)) {
+            if (isVerbose()) {
+                getLog().info(
+                        "The deployment manifest and the repository index are up to date.");
+            }
+            return;
+        }
+        writeDeploymentManifest(pArtifactTrackerManager);
+        writeRepositoryIndex(pArtifactTrackerManager);
+        fingerprint.store(stateFile, outputs);
+    }
+
+    private void writeRepositoryIndex(
+            ArtifactTrackerManager pArtifactTrackerManager)
+            throws IOException, MojoExecutionException {
+        Path plainIndex = getSubsystemManifestFile()
+                .resolveSibling(RepositoryIndexWriter.INDEX_NAME);
+        Path compressedIndex = getSubsystemManifestFile()
+                .resolveSibling(RepositoryIndexWriter.COMPRESSED_INDEX_NAME);
+        Path index = repositoryIndexCompressed ? compressedIndex : plainIndex;
+        Files.deleteIfExists(
+                repositoryIndexCompressed ? plainIndex : compressedIndex);
+        if (!generateRepositoryIndex) {
+            Files.deleteIfExists(index);
+            return;
+        }
+        BuildTimings.Phase repositoryIndexing = getBuildTimings()
+                .phase(BuildTimings.REPOSITORY_INDEXING);
+        try {
+            List<ArtifactTracker> artifactTrackers = new ArrayList<>();
+            for (ArtifactTracker tracker : pArtifactTrackerManager
+                    .lookupEmbeddableArtifactTrackers()) {
+                if (tracker.isToBeEmbedded()
+                        && getArtifactFile(tracker) != null) {
+                    artifactTrackers.add(tracker);
+                }
+            }
+            List<Map<String, String>> allManifestHeaders = readManifestHeaders(
+                    artifactTrackers);
+            List<byte[]> digests = ParallelTasks.map(artifactTrackers,
+                    getParallelThreads(),
+                    tracker -> digestOf(getArtifactFile(tracker)));
+            RepositoryIndexWriter indexWriter = new RepositoryIndexWriter(
+                    getProject().getArtifactId());
+            for (int i = 0; i < artifactTrackers.size(); i++) {
+                Path artifactFile = getArtifactFile(artifactTrackers.get(i));
+                if (!indexWriter.addResource(
+                        getArtifactEntryName(artifactTrackers.get(i)),
+                        Files.size(artifactFile),
+                        FileDigests.toHex(digests.get(i)),
+                        allManifestHeaders.get(i)) && isVerbose()) {
+                    getLog().info("    not indexed: " + artifactFile);
+                }
+            }
+            UnchangedFileOutputStream.write(index,
+                    out -> indexWriter.write(out, repositoryIndexCompressed));
+        } finally {
+            repositoryIndexing.close();
+        }
+    }
+
     private void prepareForSubsystemArchiveGeneration(
             final ArtifactTrackerManager pArtifactTrackerManager)
             throws MojoExecutionException {
 
         try {
+            // written before the inputs are registered, as they are inputs
+            writeMetadata(pArtifactTrackerManager);
 
-            InputSet inputSet = registerArtifactsIntoAggregatorBuildContext(
-                    pArtifactTrackerManager.lookupEmbeddableArtifactTrackers(),
-                    aggregatorBuildContext, true);
-            inputSet.addInputs(
-                    getWorkSubDirectory(DEFAULT_SUBSYSTEM_DIRECTORY).toFile(),
-                    null, Arrays.asList("plugins/*", "subsystems/*"));
-            inputSet.addInputs(Paths
-                    .get(getProject().getBuild().getOutputDirectory()).toFile(),
-                    null, null);
+            InputSet inputSet;
+            BuildTimings.Phase inputRegistration = getBuildTimings()
+                    .phase(BuildTimings.INPUT_REGISTRATION);
+            try {
+                List<ArtifactTracker> embeddableTrackers = pArtifactTrackerManager
+                        .lookupEmbeddableArtifactTrackers();
+                boolean allCopiedByLibrary = true;
+                for (ArtifactTracker tracker : embeddableTrackers) {
+                    allCopiedByLibrary &= tracker.isCached();
+                }
+                if (isDirectEmbedding() || !allCopiedByLibrary) {
+                    // the artifacts are packed from their repository files,
+                    // or from the links created in place of their copies
+                    inputSet = aggregatorBuildContext.newInputSet();
+                    for (ArtifactTracker tracker : embeddableTrackers) {
+                        Path artifactFile = getArtifactFile(tracker);
+                        if (tracker.isToBeEmbedded() && artifactFile != null) {
+                            inputSet.addInput(artifactFile.toFile());
+                        }
+                    }
+                } else {
+                    inputSet = registerArtifactsIntoAggregatorBuildContext(
+                            embeddableTrackers, aggregatorBuildContext, true);
+                }
+                inputSet.addInputs(
+                        getWorkSubDirectory(DEFAULT_SUBSYSTEM_DIRECTORY)
+                                .toFile(),
+                        null, Arrays.asList("plugins/*", "subsystems/*"));
+                inputSet.addInputs(Paths
+                        .get(getProject().getBuild().getOutputDirectory())
+                        .toFile(), null, null);
+            } finally {
+                inputRegistration.close();
+            }
             File esaFile = calculateArchiveFile();
+            OptionalLong reproducibleTime = resolveReproducibleTime();
             inputSet.aggregateIfNecessary(esaFile,
                     (outputFile, inputFiles) -> generateSubsystemArchive(
-                            pArtifactTrackerManager, outputFile, inputFiles));
+                            pArtifactTrackerManager, outputFile, inputFiles,
+                            reproducibleTime));
 
             getProject().getArtifact().setFile(esaFile);
         } catch (IOException e) {
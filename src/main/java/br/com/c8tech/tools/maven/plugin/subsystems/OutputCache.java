@@ -0,0 +1,348 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.subsystems;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * A local cache of the files generated by a build, as the subsystem archives,
+ * kept under a key computed from everything they were generated from.
+ * <p>
+ * The files are stored as copies, so the build outputs are never sharing
+ * their contents with the cache entries when they are written again. A file
+ * is restored as a hard link to its entry, or as a copy when the file systems
+ * do not support it, so a hit costs no compression at all. As a restored
+ * file shares its content with the cache entry, it must be
+ * {@link #detach(Path) detached} before being rewritten in place.
+ * <p>
+ * Restoring an entry marks it as used, so the cache can be
+ * {@link #evict(long, long) bounded} by evicting the entries not used for the
+ * longest time, keeping the files already restored from them intact.
+ *
+ * @author Cristiano Gavião
+ *
+ */
+public final class OutputCache {
+
+    /**
+     * Computes the key of a cache entry from the values and file digests the
+     * cached files depend on. The order they are added is relevant.
+     */
+    public static final class KeyBuilder {
+
+        private final MessageDigest digest = FileDigests.newSha256();
+
+        /**
+         * @param pFormat
+         *                    The version of the layout of the cached files,
+         *                    changed whenever the same inputs produce
+         *                    different files.
+         */
+        public KeyBuilder(String pFormat) {
+            add("format", pFormat);
+        }
+
+        /**
+         * Adds a value to the key.
+         *
+         * @param pName
+         *                   The name of the value, as a setting name.
+         * @param pValue
+         *                   The value. It may be <code>null</code>.
+         * @return this builder.
+         */
+        public KeyBuilder add(String pName, Object pValue) {
+            update(pName);
+            update(String.valueOf(pValue));
+            return this;
+        }
+
+        /**
+         * Adds the digest of a file's content to the key.
+         *
+         * @param pName
+         *                     The name of the file, as its entry name.
+         * @param pDigest
+         *                     The digest of the file's content.
+         * @return this builder.
+         */
+        public KeyBuilder addDigest(String pName, byte[] pDigest) {
+            update(pName);
+            digest.update(pDigest);
+            digest.update((byte) 0);
+            return this;
+        }
+
+        /**
+         * @return the key, as a hexadecimal string.
+         */
+        public String build() {
+            return FileDigests.toHex(digest.digest());
+        }
+
+        private void update(String pValue) {
+            digest.update(pValue.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+    }
+
+    private static final class Entry {
+
+        private final Path directory;
+
+        private final long lastUsed;
+
+        private final long size;
+
+        private Entry(Path pDirectory, long pLastUsed, long pSize) {
+            directory = pDirectory;
+            lastUsed = pLastUsed;
+            size = pSize;
+        }
+    }
+
+    private static final String EVICTED_SUFFIX = ".evicted";
+
+    private final Path root;
+
+    /**
+     * @param pRoot
+     *                  The directory holding the cache.
+     */
+    public OutputCache(Path pRoot) {
+        root = pRoot;
+    }
+
+    private static void copyAtomically(Path pSource, Path pTarget)
+            throws IOException {
+        Path temp = createTempSibling(pTarget);
+        try {
+            Files.copy(pSource, temp, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(temp, pTarget, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static Path createTempSibling(Path pFile) throws IOException {
+        Path directory = pFile.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        return Files.createTempFile(directory, pFile.getFileName().toString(),
+                ".tmp");
+    }
+
+    /**
+     * Replaces a file that may be a hard link, as a restored one, by a copy
+     * of its own, so writing it in place does not change the cache entry.
+     * Nothing is done when the file does not exist or has a single link.
+     *
+     * @param pFile
+     *                  The file about to be written.
+     * @throws IOException
+     *                         when the file could not be copied.
+     */
+    public static void detach(Path pFile) throws IOException {
+        if (!Files.isRegularFile(pFile)) {
+            return;
+        }
+        try {
+            Object links = Files.getAttribute(pFile, "unix:nlink");
+            if (links instanceof Integer && (Integer) links == 1) {
+                return;
+            }
+        } catch (UnsupportedOperationException | IllegalArgumentException e) { // NOSONAR
+            // the link count is unknown, so the file is copied anyway
+        }
+        copyAtomically(pFile, pFile);
+    }
+
+    /**
+     * Returns where a file of a cache entry is kept.
+     *
+     * @param pKey
+     *                      The key of the entry.
+     * @param pFileName
+     *                      The name of the file.
+     * @return the path of the file inside the cache.
+     */
+    public Path entryFor(String pKey, String pFileName) {
+        return root.resolve(pKey.substring(0, 2)).resolve(pKey)
+                .resolve(pFileName);
+    }
+
+    /**
+     * Replaces the target file by the cached one, when there is one.
+     *
+     * @param pKey
+     *                      The key of the entry.
+     * @param pFileName
+     *                      The name of the file inside the entry.
+     * @param pTarget
+     *                      The file to be restored.
+     * @return <code>true</code> when the file was restored, or
+     *         <code>false</code> when the cache has no such file.
+     * @throws IOException
+     *                         when the file could not be restored.
+     */
+    public boolean restore(String pKey, String pFileName, Path pTarget)
+            throws IOException {
+        Path entry = entryFor(pKey, pFileName);
+        if (!Files.isRegularFile(entry)) {
+            return false;
+        }
+        try {
+            // marks the entry as used, so it is evicted last
+            Files.setLastModifiedTime(entry.getParent(),
+                    FileTime.fromMillis(System.currentTimeMillis()));
+            if (!FileLinks.isLinkedTo(pTarget, entry) && !FileLinks
+                    .replaceWithLink(pTarget, entry,
+                            FileLinks.LinkType.HARDLINK)) {
+                copyAtomically(entry, pTarget);
+            }
+        } catch (NoSuchFileException e) { // NOSONAR
+            // evicted meanwhile by another build
+            return false;
+        }
+        return true;
+    }
+
+    private static long sizeOf(Path pDirectory) throws IOException {
+        long size = 0;
+        try (DirectoryStream<Path> files = Files
+                .newDirectoryStream(pDirectory)) {
+            for (Path file : files) {
+                if (Files.isRegularFile(file)) {
+                    size += Files.size(file);
+                }
+            }
+        }
+        return size;
+    }
+
+    private List<Entry> listEntries() throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        if (!Files.isDirectory(root)) {
+            return entries;
+        }
+        try (DirectoryStream<Path> prefixes = Files.newDirectoryStream(root,
+                Files::isDirectory)) {
+            for (Path prefix : prefixes) {
+                try (DirectoryStream<Path> keys = Files
+                        .newDirectoryStream(prefix, Files::isDirectory)) {
+                    for (Path key : keys) {
+                        if (key.getFileName().toString()
+                                .endsWith(EVICTED_SUFFIX)) {
+                            // left behind by an interrupted eviction
+                            deleteRecursively(key);
+                            continue;
+                        }
+                        entries.add(new Entry(key,
+                                Files.getLastModifiedTime(key).toMillis(),
+                                sizeOf(key)));
+                    }
+                }
+            }
+        }
+        return entries;
+    }
+
+    private static void deleteRecursively(Path pDirectory)
+            throws IOException {
+        try (Stream<Path> files = Files.walk(pDirectory)) {
+            for (Path file : (Iterable<Path>) files
+                    .sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(file);
+            }
+        } catch (NoSuchFileException e) { // NOSONAR
+            // deleted meanwhile by another build
+        }
+    }
+
+    /**
+     * Evicts the entries not used for longer than the maximum age, then the
+     * least recently used ones until the cache fits the maximum size. An entry
+     * is renamed before being deleted, so it is never found half deleted.
+     *
+     * @param pMaxBytes
+     *                         The maximum size of the cache, or zero for no
+     *                         limit.
+     * @param pMaxAgeMillis
+     *                         The maximum time an entry is kept without being
+     *                         used, or zero for no limit.
+     * @return the number of entries evicted.
+     * @throws IOException
+     *                         when the cache could not be read or an entry
+     *                         could not be deleted.
+     */
+    public int evict(long pMaxBytes, long pMaxAgeMillis) throws IOException {
+        List<Entry> entries = listEntries();
+        entries.sort((a, b) -> Long.compare(b.lastUsed, a.lastUsed));
+        long oldest = pMaxAgeMillis > 0
+                ? System.currentTimeMillis() - pMaxAgeMillis
+                : Long.MIN_VALUE;
+        long kept = 0;
+        int evicted = 0;
+        for (Entry entry : entries) {
+            kept += entry.size;
+            if (entry.lastUsed >= oldest
+                    && (pMaxBytes <= 0 || kept <= pMaxBytes)) {
+                continue;
+            }
+            kept -= entry.size;
+            Path renamed = entry.directory.resolveSibling(
+                    entry.directory.getFileName() + EVICTED_SUFFIX);
+            try {
+                Files.move(entry.directory, renamed,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (NoSuchFileException e) { // NOSONAR
+                continue;
+            }
+            deleteRecursively(renamed);
+            evicted++;
+        }
+        return evicted;
+    }
+
+    /**
+     * Stores a copy of a file into a cache entry. An entry that already holds
+     * the file is kept.
+     *
+     * @param pKey
+     *                      The key of the entry.
+     * @param pFileName
+     *                      The name of the file inside the entry.
+     * @param pFile
+     *                      The file to be stored.
+     * @throws IOException
+     *                         when the file could not be stored.
+     */
+    public void store(String pKey, String pFileName, Path pFile)
+            throws IOException {
+        Path entry = entryFor(pKey, pFileName);
+        if (!Files.isRegularFile(entry)) {
+            copyAtomically(pFile, entry);
+        }
+    }
+}
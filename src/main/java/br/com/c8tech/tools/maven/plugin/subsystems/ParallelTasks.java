@@ -0,0 +1,154 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.subsystems;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a task over a list of items using a bounded number of threads, always
+ * returning the results in the same order of the items, so a parallel run
+ * produces exactly what a serial run would.
+ * <p>
+ * Virtual threads are used when the running JVM provides them, otherwise
+ * daemon platform threads are created.
+ *
+ * @author Cristiano Gavião
+ *
+ */
+public final class ParallelTasks {
+
+    /**
+     * A task applied to each item.
+     *
+     * @param <T>
+     *                The item type.
+     * @param <R>
+     *                The result type.
+     */
+    @FunctionalInterface
+    public interface Task<T, R> {
+        R apply(T pItem) throws Exception; // NOSONAR
+    }
+
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    private ParallelTasks() {
+    }
+
+    /**
+     * Applies the task to all items.
+     *
+     * @param pItems
+     *                     The items to be processed.
+     * @param pThreads
+     *                     The maximum number of threads. When lower than 2 the
+     *                     items are processed serially in the calling thread.
+     * @param pTask
+     *                     The task to apply.
+     * @return the results, in the same order of the items.
+     * @throws IOException
+     *                         when any task fails.
+     */
+    public static <T, R> List<R> map(List<T> pItems, int pThreads,
+            Task<T, R> pTask) throws IOException {
+        List<R> results = new ArrayList<>(pItems.size());
+        if (pThreads < 2 || pItems.size() < 2) {
+            for (T item : pItems) {
+                results.add(applySerially(pTask, item));
+            }
+            return results;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(pThreads, pItems.size()), newThreadFactory());
+        try {
+            List<Future<R>> futures = new ArrayList<>(pItems.size());
+            for (T item : pItems) {
+                futures.add(executor.submit(() -> pTask.apply(item)));
+            }
+            for (Future<R> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("The parallel processing was interrupted.",
+                    e);
+        } catch (ExecutionException e) {
+            throw toIOException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static <T, R> R applySerially(Task<T, R> pTask, T pItem)
+            throws IOException {
+        try {
+            return pTask.apply(pItem);
+        } catch (Exception e) { // NOSONAR
+            throw toIOException(e);
+        }
+    }
+
+    /**
+     * Returns the number of threads to be used when the user asked for all
+     * available processors (zero or a negative value).
+     *
+     * @param pThreads
+     *                     The configured number of threads.
+     * @return the effective number of threads.
+     */
+    public static int effectiveThreads(int pThreads) {
+        return pThreads > 0 ? pThreads
+                : Runtime.getRuntime().availableProcessors();
+    }
+
+    private static ThreadFactory newThreadFactory() {
+        try {
+            // Thread.ofVirtual().factory() is only available on java 21+
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) Class.forName("java.lang.Thread$Builder")
+                    .getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) { // NOSONAR
+            return runnable -> {
+                Thread thread = new Thread(runnable, "osgi-subsystem-worker-"
+                        + THREAD_COUNTER.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            };
+        }
+    }
+
+    private static IOException toIOException(Throwable pCause) {
+        if (pCause instanceof IOException) {
+            return (IOException) pCause;
+        }
+        if (pCause instanceof UncheckedIOException) {
+            return ((UncheckedIOException) pCause).getCause();
+        }
+        if (pCause instanceof RuntimeException) {
+            throw (RuntimeException) pCause;
+        }
+        if (pCause instanceof Error) {
+            throw (Error) pCause;
+        }
+        return new IOException(pCause);
+    }
+}
@@ -0,0 +1,448 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.subsystems;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import org.osgi.framework.Constants;
+import org.osgi.framework.Version;
+import org.osgi.framework.VersionRange;
+
+import br.com.c8tech.tools.maven.osgi.lib.mojo.CommonMojoConstants;
+
+/**
+ * Writes an OSGi Repository index, in the XML format of the OSGi Repository
+ * Service specification, describing the artifacts embedded into a subsystem
+ * archive, so the runtime does not have to open each of them to know their
+ * capabilities.
+ * <p>
+ * Each resource gets its <code>osgi.identity</code> and
+ * <code>osgi.content</code> capabilities, the latter holding the SHA-256
+ * digest of the artifact, its size and its entry name as the url. Bundles
+ * also get their <code>osgi.wiring.bundle</code> and
+ * <code>osgi.wiring.host</code> capabilities, a <code>osgi.wiring.package</code>
+ * capability for each exported package and the requirements of their
+ * Import-Package and Require-Bundle headers. A fragment gets, instead, the
+ * <code>osgi.wiring.host</code> requirement of its Fragment-Host, as its
+ * exports are provided by its host. The generic capabilities and
+ * requirements of both are written as declared. Everything is taken from the
+ * manifest headers already read, and the resources are sorted by their
+ * identity, so the same artifacts always produce the same index.
+ *
+ * @author Cristiano Gavião
+ *
+ */
+public final class RepositoryIndexWriter {
+
+    /**
+     * An artifact of the index.
+     */
+    private static final class Resource {
+
+        private final String digest;
+
+        private final Map<String, String> headers;
+
+        private final long size;
+
+        private final String symbolicName;
+
+        private final String type;
+
+        private final String url;
+
+        private final Version version;
+
+        private Resource(String pSymbolicName, Version pVersion, String pType,
+                String pUrl, long pSize, String pDigest,
+                Map<String, String> pHeaders) {
+            symbolicName = pSymbolicName;
+            version = pVersion;
+            type = pType;
+            url = pUrl;
+            size = pSize;
+            digest = pDigest;
+            headers = pHeaders;
+        }
+
+        private boolean isBundle() {
+            return CommonMojoConstants.OSGI_BUNDLES_TYPE.equals(type)
+                    || CommonMojoConstants.OSGI_FRAGMENT_TYPE.equals(type);
+        }
+
+        private boolean isFragment() {
+            return CommonMojoConstants.OSGI_FRAGMENT_TYPE.equals(type);
+        }
+    }
+
+    public static final String INDEX_NAME = "repository.xml";
+
+    public static final String COMPRESSED_INDEX_NAME = INDEX_NAME + ".gz";
+
+    private static final String BUNDLE_MIME_TYPE = "application/vnd.osgi.bundle";
+
+    private static final String CONTENT_NAMESPACE = "osgi.content";
+
+    private static final String IDENTITY_NAMESPACE = "osgi.identity";
+
+    private static final String BUNDLE_NAMESPACE = "osgi.wiring.bundle";
+
+    private static final String HOST_NAMESPACE = "osgi.wiring.host";
+
+    private static final String PACKAGE_NAMESPACE = "osgi.wiring.package";
+
+    private static final Comparator<Resource> RESOURCE_ORDER = Comparator
+            .comparing((Resource r) -> r.symbolicName)
+            .thenComparing(r -> r.version).thenComparing(r -> r.type)
+            .thenComparing(r -> r.url);
+
+    private static final String XML_NAMESPACE = "http://www.osgi.org/xmlns/repository/v1.0.0";
+
+    private final String name;
+
+    private final List<Resource> resources = new ArrayList<>();
+
+    private Writer writer;
+
+    /**
+     * @param pName
+     *                  The name of the repository.
+     */
+    public RepositoryIndexWriter(String pName) {
+        name = pName;
+    }
+
+    private static String escape(String pValue) {
+        StringBuilder escaped = null;
+        for (int i = 0; i < pValue.length(); i++) {
+            char c = pValue.charAt(i);
+            String replacement;
+            switch (c) {
+            case '&':
+                replacement = "&amp;";
+                break;
+            case '<':
+                replacement = "&lt;";
+                break;
+            case '>':
+                replacement = "&gt;";
+                break;
+            case '"':
+                replacement = "&quot;";
+                break;
+            default:
+                replacement = null;
+            }
+            if (replacement != null && escaped == null) {
+                escaped = new StringBuilder(pValue.length() + 16)
+                        .append(pValue, 0, i);
+            }
+            if (escaped != null) {
+                if (replacement == null) {
+                    escaped.append(c);
+                } else {
+                    escaped.append(replacement);
+                }
+            }
+        }
+        return escaped == null ? pValue : escaped.toString();
+    }
+
+    /**
+     * The filter of a requirement on a package, bundle or host, matching its
+     * name and the version range of the informed attribute.
+     */
+    private static String wiringFilter(String pNamespace,
+            ManifestClause pClause, String pVersionAttribute) {
+        String filter = "(" + pNamespace + "=" + pClause.getPath() + ")";
+        String range = pClause.getAttribute(pVersionAttribute);
+        if (range == null) {
+            return filter;
+        }
+        return "(&" + filter
+                + new VersionRange(range.trim())
+                        .toFilterString(pVersionAttribute)
+                + ")";
+    }
+
+    private static String pathOf(String pHeaderValue) {
+        return pHeaderValue == null ? null
+                : pHeaderValue.split(";")[0].trim();
+    }
+
+    private static List<ManifestClause> splitPaths(String pHeaderValue) {
+        List<ManifestClause> clauses = new ArrayList<>();
+        for (ManifestClause clause : ManifestHeaderParser
+                .parse(pHeaderValue)) {
+            clauses.addAll(clause.splitPaths());
+        }
+        return clauses;
+    }
+
+    /**
+     * Adds an embedded artifact. Artifacts with no symbolic name or with an
+     * invalid version are ignored.
+     *
+     * @param pUrl
+     *                             The name of the artifact's entry in the
+     *                             archive.
+     * @param pSize
+     *                             The size of the artifact, in bytes.
+     * @param pSha256Hex
+     *                             The SHA-256 digest of the artifact, in
+     *                             hexadecimal.
+     * @param pManifestHeaders
+     *                             The artifact's manifest headers.
+     * @return <code>true</code> when the artifact was added.
+     */
+    public boolean addResource(String pUrl, long pSize, String pSha256Hex,
+            Map<String, String> pManifestHeaders) {
+        if (pManifestHeaders == null) {
+            return false;
+        }
+        String symbolicName = pathOf(pManifestHeaders
+                .get(CommonMojoConstants.OSGI_BUNDLE_HEADER_SN));
+        String version;
+        String type;
+        if (symbolicName != null) {
+            version = pManifestHeaders
+                    .get(CommonMojoConstants.OSGI_BUNDLE_HEADER_VERSION);
+            type = pManifestHeaders.get(
+                    CommonMojoConstants.OSGI_BUNDLE_HEADER_FRAGMENT_HOST) == null
+                            ? CommonMojoConstants.OSGI_BUNDLES_TYPE
+                            : CommonMojoConstants.OSGI_FRAGMENT_TYPE;
+        } else {
+            symbolicName = pathOf(pManifestHeaders
+                    .get(CommonMojoConstants.OSGI_SUBSYSTEM_SN));
+            if (symbolicName == null) {
+                return false;
+            }
+            version = pManifestHeaders
+                    .get(CommonMojoConstants.OSGI_SUBSYSTEM_VERSION);
+            type = pathOf(pManifestHeaders
+                    .get(CommonMojoConstants.OSGI_SUBSYSTEM_TYPE));
+            if (type == null) {
+                type = "osgi.subsystem.application";
+            }
+        }
+        try {
+            resources.add(new Resource(symbolicName,
+                    Version.parseVersion(
+                            version == null ? null : version.trim()),
+                    type, pUrl, pSize, pSha256Hex, pManifestHeaders));
+            return true;
+        } catch (IllegalArgumentException e) { // NOSONAR
+            return false;
+        }
+    }
+
+    private void attribute(String pName, String pType, Object pValue)
+            throws IOException {
+        writer.write("      <attribute name=\"");
+        writer.write(escape(pName));
+        if (pType != null) {
+            writer.write("\" type=\"");
+            writer.write(escape(pType));
+        }
+        writer.write("\" value=\"");
+        writer.write(escape(String.valueOf(pValue)));
+        writer.write("\"/>\n");
+    }
+
+    private void directive(String pName, String pValue) throws IOException {
+        writer.write("      <directive name=\"");
+        writer.write(escape(pName));
+        writer.write("\" value=\"");
+        writer.write(escape(pValue));
+        writer.write("\"/>\n");
+    }
+
+    private void begin(String pElement, String pNamespace)
+            throws IOException {
+        writer.write("    <");
+        writer.write(pElement);
+        writer.write(" namespace=\"");
+        writer.write(pNamespace);
+        writer.write("\">\n");
+    }
+
+    private void end(String pElement) throws IOException {
+        writer.write("    </");
+        writer.write(pElement);
+        writer.write(">\n");
+    }
+
+    /**
+     * Writes the index. The stream is flushed but not closed.
+     *
+     * @param pOut
+     *                        The stream.
+     * @param pCompressed
+     *                        Whether the index is gzip compressed.
+     * @throws IOException
+     *                         when the stream could not be written.
+     */
+    public void write(OutputStream pOut, boolean pCompressed)
+            throws IOException {
+        resources.sort(RESOURCE_ORDER);
+        GZIPOutputStream gzip = pCompressed ? new GZIPOutputStream(pOut)
+                : null;
+        writer = new BufferedWriter(new OutputStreamWriter(
+                gzip == null ? pOut : gzip, StandardCharsets.UTF_8),
+                16 * 1024);
+        writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        writer.write("<repository xmlns=\"" + XML_NAMESPACE + "\" name=\""
+                + escape(name) + "\">\n");
+        for (Resource resource : resources) {
+            writeResource(resource);
+        }
+        writer.write("</repository>\n");
+        writer.flush();
+        if (gzip != null) {
+            gzip.finish();
+        }
+        pOut.flush();
+    }
+
+    private void writeResource(Resource pResource) throws IOException {
+        writer.write("  <resource>\n");
+        begin("capability", IDENTITY_NAMESPACE);
+        attribute(IDENTITY_NAMESPACE, null, pResource.symbolicName);
+        attribute("type", null, pResource.type);
+        attribute(Constants.VERSION_ATTRIBUTE, "Version", pResource.version);
+        end("capability");
+        begin("capability", CONTENT_NAMESPACE);
+        attribute(CONTENT_NAMESPACE, null, pResource.digest);
+        attribute("url", null, pResource.url);
+        attribute("size", "Long", pResource.size);
+        attribute("mime", null, pResource.isBundle() ? BUNDLE_MIME_TYPE
+                : CommonMojoConstants.OSGI_SUBSYSTEM_MIME_TYPE);
+        end("capability");
+        if (pResource.isBundle()) {
+            writeBundleWiring(pResource);
+            for (ManifestClause capability : splitPaths(
+                    pResource.headers.get(Constants.PROVIDE_CAPABILITY))) {
+                writeGeneric("capability", capability);
+            }
+            for (ManifestClause requirement : splitPaths(
+                    pResource.headers.get(Constants.REQUIRE_CAPABILITY))) {
+                writeGeneric("requirement", requirement);
+            }
+        }
+        writer.write("  </resource>\n");
+    }
+
+    private void writeBundleWiring(Resource pResource) throws IOException {
+        if (pResource.isFragment()) {
+            // its exports are the host's capabilities, once attached
+            for (ManifestClause host : splitPaths(pResource.headers
+                    .get(CommonMojoConstants.OSGI_BUNDLE_HEADER_FRAGMENT_HOST))) {
+                writeWiringRequirement(HOST_NAMESPACE, host,
+                        Constants.BUNDLE_VERSION_ATTRIBUTE);
+            }
+        } else {
+            for (String namespace : new String[] { BUNDLE_NAMESPACE,
+                    HOST_NAMESPACE }) {
+                begin("capability", namespace);
+                attribute(namespace, null, pResource.symbolicName);
+                attribute(Constants.BUNDLE_VERSION_ATTRIBUTE, "Version",
+                        pResource.version);
+                end("capability");
+            }
+            for (ManifestClause export : splitPaths(
+                    pResource.headers.get(Constants.EXPORT_PACKAGE))) {
+                writePackageCapability(pResource, export);
+            }
+        }
+        for (ManifestClause packageImport : splitPaths(
+                pResource.headers.get(Constants.IMPORT_PACKAGE))) {
+            writeWiringRequirement(PACKAGE_NAMESPACE, packageImport,
+                    Constants.VERSION_ATTRIBUTE);
+        }
+        for (ManifestClause requiredBundle : splitPaths(
+                pResource.headers.get(Constants.REQUIRE_BUNDLE))) {
+            writeWiringRequirement(BUNDLE_NAMESPACE, requiredBundle,
+                    Constants.BUNDLE_VERSION_ATTRIBUTE);
+        }
+    }
+
+    private void writeWiringRequirement(String pNamespace,
+            ManifestClause pClause, String pVersionAttribute)
+            throws IOException {
+        begin("requirement", pNamespace);
+        directive(Constants.FILTER_DIRECTIVE,
+                wiringFilter(pNamespace, pClause, pVersionAttribute));
+        String resolution = pClause
+                .getDirective(Constants.RESOLUTION_DIRECTIVE);
+        if (resolution != null) {
+            directive(Constants.RESOLUTION_DIRECTIVE, resolution);
+        }
+        end("requirement");
+    }
+
+    /**
+     * Writes a Provide-Capability or Require-Capability clause with its
+     * attributes, keeping their declared types, and directives.
+     */
+    private void writeGeneric(String pElement, ManifestClause pClause)
+            throws IOException {
+        begin(pElement, pClause.getPath());
+        for (Map.Entry<String, String> attribute : pClause.getAttributes()
+                .entrySet()) {
+            String attributeName = attribute.getKey();
+            String attributeType = null;
+            int colon = attributeName.indexOf(':');
+            if (colon > 0) {
+                attributeType = attributeName.substring(colon + 1).trim();
+                attributeName = attributeName.substring(0, colon).trim();
+            }
+            attribute(attributeName, attributeType, attribute.getValue());
+        }
+        for (Map.Entry<String, String> directive : pClause.getDirectives()
+                .entrySet()) {
+            directive(directive.getKey(), directive.getValue());
+        }
+        end(pElement);
+    }
+
+    private void writePackageCapability(Resource pResource,
+            ManifestClause pExport) throws IOException {
+        String version = pExport.getAttribute(Constants.VERSION_ATTRIBUTE);
+        Version packageVersion;
+        try {
+            packageVersion = Version.parseVersion(
+                    version == null ? null : version.trim());
+        } catch (IllegalArgumentException e) { // NOSONAR
+            return;
+        }
+        begin("capability", PACKAGE_NAMESPACE);
+        attribute(PACKAGE_NAMESPACE, null, pExport.getPath());
+        attribute(Constants.VERSION_ATTRIBUTE, "Version", packageVersion);
+        attribute("bundle-symbolic-name", null, pResource.symbolicName);
+        attribute("bundle-version", "Version", pResource.version);
+        String uses = pExport.getDirective(Constants.USES_DIRECTIVE);
+        if (uses != null) {
+            directive(Constants.USES_DIRECTIVE, uses);
+        }
+        end("capability");
+    }
+}
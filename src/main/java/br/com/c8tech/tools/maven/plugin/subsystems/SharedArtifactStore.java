@@ -0,0 +1,246 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.subsystems;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import br.com.c8tech.tools.maven.plugin.subsystems.FileLinks.LinkType;
+
+/**
+ * A content addressed store of artifact files, keyed by their SHA-256
+ * digest, that can be shared by all the projects of a reactor and across
+ * builds.
+ * <p>
+ * The files of a project's cache directory are interned into the store and
+ * replaced by reflinks, or hard links, to the store entries, so the same
+ * bundle is kept only once on disk no matter how many subsystems embed it.
+ * When the file systems support neither, the project keeps its own copy. A
+ * cached file can also be {@link #materialize(Path, Path, LinkType...)
+ * materialized} straight from the artifact's file in the local repository,
+ * without being copied into the cache directory first.
+ * <p>
+ * A store entry is always a private copy made read-only, never a project's
+ * own file, so a project rewriting its cached file can not change the content
+ * every other project links to. The digest of each interned file is recorded
+ * along with its size and modification time, so interning it again while it
+ * keeps both does not read the file at all. Whenever a file is hashed, the
+ * entry it maps to is checked against its digest, so a damaged entry is
+ * replaced instead of being linked to once more.
+ *
+ * @author Cristiano Gavião
+ *
+ */
+public final class SharedArtifactStore {
+
+    private static final String ALGORITHM_DIRECTORY = "sha256";
+
+    private static final String INTERNED_DIRECTORY = "interned";
+
+    private final Path root;
+
+    /**
+     * @param pRoot
+     *                  The directory holding the store.
+     */
+    public SharedArtifactStore(Path pRoot) {
+        root = pRoot;
+    }
+
+    /**
+     * Returns where the content with the informed digest is kept.
+     *
+     * @param pSha256Hex
+     *                       The SHA-256 digest of the content, in hexadecimal.
+     * @return the path of the store entry.
+     */
+    public Path entryFor(String pSha256Hex) {
+        return root.resolve(ALGORITHM_DIRECTORY)
+                .resolve(pSha256Hex.substring(0, 2)).resolve(pSha256Hex);
+    }
+
+    private static void writeAtomically(Path pTarget, byte[] pContent)
+            throws IOException {
+        Files.createDirectories(pTarget.getParent());
+        Path temp = Files.createTempFile(pTarget.getParent(),
+                pTarget.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temp, pContent);
+            Files.move(temp, pTarget, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static void publish(Path pFile, Path pEntry) throws IOException {
+        Files.createDirectories(pEntry.getParent());
+        Path temp = Files.createTempFile(pEntry.getParent(),
+                pEntry.getFileName().toString(), ".tmp");
+        try {
+            // never the project's own file, which it may rewrite later
+            Files.copy(pFile, temp, StandardCopyOption.REPLACE_EXISTING);
+            if (!temp.toFile().setReadOnly()) {
+                throw new IOException(
+                        "Could not make the store entry read-only: " + temp);
+            }
+            Files.move(temp, pEntry, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private Path internedRecordOf(Path pFile) {
+        String pathDigest = FileDigests.toHex(FileDigests.newSha256().digest(
+                pFile.toAbsolutePath().normalize().toString()
+                        .getBytes(StandardCharsets.UTF_8)));
+        return root.resolve(INTERNED_DIRECTORY)
+                .resolve(pathDigest.substring(0, 2)).resolve(pathDigest);
+    }
+
+    /**
+     * Returns the digest recorded by a previous interning of the file, made
+     * while it had the same size and modification time.
+     *
+     * @return the digest, or <code>null</code> when the file must be hashed.
+     */
+    private static String readInternedRecord(Path pRecord,
+            BasicFileAttributes pAttributes) throws IOException {
+        String record;
+        try {
+            record = new String(Files.readAllBytes(pRecord),
+                    StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) { // NOSONAR
+            return null;
+        }
+        String[] fields = record.trim().split(" ");
+        if (fields.length != 3
+                || !fields[0].equals(String.valueOf(pAttributes.size()))
+                || !fields[1].equals(String.valueOf(
+                        pAttributes.lastModifiedTime().toMillis()))) {
+            return null;
+        }
+        return fields[2];
+    }
+
+    /**
+     * Interns the content of the file into the store, leaving the file
+     * untouched.
+     *
+     * @return the store entry holding the file's content.
+     */
+    private Path intern(Path pFile) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(pFile,
+                BasicFileAttributes.class);
+        String digest = readInternedRecord(internedRecordOf(pFile),
+                attributes);
+        if (digest != null) {
+            Path entry = entryFor(digest);
+            if (Files.isRegularFile(entry)
+                    && Files.size(entry) == attributes.size()) {
+                return entry;
+            }
+        }
+        digest = FileDigests.sha256Hex(pFile);
+        Path entry = entryFor(digest);
+        if (!Files.isRegularFile(entry)
+                || Files.size(entry) != attributes.size()
+                || !FileLinks.isLinkedTo(pFile, entry)
+                        && !digest.equals(FileDigests.sha256Hex(entry))) {
+            publish(pFile, entry);
+        }
+        record(pFile, digest);
+        return entry;
+    }
+
+    private void record(Path pFile, String pDigest) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(pFile,
+                BasicFileAttributes.class);
+        writeAtomically(internedRecordOf(pFile), (attributes.size() + " "
+                + attributes.lastModifiedTime().toMillis() + " " + pDigest)
+                        .getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Creates the target file as a link to the store entry holding the
+     * source's content, interning it when necessary, so the target is never
+     * written as a copy of the source first.
+     *
+     * @param pSource
+     *                       The file holding the content, as an artifact of
+     *                       the local repository.
+     * @param pTarget
+     *                       The file of a project's cache directory.
+     * @param pLinkTypes
+     *                       The kinds of link to try, in order of preference.
+     * @return how the target was materialized.
+     * @throws IOException
+     *                         when the files could not be read or the store
+     *                         could not be updated.
+     */
+    public FileLinks.Materialization materialize(Path pSource, Path pTarget,
+            LinkType... pLinkTypes) throws IOException {
+        return FileLinks.materialize(pTarget, intern(pSource), pLinkTypes);
+    }
+
+    /**
+     * Interns the file into the store, replacing it by a reflink, or a hard
+     * link, to its store entry.
+     *
+     * @param pFile
+     *                  A file of a project's cache directory.
+     * @return <code>true</code> when the file shares its content with the store
+     *         entry, or <code>false</code> when it was kept as a copy.
+     * @throws IOException
+     *                         when the file could not be read or the store
+     *                         could not be updated.
+     */
+    public boolean share(Path pFile) throws IOException {
+        return share(pFile, LinkType.REFLINK, LinkType.HARDLINK);
+    }
+
+    /**
+     * Interns the file into the store, replacing it by a link to its store
+     * entry.
+     *
+     * @param pFile
+     *                       A file of a project's cache directory.
+     * @param pLinkTypes
+     *                       The kinds of link to try, in order of preference.
+     * @return <code>true</code> when the file shares its content with the store
+     *         entry, or <code>false</code> when it was kept as a copy.
+     * @throws IOException
+     *                         when the file could not be read or the store
+     *                         could not be updated.
+     */
+    public boolean share(Path pFile, LinkType... pLinkTypes)
+            throws IOException {
+        Path entry = intern(pFile);
+        if (FileLinks.isLinkedTo(pFile, entry)) {
+            return true;
+        }
+        for (LinkType linkType : pLinkTypes) {
+            if (FileLinks.replaceWithLink(pFile, entry, linkType)) {
+                // a link takes the entry's modification time
+                record(pFile, entry.getFileName().toString());
+                return true;
+            }
+        }
+        return false;
+    }
+}
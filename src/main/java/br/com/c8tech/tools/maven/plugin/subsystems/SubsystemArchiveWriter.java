@@ -0,0 +1,505 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.subsystems;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipEntry;
+
+import br.com.c8tech.tools.maven.osgi.lib.mojo.CommonMojoConstants;
+
+/**
+ * Writes a subsystem archive compressing its entries concurrently.
+ * <p>
+ * Each entry is compressed by a worker thread into its own scatter file and
+ * afterwards all of them are gathered into the archive in the same order they
+ * were added, so the result has exactly the entry order of a serial run. A
+ * scatter file is closed, and its deflater released, as soon as its entry is
+ * compressed, so no more than one file and one deflater per thread are open
+ * at a time, whatever the number of entries.
+ * <p>
+ * Entries selected by the {@link EntryCompressionPolicy}, usually the
+ * embedded bundles and subsystems that are already compressed, are stored as
+ * they are. Their CRC is computed through a direct buffer and their bytes are
+ * transferred from the source file channel into the archive channel, without
+ * passing through the java heap. The same zero-copy transfer is used to gather
+ * the scatter files of the compressed entries.
+ * <p>
+ * When {@link #setIncremental(boolean) incremental}, an entry index is kept
+ * next to the archive, so the next run copies the entries whose source files
+ * have not changed raw from the previous archive.
+ * <p>
+ * As required by the subsystem specification, the optional
+ * <code>mimetype</code> entry is always the first one and it is stored
+ * uncompressed. The subsystem manifest comes right after it.
+ * <p>
+ * When {@link #setReproducibleTime(long) reproducible}, the remaining entries
+ * are sorted by name and all entries get the same time, written in UTC, so
+ * the same files always produce the same archive bytes.
+ *
+ * @author Cristiano Gavião
+ *
+ */
+public final class SubsystemArchiveWriter {
+
+    /**
+     * An entry to be written into the archive.
+     */
+    private static final class Item {
+
+        private final String name;
+
+        private final Path source;
+
+        private Item(Path pSource, String pName) {
+            source = pSource;
+            name = pName;
+        }
+    }
+
+    /**
+     * An entry ready to be gathered into the archive, whose data holds the
+     * entry bytes in their final form: the scatter file of a compressed
+     * entry, the source file of a stored one or, when the entry has not
+     * changed, a region of the previous archive.
+     */
+    private static final class PreparedEntry {
+
+        private final Path data;
+
+        private final ZipChannelWriter.EntryInfo info;
+
+        private final long previousOffset;
+
+        private final String source;
+
+        private final BasicFileAttributes sourceAttributes;
+
+        private PreparedEntry(ZipChannelWriter.EntryInfo pInfo, Path pData,
+                long pPreviousOffset, String pSource,
+                BasicFileAttributes pSourceAttributes) {
+            info = pInfo;
+            data = pData;
+            previousOffset = pPreviousOffset;
+            source = pSource;
+            sourceAttributes = pSourceAttributes;
+        }
+
+        private boolean isReused() {
+            return data == null;
+        }
+    }
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final int DIRECT_BUFFER_SIZE = 256 * 1024;
+
+    private BuildTimings buildTimings = new BuildTimings(false);
+
+    private EntryCompressionPolicy compressionPolicy = new EntryCompressionPolicy(
+            Collections.<String>emptyList());
+
+    private final Path destFile;
+
+    private boolean generateEsaMimeEntry;
+
+    private boolean incremental;
+
+    private final List<Item> items = new ArrayList<>();
+
+    private Path manifest;
+
+    private boolean reproducible;
+
+    private long reproducibleTime;
+
+    private int reusedEntryCount;
+
+    private int threads = 1;
+
+    /**
+     * @param pDestFile
+     *                      The archive file to be generated.
+     */
+    public SubsystemArchiveWriter(Path pDestFile) {
+        destFile = pDestFile;
+    }
+
+    private static String normalizeEntryName(String pName) {
+        String name = pName.replace('\\', '/');
+        while (name.startsWith("/")) {
+            name = name.substring(1);
+        }
+        return name;
+    }
+
+    private static void deleteRecursively(Path pDirectory) throws IOException {
+        List<Path> paths;
+        try (Stream<Path> walker = Files.walk(pDirectory)) {
+            paths = walker.sorted(Comparator.reverseOrder())
+                    .collect(Collectors.toList());
+        }
+        for (Path path : paths) {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    /**
+     * Adds a file to the archive.
+     *
+     * @param pSource
+     *                    The file to be archived.
+     * @param pName
+     *                    The name of the entry inside the archive.
+     */
+    public void addFile(Path pSource, String pName) {
+        items.add(new Item(pSource, normalizeEntryName(pName)));
+    }
+
+    /**
+     * Generates the archive file.
+     * <p>
+     * In incremental mode the entries whose source files have not changed
+     * since the previous archive was written are copied raw from it, and only
+     * the new or changed ones are compressed.
+     *
+     * @throws IOException
+     *                         when the archive could not be written.
+     */
+    public void createArchive() throws IOException {
+        Files.createDirectories(destFile.getParent());
+        Path indexFile = ArchiveEntryIndex.indexFileOf(destFile);
+        ArchiveEntryIndex previousIndex = incremental
+                ? ArchiveEntryIndex.load(destFile)
+                : null;
+        Files.deleteIfExists(indexFile);
+        Path previousArchive = null;
+        if (previousIndex != null && !previousIndex.isEmpty()) {
+            previousArchive = destFile.resolveSibling(
+                    destFile.getFileName().toString() + ".previous");
+            Files.move(destFile, previousArchive,
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+        Path scatterDirectory = Files.createTempDirectory(destFile.getParent(),
+                "esa-scatter");
+        try {
+            List<PreparedEntry> prepared;
+            BuildTimings.Phase compression = buildTimings
+                    .phase(BuildTimings.COMPRESSION);
+            try {
+                prepared = prepare(scatterDirectory, previousIndex);
+            } finally {
+                compression.close();
+            }
+            BuildTimings.Phase archiveFinalization = buildTimings
+                    .phase(BuildTimings.ARCHIVE_FINALIZATION);
+            try {
+                gather(prepared, previousArchive);
+            } finally {
+                archiveFinalization.close();
+            }
+            if (incremental) {
+                saveIndex(prepared);
+            }
+        } finally {
+            deleteRecursively(scatterDirectory);
+            if (previousArchive != null) {
+                Files.deleteIfExists(previousArchive);
+            }
+        }
+    }
+
+    private void saveIndex(List<PreparedEntry> pPrepared) throws IOException {
+        ArchiveEntryIndex index = new ArchiveEntryIndex();
+        for (PreparedEntry entry : pPrepared) {
+            ZipChannelWriter.EntryInfo info = entry.info;
+            index.put(info.getName(),
+                    new ArchiveEntryIndex.Record(entry.source,
+                            entry.sourceAttributes.size(),
+                            entry.sourceAttributes.lastModifiedTime()
+                                    .toMillis(),
+                            info.getMethod(), info.getCrc(),
+                            info.getCompressedSize(), info.getSize(),
+                            info.getTime(), info.getDataOffset()));
+        }
+        index.save(destFile);
+    }
+
+    private List<PreparedEntry> prepare(Path pScatterDirectory,
+            ArchiveEntryIndex pPreviousIndex) throws IOException {
+        List<Item> contents = new ArrayList<>();
+        if (manifest != null) {
+            contents.add(new Item(manifest,
+                    CommonMojoConstants.OSGI_SUBSYSTEM_MANIFEST_LOCATION));
+        }
+        if (reproducible) {
+            List<Item> sorted = new ArrayList<>(items);
+            sorted.sort(Comparator.comparing(item -> item.name));
+            contents.addAll(sorted);
+        } else {
+            contents.addAll(items);
+        }
+        List<Integer> indexes = new ArrayList<>();
+        for (int i = 0; i < contents.size(); i++) {
+            indexes.add(i);
+        }
+        return ParallelTasks.map(indexes, threads,
+                i -> timedPrepareItem(contents.get(i),
+                        pScatterDirectory.resolve("entry-" + i),
+                        pPreviousIndex));
+    }
+
+    private PreparedEntry timedPrepareItem(Item pItem, Path pScatterFile,
+            ArchiveEntryIndex pPreviousIndex) throws IOException {
+        long start = System.nanoTime();
+        try (BuildEvents.Event event = BuildEvents
+                .begin(BuildEvents.Kind.ARCHIVE_ENTRY)) {
+            PreparedEntry entry = prepareItem(pItem, pScatterFile,
+                    pPreviousIndex);
+            if (event.isRecording()) {
+                String outcome;
+                if (entry.previousOffset >= 0) {
+                    outcome = BuildEvents.OUTCOME_REUSED;
+                } else if (entry.info.getMethod() == ZipEntry.STORED) {
+                    outcome = BuildEvents.OUTCOME_STORED;
+                } else {
+                    outcome = BuildEvents.OUTCOME_DEFLATED;
+                }
+                event.artifact(pItem.name)
+                        .bytes(entry.sourceAttributes.size()).outcome(outcome);
+            }
+            buildTimings.recordArtifact(BuildTimings.COMPRESSION, pItem.name,
+                    entry.sourceAttributes.size(), System.nanoTime() - start);
+            return entry;
+        }
+    }
+
+    private PreparedEntry prepareItem(Item pItem, Path pScatterFile,
+            ArchiveEntryIndex pPreviousIndex) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(pItem.source,
+                BasicFileAttributes.class);
+        String source = ArchiveEntryIndex.sourceKey(pItem.source);
+        int method = compressionPolicy.methodFor(pItem.name);
+        if (pPreviousIndex != null) {
+            ArchiveEntryIndex.Record record = pPreviousIndex.lookup(pItem.name,
+                    source, attributes, method);
+            if (record != null) {
+                ZipChannelWriter.EntryInfo info = record
+                        .toEntryInfo(pItem.name);
+                return new PreparedEntry(
+                        reproducible ? info.withTime(reproducibleTime) : info,
+                        null, record.getDataOffset(), source, attributes);
+            }
+        }
+        long time = reproducible ? reproducibleTime
+                : attributes.lastModifiedTime().toMillis();
+        if (method == ZipEntry.STORED) {
+            long size = attributes.size();
+            return new PreparedEntry(new ZipChannelWriter.EntryInfo(pItem.name,
+                    ZipEntry.STORED, crc32(pItem.source), size, size, time),
+                    pItem.source, -1, source, attributes);
+        }
+        CRC32 crc = new CRC32();
+        long size = 0;
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try (InputStream in = Files.newInputStream(pItem.source);
+                OutputStream out = new DeflaterOutputStream(
+                        new BufferedOutputStream(
+                                Files.newOutputStream(pScatterFile),
+                                BUFFER_SIZE),
+                        deflater, BUFFER_SIZE)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                crc.update(buffer, 0, read);
+                out.write(buffer, 0, read);
+                size += read;
+            }
+        } finally {
+            deflater.end();
+        }
+        return new PreparedEntry(new ZipChannelWriter.EntryInfo(pItem.name,
+                ZipEntry.DEFLATED, crc.getValue(), Files.size(pScatterFile),
+                size, time), pScatterFile, -1, source, attributes);
+    }
+
+    private static long crc32(Path pSource) throws IOException {
+        CRC32 crc = new CRC32();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(DIRECT_BUFFER_SIZE);
+        try (FileChannel channel = FileChannel.open(pSource,
+                StandardOpenOption.READ)) {
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                crc.update(buffer);
+                buffer.clear();
+            }
+        }
+        return crc.getValue();
+    }
+
+    private void gather(List<PreparedEntry> pPrepared, Path pPreviousArchive)
+            throws IOException {
+        reusedEntryCount = 0;
+        try (ZipChannelWriter out = new ZipChannelWriter(destFile,
+                reproducible ? TimeZone.getTimeZone("UTC")
+                        : TimeZone.getDefault());
+                FileChannel previous = pPreviousArchive != null
+                        ? FileChannel.open(pPreviousArchive,
+                                StandardOpenOption.READ)
+                        : null) {
+            long time = reproducible ? reproducibleTime
+                    : System.currentTimeMillis();
+            if (generateEsaMimeEntry) {
+                writeMimeTypeEntry(out, time);
+            }
+            Set<String> directories = new HashSet<>();
+            for (PreparedEntry entry : pPrepared) {
+                writeParentDirectories(out, directories, entry.info.getName(),
+                        time);
+                if (entry.isReused()) {
+                    out.writeEntry(entry.info, previous, entry.previousOffset);
+                    reusedEntryCount++;
+                } else {
+                    out.writeEntry(entry.info, entry.data);
+                }
+            }
+        }
+    }
+
+    private static void writeMimeTypeEntry(ZipChannelWriter pOut, long pTime)
+            throws IOException {
+        byte[] mimeType = CommonMojoConstants.OSGI_SUBSYSTEM_MIME_TYPE
+                .getBytes(StandardCharsets.UTF_8);
+        CRC32 crc = new CRC32();
+        crc.update(mimeType);
+        pOut.writeEntry(new ZipChannelWriter.EntryInfo(
+                CommonMojoConstants.MIME_TYPE_ENTRY_NAME, ZipEntry.STORED,
+                crc.getValue(), mimeType.length, mimeType.length, pTime),
+                mimeType);
+    }
+
+    private static void writeParentDirectories(ZipChannelWriter pOut,
+            Set<String> pWritten, String pEntryName, long pTime)
+            throws IOException {
+        int slash = pEntryName.indexOf('/');
+        while (slash > 0) {
+            String directory = pEntryName.substring(0, slash + 1);
+            if (pWritten.add(directory)) {
+                pOut.writeEntry(
+                        ZipChannelWriter.EntryInfo.directory(directory, pTime),
+                        new byte[0]);
+            }
+            slash = pEntryName.indexOf('/', slash + 1);
+        }
+    }
+
+    /**
+     * @param pBuildTimings
+     *                          Where the time spent compressing each entry
+     *                          and finalizing the archive is recorded.
+     */
+    public void setBuildTimings(BuildTimings pBuildTimings) {
+        buildTimings = pBuildTimings;
+    }
+
+    /**
+     * @param pCompressionPolicy
+     *                               The policy deciding which entries are
+     *                               stored uncompressed.
+     */
+    public void setCompressionPolicy(
+            EntryCompressionPolicy pCompressionPolicy) {
+        compressionPolicy = pCompressionPolicy;
+    }
+
+    /**
+     * @param pGenerateEsaMimeEntry
+     *                                  Whether the <code>mimetype</code> entry
+     *                                  must be generated.
+     */
+    public void setGenerateEsaMimeEntry(boolean pGenerateEsaMimeEntry) {
+        generateEsaMimeEntry = pGenerateEsaMimeEntry;
+    }
+
+    /**
+     * Returns how many entries were copied from the previous archive by the
+     * last {@link #createArchive()} call.
+     *
+     * @return the number of reused entries.
+     */
+    public int getReusedEntryCount() {
+        return reusedEntryCount;
+    }
+
+    /**
+     * @param pIncremental
+     *                         Whether the archive must be updated
+     *                         incrementally, keeping an entry index next to
+     *                         it.
+     */
+    public void setIncremental(boolean pIncremental) {
+        incremental = pIncremental;
+    }
+
+    /**
+     * @param pManifest
+     *                      The subsystem manifest file.
+     */
+    public void setManifest(Path pManifest) {
+        manifest = pManifest;
+    }
+
+    /**
+     * Makes the archive reproducible: its entries, besides the
+     * <code>mimetype</code> and the manifest ones, are sorted by name and all
+     * of them get the informed time instead of the files' modification times.
+     *
+     * @param pTime
+     *                  The time of all entries, in milliseconds since the
+     *                  epoch.
+     */
+    public void setReproducibleTime(long pTime) {
+        reproducible = true;
+        reproducibleTime = pTime;
+    }
+
+    /**
+     * @param pThreads
+     *                     The maximum number of threads used to compress the
+     *                     entries.
+     */
+    public void setThreads(int pThreads) {
+        threads = pThreads;
+    }
+}
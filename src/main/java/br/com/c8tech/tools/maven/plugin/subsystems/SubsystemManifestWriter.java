@@ -0,0 +1,242 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.subsystems;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.aries.subsystem.core.archive.Clause;
+import org.apache.aries.subsystem.core.archive.Header;
+import org.apache.aries.subsystem.core.archive.SubsystemContentHeader;
+import org.apache.aries.subsystem.core.archive.SubsystemManifest;
+import org.osgi.framework.Constants;
+import org.osgi.service.subsystem.SubsystemConstants;
+
+/**
+ * Writes a subsystem manifest in a canonical form, so the same headers always
+ * produce the same bytes, whatever the order Aries keeps them in.
+ * <p>
+ * The identity headers come first and the remaining ones follow sorted by
+ * name. The clauses of the Subsystem-Content header are sorted by their start
+ * order and symbolic name, and the ones of the package, bundle, service and
+ * capability headers by their paths. Each clause is written straight to the
+ * stream, wrapped at 72 bytes as required by the jar manifest format, so the
+ * value of a large header is never built as a single string.
+ *
+ * @author Cristiano Gavião
+ *
+ */
+public final class SubsystemManifestWriter {
+
+    private static final Comparator<SubsystemContentHeader.Clause> CONTENT_ORDER = Comparator
+            .comparingInt(SubsystemContentHeader.Clause::getStartOrder)
+            .thenComparing(SubsystemContentHeader.Clause::getSymbolicName)
+            .thenComparing(Object::toString);
+
+    private static final Comparator<ManifestClause> CONTENT_CLAUSE_ORDER = Comparator
+            .comparingInt(SubsystemManifestWriter::startOrderOf)
+            .thenComparing(ManifestClause::getPath);
+
+    private static final List<String> LEADING_HEADERS = Arrays.asList(
+            SubsystemConstants.SUBSYSTEM_MANIFESTVERSION,
+            SubsystemConstants.SUBSYSTEM_SYMBOLICNAME,
+            SubsystemConstants.SUBSYSTEM_VERSION,
+            SubsystemConstants.SUBSYSTEM_TYPE);
+
+    private static final int MAX_LINE_BYTES = 72;
+
+    private static final String MANIFEST_VERSION = "Manifest-Version";
+
+    private static final Set<String> PATH_SORTED_HEADERS = new HashSet<>(
+            Arrays.asList(Constants.EXPORT_PACKAGE, Constants.IMPORT_PACKAGE,
+                    Constants.PROVIDE_CAPABILITY, Constants.REQUIRE_BUNDLE,
+                    Constants.REQUIRE_CAPABILITY,
+                    SubsystemConstants.PREFERRED_PROVIDER,
+                    SubsystemConstants.SUBSYSTEM_EXPORTSERVICE,
+                    SubsystemConstants.SUBSYSTEM_IMPORTSERVICE));
+
+    private final StringBuilder clause = new StringBuilder(256);
+
+    private int lineBytes;
+
+    private final OutputStream out;
+
+    private SubsystemManifestWriter(OutputStream pOut) {
+        out = new BufferedOutputStream(pOut, 16 * 1024);
+    }
+
+    /**
+     * Writes the headers of a manifest. The stream is flushed but not closed.
+     *
+     * @param pManifest
+     *                      The manifest.
+     * @param pOut
+     *                      The stream.
+     * @throws IOException
+     *                         when the stream could not be written.
+     */
+    public static void write(SubsystemManifest pManifest, OutputStream pOut)
+            throws IOException {
+        write(pManifest.getHeaders().values(), pOut);
+    }
+
+    /**
+     * Writes the manifest headers. The stream is flushed but not closed.
+     *
+     * @param pHeaders
+     *                     The headers.
+     * @param pOut
+     *                     The stream.
+     * @throws IOException
+     *                         when the stream could not be written.
+     */
+    public static void write(Collection<? extends Header<?>> pHeaders,
+            OutputStream pOut) throws IOException {
+        Map<String, Header<?>> sorted = new TreeMap<>();
+        for (Header<?> header : pHeaders) {
+            sorted.put(header.getName(), header);
+        }
+        SubsystemManifestWriter writer = new SubsystemManifestWriter(pOut);
+        Header<?> manifestVersion = sorted.remove(MANIFEST_VERSION);
+        writer.writeValueHeader(MANIFEST_VERSION,
+                manifestVersion == null ? "1.0" : manifestVersion.getValue());
+        for (String name : LEADING_HEADERS) {
+            Header<?> header = sorted.remove(name);
+            if (header != null) {
+                writer.writeHeader(header);
+            }
+        }
+        for (Header<?> header : sorted.values()) {
+            writer.writeHeader(header);
+        }
+        writer.newLine();
+        writer.out.flush();
+    }
+
+    // as Aries does, a clause without a start order is started first
+    private static int startOrderOf(ManifestClause pClause) {
+        String startOrder = pClause
+                .getDirective(SubsystemContentHeader.Clause.DIRECTIVE_STARTORDER);
+        return startOrder == null ? 0 : Integer.parseInt(startOrder.trim());
+    }
+
+    private void append(CharSequence pText) throws IOException {
+        int length = pText.length();
+        for (int i = 0; i < length; i++) {
+            char c = pText.charAt(i);
+            if (c < 0x80) {
+                wrapIfNeeded(1);
+                out.write(c);
+            } else if (c < 0x800) {
+                wrapIfNeeded(2);
+                out.write(0xC0 | (c >> 6));
+                out.write(0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length
+                    && Character.isLowSurrogate(pText.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, pText.charAt(++i));
+                wrapIfNeeded(4);
+                out.write(0xF0 | (codePoint >> 18));
+                out.write(0x80 | ((codePoint >> 12) & 0x3F));
+                out.write(0x80 | ((codePoint >> 6) & 0x3F));
+                out.write(0x80 | (codePoint & 0x3F));
+            } else {
+                wrapIfNeeded(3);
+                out.write(0xE0 | (c >> 12));
+                out.write(0x80 | ((c >> 6) & 0x3F));
+                out.write(0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    private void beginHeader(String pName) throws IOException {
+        append(pName);
+        append(": ");
+    }
+
+    private void newLine() throws IOException {
+        out.write('\r');
+        out.write('\n');
+        lineBytes = 0;
+    }
+
+    // a character is never split between two lines
+    private void wrapIfNeeded(int pBytes) throws IOException {
+        if (lineBytes + pBytes > MAX_LINE_BYTES) {
+            newLine();
+            out.write(' ');
+            lineBytes = 1;
+        }
+        lineBytes += pBytes;
+    }
+
+    private void writeHeader(Header<?> pHeader) throws IOException {
+        if (pHeader instanceof ClauseListHeader) {
+            List<ManifestClause> clauses = new ArrayList<>(
+                    ((ClauseListHeader) pHeader).getManifestClauses());
+            // stable, so the order of clauses of the same path is kept
+            clauses.sort(SubsystemConstants.SUBSYSTEM_CONTENT
+                    .equals(pHeader.getName()) ? CONTENT_CLAUSE_ORDER
+                            : Comparator.comparing(ManifestClause::getPath));
+            beginHeader(pHeader.getName());
+            for (int i = 0; i < clauses.size(); i++) {
+                clause.setLength(0);
+                if (i > 0) {
+                    clause.append(", ");
+                }
+                clauses.get(i).appendTo(clause);
+                append(clause);
+            }
+            newLine();
+        } else if (pHeader instanceof SubsystemContentHeader) {
+            List<SubsystemContentHeader.Clause> clauses = new ArrayList<>(
+                    ((SubsystemContentHeader) pHeader).getClauses());
+            clauses.sort(CONTENT_ORDER);
+            writeClauses(pHeader.getName(), clauses);
+        } else if (PATH_SORTED_HEADERS.contains(pHeader.getName())) {
+            List<Clause> clauses = new ArrayList<>(pHeader.getClauses());
+            clauses.sort(Comparator.comparing(Clause::getPath)
+                    .thenComparing(Object::toString));
+            writeClauses(pHeader.getName(), clauses);
+        } else {
+            writeValueHeader(pHeader.getName(), pHeader.getValue());
+        }
+    }
+
+    private void writeClauses(String pName, List<? extends Clause> pClauses)
+            throws IOException {
+        beginHeader(pName);
+        for (int i = 0; i < pClauses.size(); i++) {
+            if (i > 0) {
+                append(", ");
+            }
+            append(pClauses.get(i).toString());
+        }
+        newLine();
+    }
+
+    private void writeValueHeader(String pName, String pValue)
+            throws IOException {
+        beginHeader(pName);
+        append(pValue);
+        newLine();
+    }
+}
@@ -0,0 +1,206 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.subsystems;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A stream that compares the bytes written to it against the current
+ * content of a file and only opens the real output when they start to
+ * differ, so a file regenerated with the same content is never touched.
+ * <p>
+ * Nothing is buffered while the bytes match. When the first different byte
+ * is found, the matching prefix is read back from the file and written to
+ * the output, followed by the remaining bytes.
+ *
+ * @author Cristiano Gavião
+ *
+ */
+public final class UnchangedFileOutputStream extends OutputStream {
+
+    /**
+     * Writes the content of a file to a stream.
+     */
+    @FunctionalInterface
+    public interface Content {
+        void writeTo(OutputStream pOut) throws IOException;
+    }
+
+    /**
+     * Opens the stream that writes the file.
+     */
+    @FunctionalInterface
+    public interface Target {
+        OutputStream open() throws IOException;
+    }
+
+    private final Path file;
+
+    private long matched;
+
+    private OutputStream out;
+
+    private InputStream previous;
+
+    private final Target target;
+
+    /**
+     * @param pFile
+     *                    The file whose current content is compared. It may
+     *                    not exist.
+     * @param pTarget
+     *                    Opens the stream that writes the file, when its
+     *                    content changes.
+     * @throws IOException
+     *                         when the file could not be read.
+     */
+    public UnchangedFileOutputStream(Path pFile, Target pTarget)
+            throws IOException {
+        file = pFile;
+        target = pTarget;
+        if (Files.isRegularFile(pFile)) {
+            previous = new BufferedInputStream(Files.newInputStream(pFile),
+                    16 * 1024);
+        }
+    }
+
+    /**
+     * Writes a file unless it already has the same content.
+     *
+     * @param pFile
+     *                     The file.
+     * @param pContent
+     *                     Writes the content of the file.
+     * @return whether the file was written.
+     * @throws IOException
+     *                         when the file could not be read or written.
+     * @see #write(Path, Target, Content)
+     */
+    public static boolean write(Path pFile, Content pContent)
+            throws IOException {
+        return write(pFile, () -> Files.newOutputStream(pFile), pContent);
+    }
+
+    /**
+     * Writes a file unless it already has the same content. An unchanged
+     * file keeps its modification time, so the mojos and the archive that
+     * take it as an input are not generated again because of it.
+     *
+     * @param pFile
+     *                     The file.
+     * @param pTarget
+     *                     Opens the stream that writes the file, when its
+     *                     content changes.
+     * @param pContent
+     *                     Writes the content of the file.
+     * @return whether the file was written.
+     * @throws IOException
+     *                         when the file could not be read or written.
+     */
+    public static boolean write(Path pFile, Target pTarget, Content pContent)
+            throws IOException {
+        UnchangedFileOutputStream written;
+        try (UnchangedFileOutputStream out = new UnchangedFileOutputStream(
+                pFile, pTarget)) {
+            written = out;
+            pContent.writeTo(out);
+        }
+        // only final once the stream is closed
+        return written.isChanged();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (out == null && (previous == null || previous.read() != -1)) {
+                // the file is missing or longer than the new content
+                diverge();
+            }
+        } finally {
+            closePrevious();
+            if (out != null) {
+                out.close();
+            }
+        }
+    }
+
+    private void closePrevious() throws IOException {
+        if (previous != null) {
+            previous.close();
+            previous = null;
+        }
+    }
+
+    private void diverge() throws IOException {
+        closePrevious();
+        byte[] prefix = new byte[(int) matched];
+        if (matched > 0) {
+            try (InputStream in = Files.newInputStream(file)) {
+                int offset = 0;
+                while (offset < prefix.length) {
+                    int read = in.read(prefix, offset, prefix.length - offset);
+                    if (read < 0) {
+                        throw new IOException(
+                                "The file has changed while being compared: "
+                                        + file);
+                    }
+                    offset += read;
+                }
+            }
+        }
+        out = target.open();
+        out.write(prefix);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (out != null) {
+            out.flush();
+        }
+    }
+
+    /**
+     * @return whether the content written differs from the file's one. It is
+     *         only final after the stream is closed.
+     */
+    public boolean isChanged() {
+        return out != null;
+    }
+
+    @Override
+    public void write(byte[] pBytes, int pOffset, int pLength)
+            throws IOException {
+        int i = 0;
+        if (out == null) {
+            while (i < pLength && previous != null
+                    && previous.read() == (pBytes[pOffset + i] & 0xFF)) {
+                i++;
+            }
+            matched += i;
+            if (i == pLength) {
+                return;
+            }
+            diverge();
+        }
+        out.write(pBytes, pOffset + i, pLength - i);
+    }
+
+    @Override
+    public void write(int pByte) throws IOException {
+        write(new byte[] { (byte) pByte }, 0, 1);
+    }
+}
@@ -0,0 +1,377 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.subsystems;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Calendar;
+import java.util.TimeZone;
+import java.util.zip.ZipEntry;
+
+/**
+ * A minimal zip writer that receives entries whose data is already in its
+ * final form, stored or raw deflated, and copies it into the archive using
+ * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)},
+ * avoiding to bring the payload into the java heap.
+ * <p>
+ * Zip64 extensions are written only when sizes, offsets or the number of
+ * entries require them.
+ *
+ * @author Cristiano Gavião
+ *
+ */
+final class ZipChannelWriter implements Closeable {
+
+    /**
+     * The metadata of an entry written into the archive.
+     */
+    static final class EntryInfo {
+
+        private final long compressedSize;
+
+        private final long crc;
+
+        private long dataOffset;
+
+        private final int method;
+
+        private final String name;
+
+        private final long size;
+
+        private final long time;
+
+        private long localHeaderOffset;
+
+        EntryInfo(String pName, int pMethod, long pCrc, long pCompressedSize,
+                long pSize, long pTime) {
+            name = pName;
+            method = pMethod;
+            crc = pCrc;
+            compressedSize = pCompressedSize;
+            size = pSize;
+            time = pTime;
+        }
+
+        static EntryInfo directory(String pName, long pTime) {
+            return new EntryInfo(pName, ZipEntry.STORED, 0, 0, 0, pTime);
+        }
+
+        long getCompressedSize() {
+            return compressedSize;
+        }
+
+        long getCrc() {
+            return crc;
+        }
+
+        long getDataOffset() {
+            return dataOffset;
+        }
+
+        long getLocalHeaderOffset() {
+            return localHeaderOffset;
+        }
+
+        int getMethod() {
+            return method;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        long getSize() {
+            return size;
+        }
+
+        long getTime() {
+            return time;
+        }
+
+        boolean isDirectory() {
+            return name.endsWith("/");
+        }
+
+        EntryInfo withTime(long pTime) {
+            return new EntryInfo(name, method, crc, compressedSize, size,
+                    pTime);
+        }
+    }
+
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+
+    private static final int DIRECTORY_MODE = 040755;
+
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+
+    private static final int FILE_MODE = 0100644;
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+
+    private static final int MSDOS_DIRECTORY_FLAG = 0x10;
+
+    private static final int PLATFORM_UNIX = 3;
+
+    private static final int UTF8_FLAG = 0x0800;
+
+    private static final int VERSION_DEFAULT = 20;
+
+    private static final int VERSION_ZIP64 = 45;
+
+    private static final int ZIP64_END_LOCATOR_SIGNATURE = 0x07064b50;
+
+    private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+
+    private static final int ZIP64_MAGIC_SHORT = 0xFFFF;
+
+    private final ByteArrayOutputStream centralDirectory = new ByteArrayOutputStream();
+
+    private final FileChannel channel;
+
+    private int entryCount;
+
+    private final TimeZone timeZone;
+
+    ZipChannelWriter(Path pDestFile) throws IOException {
+        this(pDestFile, TimeZone.getDefault());
+    }
+
+    /**
+     * @param pDestFile
+     *                      The archive file.
+     * @param pTimeZone
+     *                      The time zone the entry times are converted to,
+     *                      as the zip format has no time zone.
+     */
+    ZipChannelWriter(Path pDestFile, TimeZone pTimeZone) throws IOException {
+        timeZone = pTimeZone;
+        channel = FileChannel.open(pDestFile, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Converts a java time to the MS-DOS date and time format used by zip
+     * files, where the date is held by the high 16 bits.
+     */
+    static long toDosTime(long pTime, TimeZone pTimeZone) {
+        Calendar calendar = Calendar.getInstance(pTimeZone);
+        calendar.setTimeInMillis(pTime);
+        int year = calendar.get(Calendar.YEAR);
+        if (year < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return ((long) (year - 1980) << 25)
+                | ((long) (calendar.get(Calendar.MONTH) + 1) << 21)
+                | ((long) calendar.get(Calendar.DAY_OF_MONTH) << 16)
+                | ((long) calendar.get(Calendar.HOUR_OF_DAY) << 11)
+                | ((long) calendar.get(Calendar.MINUTE) << 5)
+                | ((long) calendar.get(Calendar.SECOND) >> 1);
+    }
+
+    private static ByteBuffer newBuffer(int pCapacity) {
+        return ByteBuffer.allocate(pCapacity).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void finish() throws IOException {
+        long centralDirectoryOffset = channel.position();
+        byte[] central = centralDirectory.toByteArray();
+        writeFully(ByteBuffer.wrap(central));
+        long centralDirectorySize = central.length;
+
+        boolean zip64 = entryCount >= ZIP64_MAGIC_SHORT
+                || centralDirectoryOffset >= ZIP64_MAGIC
+                || centralDirectorySize >= ZIP64_MAGIC;
+        if (zip64) {
+            long zip64EndOffset = channel.position();
+            ByteBuffer end64 = newBuffer(56 + 20);
+            end64.putInt(ZIP64_END_SIGNATURE);
+            end64.putLong(44);
+            end64.putShort((short) ((PLATFORM_UNIX << 8) | VERSION_ZIP64));
+            end64.putShort((short) VERSION_ZIP64);
+            end64.putInt(0);
+            end64.putInt(0);
+            end64.putLong(entryCount);
+            end64.putLong(entryCount);
+            end64.putLong(centralDirectorySize);
+            end64.putLong(centralDirectoryOffset);
+            end64.putInt(ZIP64_END_LOCATOR_SIGNATURE);
+            end64.putInt(0);
+            end64.putLong(zip64EndOffset);
+            end64.putInt(1);
+            end64.flip();
+            writeFully(end64);
+        }
+
+        ByteBuffer end = newBuffer(22);
+        end.putInt(END_OF_CENTRAL_DIRECTORY_SIGNATURE);
+        end.putShort((short) 0);
+        end.putShort((short) 0);
+        short count = (short) Math.min(entryCount, ZIP64_MAGIC_SHORT);
+        end.putShort(count);
+        end.putShort(count);
+        end.putInt((int) Math.min(centralDirectorySize, ZIP64_MAGIC));
+        end.putInt((int) Math.min(centralDirectoryOffset, ZIP64_MAGIC));
+        end.putShort((short) 0);
+        end.flip();
+        writeFully(end);
+    }
+
+    /**
+     * Writes an entry whose data is held in memory, as directories and small
+     * generated files.
+     */
+    void writeEntry(EntryInfo pEntry, byte[] pData) throws IOException {
+        writeLocalHeader(pEntry);
+        writeFully(ByteBuffer.wrap(pData));
+        writeCentralHeader(pEntry);
+    }
+
+    /**
+     * Writes an entry whose data, already in its final form, is found at the
+     * given position of the source file.
+     */
+    void writeEntry(EntryInfo pEntry, FileChannel pSource, long pPosition)
+            throws IOException {
+        writeLocalHeader(pEntry);
+        long position = pPosition;
+        long remaining = pEntry.compressedSize;
+        while (remaining > 0) {
+            long transferred = pSource.transferTo(position, remaining,
+                    channel);
+            if (transferred <= 0) {
+                throw new IOException("Unexpected end of data while writing '"
+                        + pEntry.name + "'.");
+            }
+            position += transferred;
+            remaining -= transferred;
+        }
+        writeCentralHeader(pEntry);
+    }
+
+    /**
+     * Writes an entry whose data, already in its final form, is the whole
+     * content of the source file.
+     */
+    void writeEntry(EntryInfo pEntry, Path pSource) throws IOException {
+        try (FileChannel source = FileChannel.open(pSource,
+                StandardOpenOption.READ)) {
+            writeEntry(pEntry, source, 0);
+        }
+    }
+
+    private void writeCentralHeader(EntryInfo pEntry) {
+        byte[] name = pEntry.name.getBytes(StandardCharsets.UTF_8);
+        boolean sizeOverflow = pEntry.size >= ZIP64_MAGIC;
+        boolean compressedSizeOverflow = pEntry.compressedSize >= ZIP64_MAGIC;
+        boolean offsetOverflow = pEntry.localHeaderOffset >= ZIP64_MAGIC;
+        int extraLength = (sizeOverflow ? 8 : 0)
+                + (compressedSizeOverflow ? 8 : 0) + (offsetOverflow ? 8 : 0);
+        boolean zip64 = extraLength > 0;
+        int version = zip64 ? VERSION_ZIP64 : VERSION_DEFAULT;
+
+        ByteBuffer header = newBuffer(
+                46 + name.length + (zip64 ? 4 + extraLength : 0));
+        header.putInt(CENTRAL_HEADER_SIGNATURE);
+        header.putShort((short) ((PLATFORM_UNIX << 8) | version));
+        header.putShort((short) version);
+        header.putShort((short) UTF8_FLAG);
+        header.putShort((short) pEntry.method);
+        header.putInt((int) toDosTime(pEntry.time, timeZone));
+        header.putInt((int) pEntry.crc);
+        header.putInt((int) (compressedSizeOverflow ? ZIP64_MAGIC
+                : pEntry.compressedSize));
+        header.putInt((int) (sizeOverflow ? ZIP64_MAGIC : pEntry.size));
+        header.putShort((short) name.length);
+        header.putShort((short) (zip64 ? 4 + extraLength : 0));
+        header.putShort((short) 0);
+        header.putShort((short) 0);
+        header.putShort((short) 0);
+        header.putInt(pEntry.isDirectory()
+                ? (DIRECTORY_MODE << 16) | MSDOS_DIRECTORY_FLAG
+                : FILE_MODE << 16);
+        header.putInt((int) (offsetOverflow ? ZIP64_MAGIC
+                : pEntry.localHeaderOffset));
+        header.put(name);
+        if (zip64) {
+            header.putShort((short) ZIP64_EXTRA_ID);
+            header.putShort((short) extraLength);
+            if (sizeOverflow) {
+                header.putLong(pEntry.size);
+            }
+            if (compressedSizeOverflow) {
+                header.putLong(pEntry.compressedSize);
+            }
+            if (offsetOverflow) {
+                header.putLong(pEntry.localHeaderOffset);
+            }
+        }
+        centralDirectory.write(header.array(), 0, header.position());
+        entryCount++;
+    }
+
+    private void writeFully(ByteBuffer pBuffer) throws IOException {
+        while (pBuffer.hasRemaining()) {
+            channel.write(pBuffer);
+        }
+    }
+
+    private void writeLocalHeader(EntryInfo pEntry) throws IOException {
+        byte[] name = pEntry.name.getBytes(StandardCharsets.UTF_8);
+        boolean zip64 = pEntry.size >= ZIP64_MAGIC
+                || pEntry.compressedSize >= ZIP64_MAGIC;
+
+        pEntry.localHeaderOffset = channel.position();
+        ByteBuffer header = newBuffer(30 + name.length + (zip64 ? 20 : 0));
+        header.putInt(LOCAL_HEADER_SIGNATURE);
+        header.putShort((short) (zip64 ? VERSION_ZIP64 : VERSION_DEFAULT));
+        header.putShort((short) UTF8_FLAG);
+        header.putShort((short) pEntry.method);
+        header.putInt((int) toDosTime(pEntry.time, timeZone));
+        header.putInt((int) pEntry.crc);
+        header.putInt((int) (zip64 ? ZIP64_MAGIC : pEntry.compressedSize));
+        header.putInt((int) (zip64 ? ZIP64_MAGIC : pEntry.size));
+        header.putShort((short) name.length);
+        header.putShort((short) (zip64 ? 20 : 0));
+        header.put(name);
+        if (zip64) {
+            header.putShort((short) ZIP64_EXTRA_ID);
+            header.putShort((short) 16);
+            header.putLong(pEntry.size);
+            header.putLong(pEntry.compressedSize);
+        }
+        header.flip();
+        writeFully(header);
+        pEntry.dataOffset = channel.position();
+    }
+}
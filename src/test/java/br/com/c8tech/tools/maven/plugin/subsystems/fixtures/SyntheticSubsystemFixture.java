@@ -0,0 +1,483 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.subsystems.fixtures;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.osgi.framework.Constants;
+import org.osgi.service.subsystem.SubsystemConstants;
+
+/**
+ * Generates a synthetic subsystem, as large as needed, in order to exercise
+ * the plugin at scale with no network access.
+ * <p>
+ * It creates a file based maven repository holding the synthetic bundles and
+ * the nested subsystems (ESA files) embedding part of them, and a project of
+ * one of the <code>osgi.subsystem.*</code> packagings depending on all of
+ * them:
+ *
+ * <pre>
+ * root/
+ *   repository/br/com/c8tech/synthetic/bundleN/1.0.N/bundleN-1.0.N.jar
+ *   repository/br/com/c8tech/synthetic/subsystemN/1.0.N/subsystemN-1.0.N.esa
+ *   project/pom.xml
+ * </pre>
+ *
+ * Every bundle exports a few packages with <code>uses</code> directives,
+ * imports packages exported by other bundles and declares generic
+ * capabilities and requirements, so the clauses overlap as they do in real
+ * composites. The output only depends on the configuration, including the
+ * seed, so the same fixture is generated on every run.
+ *
+ * @author Cristiano Gavião
+ *
+ */
+public final class SyntheticSubsystemFixture {
+
+    public static final String GROUP_ID = "br.com.c8tech.synthetic";
+
+    private static final int EXPORTS_PER_BUNDLE = 4;
+
+    private static final long FIXED_TIME = 1_546_300_800_000L;
+
+    private static final int IMPORTS_PER_BUNDLE = 12;
+
+    private static final byte[] PAYLOAD_ALPHABET = "abcdefghijklmnopqrstuvwxyz0123456789 ;.()[]<>"
+            .getBytes(StandardCharsets.US_ASCII);
+
+    private int bundles = 100;
+
+    private int bundlesPerSubsystem = 10;
+
+    private int classesPerBundle = 4;
+
+    private int classSize = 1024;
+
+    private String packaging = "osgi.subsystem.composite";
+
+    private long seed = 42;
+
+    private int subsystems;
+
+    private SyntheticSubsystemFixture() {
+    }
+
+    public static String bundleArtifactId(int pBundle) {
+        return "bundle" + pBundle;
+    }
+
+    /**
+     * Generates the manifest headers of a synthetic bundle.
+     *
+     * @param pBundle
+     *                     The index of the bundle.
+     * @param pBundles
+     *                     The amount of bundles of the fixture, used to pick
+     *                     the packages imported.
+     * @param pRandom
+     *                     The source of the imported packages.
+     * @return the headers, in the order they are written.
+     */
+    public static Map<String, String> bundleHeaders(int pBundle, int pBundles,
+            Random pRandom) {
+        Map<String, String> headers = new LinkedHashMap<>();
+        headers.put(Constants.BUNDLE_MANIFESTVERSION, "2");
+        headers.put(Constants.BUNDLE_SYMBOLICNAME,
+                bundleSymbolicName(pBundle));
+        headers.put(Constants.BUNDLE_VERSION, version(pBundle));
+        headers.put(Constants.EXPORT_PACKAGE, exportPackage(pBundle));
+        headers.put(Constants.IMPORT_PACKAGE,
+                importPackage(pBundles, pRandom));
+        headers.put(Constants.PROVIDE_CAPABILITY,
+                "osgi.service;objectClass:List<String>=\""
+                        + packageName(pBundle, 0) + ".Service\"");
+        headers.put(Constants.REQUIRE_CAPABILITY,
+                "osgi.ee;filter:=\"(&(osgi.ee=JavaSE)(version=1.8))\"");
+        return headers;
+    }
+
+    /**
+     * Generates the manifest headers of all the bundles of a fixture, with no
+     * files involved.
+     *
+     * @param pBundles
+     *                     The amount of bundles.
+     * @param pSeed
+     *                     The seed of the imported packages.
+     * @return the headers of each bundle.
+     */
+    public static List<Map<String, String>> allBundleHeaders(int pBundles,
+            long pSeed) {
+        Random random = new Random(pSeed);
+        List<Map<String, String>> all = new ArrayList<>(pBundles);
+        for (int i = 0; i < pBundles; i++) {
+            all.add(bundleHeaders(i, pBundles, random));
+        }
+        return all;
+    }
+
+    public static String bundleSymbolicName(int pBundle) {
+        return GROUP_ID + "." + bundleArtifactId(pBundle);
+    }
+
+    public static String exportPackage(int pBundle) {
+        StringBuilder header = new StringBuilder();
+        for (int p = 0; p < EXPORTS_PER_BUNDLE; p++) {
+            if (p > 0) {
+                header.append(',');
+            }
+            header.append(packageName(pBundle, p)).append(";version=\"1.")
+                    .append(p).append(".0\";uses:=\"")
+                    .append(packageName(pBundle, 0))
+                    .append(",org.osgi.framework\"");
+        }
+        return header.toString();
+    }
+
+    public static String importPackage(int pBundles, Random pRandom) {
+        StringBuilder header = new StringBuilder(
+                "org.osgi.framework;version=\"[1.8,2)\"");
+        for (int i = 0; i < IMPORTS_PER_BUNDLE; i++) {
+            int p = pRandom.nextInt(EXPORTS_PER_BUNDLE);
+            header.append(',')
+                    .append(packageName(pRandom.nextInt(pBundles), p))
+                    .append(";version=\"[1.").append(p).append(",2)\"");
+            if (i % 5 == 0) {
+                header.append(";resolution:=optional");
+            }
+        }
+        return header.toString();
+    }
+
+    public static SyntheticSubsystemFixture newFixture() {
+        return new SyntheticSubsystemFixture();
+    }
+
+    public static String packageName(int pBundle, int pPackage) {
+        return bundleSymbolicName(pBundle) + ".api" + pPackage;
+    }
+
+    public static Path projectOf(Path pRoot) {
+        return pRoot.resolve("project");
+    }
+
+    public static Path repositoryOf(Path pRoot) {
+        return pRoot.resolve("repository");
+    }
+
+    public static String subsystemArtifactId(int pSubsystem) {
+        return "subsystem" + pSubsystem;
+    }
+
+    /**
+     * @param pFirstBundle
+     *                         The index of the first bundle.
+     * @param pBundles
+     *                         The amount of bundles.
+     * @return the value of a <code>Subsystem-Content</code> header holding
+     *         the bundles of the informed range.
+     */
+    public static String subsystemContent(int pFirstBundle, int pBundles) {
+        StringBuilder header = new StringBuilder();
+        for (int i = pFirstBundle; i < pFirstBundle + pBundles; i++) {
+            if (i > pFirstBundle) {
+                header.append(',');
+            }
+            header.append(bundleSymbolicName(i)).append(";version=\"[")
+                    .append(version(i)).append(',').append(version(i))
+                    .append("]\";type=osgi.bundle");
+            if (i % 7 == 0) {
+                header.append(";start-order:=").append(i % 3 + 1);
+            }
+        }
+        return header.toString();
+    }
+
+    public static String version(int pIndex) {
+        return "1.0." + pIndex;
+    }
+
+    private static void writeEntry(ZipOutputStream pOut, String pName,
+            byte[] pContent) throws IOException {
+        ZipEntry entry = new ZipEntry(pName);
+        entry.setTime(FIXED_TIME);
+        pOut.putNextEntry(entry);
+        pOut.write(pContent);
+        pOut.closeEntry();
+    }
+
+    private static byte[] manifest(String pVersionHeader, String pVersion,
+            Map<String, String> pHeaders) throws IOException {
+        // the main attributes are only written along a Manifest-Version
+        Manifest manifest = new Manifest();
+        Attributes attributes = manifest.getMainAttributes();
+        attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        if (pVersionHeader != null) {
+            attributes.putValue(pVersionHeader, pVersion);
+        }
+        pHeaders.forEach(attributes::putValue);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        manifest.write(bytes);
+        return bytes.toByteArray();
+    }
+
+    private byte[] bundleJar(int pBundle, Map<String, String> pHeaders,
+            Random pRandom) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (JarOutputStream out = new JarOutputStream(bytes)) {
+            writeEntry(out, JarFile.MANIFEST_NAME,
+                    manifest(null, null, pHeaders));
+            byte[] content = new byte[classSize];
+            for (int c = 0; c < classesPerBundle; c++) {
+                for (int b = 0; b < content.length; b++) {
+                    content[b] = PAYLOAD_ALPHABET[pRandom
+                            .nextInt(PAYLOAD_ALPHABET.length)];
+                }
+                writeEntry(out,
+                        packageName(pBundle, c % EXPORTS_PER_BUNDLE)
+                                .replace('.', '/') + "/Type" + c + ".class",
+                        content);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void deploy(Path pRepository, String pArtifactId,
+            String pVersion, String pExtension, String pPackaging,
+            byte[] pContent) throws IOException {
+        Path directory = pRepository.resolve(GROUP_ID.replace('.', '/'))
+                .resolve(pArtifactId).resolve(pVersion);
+        Files.createDirectories(directory);
+        String baseName = pArtifactId + "-" + pVersion;
+        Files.write(directory.resolve(baseName + "." + pExtension), pContent);
+        String pom = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<project xmlns=\"http://maven.apache.org/POM/4.0.0\">\n"
+                + "    <modelVersion>4.0.0</modelVersion>\n"
+                + "    <groupId>" + GROUP_ID + "</groupId>\n"
+                + "    <artifactId>" + pArtifactId + "</artifactId>\n"
+                + "    <version>" + pVersion + "</version>\n"
+                + "    <packaging>" + pPackaging + "</packaging>\n"
+                + "</project>\n";
+        Files.write(directory.resolve(baseName + ".pom"),
+                pom.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String dependency(String pArtifactId, String pVersion,
+            String pType) {
+        StringBuilder xml = new StringBuilder();
+        xml.append("        <dependency>\n").append("            <groupId>")
+                .append(GROUP_ID).append("</groupId>\n")
+                .append("            <artifactId>").append(pArtifactId)
+                .append("</artifactId>\n").append("            <version>")
+                .append(pVersion).append("</version>\n");
+        if (pType != null) {
+            xml.append("            <type>").append(pType).append("</type>\n");
+        }
+        return xml.append("        </dependency>\n").toString();
+    }
+
+    private byte[] subsystemEsa(int pSubsystem, int pFirstBundle,
+            List<byte[]> pBundleJars) throws IOException {
+        Map<String, String> headers = new LinkedHashMap<>();
+        headers.put(SubsystemConstants.SUBSYSTEM_SYMBOLICNAME,
+                GROUP_ID + "." + subsystemArtifactId(pSubsystem));
+        headers.put(SubsystemConstants.SUBSYSTEM_VERSION, version(pSubsystem));
+        headers.put(SubsystemConstants.SUBSYSTEM_TYPE,
+                SubsystemConstants.SUBSYSTEM_TYPE_FEATURE);
+        headers.put(SubsystemConstants.SUBSYSTEM_CONTENT,
+                subsystemContent(pFirstBundle, pBundleJars.size()));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(bytes)) {
+            writeEntry(out, "OSGI-INF/SUBSYSTEM.MF",
+                    manifest(SubsystemConstants.SUBSYSTEM_MANIFESTVERSION, "1",
+                            headers));
+            for (int i = 0; i < pBundleJars.size(); i++) {
+                int bundle = pFirstBundle + i;
+                writeEntry(out, bundleArtifactId(bundle) + "-"
+                        + version(bundle) + ".jar", pBundleJars.get(i));
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private void writeProject(Path pRoot, int pEmbeddedBundles)
+            throws IOException {
+        StringBuilder dependencies = new StringBuilder();
+        for (int i = pEmbeddedBundles; i < bundles; i++) {
+            dependencies.append(dependency(bundleArtifactId(i), version(i),
+                    null));
+        }
+        for (int s = 0; s < subsystems; s++) {
+            dependencies.append(dependency(subsystemArtifactId(s),
+                    version(s), "esa"));
+        }
+        Path project = projectOf(pRoot);
+        Files.createDirectories(project);
+        try (OutputStream out = Files.newOutputStream(
+                project.resolve("pom.xml"))) {
+            out.write(("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                    + "<project xmlns=\"http://maven.apache.org/POM/4.0.0\">\n"
+                    + "    <modelVersion>4.0.0</modelVersion>\n"
+                    + "    <groupId>" + GROUP_ID + "</groupId>\n"
+                    + "    <artifactId>synthetic-" + bundles + "</artifactId>\n"
+                    + "    <version>0.1.0</version>\n"
+                    + "    <packaging>" + packaging + "</packaging>\n"
+                    + "    <repositories>\n"
+                    + "        <repository>\n"
+                    + "            <id>synthetic</id>\n"
+                    + "            <url>" + repositoryOf(pRoot).toAbsolutePath().toUri()
+                    + "</url>\n"
+                    + "        </repository>\n"
+                    + "    </repositories>\n"
+                    + "    <dependencies>\n")
+                            .getBytes(StandardCharsets.UTF_8));
+            out.write(dependencies.toString()
+                    .getBytes(StandardCharsets.UTF_8));
+            out.write(("    </dependencies>\n" + "    <build>\n"
+                    + "        <plugins>\n" + "            <plugin>\n"
+                    + "                <groupId>br.com.c8tech.tools</groupId>\n"
+                    + "                <artifactId>osgi-subsystem-maven-plugin</artifactId>\n"
+                    + "                <version>${it-plugin.version}</version>\n"
+                    + "                <extensions>true</extensions>\n"
+                    + "                <configuration>\n"
+                    + "                    <embeddableScopes>\n"
+                    + "                        <embeddableScope>compile</embeddableScope>\n"
+                    + "                    </embeddableScopes>\n"
+                    + "                </configuration>\n"
+                    + "            </plugin>\n" + "        </plugins>\n"
+                    + "    </build>\n" + "</project>\n")
+                            .getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Writes the repository and the project under the informed directory.
+     *
+     * @param pRoot
+     *                  The directory where the fixture is generated.
+     * @return the directory of the generated project.
+     * @throws IOException
+     *                         when the files could not be written.
+     */
+    public Path generate(Path pRoot) throws IOException {
+        Path repository = repositoryOf(pRoot);
+        // the headers do not depend on the payload size
+        Random headersRandom = new Random(seed);
+        Random payloadRandom = new Random(~seed);
+        int embeddedBundles = Math.min(bundles,
+                subsystems * bundlesPerSubsystem);
+        List<byte[]> subsystemBundles = new ArrayList<>();
+        for (int i = 0; i < bundles; i++) {
+            byte[] jar = bundleJar(i,
+                    bundleHeaders(i, bundles, headersRandom), payloadRandom);
+            deploy(repository, bundleArtifactId(i), version(i), "jar", "jar",
+                    jar);
+            if (i < embeddedBundles) {
+                subsystemBundles.add(jar);
+                if (subsystemBundles.size() == bundlesPerSubsystem
+                        || i == embeddedBundles - 1) {
+                    int subsystem = i / bundlesPerSubsystem;
+                    deploy(repository, subsystemArtifactId(subsystem),
+                            version(subsystem), "esa",
+                            "osgi.subsystem.feature",
+                            subsystemEsa(subsystem,
+                                    subsystem * bundlesPerSubsystem,
+                                    subsystemBundles));
+                    subsystemBundles.clear();
+                }
+            }
+        }
+        writeProject(pRoot, embeddedBundles);
+        return projectOf(pRoot);
+    }
+
+    /**
+     * @return the amount of artifacts the generated project depends on.
+     */
+    public int getProjectDependencyCount() {
+        int embeddedBundles = Math.min(bundles,
+                subsystems * bundlesPerSubsystem);
+        return bundles - embeddedBundles + getSubsystemCount();
+    }
+
+    /**
+     * @return the amount of nested subsystems actually generated.
+     */
+    public int getSubsystemCount() {
+        int embeddedBundles = Math.min(bundles,
+                subsystems * bundlesPerSubsystem);
+        return (embeddedBundles + bundlesPerSubsystem - 1)
+                / bundlesPerSubsystem;
+    }
+
+    public SyntheticSubsystemFixture withBundles(int pBundles) {
+        bundles = pBundles;
+        return this;
+    }
+
+    public SyntheticSubsystemFixture withBundlesPerSubsystem(
+            int pBundlesPerSubsystem) {
+        bundlesPerSubsystem = pBundlesPerSubsystem;
+        return this;
+    }
+
+    public SyntheticSubsystemFixture withClassesPerBundle(
+            int pClassesPerBundle) {
+        classesPerBundle = pClassesPerBundle;
+        return this;
+    }
+
+    public SyntheticSubsystemFixture withClassSize(int pClassSize) {
+        classSize = pClassSize;
+        return this;
+    }
+
+    public SyntheticSubsystemFixture withPackaging(String pPackaging) {
+        packaging = pPackaging;
+        return this;
+    }
+
+    public SyntheticSubsystemFixture withSeed(long pSeed) {
+        seed = pSeed;
+        return this;
+    }
+
+    /**
+     * @param pSubsystems
+     *                        The amount of nested subsystems. Each one
+     *                        embeds the next
+     *                        {@link #withBundlesPerSubsystem(int)} bundles,
+     *                        which are then not direct dependencies of the
+     *                        project.
+     * @return this fixture.
+     */
+    public SyntheticSubsystemFixture withSubsystems(int pSubsystems) {
+        subsystems = pSubsystems;
+        return this;
+    }
+}
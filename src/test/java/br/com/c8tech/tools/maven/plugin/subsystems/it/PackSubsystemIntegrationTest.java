@@ -15,10 +15,18 @@ import static org.assertj.core.api.Assertions.*;
 import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.OffsetDateTime;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Enumeration;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.zip.ZipEntry;
 
@@ -424,6 +432,93 @@ public class PackSubsystemIntegrationTest extends AbstractIntegrationTest {
         }
     }
 
+    private static Map<String, Long> entriesOf(File pArchive)
+            throws Exception {
+        Map<String, Long> entries = new TreeMap<>();
+        try (JarFile jar = new JarFile(pArchive)) {
+            Enumeration<JarEntry> jarEntries = jar.entries();
+            while (jarEntries.hasMoreElements()) {
+                JarEntry entry = jarEntries.nextElement();
+                entries.put(entry.getName(), entry.getCrc());
+            }
+        }
+        return entries;
+    }
+
+    @Test
+    public void testDirectEmbeddingPacksTheSameEntries() throws Exception {
+        File basedir = resources.getBasedir(
+                "it-project--subsystem-composite-with-embed-contents");
+        File esa = new File(basedir,
+                "target/test-subsystem-composite-with-embedded-contents-0.1.0.esa");
+
+        mavenRuntime.forProject(basedir).execute("package")
+                .assertErrorFreeLog();
+        Map<String, Long> copiedEntries = entriesOf(esa);
+
+        mavenRuntime.forProject(basedir)
+                .withCliOption("-Dsubsystem.directEmbedding=true")
+                .execute("clean", "package").assertErrorFreeLog();
+
+        assertThat(copiedEntries).containsKey("slf4j-api-1.7.25.jar");
+        assertThat(entriesOf(esa)).isEqualTo(copiedEntries);
+    }
+
+    @Test
+    public void testOutputTimestampAloneKeepsTheEntryTimes() throws Exception {
+        File basedir = resources.getBasedir(
+                "it-project--subsystem-composite-with-embed-contents");
+        File esa = new File(basedir,
+                "target/test-subsystem-composite-with-embedded-contents-0.1.0.esa");
+        long outputTime = OffsetDateTime.parse("2019-01-01T00:00:00Z")
+                .toInstant().toEpochMilli();
+
+        mavenRuntime.forProject(basedir)
+                .withCliOption(
+                        "-Dproject.build.outputTimestamp=2019-01-01T00:00:00Z")
+                .execute("package").assertErrorFreeLog();
+
+        try (JarFile jar = new JarFile(esa)) {
+            // generated now, so not at the reproducible time
+            assertThat(jar.getEntry("OSGI-INF/SUBSYSTEM.MF").getTime())
+                    .isGreaterThan(outputTime + 86400000L);
+        }
+    }
+
+    @Test
+    public void testCodeOnlyBundleChangeKeepsTheManifest() throws Exception {
+        File basedir = resources.getBasedir(
+                "it-project--subsystem-feature-with-reactor-bundle");
+
+        MavenExecutionResult result = mavenRuntime.forProject(basedir)
+                .execute("package");
+        result.assertErrorFreeLog();
+        result.assertLogText(
+                "Starting generation of the Subsystem manifest file for project");
+
+        File manifest = new File(basedir,
+                "feature/target/work/esa/OSGI-INF/SUBSYSTEM.MF");
+        assertThat(manifest.canRead()).isEqualTo(true);
+        long manifestLastModified = manifest.lastModified();
+
+        // the bundle's headers are fixed, only its code changes
+        Path source = basedir.toPath().resolve(
+                "a-bundle/src/main/java/br/com/c8tech/it/bundle/Greeter.java");
+        String code = new String(Files.readAllBytes(source),
+                StandardCharsets.UTF_8);
+        Thread.sleep(1500);
+        Files.write(source, code.replace("\"hello\"", "\"hello again\"")
+                .getBytes(StandardCharsets.UTF_8));
+
+        result = mavenRuntime.forProject(basedir).execute("package");
+        result.assertErrorFreeLog();
+        result.assertNoLogText(
+                "Starting generation of the Subsystem manifest file for project");
+        result.assertLogText(
+                "OSGi Subsystem archive was successfully generated at");
+        assertThat(manifest.lastModified()).isEqualTo(manifestLastModified);
+    }
+
     @Test
     public void testSkippingGeneration() throws Exception {
         File basedir = resources.getBasedir("it-project--skip");
@@ -0,0 +1,102 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.subsystems.ut;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import br.com.c8tech.tools.maven.plugin.subsystems.ArtifactManifests;
+
+public class ArtifactManifestsUnitTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Manifest manifest(String pName, String pValue) {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION,
+                "1.0");
+        manifest.getMainAttributes().putValue(pName, pValue);
+        return manifest;
+    }
+
+    @Test
+    public void testBundleHeadersAreRead() throws Exception {
+        Path bundle = folder.getRoot().toPath().resolve("bundle.jar");
+        try (OutputStream out = Files.newOutputStream(bundle);
+                JarOutputStream jar = new JarOutputStream(out,
+                        manifest("Bundle-SymbolicName", "a.bundle"))) {
+            jar.putNextEntry(new ZipEntry("a/A.class"));
+            jar.closeEntry();
+        }
+
+        assertThat(ArtifactManifests.read(bundle))
+                .containsEntry("Bundle-SymbolicName", "a.bundle")
+                .containsEntry("Manifest-Version", "1.0");
+    }
+
+    @Test
+    public void testSubsystemHeadersAreRead() throws Exception {
+        Path esa = folder.getRoot().toPath().resolve("subsystem.esa");
+        try (OutputStream out = Files.newOutputStream(esa);
+                ZipOutputStream zip = new ZipOutputStream(out)) {
+            zip.putNextEntry(new ZipEntry("OSGI-INF/SUBSYSTEM.MF"));
+            manifest("Subsystem-SymbolicName", "a.subsystem").write(zip);
+            zip.closeEntry();
+        }
+
+        assertThat(ArtifactManifests.read(esa))
+                .containsEntry("Subsystem-SymbolicName", "a.subsystem");
+    }
+
+    @Test
+    public void testJarManifestWinsInAPlainJar() throws Exception {
+        Path bundle = folder.getRoot().toPath().resolve("bundle.jar");
+        try (OutputStream out = Files.newOutputStream(bundle);
+                JarOutputStream jar = new JarOutputStream(out,
+                        manifest("Bundle-SymbolicName", "a.bundle"))) {
+            jar.putNextEntry(new ZipEntry("OSGI-INF/SUBSYSTEM.MF"));
+            manifest("Subsystem-SymbolicName", "a.subsystem").write(jar);
+            jar.closeEntry();
+        }
+
+        assertThat(ArtifactManifests.read(bundle))
+                .containsEntry("Bundle-SymbolicName", "a.bundle")
+                .doesNotContainKey("Subsystem-SymbolicName");
+    }
+
+    @Test
+    public void testArtifactWithoutManifest() throws Exception {
+        Path jar = folder.getRoot().toPath().resolve("plain.jar");
+        try (OutputStream out = Files.newOutputStream(jar);
+                ZipOutputStream zip = new ZipOutputStream(out)) {
+            zip.putNextEntry(new ZipEntry("readme.txt"));
+            zip.write("plain".getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+        }
+
+        assertThat(ArtifactManifests.read(jar)).isNull();
+    }
+}
@@ -0,0 +1,139 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.subsystems.ut;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.reflect.Proxy;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import br.com.c8tech.tools.maven.osgi.lib.mojo.incremental.ArtifactTracker;
+import br.com.c8tech.tools.maven.osgi.lib.mojo.incremental.ArtifactTrackerManager;
+import br.com.c8tech.tools.maven.plugin.subsystems.ArtifactTrackerIndex;
+
+public class ArtifactTrackerIndexUnitTest {
+
+    private static ArtifactTracker newTracker(String pArtifactId,
+            Path pCachedFile) {
+        return (ArtifactTracker) Proxy.newProxyInstance(
+                ArtifactTracker.class.getClassLoader(),
+                new Class<?>[] { ArtifactTracker.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                    case "getArtifactId":
+                        return pArtifactId;
+                    case "getCachedFilePath":
+                        return pCachedFile;
+                    case "toString":
+                        return pArtifactId;
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "equals":
+                        return proxy == args[0];
+                    default:
+                        throw new UnsupportedOperationException(
+                                method.getName());
+                    }
+                });
+    }
+
+    /**
+     * A manager holding the trackers, whose searches answer the fallback
+     * tracker and are recorded.
+     */
+    private static ArtifactTrackerManager newManager(
+            List<ArtifactTracker> pTrackers, ArtifactTracker pFallback,
+            List<String> pSearches) {
+        return (ArtifactTrackerManager) Proxy.newProxyInstance(
+                ArtifactTrackerManager.class.getClassLoader(),
+                new Class<?>[] { ArtifactTrackerManager.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                    case "getAllArtifactTrackers":
+                        return pTrackers;
+                    case "searchByArtifactId":
+                    case "searchByPath":
+                        pSearches.add(method.getName() + ":" + args[0]);
+                        return pFallback;
+                    default:
+                        throw new UnsupportedOperationException(
+                                method.getName());
+                    }
+                });
+    }
+
+    @Test
+    public void testFirstTrackerWins() {
+        Path file = Paths.get("target/cache/plugins/aBundle-1.0.0.jar");
+        ArtifactTracker first = newTracker("aBundle", file);
+        ArtifactTracker second = newTracker("aBundle", file);
+        List<String> searches = new ArrayList<>();
+        ArtifactTrackerIndex index = new ArtifactTrackerIndex(
+                newManager(Arrays.asList(first, second), null, searches));
+
+        assertThat(index.searchByArtifactId("aBundle")).isSameAs(first);
+        assertThat(index.searchByPath(file.toString())).isSameAs(first);
+        assertThat(searches).isEmpty();
+    }
+
+    @Test
+    public void testPathsAreNormalized() {
+        ArtifactTracker tracker = newTracker("aBundle",
+                Paths.get("target/cache/plugins/aBundle-1.0.0.jar"));
+        List<String> searches = new ArrayList<>();
+        ArtifactTrackerIndex index = new ArtifactTrackerIndex(
+                newManager(Arrays.asList(tracker), null, searches));
+
+        assertThat(index.searchByPath(
+                Paths.get("target/cache/../cache/./plugins/aBundle-1.0.0.jar")
+                        .toAbsolutePath().toString())).isSameAs(tracker);
+        assertThat(searches).isEmpty();
+    }
+
+    @Test
+    public void testMissIsDelegatedToTheManager() {
+        ArtifactTracker tracker = newTracker("aBundle",
+                Paths.get("target/cache/plugins/aBundle-1.0.0.jar"));
+        ArtifactTracker fallback = newTracker("other", null);
+        List<String> searches = new ArrayList<>();
+        ArtifactTrackerIndex index = new ArtifactTrackerIndex(
+                newManager(Arrays.asList(tracker), fallback, searches));
+
+        assertThat(index.searchByArtifactId("other")).isSameAs(fallback);
+        assertThat(index.searchByPath("other.jar")).isSameAs(fallback);
+        assertThat(searches).containsExactly("searchByArtifactId:other",
+                "searchByPath:other.jar");
+    }
+
+    @Test
+    public void testFileMapperAndNullManager() {
+        Path repositoryFile = Paths.get("repository/aBundle-1.0.0.jar");
+        ArtifactTracker tracker = newTracker("aBundle", null);
+        List<String> searches = new ArrayList<>();
+        ArtifactTrackerIndex index = new ArtifactTrackerIndex(
+                newManager(Arrays.asList(tracker), null, searches),
+                t -> repositoryFile);
+
+        assertThat(index.searchByPath(repositoryFile.toString()))
+                .isSameAs(tracker);
+
+        ArtifactTrackerIndex empty = new ArtifactTrackerIndex(null);
+        assertThat(empty.searchByArtifactId("aBundle")).isNull();
+        assertThat(empty.searchByPath("aBundle.jar")).isNull();
+    }
+}
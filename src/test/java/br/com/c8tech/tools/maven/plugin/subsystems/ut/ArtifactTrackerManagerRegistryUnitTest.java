@@ -0,0 +1,141 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.subsystems.ut;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.project.MavenProject;
+import org.junit.Test;
+
+import br.com.c8tech.tools.maven.osgi.lib.mojo.incremental.ArtifactTrackerManager;
+import br.com.c8tech.tools.maven.plugin.subsystems.ArtifactTrackerManagerRegistry;
+
+public class ArtifactTrackerManagerRegistryUnitTest
+        extends AbstractSubsystemUnitTest {
+
+    private static ArtifactTrackerManager newManager() {
+        return (ArtifactTrackerManager) Proxy.newProxyInstance(
+                ArtifactTrackerManager.class.getClassLoader(),
+                new Class<?>[] { ArtifactTrackerManager.class },
+                (proxy, method, args) -> {
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private static MavenProject newProject(String pArtifactId) {
+        MavenProject project = new MavenProject();
+        project.setGroupId("test");
+        project.setArtifactId(pArtifactId);
+        project.setVersion("0.1.0");
+        return project;
+    }
+
+    @Test
+    public void testRegistryIsBoundToTheSession() throws Exception {
+        MavenProject project = incrementalBuildRule.readMavenProject(
+                testResources.getBasedir("ut-project--normal"));
+        MavenSession session = incrementalBuildRule.newMavenSession(project);
+        MavenSession otherSession = incrementalBuildRule
+                .newMavenSession(project);
+
+        assertThat(ArtifactTrackerManagerRegistry.forSession(session))
+                .isSameAs(ArtifactTrackerManagerRegistry.forSession(session))
+                .isNotSameAs(ArtifactTrackerManagerRegistry
+                        .forSession(otherSession));
+    }
+
+    @Test
+    public void testDownloadRegistersItsManagerWithoutAnArtifactSet()
+            throws Exception {
+        MavenProject project = incrementalBuildRule.readMavenProject(
+                testResources.getBasedir("ut-project--normal"));
+        MavenSession session = incrementalBuildRule.newMavenSession(project);
+        session.getRequest().setGoals(Collections.singletonList("package"));
+
+        incrementalBuildRule.executeMojo(session, project,
+                "downloadAndCacheArtifacts");
+
+        assertThat(ArtifactTrackerManagerRegistry.forSession(session)
+                .isRegistered(project)).isTrue();
+    }
+
+    @Test
+    public void testLookupRequiresTheSameKey() throws Exception {
+        MavenProject project = incrementalBuildRule.readMavenProject(
+                testResources.getBasedir("ut-project--normal"));
+        ArtifactTrackerManagerRegistry registry = ArtifactTrackerManagerRegistry
+                .forSession(incrementalBuildRule.newMavenSession(project));
+        ArtifactTrackerManager manager = newManager();
+        MavenProject a = newProject("a");
+
+        registry.register(a, "cachingRequired=true", manager);
+
+        assertThat(registry.lookup(a, "cachingRequired=true"))
+                .isSameAs(manager);
+        assertThat(registry.lookup(a, "cachingRequired=false")).isNull();
+        assertThat(registry.lookup(newProject("b"), "cachingRequired=true"))
+                .isNull();
+    }
+
+    @Test
+    public void testRegisterReplacesAndReleaseDiscards() throws Exception {
+        MavenProject project = incrementalBuildRule.readMavenProject(
+                testResources.getBasedir("ut-project--normal"));
+        ArtifactTrackerManagerRegistry registry = ArtifactTrackerManagerRegistry
+                .forSession(incrementalBuildRule.newMavenSession(project));
+        ArtifactTrackerManager first = newManager();
+        ArtifactTrackerManager second = newManager();
+        MavenProject a = newProject("a");
+
+        registry.register(a, "first", first);
+        registry.register(a, "second", second);
+        assertThat(registry.lookup(a, "first")).isNull();
+        assertThat(registry.lookup(a, "second")).isSameAs(second);
+
+        registry.release(a);
+        assertThat(registry.lookup(a, "second")).isNull();
+    }
+
+    @Test
+    public void testRequestedLifecyclePhases() {
+        assertThat(ArtifactTrackerManagerRegistry.isRequested(
+                Arrays.asList("clean", "install"), "package", "packESA"))
+                        .isTrue();
+        assertThat(ArtifactTrackerManagerRegistry.isRequested(
+                Arrays.asList("package"), "package", "packESA")).isTrue();
+        assertThat(ArtifactTrackerManagerRegistry.isRequested(
+                Arrays.asList("clean", "process-resources"), "package",
+                "packESA")).isFalse();
+        assertThat(ArtifactTrackerManagerRegistry.isRequested(
+                Collections.emptyList(), "package", "packESA")).isFalse();
+    }
+
+    @Test
+    public void testRequestedGoals() {
+        assertThat(ArtifactTrackerManagerRegistry.isRequested(
+                Arrays.asList("osgi-subsystem:packESA"), "package", "packESA"))
+                        .isTrue();
+        assertThat(ArtifactTrackerManagerRegistry.isRequested(
+                Arrays.asList(
+                        "br.com.c8tech.tools:osgi-subsystem-maven-plugin:packESA@esa"),
+                "package", "packESA")).isTrue();
+        assertThat(ArtifactTrackerManagerRegistry.isRequested(
+                Arrays.asList("osgi-subsystem:downloadAndCacheArtifacts"),
+                "process-resources", "generateSubsystemManifest", "packESA"))
+                        .isFalse();
+    }
+}
@@ -0,0 +1,70 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.subsystems.ut;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import br.com.c8tech.tools.maven.plugin.subsystems.BuildEvents;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+public class BuildEventsUnitTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testEventsAreNotRecordedWithoutRecording() {
+        try (BuildEvents.Event event = BuildEvents
+                .begin(BuildEvents.Kind.MANIFEST_READ)) {
+            assertThat(event.isRecording()).isFalse();
+            assertThat(event.artifact("g:a:1.0").bytes(1)
+                    .outcome(BuildEvents.OUTCOME_HIT)).isSameAs(event);
+        }
+    }
+
+    @Test
+    public void testEnabledEventsAreRecorded() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("build.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("br.com.c8tech.subsystem.ManifestRead");
+            recording.start();
+            try (BuildEvents.Event event = BuildEvents
+                    .begin(BuildEvents.Kind.MANIFEST_READ)) {
+                assertThat(event.isRecording()).isTrue();
+                event.artifact("g:a:1.0").bytes(1024)
+                        .outcome(BuildEvents.OUTCOME_MISS);
+            }
+            recording.stop();
+            recording.dump(file);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+        assertThat(events).hasSize(1);
+        RecordedEvent event = events.get(0);
+        assertThat(event.getEventType().getName())
+                .isEqualTo("br.com.c8tech.subsystem.ManifestRead");
+        assertThat(event.getString("artifact")).isEqualTo("g:a:1.0");
+        assertThat(event.getLong("bytes")).isEqualTo(1024);
+        assertThat(event.getString("outcome"))
+                .isEqualTo(BuildEvents.OUTCOME_MISS);
+    }
+}
@@ -0,0 +1,69 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.subsystems.ut;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import br.com.c8tech.tools.maven.plugin.subsystems.BuildTimings;
+
+public class BuildTimingsUnitTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testDisabledTimingsWriteNothing() throws IOException {
+        BuildTimings timings = new BuildTimings(false);
+        try (BuildTimings.Phase phase = timings
+                .phase(BuildTimings.COMPRESSION)) {
+            timings.recordArtifact(BuildTimings.COMPRESSION, "a.jar", 1, 1);
+        }
+        Path report = folder.getRoot().toPath().resolve("timings/r.json");
+        timings.write(report, "g:a:esa:1.0", "packESA");
+
+        assertThat(report).doesNotExist();
+    }
+
+    @Test
+    public void testPhasesAreSummedAndArtifactsListed() throws IOException {
+        BuildTimings timings = new BuildTimings(true);
+        for (int i = 0; i < 2; i++) {
+            try (BuildTimings.Phase phase = timings
+                    .phase(BuildTimings.COMPRESSION)) {
+                timings.recordArtifact(BuildTimings.COMPRESSION,
+                        "plugins/\"quoted\".jar", 1024, 5000);
+            }
+        }
+        try (BuildTimings.Phase phase = timings
+                .phase(BuildTimings.ARCHIVE_FINALIZATION)) {
+            // nothing to do
+        }
+        Path report = folder.getRoot().toPath().resolve("timings/r.json");
+        timings.write(report, "g:a:esa:1.0", "packESA");
+
+        String json = new String(Files.readAllBytes(report),
+                StandardCharsets.UTF_8);
+        assertThat(json).contains("\"goal\" : \"packESA\"")
+                .contains("{ \"name\" : \"compression\", \"count\" : 2,")
+                .contains("{ \"name\" : \"archive-finalization\", \"count\" : 1,")
+                .contains("\"name\" : \"plugins/\\\"quoted\\\".jar\", \"bytes\" : 1024, \"nanos\" : 5000");
+    }
+}
@@ -0,0 +1,53 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.subsystems.ut;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Collections;
+
+import org.apache.aries.subsystem.core.archive.ImportPackageHeader;
+import org.junit.Test;
+import org.osgi.framework.Constants;
+
+import br.com.c8tech.tools.maven.plugin.subsystems.ClauseListHeader;
+import br.com.c8tech.tools.maven.plugin.subsystems.ManifestHeaderParser;
+
+public class ClauseListHeaderUnitTest {
+
+    private static final String IMPORTS = "a.b;version=\"[1,2)\";resolution:=optional, c.d;e.f, g.h;x=\"a \\\"quoted\\\" value\"";
+
+    @Test
+    public void testClausesAreEqualIgnoringParameterOrder() {
+        assertThat(ManifestHeaderParser.parse("a;x=1;y:=2;z=3"))
+                .isEqualTo(ManifestHeaderParser.parse("a;z=3;y:=2;x=1"));
+        assertThat(ManifestHeaderParser.parse("a;x=1"))
+                .isNotEqualTo(ManifestHeaderParser.parse("a;x:=1"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptyHeaderIsRejected() {
+        new ClauseListHeader(Constants.IMPORT_PACKAGE, Collections.emptyList());
+    }
+
+    @Test
+    public void testValueIsRenderedFromTheClauses() {
+        ClauseListHeader header = new ClauseListHeader(
+                Constants.IMPORT_PACKAGE, ManifestHeaderParser.parse(IMPORTS));
+
+        assertThat(header.getName()).isEqualTo(Constants.IMPORT_PACKAGE);
+        assertThat(header.getValue()).isEqualTo(IMPORTS);
+        assertThat(new ImportPackageHeader(header.getValue()).getClauses())
+                .hasSize(3);
+        assertThat(header.getClauses()).hasSize(3);
+    }
+}
@@ -0,0 +1,133 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.subsystems.ut;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import br.com.c8tech.tools.maven.plugin.subsystems.ClauseMerger;
+import br.com.c8tech.tools.maven.plugin.subsystems.ManifestClause;
+import br.com.c8tech.tools.maven.plugin.subsystems.ManifestHeaderParser;
+
+public class ClauseMergerUnitTest {
+
+    private static List<ManifestClause> parse(String... pHeaderValues) {
+        List<ManifestClause> clauses = new ArrayList<>();
+        for (String value : pHeaderValues) {
+            clauses.addAll(ManifestHeaderParser.parse(value));
+        }
+        return clauses;
+    }
+
+    private static List<String> toStrings(List<ManifestClause> pClauses) {
+        return pClauses.stream().map(Object::toString)
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    public void testImportsOfSamePackageAreIntersected() {
+        List<String> conflicts = new ArrayList<>();
+        List<ManifestClause> merged = ClauseMerger.mergeRequirements(
+                "Import-Package",
+                parse("org.slf4j;version=\"[1.7,2)\"",
+                        "org.slf4j;version=\"[1.7.5,1.8)\"",
+                        "org.slf4j;version=\"[1.7.10,3)\""),
+                "version", conflicts);
+
+        assertThat(toStrings(merged))
+                .containsExactly("org.slf4j;version=\"[1.7.10,1.8.0)\"");
+        assertThat(conflicts).isEmpty();
+    }
+
+    @Test
+    public void testMergedImportIsOptionalOnlyWhenAllAre() {
+        List<String> conflicts = new ArrayList<>();
+        List<ManifestClause> merged = ClauseMerger.mergeRequirements(
+                "Import-Package",
+                parse("a.b;resolution:=optional,c.d;resolution:=optional",
+                        "a.b;resolution:=optional;version=1.0,c.d"),
+                "version", conflicts);
+
+        assertThat(toStrings(merged)).containsExactly(
+                "a.b;version=1.0.0;resolution:=optional", "c.d");
+    }
+
+    @Test
+    public void testOptionalClausesAreDroppedForAMandatoryOne() {
+        List<String> conflicts = new ArrayList<>();
+        List<ManifestClause> merged = ClauseMerger.mergeRequirements(
+                "Import-Package",
+                parse("foo;version=\"[1,2)\"",
+                        "foo;version=\"[1.5,3)\";resolution:=optional",
+                        "bar;version=\"[1,2)\"",
+                        "bar;version=\"[0.5,3)\";resolution:=optional"),
+                "version", conflicts);
+
+        assertThat(toStrings(merged)).containsExactly(
+                "foo;version=\"[1,2)\"", "bar;version=\"[1,2)\"");
+        assertThat(conflicts).isEmpty();
+    }
+
+    @Test
+    public void testMultiplePackagesOfAClauseAreSplit() {
+        List<ManifestClause> merged = ClauseMerger.mergeRequirements(
+                "Import-Package", parse("a.b;c.d;version=1.0"), "version",
+                new ArrayList<>());
+
+        assertThat(toStrings(merged)).containsExactly("a.b;version=1.0",
+                "c.d;version=1.0");
+    }
+
+    @Test
+    public void testNonOverlappingRangesAreSpannedAndReported() {
+        List<String> conflicts = new ArrayList<>();
+        List<ManifestClause> merged = ClauseMerger.mergeRequirements(
+                "Import-Package",
+                parse("org.baz;version=\"[1,2)\"", "org.baz;version=\"[2,3)\""),
+                "version", conflicts);
+
+        assertThat(toStrings(merged))
+                .containsExactly("org.baz;version=\"[1.0.0,3.0.0)\"");
+        assertThat(conflicts).hasSize(1);
+        assertThat(conflicts.get(0)).contains("org.baz")
+                .contains("[1.0.0,2.0.0)").contains("[2.0.0,3.0.0)");
+    }
+
+    @Test
+    public void testRequirementsWithDifferentFiltersAreKept() {
+        List<ManifestClause> merged = ClauseMerger.mergeRequirements(
+                "Require-Capability",
+                parse("osgi.ee;filter:=\"(osgi.ee=JavaSE)\"",
+                        "osgi.ee;filter:=\"(osgi.ee=JavaSE)\";resolution:=optional",
+                        "osgi.extender;filter:=\"(osgi.extender=osgi.component)\""),
+                null, new ArrayList<>());
+
+        assertThat(toStrings(merged)).containsExactly(
+                "osgi.ee;filter:=\"(osgi.ee=JavaSE)\"",
+                "osgi.extender;filter:=\"(osgi.extender=osgi.component)\"");
+    }
+
+    @Test
+    public void testCapabilitiesAreDeduplicatedIgnoringUses() {
+        List<ManifestClause> merged = ClauseMerger.mergeCapabilities(parse(
+                "a.b;version=1.0;uses:=\"x.y,z.w\"",
+                "a.b;uses:=\"z.w\";version=1.0", "a.b;version=2.0"));
+
+        assertThat(toStrings(merged)).containsExactly("a.b;version=1.0",
+                "a.b;version=2.0");
+    }
+}
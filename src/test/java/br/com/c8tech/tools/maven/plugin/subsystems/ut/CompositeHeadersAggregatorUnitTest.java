@@ -0,0 +1,71 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.subsystems.ut;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import br.com.c8tech.tools.maven.plugin.subsystems.CompositeHeadersAggregator;
+import br.com.c8tech.tools.maven.plugin.subsystems.ParallelTasks;
+import br.com.c8tech.tools.maven.plugin.subsystems.fixtures.SyntheticSubsystemFixture;
+
+public class CompositeHeadersAggregatorUnitTest {
+
+    private static CompositeHeadersAggregator newAggregator() {
+        return new CompositeHeadersAggregator().withExportPackages(true)
+                .withImportPackages(true).withGenericCapabilities(true)
+                .withGenericRequirements(true).withRequireBundle(true);
+    }
+
+    @Test
+    public void testConcurrentAggregationMatchesSerialOne()
+            throws IOException {
+        List<Map<String, String>> bundles = SyntheticSubsystemFixture
+                .allBundleHeaders(300, 7);
+        CompositeHeadersAggregator serial = newAggregator();
+        for (Map<String, String> headers : bundles) {
+            serial.addArtifactHeaders(headers);
+        }
+
+        List<Map<String, String>> shuffled = new ArrayList<>(bundles);
+        Collections.shuffle(shuffled, new Random(3));
+        CompositeHeadersAggregator concurrent = newAggregator();
+        ParallelTasks.map(shuffled, 8, headers -> {
+            concurrent.addArtifactHeaders(headers);
+            return headers;
+        });
+
+        assertThat(concurrent.buildImportPackageHeader(null).getValue())
+                .isEqualTo(serial.buildImportPackageHeader(null).getValue());
+        assertThat(concurrent.buildExportPackageHeader(null).getValue())
+                .isEqualTo(serial.buildExportPackageHeader(null).getValue());
+    }
+
+    @Test
+    public void testDisabledHeadersAreNotBuilt() {
+        CompositeHeadersAggregator aggregator = new CompositeHeadersAggregator()
+                .withImportPackages(true);
+        aggregator.addArtifactHeaders(
+                SyntheticSubsystemFixture.allBundleHeaders(3, 1).get(0));
+
+        assertThat(aggregator.buildImportPackageHeader(null)).isNotNull();
+        assertThat(aggregator.buildExportPackageHeader(null)).isNull();
+    }
+}
@@ -0,0 +1,186 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.subsystems.ut;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.apache.aries.subsystem.core.archive.Header;
+import org.junit.Test;
+
+import br.com.c8tech.tools.maven.plugin.subsystems.DeploymentManifestBuilder;
+
+public class DeploymentManifestBuilderUnitTest {
+
+    private static final String ACCEPTING = ";provision-policy:=acceptDependencies";
+
+    private static Map<String, String> headers(String... pNamesAndValues) {
+        Map<String, String> headers = new HashMap<>();
+        for (int i = 0; i < pNamesAndValues.length; i += 2) {
+            headers.put(pNamesAndValues[i], pNamesAndValues[i + 1]);
+        }
+        return headers;
+    }
+
+    private static Map<String, String> values(List<Header<?>> pHeaders) {
+        return pHeaders.stream().collect(
+                Collectors.toMap(Header::getName, Header::getValue));
+    }
+
+    private static DeploymentManifestBuilder newBuilder(String pType) {
+        DeploymentManifestBuilder builder = new DeploymentManifestBuilder(
+                headers("Subsystem-SymbolicName", "my.subsystem",
+                        "Subsystem-Version", "1.2", "Subsystem-Type", pType,
+                        "Subsystem-Content",
+                        "a.core;version=\"[1,2)\", a.extra;resolution:=optional"));
+        builder.addResource(headers("Bundle-SymbolicName",
+                "a.core;singleton:=true", "Bundle-Version", "1.5",
+                "Import-Package",
+                "p.lib;version=\"[1,2)\",java.util,org.osgi.framework,a.internal",
+                "Export-Package", "a.internal;version=1.5"));
+        builder.addResource(
+                headers("Bundle-SymbolicName", "a.core", "Bundle-Version", "1.1"));
+        builder.addResource(headers("Bundle-SymbolicName", "lib",
+                "Bundle-Version", "1.0", "Export-Package", "p.lib;version=1.3",
+                "Require-Bundle", "dep;bundle-version=\"[2,3)\""));
+        builder.addResource(headers("Bundle-SymbolicName", "lib.old",
+                "Bundle-Version", "1.0", "Export-Package", "p.lib;version=0.9"));
+        builder.addResource(
+                headers("Bundle-SymbolicName", "dep", "Bundle-Version", "2.1"));
+        builder.addResource(
+                headers("Bundle-SymbolicName", "unused", "Bundle-Version", "1"));
+        return builder;
+    }
+
+    @Test
+    public void testContentAndDependenciesAreDeployed() {
+        DeploymentManifestBuilder builder = newBuilder(
+                "osgi.subsystem.feature" + ACCEPTING);
+
+        Map<String, String> headers = values(builder.build());
+
+        assertThat(headers).containsEntry("Subsystem-SymbolicName",
+                "my.subsystem");
+        assertThat(headers).containsEntry("Subsystem-Version", "1.2.0");
+        assertThat(headers).containsEntry("Deployed-Content",
+                "a.core;deployed-version=1.5.0;type=osgi.bundle");
+        assertThat(headers.get("Provision-Resource"))
+                .contains("lib;deployed-version=1.0.0;type=osgi.bundle")
+                .contains("dep;deployed-version=2.1.0;type=osgi.bundle")
+                .doesNotContain("lib.old").doesNotContain("unused");
+        assertThat(headers).doesNotContainKey("Import-Package");
+        assertThat(builder.getUnresolvedRequirements())
+                .containsExactly("org.osgi.framework");
+    }
+
+    @Test
+    public void testApplicationImportsWhatItsContentDoesNotProvide() {
+        Map<String, String> headers = values(
+                newBuilder("osgi.subsystem.application" + ACCEPTING).build());
+
+        assertThat(headers.get("Import-Package")).contains("p.lib")
+                .contains("org.osgi.framework").doesNotContain("a.internal")
+                .doesNotContain("java.util");
+    }
+
+    @Test
+    public void testRejectedDependenciesLeaveTheDeploymentToTheRuntime() {
+        DeploymentManifestBuilder builder = newBuilder(
+                "osgi.subsystem.feature;provision-policy:=rejectDependencies");
+
+        assertThat(builder.build()).isNull();
+        assertThat(builder.getRejectedDependencies()).containsExactlyInAnyOrder(
+                "dep;deployed-version=2.1.0;type=osgi.bundle",
+                "lib;deployed-version=1.0.0;type=osgi.bundle");
+        assertThat(newBuilder("osgi.subsystem.feature").build()).isNull();
+    }
+
+    @Test
+    public void testRejectingPolicyKeepsSelfContainedDeployments() {
+        DeploymentManifestBuilder builder = newExtenderBuilder(
+                "osgi.subsystem.application",
+                "osgi.extender;filter:=\"(osgi.extender=osgi.cdi)\"");
+
+        assertThat(builder.build()).isNotNull();
+        assertThat(builder.getRejectedDependencies()).isEmpty();
+    }
+
+    @Test
+    public void testMissingContentLeavesTheDeploymentToTheRuntime() {
+        DeploymentManifestBuilder builder = new DeploymentManifestBuilder(
+                headers("Subsystem-SymbolicName", "my.subsystem",
+                        "Subsystem-Content", "missing;version=\"[1,2)\""));
+
+        assertThat(builder.build()).isNull();
+        assertThat(builder.getUnresolvedContent()).hasSize(1);
+    }
+
+    private static DeploymentManifestBuilder newExtenderBuilder(String pType,
+            String pRequirement) {
+        DeploymentManifestBuilder builder = new DeploymentManifestBuilder(
+                headers("Subsystem-SymbolicName", "my.subsystem",
+                        "Subsystem-Version", "1.0", "Subsystem-Type", pType,
+                        "Subsystem-Content", "a.component"));
+        builder.addResource(headers("Bundle-SymbolicName", "a.component",
+                "Bundle-Version", "1.0", "Require-Capability", pRequirement
+                        + ",osgi.ee;filter:=\"(osgi.ee=JavaSE)\""));
+        builder.addResource(headers("Bundle-SymbolicName", "scr.old",
+                "Bundle-Version", "1.0", "Provide-Capability",
+                "osgi.extender;osgi.extender=osgi.component;version:Version=1.3"));
+        builder.addResource(headers("Bundle-SymbolicName", "scr",
+                "Bundle-Version", "2.0", "Provide-Capability",
+                "osgi.extender;osgi.extender=osgi.component;version:Version=1.4"));
+        return builder;
+    }
+
+    @Test
+    public void testGenericRequirementIsProvisionedByMatchingFilter() {
+        DeploymentManifestBuilder builder = newExtenderBuilder(
+                "osgi.subsystem.feature" + ACCEPTING,
+                "osgi.extender;filter:=\"(&(osgi.extender=osgi.component)(version>=1.4))\"");
+
+        Map<String, String> headers = values(builder.build());
+
+        assertThat(headers).containsEntry("Provision-Resource",
+                "scr;deployed-version=2.0.0;type=osgi.bundle");
+        assertThat(builder.getUnresolvedRequirements()).isEmpty();
+    }
+
+    @Test
+    public void testGenericRequirementNotMatchingAnyFilterIsLeftForTheRuntime() {
+        DeploymentManifestBuilder builder = newExtenderBuilder(
+                "osgi.subsystem.application",
+                "osgi.extender;filter:=\"(osgi.extender=osgi.cdi)\"");
+
+        Map<String, String> headers = values(builder.build());
+
+        assertThat(headers).doesNotContainKey("Provision-Resource");
+        // the namespace is provided, but not the filtered capability
+        assertThat(headers.get("Require-Capability"))
+                .contains("osgi.cdi").contains("osgi.ee");
+        assertThat(builder.getUnresolvedRequirements()).hasSize(1);
+    }
+
+    @Test
+    public void testUnevaluatedRequirementLeavesTheDeploymentToTheRuntime() {
+        DeploymentManifestBuilder builder = newExtenderBuilder(
+                "osgi.subsystem.feature",
+                "osgi.extender;filter:=\"(osgi.extender=osgi.component\"");
+
+        assertThat(builder.build()).isNull();
+        assertThat(builder.getUnevaluatedRequirements()).hasSize(1);
+    }
+}
@@ -0,0 +1,63 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.subsystems.ut;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.zip.ZipEntry;
+
+import org.junit.Test;
+
+import br.com.c8tech.tools.maven.plugin.subsystems.EntryCompressionPolicy;
+
+public class EntryCompressionPolicyUnitTest {
+
+    @Test
+    public void testFileNamePatterns() {
+        EntryCompressionPolicy policy = new EntryCompressionPolicy(
+                Arrays.asList("*.jar", "*.esa"));
+
+        assertThat(policy.methodFor("aBundle.jar")).isEqualTo(ZipEntry.STORED);
+        assertThat(policy.methodFor("nested/aSubsystem.esa"))
+                .isEqualTo(ZipEntry.STORED);
+        assertThat(policy.methodFor("files/resource1.txt"))
+                .isEqualTo(ZipEntry.DEFLATED);
+        assertThat(policy.methodFor("OSGI-INF/SUBSYSTEM.MF"))
+                .isEqualTo(ZipEntry.DEFLATED);
+    }
+
+    @Test
+    public void testFullNamePatterns() {
+        EntryCompressionPolicy policy = new EntryCompressionPolicy(
+                Arrays.asList("files/*.bin", "images/**"));
+
+        assertThat(policy.methodFor("files/data.bin"))
+                .isEqualTo(ZipEntry.STORED);
+        assertThat(policy.methodFor("files/sub/data.bin"))
+                .isEqualTo(ZipEntry.DEFLATED);
+        assertThat(policy.methodFor("images/icons/logo.png"))
+                .isEqualTo(ZipEntry.STORED);
+        assertThat(policy.methodFor("data.bin")).isEqualTo(ZipEntry.DEFLATED);
+    }
+
+    @Test
+    public void testEmptyPolicyDeflatesEverything() {
+        EntryCompressionPolicy policy = new EntryCompressionPolicy(
+                Collections.<String>emptyList());
+
+        assertThat(policy.isEmpty()).isTrue();
+        assertThat(policy.methodFor("aBundle.jar"))
+                .isEqualTo(ZipEntry.DEFLATED);
+    }
+}
@@ -0,0 +1,123 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.subsystems.ut;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import br.com.c8tech.tools.maven.plugin.subsystems.FileLinks;
+import br.com.c8tech.tools.maven.plugin.subsystems.FileLinks.LinkType;
+import br.com.c8tech.tools.maven.plugin.subsystems.FileLinks.Materialization;
+
+public class FileLinksUnitTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path bundle() throws Exception {
+        return Paths.get(getClass().getResource("/jars/aBundle.jar").toURI());
+    }
+
+    private Path copyOfBundle() throws Exception {
+        Path copy = folder.getRoot().toPath().resolve("aBundle.jar");
+        Files.copy(bundle(), copy);
+        return copy;
+    }
+
+    @Test
+    public void testCompareContent() throws Exception {
+        Path copy = copyOfBundle();
+        Path other = folder.newFile("other.jar").toPath();
+        Files.write(other, "other".getBytes(StandardCharsets.UTF_8));
+
+        assertThat(FileLinks.hasSameContent(copy, bundle())).isTrue();
+        assertThat(FileLinks.hasSameContent(copy, other)).isFalse();
+    }
+
+    @Test
+    public void testReplaceBySymbolicLink() throws Exception {
+        Path copy = copyOfBundle();
+
+        if (FileLinks.replaceWithLink(copy, bundle(), LinkType.SYMLINK)) {
+            assertThat(Files.isSymbolicLink(copy)).isTrue();
+            assertThat(FileLinks.isLinkedTo(copy, bundle())).isTrue();
+        }
+        assertThat(copy).hasSameContentAs(bundle());
+    }
+
+    @Test
+    public void testReplaceByHardLink() throws Exception {
+        Path copy = copyOfBundle();
+        Path original = folder.getRoot().toPath().resolve("original.jar");
+        Files.copy(bundle(), original);
+
+        if (FileLinks.replaceWithLink(copy, original, LinkType.HARDLINK)) {
+            assertThat(FileLinks.isLinkedTo(copy, original)).isTrue();
+        }
+        assertThat(copy).hasSameContentAs(bundle());
+        try (DirectoryStream<Path> files = Files
+                .newDirectoryStream(folder.getRoot().toPath(), "*.link")) {
+            assertThat(files.iterator().hasNext()).isFalse();
+        }
+    }
+
+    @Test
+    public void testMaterializeCreatesTheLinkWithoutCopyingFirst()
+            throws Exception {
+        Path original = folder.getRoot().toPath().resolve("original.jar");
+        Files.copy(bundle(), original);
+        Path cached = folder.getRoot().toPath().resolve("cache/bundles")
+                .resolve("aBundle.jar");
+
+        Materialization materialization = FileLinks.materialize(cached,
+                original, LinkType.REFLINK, LinkType.HARDLINK);
+
+        assertThat(materialization).isNotEqualTo(Materialization.KEPT);
+        if (materialization == Materialization.LINKED
+                && !FileLinks.isLinkedTo(cached, original)) {
+            // a clone keeps the source's modification time
+            assertThat(Files.getLastModifiedTime(cached))
+                    .isEqualTo(Files.getLastModifiedTime(original));
+        }
+        assertThat(cached).hasSameContentAs(bundle());
+        assertThat(FileLinks.materialize(cached, original, LinkType.REFLINK,
+                LinkType.HARDLINK)).isEqualTo(Materialization.KEPT);
+    }
+
+    @Test
+    public void testMaterializeWithoutLinksCopiesKeepingTheTimestamp()
+            throws Exception {
+        Path original = folder.getRoot().toPath().resolve("original.jar");
+        Files.copy(bundle(), original);
+        original.toFile().setReadOnly();
+        Path cached = folder.getRoot().toPath().resolve("aBundle.jar");
+        Files.write(cached, "stale".getBytes(StandardCharsets.UTF_8));
+
+        assertThat(FileLinks.materialize(cached, original))
+                .isEqualTo(Materialization.COPIED);
+        assertThat(cached).hasSameContentAs(bundle());
+        assertThat(Files.getLastModifiedTime(cached))
+                .isEqualTo(Files.getLastModifiedTime(original));
+        assertThat(FileLinks.isLinkedTo(cached, original)).isFalse();
+        assertThat(FileLinks.materialize(cached, original))
+                .isEqualTo(Materialization.KEPT);
+    }
+}
@@ -864,6 +864,72 @@ public class GenerateSubsystemManifestUnitTest
 
     }
 
+    @Test
+    public void testContentWithoutVersionTakesTheTrackerVersion()
+            throws Exception {
+
+        MavenProject project = incrementalBuildRule.readMavenProject(
+                testResources.getBasedir("ut-project--feature"));
+
+        addDependency(project, "jars/aBundle.jar", true, "compile", "jar",
+                false);
+
+        incrementalBuildRule.executeMojo(project, "downloadAndCacheArtifacts",
+                newParameter("embeddableScopes", "compile"),
+                newParameter("manifestScopes", "compile"),
+                newParameter("transitiveConsidered", "false"));
+
+        // no version, so it is parsed as 0.0.0
+        incrementalBuildRule.executeMojo(project, "generateSubsystemManifest",
+                newManifest(basicHeaders())
+                        .subsystemContent("aBundle;start-order:=1").build(),
+                newParameter("embeddableScopes", "compile"),
+                newParameter("manifestScopes", "compile"),
+                newParameter("transitiveConsidered", "false"));
+
+        Path outputFile = assertAndGetBuildOutput(project,
+                "target/work/esa/OSGI-INF/SUBSYSTEM.MF");
+        SubsystemManifest smActual = new SubsystemManifest(outputFile.toFile());
+        Optional<Clause> clause = smActual.getSubsystemContentHeader()
+                .getClauses().stream()
+                .filter(c -> "aBundle".equals(c.getSymbolicName()))
+                .findFirst();
+        assertThat(clause).isPresent();
+        VersionRange range = clause.get().getVersionRange();
+        assertThat(range.isExact()).isTrue();
+        assertThat(range.getLeft().toString()).isNotEqualTo("0.0.0");
+    }
+
+    @Test
+    public void testContentWithoutVersionOfAnUnknownArtifactFails()
+            throws Exception {
+
+        MavenProject project = incrementalBuildRule.readMavenProject(
+                testResources.getBasedir("ut-project--feature"));
+
+        addDependency(project, "jars/aBundle.jar", true, "compile", "jar",
+                false);
+
+        String failure = null;
+        try {
+            incrementalBuildRule.executeMojo(project,
+                    "generateSubsystemManifest",
+                    newManifest(basicHeaders())
+                            .subsystemContent("unknownArtifact").build(),
+                    newParameter("embeddableScopes", "compile"),
+                    newParameter("manifestScopes", "compile"),
+                    newParameter("transitiveConsidered", "false"));
+        } catch (Exception e) {
+            // the failure may be wrapped by the build context
+            StringBuilder messages = new StringBuilder();
+            for (Throwable t = e; t != null; t = t.getCause()) {
+                messages.append(t.getMessage()).append('\n');
+            }
+            failure = messages.toString();
+        }
+        assertThat(failure).isNotNull().contains("unknownArtifact");
+    }
+
     @Test
     public void testGenerationFeatureWithProvidedDependenciesExcludedOneItem()
             throws Exception {
@@ -0,0 +1,96 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.subsystems.ut;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import br.com.c8tech.tools.maven.plugin.subsystems.InputFingerprint;
+
+public class InputFingerprintUnitTest {
+
+    private static final FileTime OLD_TIME = FileTime.fromMillis(1000000L);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path write(String pName, String pContent) throws IOException {
+        Path file = folder.getRoot().toPath().resolve(pName);
+        Files.write(file, pContent.getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(file, OLD_TIME);
+        return file;
+    }
+
+    private static InputFingerprint fingerprintOf(Path pInput, String pValue)
+            throws IOException {
+        return new InputFingerprint().add(pValue).addFile(pInput);
+    }
+
+    @Test
+    public void testUnchangedInputsAndOutputsAreUpToDate() throws IOException {
+        Path input = write("a.jar", "a");
+        Path output = write("index.xml", "i");
+        Path state = folder.getRoot().toPath().resolve("state/inputs");
+
+        assertThat(fingerprintOf(input, "x").isUpToDate(state, output))
+                .isFalse();
+        fingerprintOf(input, "x").store(state, output);
+
+        assertThat(fingerprintOf(input, "x").isUpToDate(state, output))
+                .isTrue();
+        assertThat(fingerprintOf(input, "y").isUpToDate(state, output))
+                .isFalse();
+    }
+
+    @Test
+    public void testChangedInputOrOutputIsNotUpToDate() throws IOException {
+        Path input = write("a.jar", "a");
+        Path output = write("index.xml", "i");
+        Path state = folder.getRoot().toPath().resolve("inputs");
+        fingerprintOf(input, "x").store(state, output);
+
+        Files.write(output, "changed".getBytes(StandardCharsets.UTF_8));
+        assertThat(fingerprintOf(input, "x").isUpToDate(state, output))
+                .isFalse();
+
+        fingerprintOf(input, "x").store(state, output);
+        Files.delete(output);
+        assertThat(fingerprintOf(input, "x").isUpToDate(state, output))
+                .isFalse();
+
+        fingerprintOf(input, "x").store(state, output);
+        write("a.jar", "ab");
+        assertThat(fingerprintOf(input, "x").isUpToDate(state, output))
+                .isFalse();
+    }
+
+    @Test
+    public void testRecentInputIsNotStored() throws IOException {
+        Path input = write("a.jar", "a");
+        Files.setLastModifiedTime(input,
+                FileTime.fromMillis(System.currentTimeMillis()));
+        Path state = folder.getRoot().toPath().resolve("inputs");
+
+        fingerprintOf(input, "x").store(state);
+
+        assertThat(state).doesNotExist();
+    }
+}
@@ -0,0 +1,193 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.subsystems.ut;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.jar.Manifest;
+
+import org.apache.aries.subsystem.core.archive.Attribute;
+import org.apache.aries.subsystem.core.archive.Clause;
+import org.apache.aries.subsystem.core.archive.Directive;
+import org.apache.aries.subsystem.core.archive.ExportPackageHeader;
+import org.apache.aries.subsystem.core.archive.ImportPackageHeader;
+import org.apache.aries.subsystem.core.archive.ProvideCapabilityHeader;
+import org.apache.aries.subsystem.core.archive.RequireCapabilityHeader;
+import org.junit.Test;
+import org.osgi.framework.Constants;
+import org.osgi.framework.VersionRange;
+
+import br.com.c8tech.tools.maven.plugin.subsystems.ManifestClause;
+import br.com.c8tech.tools.maven.plugin.subsystems.ManifestHeaderParser;
+import br.com.c8tech.tools.maven.plugin.subsystems.fixtures.SyntheticSubsystemFixture;
+
+/**
+ * Checks the parser against the Aries headers, over the headers of the
+ * synthetic bundles, of a real bundle and a few hand written ones.
+ */
+public class ManifestHeaderParserUnitTest {
+
+    private static final String SLF4J_MANIFEST = "/jars/extracted-slf4j-api/target/classes/META-INF/MANIFEST.MF";
+
+    private static void assertSameAsAries(String pHeaderValue,
+            Collection<? extends Clause> pAriesClauses,
+            Function<Clause, List<String>> pAriesPaths) {
+        List<ManifestClause> clauses = ManifestHeaderParser
+                .parse(pHeaderValue);
+        List<Clause> ariesClauses = new ArrayList<>(pAriesClauses);
+
+        assertThat(clauses).as(pHeaderValue).hasSize(ariesClauses.size());
+        for (int i = 0; i < clauses.size(); i++) {
+            ManifestClause clause = clauses.get(i);
+            Clause ariesClause = ariesClauses.get(i);
+            assertThat(clause.getPaths()).as(pHeaderValue)
+                    .isEqualTo(pAriesPaths.apply(ariesClause));
+            for (Map.Entry<String, String> directive : clause.getDirectives()
+                    .entrySet()) {
+                Directive ariesDirective = ariesClause
+                        .getDirective(directive.getKey());
+                assertThat(ariesDirective).as(directive.getKey()).isNotNull();
+                assertThat(String.valueOf(ariesDirective.getValue()))
+                        .isEqualTo(directive.getValue());
+            }
+            for (Map.Entry<String, String> attribute : clause.getAttributes()
+                    .entrySet()) {
+                String name = attribute.getKey();
+                if (name.indexOf(':') >= 0) {
+                    // typed attributes are converted by aries
+                    name = name.substring(0, name.indexOf(':'));
+                    assertThat(ariesClause.getAttribute(name)).isNotNull();
+                    continue;
+                }
+                Attribute ariesAttribute = ariesClause.getAttribute(name);
+                assertThat(ariesAttribute).as(name).isNotNull();
+                if (Constants.VERSION_ATTRIBUTE.equals(name)) {
+                    assertThat(new VersionRange(
+                            String.valueOf(ariesAttribute.getValue())))
+                                    .isEqualTo(new VersionRange(
+                                            attribute.getValue()));
+                } else {
+                    assertThat(String.valueOf(ariesAttribute.getValue()))
+                            .isEqualTo(attribute.getValue());
+                }
+            }
+        }
+    }
+
+    private static List<String> exportPackages() throws IOException {
+        List<String> headers = new ArrayList<>(Arrays.asList(
+                "a.b;c.d;version=1.2;uses:=\"x.y,z.w\"",
+                "p.q;version=\"2.0\";x-internal:=true, r.s"));
+        for (Map<String, String> bundle : SyntheticSubsystemFixture
+                .allBundleHeaders(50, 11)) {
+            headers.add(bundle.get(Constants.EXPORT_PACKAGE));
+        }
+        headers.add(readSlf4jHeader(Constants.EXPORT_PACKAGE));
+        return headers;
+    }
+
+    private static List<String> importPackages() throws IOException {
+        List<String> headers = new ArrayList<>(Arrays.asList(
+                "a.b;version=\"[1,2)\";resolution:=optional,c.d;e.f"));
+        for (Map<String, String> bundle : SyntheticSubsystemFixture
+                .allBundleHeaders(50, 13)) {
+            headers.add(bundle.get(Constants.IMPORT_PACKAGE));
+        }
+        headers.add(readSlf4jHeader(Constants.IMPORT_PACKAGE));
+        return headers;
+    }
+
+    private static String readSlf4jHeader(String pName) throws IOException {
+        try (InputStream in = ManifestHeaderParserUnitTest.class
+                .getResourceAsStream(SLF4J_MANIFEST)) {
+            return new Manifest(in).getMainAttributes().getValue(pName);
+        }
+    }
+
+    @Test
+    public void testCapabilityHeadersMatchAries() {
+        for (String header : Arrays.asList(
+                "osgi.ee;filter:=\"(&(osgi.ee=JavaSE)(version=1.8))\"",
+                "osgi.extender;filter:=\"(osgi.extender=osgi.component)\";resolution:=optional")) {
+            assertSameAsAries(header,
+                    new RequireCapabilityHeader(header).getClauses(),
+                    c -> Collections.singletonList(c.getPath()));
+        }
+        String provided = "osgi.service;objectClass:List<String>=\"a.B,c.D\";uses:=\"a.b\"";
+        assertSameAsAries(provided,
+                new ProvideCapabilityHeader(provided).getClauses(),
+                c -> Collections.singletonList(c.getPath()));
+    }
+
+    @Test
+    public void testExportPackageMatchesAries() throws IOException {
+        for (String header : exportPackages()) {
+            assertSameAsAries(header,
+                    new ExportPackageHeader(header).getClauses(),
+                    c -> new ArrayList<>(((ExportPackageHeader.Clause) c)
+                            .getPackageNames()));
+        }
+    }
+
+    @Test
+    public void testImportPackageMatchesAries() throws IOException {
+        for (String header : importPackages()) {
+            assertSameAsAries(header,
+                    new ImportPackageHeader(header).getClauses(),
+                    c -> new ArrayList<>(((ImportPackageHeader.Clause) c)
+                            .getPackageNames()));
+        }
+    }
+
+    @Test
+    public void testQuotedSeparatorsAndEscapes() {
+        List<ManifestClause> clauses = ManifestHeaderParser.parse(
+                " a.b ; x=\"1,2;3\" ; y:=\"say \\\"hi\\\"\" ,, c.d ");
+
+        assertThat(clauses).hasSize(2);
+        assertThat(clauses.get(0).getPath()).isEqualTo("a.b");
+        assertThat(clauses.get(0).getAttribute("x")).isEqualTo("1,2;3");
+        assertThat(clauses.get(0).getDirective("y")).isEqualTo("say \"hi\"");
+        assertThat(clauses.get(1).getPath()).isEqualTo("c.d");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPathAfterParametersIsRejected() {
+        ManifestHeaderParser.parse("a.b;version=1;c.d");
+    }
+
+    @Test
+    public void testSkippedDirectivesAreLeftOut() throws IOException {
+        for (String header : exportPackages()) {
+            List<ManifestClause> skipped = ManifestHeaderParser.parse(header,
+                    Collections.singleton(Constants.USES_DIRECTIVE));
+            List<ManifestClause> full = ManifestHeaderParser.parse(header);
+
+            assertThat(skipped).hasSize(full.size());
+            for (int i = 0; i < full.size(); i++) {
+                assertThat(skipped.get(i)
+                        .getDirective(Constants.USES_DIRECTIVE)).isNull();
+                assertThat(skipped.get(i)).isEqualTo(full.get(i)
+                        .withDirective(Constants.USES_DIRECTIVE, null));
+            }
+        }
+    }
+}
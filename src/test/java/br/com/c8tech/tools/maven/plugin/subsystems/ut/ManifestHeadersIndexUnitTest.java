@@ -0,0 +1,137 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.subsystems.ut;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import br.com.c8tech.tools.maven.plugin.subsystems.ManifestHeadersIndex;
+
+public class ManifestHeadersIndexUnitTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path copyBundle() throws Exception {
+        Path bundle = Paths.get(getClass().getResource("/jars/aBundle.jar").toURI());
+        Path copied = folder.getRoot().toPath().resolve("aBundle.jar");
+        Files.copy(bundle, copied);
+        return copied;
+    }
+
+    private Path copyOldBundle() throws Exception {
+        Path bundle = copyBundle();
+        Files.setLastModifiedTime(bundle, FileTime.fromMillis(
+                System.currentTimeMillis() - 60000));
+        return bundle;
+    }
+
+    private static Map<String, String> headers() {
+        Map<String, String> headers = new LinkedHashMap<>();
+        headers.put("Bundle-SymbolicName", "com.c8tech.aBundle");
+        headers.put("Bundle-Version", "1.0.0");
+        StringBuilder exports = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            exports.append("com.c8tech.pkg").append(i).append(";version=1.0,");
+        }
+        headers.put("Export-Package", exports.toString());
+        return headers;
+    }
+
+    @Test
+    public void testIndexIsPersisted() throws Exception {
+        Path bundle = copyOldBundle();
+        Path indexFile = folder.getRoot().toPath()
+                .resolve(ManifestHeadersIndex.INDEX_FILE_NAME);
+
+        ManifestHeadersIndex index = ManifestHeadersIndex.load(indexFile);
+        assertThat(index.lookup(bundle)).isNull();
+        index.put(bundle, headers());
+        assertThat(index.isModified()).isTrue();
+        index.save();
+
+        ManifestHeadersIndex reloaded = ManifestHeadersIndex.load(indexFile);
+        assertThat(reloaded.isModified()).isFalse();
+        assertThat(reloaded.lookup(bundle)).containsExactlyEntriesOf(headers());
+    }
+
+    @Test
+    public void testTouchedFileIsInvalidated() throws Exception {
+        Path bundle = copyOldBundle();
+        Path indexFile = folder.getRoot().toPath()
+                .resolve(ManifestHeadersIndex.INDEX_FILE_NAME);
+        ManifestHeadersIndex index = ManifestHeadersIndex.load(indexFile);
+        index.put(bundle, headers());
+        assertThat(index.lookup(bundle)).isEqualTo(headers());
+
+        Files.setLastModifiedTime(bundle, FileTime.fromMillis(
+                Files.getLastModifiedTime(bundle).toMillis() + 10000));
+
+        assertThat(index.lookup(bundle)).isNull();
+    }
+
+    @Test
+    public void testRacyFileChangedWithinItsTimestampIsInvalidated()
+            throws Exception {
+        Path bundle = copyBundle();
+        FileTime lastModified = FileTime
+                .fromMillis(System.currentTimeMillis());
+        Files.setLastModifiedTime(bundle, lastModified);
+        Path indexFile = folder.getRoot().toPath()
+                .resolve(ManifestHeadersIndex.INDEX_FILE_NAME);
+        ManifestHeadersIndex index = ManifestHeadersIndex.load(indexFile);
+        index.put(bundle, headers());
+        assertThat(index.lookup(bundle)).isEqualTo(headers());
+
+        // same size and same modification time, but another content
+        byte[] content = Files.readAllBytes(bundle);
+        content[content.length / 2] ^= 1;
+        Files.write(bundle, content);
+        Files.setLastModifiedTime(bundle, lastModified);
+
+        assertThat(index.lookup(bundle)).isNull();
+    }
+
+    @Test
+    public void testChangedFileIsInvalidated() throws Exception {
+        Path bundle = copyOldBundle();
+        Path indexFile = folder.getRoot().toPath()
+                .resolve(ManifestHeadersIndex.INDEX_FILE_NAME);
+        ManifestHeadersIndex index = ManifestHeadersIndex.load(indexFile);
+        index.put(bundle, headers());
+
+        Files.write(bundle, new byte[] { 1, 2, 3 });
+
+        assertThat(index.lookup(bundle)).isNull();
+    }
+
+    @Test
+    public void testCorruptedIndexIsIgnored() throws Exception {
+        Path indexFile = folder.getRoot().toPath()
+                .resolve(ManifestHeadersIndex.INDEX_FILE_NAME);
+        Files.write(indexFile, new byte[] { 0x53, 0x53, 0x4D, 0x48, 0, 0 });
+
+        ManifestHeadersIndex index = ManifestHeadersIndex.load(indexFile);
+
+        assertThat(index.lookup(copyBundle())).isNull();
+    }
+}
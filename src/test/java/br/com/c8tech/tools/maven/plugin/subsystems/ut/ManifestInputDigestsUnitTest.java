@@ -0,0 +1,111 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.subsystems.ut;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.osgi.framework.Constants;
+
+import br.com.c8tech.tools.maven.plugin.subsystems.ManifestInputDigests;
+
+public class ManifestInputDigestsUnitTest {
+
+    private static final FileTime OLD_TIME = FileTime.fromMillis(1000000L);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Map<String, String> headers(String pVersion,
+            String pImports) {
+        Map<String, String> headers = new HashMap<>();
+        headers.put(Constants.BUNDLE_SYMBOLICNAME, "a.b");
+        headers.put(Constants.BUNDLE_VERSION, pVersion);
+        headers.put(Constants.IMPORT_PACKAGE, pImports);
+        headers.put("Bnd-LastModified", String.valueOf(System.nanoTime()));
+        return headers;
+    }
+
+    private ManifestInputDigests newDigests() {
+        return new ManifestInputDigests(
+                folder.getRoot().toPath().resolve("digests"),
+                Arrays.asList(Constants.BUNDLE_SYMBOLICNAME,
+                        Constants.BUNDLE_VERSION));
+    }
+
+    @Test
+    public void testIgnoredHeadersDoNotTouchTheDigestFile()
+            throws IOException {
+        Path file = newDigests().update("g:a:1.0:jar", "g:a:1.0:jar:false",
+                headers("1.0.0", "x.y"));
+        Files.setLastModifiedTime(file, OLD_TIME);
+
+        Path again = newDigests().update("g:a:1.0:jar", "g:a:1.0:jar:false",
+                headers("1.0.0", "x.y;version=2"));
+
+        assertThat(again).isEqualTo(file);
+        assertThat(Files.getLastModifiedTime(file)).isEqualTo(OLD_TIME);
+    }
+
+    @Test
+    public void testConsumedHeadersChangeTheDigestFile() throws IOException {
+        Path file = newDigests().update("g:a:1.0:jar", "g:a:1.0:jar:false",
+                headers("1.0.0", "x.y"));
+        byte[] before = Files.readAllBytes(file);
+
+        newDigests().update("g:a:1.0:jar", "g:a:1.0:jar:false",
+                headers("1.0.1", "x.y"));
+
+        assertThat(Files.readAllBytes(file)).isNotEqualTo(before);
+        assertThat(newDigests().digest("g:a:1.0:jar:true",
+                headers("1.0.1", "x.y"))).isNotEqualTo(newDigests()
+                        .digest("g:a:1.0:jar:false", headers("1.0.1", "x.y")));
+    }
+
+    @Test
+    public void testStaleDigestFilesAreDeleted() throws IOException {
+        Path removed = newDigests().update("g:removed:1.0:jar", "removed",
+                headers("1.0.0", "x.y"));
+
+        ManifestInputDigests digests = newDigests();
+        Path kept = digests.update("g:a:1.0:jar", "g:a:1.0:jar:false",
+                headers("1.0.0", "x.y"));
+        digests.deleteStale();
+
+        assertThat(kept).exists();
+        assertThat(removed).doesNotExist();
+    }
+
+    @Test
+    public void testKeysDifferingOnlyInSymbolsHaveTheirOwnFiles()
+            throws IOException {
+        ManifestInputDigests digests = newDigests();
+
+        Path file = digests.update("plugins/a_b.jar", "a",
+                headers("1.0.0", "x.y"));
+        Path other = digests.update("plugins_a/b.jar", "b",
+                headers("1.0.0", "x.y"));
+
+        assertThat(file).isNotEqualTo(other);
+        assertThat(file.getParent()).isEqualTo(other.getParent());
+    }
+}
@@ -0,0 +1,131 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.subsystems.ut;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import br.com.c8tech.tools.maven.plugin.subsystems.OutputCache;
+
+public class OutputCacheUnitTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static String key(String pDigest) {
+        return new OutputCache.KeyBuilder("1").add("writer", "plugin")
+                .addDigest("a.jar", pDigest.getBytes(StandardCharsets.UTF_8))
+                .build();
+    }
+
+    @Test
+    public void testKeyDependsOnTheInputs() {
+        assertThat(key("a")).isEqualTo(key("a")).isNotEqualTo(key("b"));
+        assertThat(new OutputCache.KeyBuilder("1").add("a", "bc").build())
+                .isNotEqualTo(
+                        new OutputCache.KeyBuilder("1").add("ab", "c").build());
+    }
+
+    @Test
+    public void testStoredFileIsRestored() throws Exception {
+        OutputCache cache = new OutputCache(
+                folder.newFolder("cache").toPath());
+        Path archive = folder.newFile("first.esa").toPath();
+        Files.write(archive, "archive".getBytes(StandardCharsets.UTF_8));
+        Path restored = folder.getRoot().toPath().resolve("target")
+                .resolve("second.esa");
+
+        assertThat(cache.restore(key("a"), "subsystem.esa", restored))
+                .isFalse();
+        cache.store(key("a"), "subsystem.esa", archive);
+
+        assertThat(cache.restore(key("a"), "subsystem.esa", restored))
+                .isTrue();
+        assertThat(restored).hasSameContentAs(archive);
+        assertThat(cache.restore(key("b"), "subsystem.esa", restored))
+                .isFalse();
+    }
+
+    @Test
+    public void testDetachedFileDoesNotChangeTheEntry() throws Exception {
+        OutputCache cache = new OutputCache(
+                folder.newFolder("cache").toPath());
+        Path archive = folder.newFile("subsystem.esa").toPath();
+        Files.write(archive, "archive".getBytes(StandardCharsets.UTF_8));
+        cache.store(key("a"), "subsystem.esa", archive);
+        cache.restore(key("a"), "subsystem.esa", archive);
+
+        OutputCache.detach(archive);
+        Files.write(archive, "changed".getBytes(StandardCharsets.UTF_8));
+
+        assertThat(cache.entryFor(key("a"), "subsystem.esa"))
+                .hasContent("archive");
+    }
+
+    private static void storeAged(OutputCache pCache, String pKey,
+            Path pArchive, long pAgeDays) throws Exception {
+        pCache.store(pKey, "subsystem.esa", pArchive);
+        Files.setLastModifiedTime(
+                pCache.entryFor(pKey, "subsystem.esa").getParent(),
+                FileTime.fromMillis(System.currentTimeMillis()
+                        - TimeUnit.DAYS.toMillis(pAgeDays)));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntriesAreEvictedFirst()
+            throws Exception {
+        OutputCache cache = new OutputCache(
+                folder.newFolder("cache").toPath());
+        Path archive = folder.newFile("subsystem.esa").toPath();
+        Files.write(archive, new byte[1000]);
+        storeAged(cache, key("a"), archive, 3);
+        storeAged(cache, key("b"), archive, 2);
+        storeAged(cache, key("c"), archive, 1);
+        // restoring makes it the most recently used one
+        cache.restore(key("a"), "subsystem.esa",
+                folder.getRoot().toPath().resolve("restored.esa"));
+
+        assertThat(cache.evict(2000, 0)).isEqualTo(1);
+
+        assertThat(cache.entryFor(key("a"), "subsystem.esa")).exists();
+        assertThat(cache.entryFor(key("b"), "subsystem.esa")).doesNotExist();
+        assertThat(cache.entryFor(key("c"), "subsystem.esa")).exists();
+        assertThat(folder.getRoot().toPath().resolve("restored.esa"))
+                .hasSameContentAs(archive);
+    }
+
+    @Test
+    public void testEntriesOlderThanTheMaximumAgeAreEvicted()
+            throws Exception {
+        OutputCache cache = new OutputCache(
+                folder.newFolder("cache").toPath());
+        Path archive = folder.newFile("subsystem.esa").toPath();
+        Files.write(archive, "archive".getBytes(StandardCharsets.UTF_8));
+        storeAged(cache, key("a"), archive, 40);
+        storeAged(cache, key("b"), archive, 1);
+
+        assertThat(cache.evict(0, TimeUnit.DAYS.toMillis(30))).isEqualTo(1);
+
+        assertThat(cache.restore(key("a"), "subsystem.esa", archive))
+                .isFalse();
+        assertThat(cache.entryFor(key("b"), "subsystem.esa")).exists();
+    }
+}
@@ -0,0 +1,64 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.subsystems.ut;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import br.com.c8tech.tools.maven.plugin.subsystems.ParallelTasks;
+
+public class ParallelTasksUnitTest {
+
+    private static List<Integer> items(int pSize) {
+        List<Integer> items = new ArrayList<>();
+        for (int i = 0; i < pSize; i++) {
+            items.add(i);
+        }
+        return items;
+    }
+
+    @Test
+    public void testParallelResultsKeepSerialOrder() throws Exception {
+        List<Integer> items = items(200);
+
+        List<String> serial = ParallelTasks.map(items, 1, i -> "item-" + i);
+        List<String> parallel = ParallelTasks.map(items, 8, i -> {
+            // makes the first items finish last
+            Thread.sleep((200 - i) % 5);
+            return "item-" + i;
+        });
+
+        assertThat(parallel).containsExactlyElementsOf(serial);
+    }
+
+    @Test(expected = IOException.class)
+    public void testFailureIsPropagated() throws Exception {
+        ParallelTasks.map(items(10), 4, i -> {
+            if (i == 7) {
+                throw new IOException("failed reading item " + i);
+            }
+            return i;
+        });
+    }
+
+    @Test
+    public void testEffectiveThreads() {
+        assertThat(ParallelTasks.effectiveThreads(3)).isEqualTo(3);
+        assertThat(ParallelTasks.effectiveThreads(0))
+                .isEqualTo(Runtime.getRuntime().availableProcessors());
+    }
+}
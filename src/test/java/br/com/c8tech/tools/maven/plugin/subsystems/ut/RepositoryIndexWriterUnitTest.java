@@ -0,0 +1,142 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.subsystems.ut;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+import br.com.c8tech.tools.maven.plugin.subsystems.RepositoryIndexWriter;
+
+public class RepositoryIndexWriterUnitTest {
+
+    private static Map<String, String> headers(String... pNamesAndValues) {
+        Map<String, String> headers = new HashMap<>();
+        for (int i = 0; i < pNamesAndValues.length; i += 2) {
+            headers.put(pNamesAndValues[i], pNamesAndValues[i + 1]);
+        }
+        return headers;
+    }
+
+    private static RepositoryIndexWriter newIndex() {
+        RepositoryIndexWriter index = new RepositoryIndexWriter("feature");
+        index.addResource("b.jar", 10, "0a1b",
+                headers("Bundle-SymbolicName", "b;singleton:=true",
+                        "Bundle-Version", "1.0", "Export-Package",
+                        "p.b;version=1.2;uses:=\"p.a\"", "Import-Package",
+                        "p.a;version=\"[1,2)\",p.o;resolution:=optional"));
+        index.addResource("a.esa", 20, "2c3d",
+                headers("Subsystem-SymbolicName", "a.sub",
+                        "Subsystem-Version", "2", "Subsystem-Type",
+                        "osgi.subsystem.feature"));
+        return index;
+    }
+
+    private static byte[] write(RepositoryIndexWriter pIndex,
+            boolean pCompressed) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        pIndex.write(out, pCompressed);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testIndexDescribesTheEmbeddedArtifacts() throws Exception {
+        byte[] xml = write(newIndex(), false);
+
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        Document document = factory.newDocumentBuilder()
+                .parse(new ByteArrayInputStream(xml));
+        assertThat(document.getElementsByTagNameNS(
+                "http://www.osgi.org/xmlns/repository/v1.0.0", "resource")
+                .getLength()).isEqualTo(2);
+        String text = new String(xml, StandardCharsets.UTF_8);
+        assertThat(text.indexOf("value=\"a.sub\""))
+                .isLessThan(text.indexOf("value=\"b\""));
+        assertThat(text).contains("<attribute name=\"osgi.content\" value=\"0a1b\"/>")
+                .contains("<attribute name=\"url\" value=\"b.jar\"/>")
+                .contains("<attribute name=\"osgi.wiring.package\" value=\"p.b\"/>")
+                .contains("<directive name=\"uses\" value=\"p.a\"/>")
+                .contains("(osgi.wiring.package=p.o)")
+                .contains("<directive name=\"resolution\" value=\"optional\"/>");
+    }
+
+    @Test
+    public void testCompressedIndexIsStable() throws IOException {
+        byte[] compressed = write(newIndex(), true);
+
+        assertThat(write(newIndex(), true)).isEqualTo(compressed);
+        ByteArrayOutputStream xml = new ByteArrayOutputStream();
+        try (InputStream in = new GZIPInputStream(
+                new ByteArrayInputStream(compressed))) {
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                xml.write(buffer, 0, read);
+            }
+        }
+        assertThat(xml.toByteArray()).isEqualTo(write(newIndex(), false));
+    }
+
+    @Test
+    public void testBundleHostAndGenericNamespacesAreIndexed()
+            throws IOException {
+        RepositoryIndexWriter index = new RepositoryIndexWriter("feature");
+        index.addResource("h.jar", 10, "0a1b", headers(
+                "Bundle-SymbolicName", "h", "Bundle-Version", "1.0",
+                "Require-Bundle", "r;bundle-version=\"[1,2)\"",
+                "Provide-Capability",
+                "osgi.extender;osgi.extender=x;version:Version=1.1",
+                "Require-Capability",
+                "osgi.service;filter:=\"(objectClass=s.S)\";effective:=active"));
+        index.addResource("f.jar", 10, "2c3d", headers(
+                "Bundle-SymbolicName", "f", "Bundle-Version", "1.0",
+                "Fragment-Host", "h;bundle-version=1.0", "Export-Package",
+                "p.f"));
+
+        String text = new String(write(index, false), StandardCharsets.UTF_8);
+
+        assertThat(text)
+                .contains("<attribute name=\"osgi.wiring.bundle\" value=\"h\"/>")
+                .contains("<attribute name=\"osgi.wiring.host\" value=\"h\"/>")
+                .contains("(&amp;(osgi.wiring.bundle=r)")
+                .contains("<attribute name=\"version\" type=\"Version\" value=\"1.1\"/>")
+                .contains("<directive name=\"effective\" value=\"active\"/>")
+                .contains("(objectClass=s.S)")
+                .contains("(&amp;(osgi.wiring.host=h)")
+                .doesNotContain("value=\"p.f\"")
+                .doesNotContain("<attribute name=\"osgi.wiring.bundle\" value=\"f\"/>");
+    }
+
+    @Test
+    public void testArtifactsWithoutIdentityAreSkipped() {
+        RepositoryIndexWriter index = new RepositoryIndexWriter("feature");
+
+        assertThat(index.addResource("a.jar", 1, "00",
+                headers("Bundle-Version", "1.0"))).isFalse();
+        assertThat(index.addResource("b.jar", 1, "00", headers(
+                "Bundle-SymbolicName", "b", "Bundle-Version", "x.y")))
+                        .isFalse();
+    }
+}
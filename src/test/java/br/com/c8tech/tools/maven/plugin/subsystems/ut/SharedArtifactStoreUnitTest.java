@@ -0,0 +1,149 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.subsystems.ut;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import br.com.c8tech.tools.maven.plugin.subsystems.FileDigests;
+import br.com.c8tech.tools.maven.plugin.subsystems.FileLinks.LinkType;
+import br.com.c8tech.tools.maven.plugin.subsystems.SharedArtifactStore;
+
+public class SharedArtifactStoreUnitTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static boolean isReadOnly(Path pFile) throws Exception {
+        if (!pFile.getFileSystem().supportedFileAttributeViews()
+                .contains("posix")) {
+            return !pFile.toFile().canWrite();
+        }
+        // the owner may be root, which can write to any file
+        Set<PosixFilePermission> permissions = Files
+                .getPosixFilePermissions(pFile);
+        return !permissions.contains(PosixFilePermission.OWNER_WRITE)
+                && !permissions.contains(PosixFilePermission.GROUP_WRITE)
+                && !permissions.contains(PosixFilePermission.OTHERS_WRITE);
+    }
+
+    private Path copyIntoCache(String pProject) throws Exception {
+        Path cache = folder.newFolder(pProject, "cache").toPath();
+        Path cached = cache.resolve("aBundle.jar");
+        Files.copy(Paths.get(getClass().getResource("/jars/aBundle.jar").toURI()),
+                cached);
+        return cached;
+    }
+
+    @Test
+    public void testSameArtifactOfTwoProjectsIsStoredOnce() throws Exception {
+        Path first = copyIntoCache("first");
+        Path second = copyIntoCache("second");
+        SharedArtifactStore store = new SharedArtifactStore(
+                folder.newFolder("store").toPath());
+
+        assertThat(store.share(first)).isTrue();
+        assertThat(store.share(second)).isTrue();
+
+        Path entry = store.entryFor(FileDigests.sha256Hex(first));
+        assertThat(entry).isRegularFile();
+        assertThat(first).hasSameContentAs(entry);
+        assertThat(second).hasSameContentAs(entry);
+        try (Stream<Path> entries = Files
+                .walk(entry.getParent().getParent())) {
+            assertThat(entries.filter(Files::isRegularFile).count())
+                    .isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void testSharingAgainKeepsTheContent() throws Exception {
+        Path cached = copyIntoCache("project");
+        SharedArtifactStore store = new SharedArtifactStore(
+                folder.newFolder("store").toPath());
+
+        assertThat(store.share(cached)).isTrue();
+        assertThat(store.share(cached)).isTrue();
+
+        assertThat(cached).hasSameContentAs(
+                Paths.get(getClass().getResource("/jars/aBundle.jar").toURI()));
+    }
+
+    @Test
+    public void testEntryIsAPrivateReadOnlyCopy() throws Exception {
+        Path cached = copyIntoCache("project");
+        byte[] content = Files.readAllBytes(cached);
+        SharedArtifactStore store = new SharedArtifactStore(
+                folder.newFolder("store").toPath());
+
+        // no link kind allowed, so the project keeps its own file
+        assertThat(store.share(cached, new LinkType[0])).isFalse();
+
+        Path entry = store.entryFor(FileDigests.sha256Hex(cached));
+        assertThat(Files.isSameFile(cached, entry)).isFalse();
+        assertThat(isReadOnly(entry)).isTrue();
+        Files.write(cached, new byte[] { 1, 2, 3 });
+        assertThat(Files.readAllBytes(entry)).isEqualTo(content);
+    }
+
+    @Test
+    public void testDamagedEntryIsReplaced() throws Exception {
+        Path first = copyIntoCache("first");
+        Path second = copyIntoCache("second");
+        byte[] content = Files.readAllBytes(first);
+        SharedArtifactStore store = new SharedArtifactStore(
+                folder.newFolder("store").toPath());
+        store.share(first, new LinkType[0]);
+        Path entry = store.entryFor(FileDigests.sha256Hex(first));
+
+        // same size, another content
+        byte[] damaged = content.clone();
+        damaged[damaged.length / 2] ^= 1;
+        entry.toFile().setWritable(true);
+        Files.write(entry, damaged);
+
+        store.share(second);
+
+        assertThat(Files.readAllBytes(entry)).isEqualTo(content);
+        assertThat(Files.readAllBytes(second)).isEqualTo(content);
+    }
+
+    @Test
+    public void testMaterializeLinksTheCachedFileToTheEntry()
+            throws Exception {
+        Path repositoryFile = Paths
+                .get(getClass().getResource("/jars/aBundle.jar").toURI());
+        Path cached = folder.getRoot().toPath().resolve("project/cache")
+                .resolve("aBundle.jar");
+        SharedArtifactStore store = new SharedArtifactStore(
+                folder.newFolder("store").toPath());
+
+        store.materialize(repositoryFile, cached, LinkType.REFLINK,
+                LinkType.HARDLINK);
+
+        Path entry = store.entryFor(FileDigests.sha256Hex(repositoryFile));
+        assertThat(cached).hasSameContentAs(repositoryFile);
+        assertThat(entry).hasSameContentAs(repositoryFile);
+        assertThat(Files.isSameFile(cached, repositoryFile)).isFalse();
+        assertThat(isReadOnly(entry)).isTrue();
+    }
+}
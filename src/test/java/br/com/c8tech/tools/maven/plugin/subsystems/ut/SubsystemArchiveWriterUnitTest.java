@@ -0,0 +1,248 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.subsystems.ut;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import br.com.c8tech.tools.maven.osgi.lib.mojo.CommonMojoConstants;
+import br.com.c8tech.tools.maven.plugin.subsystems.EntryCompressionPolicy;
+import br.com.c8tech.tools.maven.plugin.subsystems.SubsystemArchiveWriter;
+
+public class SubsystemArchiveWriterUnitTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static List<String> entryNames(Path pArchive) throws Exception {
+        List<String> names = new ArrayList<>();
+        try (ZipFile zip = new ZipFile(pArchive.toFile())) {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                names.add(entries.nextElement().getName());
+            }
+        }
+        return names;
+    }
+
+    private Path writeArchive(String pName, int pThreads) throws Exception {
+        return writeArchive(pName, pThreads,
+                new EntryCompressionPolicy(Collections.<String>emptyList()));
+    }
+
+    private Path writeArchive(String pName, int pThreads,
+            EntryCompressionPolicy pPolicy) throws Exception {
+        Path manifest = Paths.get(getClass().getResource(
+                "/subsystems/extracted.composite.esa/target/esa/OSGI-INF/SUBSYSTEM.MF")
+                .toURI());
+        Path archive = folder.getRoot().toPath().resolve(pName);
+        SubsystemArchiveWriter writer = new SubsystemArchiveWriter(archive);
+        writer.setManifest(manifest);
+        writer.setGenerateEsaMimeEntry(true);
+        writer.setThreads(pThreads);
+        writer.setCompressionPolicy(pPolicy);
+        writer.addFile(
+                Paths.get(getClass().getResource("/jars/aBundle.jar").toURI()),
+                "aBundle.jar");
+        writer.addFile(
+                Paths.get(getClass().getResource("/jars/anotherBundle.jar")
+                        .toURI()),
+                "anotherBundle.jar");
+        writer.addFile(
+                Paths.get(getClass()
+                        .getResource("/files/manifest_composite_fixed_content.txt")
+                        .toURI()),
+                "files/manifest.txt");
+        writer.createArchive();
+        return archive;
+    }
+
+    @Test
+    public void testMimeTypeIsTheFirstStoredEntry() throws Exception {
+        Path archive = writeArchive("parallel.esa", 4);
+
+        List<String> names = entryNames(archive);
+        assertThat(names.get(0))
+                .isEqualTo(CommonMojoConstants.MIME_TYPE_ENTRY_NAME);
+        try (ZipFile zip = new ZipFile(archive.toFile())) {
+            ZipEntry mimeType = zip
+                    .getEntry(CommonMojoConstants.MIME_TYPE_ENTRY_NAME);
+            assertThat(mimeType.getMethod()).isEqualTo(ZipEntry.STORED);
+        }
+    }
+
+    @Test
+    public void testParallelArchiveKeepsSerialEntryOrder() throws Exception {
+        Path serial = writeArchive("serial.esa", 1);
+        Path parallel = writeArchive("parallel.esa", 4);
+
+        assertThat(entryNames(parallel)).containsExactly(
+                CommonMojoConstants.MIME_TYPE_ENTRY_NAME, "OSGI-INF/",
+                CommonMojoConstants.OSGI_SUBSYSTEM_MANIFEST_LOCATION,
+                "aBundle.jar", "anotherBundle.jar", "files/",
+                "files/manifest.txt");
+        assertThat(entryNames(parallel))
+                .containsExactlyElementsOf(entryNames(serial));
+        assertThat(Files.size(parallel)).isEqualTo(Files.size(serial));
+    }
+
+    @Test
+    public void testThousandsOfEntriesDoNotExhaustFileDescriptors()
+            throws Exception {
+        Path sources = folder.newFolder("many").toPath();
+        Path archive = folder.getRoot().toPath().resolve("many.esa");
+        SubsystemArchiveWriter writer = new SubsystemArchiveWriter(archive);
+        writer.setThreads(4);
+        // more entries than the usual default limit of open files
+        int count = 5000;
+        for (int i = 0; i < count; i++) {
+            Path source = sources.resolve("file" + i + ".txt");
+            Files.write(source,
+                    ("content " + i).getBytes(StandardCharsets.UTF_8));
+            writer.addFile(source, "files/file" + i + ".txt");
+        }
+
+        writer.createArchive();
+
+        assertThat(entryNames(archive)).hasSize(count + 1);
+        try (Stream<Path> siblings = Files.list(archive.getParent())) {
+            assertThat(siblings.map(p -> p.getFileName().toString()))
+                    .noneMatch(name -> name.startsWith("esa-scatter"));
+        }
+    }
+
+    @Test
+    public void testEmbeddedJarsAreStoredAsTheyAre() throws Exception {
+        Path archive = writeArchive("stored.esa", 4,
+                new EntryCompressionPolicy(Arrays.asList("*.jar")));
+        Path bundle = Paths
+                .get(getClass().getResource("/jars/aBundle.jar").toURI());
+
+        try (ZipFile zip = new ZipFile(archive.toFile())) {
+            ZipEntry jar = zip.getEntry("aBundle.jar");
+            assertThat(jar.getMethod()).isEqualTo(ZipEntry.STORED);
+            assertThat(jar.getCompressedSize()).isEqualTo(Files.size(bundle));
+            try (InputStream in = zip.getInputStream(jar)) {
+                assertThat(in).hasSameContentAs(Files.newInputStream(bundle));
+            }
+            assertThat(zip.getEntry("files/manifest.txt").getMethod())
+                    .isEqualTo(ZipEntry.DEFLATED);
+        }
+    }
+
+    @Test
+    public void testIncrementalArchiveCopiesOnlyUnchangedEntries()
+            throws Exception {
+        Path bundle = folder.getRoot().toPath().resolve("aBundle.jar");
+        Files.copy(Paths.get(getClass().getResource("/jars/aBundle.jar").toURI()),
+                bundle);
+        Path text = folder.newFile("manifest.txt").toPath();
+        Files.copy(Paths.get(getClass()
+                .getResource("/files/manifest_composite_fixed_content.txt")
+                .toURI()), text, StandardCopyOption.REPLACE_EXISTING);
+        Path archive = folder.getRoot().toPath().resolve("incremental.esa");
+
+        assertThat(writeIncrementally(archive, bundle, text)).isZero();
+        assertThat(writeIncrementally(archive, bundle, text)).isEqualTo(3);
+
+        Files.write(text, "changed\n".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(text,
+                FileTime.fromMillis(System.currentTimeMillis() + 10_000));
+        assertThat(writeIncrementally(archive, bundle, text)).isEqualTo(2);
+
+        try (ZipFile zip = new ZipFile(archive.toFile())) {
+            try (InputStream in = zip
+                    .getInputStream(zip.getEntry("files/manifest.txt"))) {
+                assertThat(in).hasSameContentAs(Files.newInputStream(text));
+            }
+            try (InputStream in = zip
+                    .getInputStream(zip.getEntry("aBundle.jar"))) {
+                assertThat(in).hasSameContentAs(Files.newInputStream(bundle));
+            }
+        }
+    }
+
+    @Test
+    public void testReproducibleArchivesHaveTheSameBytes() throws Exception {
+        Path text = folder.newFile("manifest.txt").toPath();
+        Files.copy(Paths.get(getClass()
+                .getResource("/files/manifest_composite_fixed_content.txt")
+                .toURI()), text, StandardCopyOption.REPLACE_EXISTING);
+        Path first = writeReproducibly("first.esa", text, false);
+        Files.setLastModifiedTime(text,
+                FileTime.fromMillis(System.currentTimeMillis() + 10_000));
+        Path second = writeReproducibly("second.esa", text, true);
+
+        assertThat(entryNames(first)).containsExactly(
+                CommonMojoConstants.MIME_TYPE_ENTRY_NAME, "OSGI-INF/",
+                CommonMojoConstants.OSGI_SUBSYSTEM_MANIFEST_LOCATION,
+                "aBundle.jar", "files/", "files/manifest.txt");
+        assertThat(Files.readAllBytes(second))
+                .isEqualTo(Files.readAllBytes(first));
+    }
+
+    private Path writeReproducibly(String pName, Path pText,
+            boolean pReversed) throws Exception {
+        Path archive = folder.getRoot().toPath().resolve(pName);
+        Path bundle = Paths
+                .get(getClass().getResource("/jars/aBundle.jar").toURI());
+        SubsystemArchiveWriter writer = new SubsystemArchiveWriter(archive);
+        writer.setManifest(Paths.get(getClass().getResource(
+                "/subsystems/extracted.composite.esa/target/esa/OSGI-INF/SUBSYSTEM.MF")
+                .toURI()));
+        writer.setGenerateEsaMimeEntry(true);
+        writer.setThreads(2);
+        writer.setReproducibleTime(1546300800000L);
+        if (pReversed) {
+            writer.addFile(pText, "files/manifest.txt");
+            writer.addFile(bundle, "aBundle.jar");
+        } else {
+            writer.addFile(bundle, "aBundle.jar");
+            writer.addFile(pText, "files/manifest.txt");
+        }
+        writer.createArchive();
+        return archive;
+    }
+
+    private int writeIncrementally(Path pArchive, Path pBundle, Path pText)
+            throws Exception {
+        SubsystemArchiveWriter writer = new SubsystemArchiveWriter(pArchive);
+        writer.setManifest(Paths.get(getClass().getResource(
+                "/subsystems/extracted.composite.esa/target/esa/OSGI-INF/SUBSYSTEM.MF")
+                .toURI()));
+        writer.setGenerateEsaMimeEntry(true);
+        writer.setIncremental(true);
+        writer.addFile(pBundle, "aBundle.jar");
+        writer.addFile(pText, "files/manifest.txt");
+        writer.createArchive();
+        return writer.getReusedEntryCount();
+    }
+}
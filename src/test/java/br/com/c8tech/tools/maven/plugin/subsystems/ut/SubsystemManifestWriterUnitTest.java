@@ -0,0 +1,120 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.subsystems.ut;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+
+import org.apache.aries.subsystem.core.archive.GenericHeader;
+import org.apache.aries.subsystem.core.archive.Header;
+import org.apache.aries.subsystem.core.archive.SubsystemContentHeader;
+import org.junit.Test;
+import org.osgi.framework.Constants;
+
+import br.com.c8tech.tools.maven.plugin.subsystems.ClauseListHeader;
+import br.com.c8tech.tools.maven.plugin.subsystems.ManifestClause;
+import br.com.c8tech.tools.maven.plugin.subsystems.ManifestHeaderParser;
+import br.com.c8tech.tools.maven.plugin.subsystems.SubsystemManifestWriter;
+
+public class SubsystemManifestWriterUnitTest {
+
+    private static byte[] write(List<Header<?>> pHeaders) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SubsystemManifestWriter.write(pHeaders, out);
+        return out.toByteArray();
+    }
+
+    private static List<Header<?>> headers(int pPackages) {
+        List<ManifestClause> clauses = new ArrayList<>();
+        for (int i = pPackages; i > 0; i--) {
+            clauses.addAll(ManifestHeaderParser.parse(
+                    "pkg.n" + i + ";version=\"[1." + i + ",2)\""));
+        }
+        return new ArrayList<>(Arrays.asList(
+                new GenericHeader("Subsystem-Name",
+                        "Sübsystem " + String.join("",
+                                Collections.nCopies(20, "with a long name "))),
+                new GenericHeader("Subsystem-SymbolicName", "a.b"),
+                new ClauseListHeader(Constants.IMPORT_PACKAGE, clauses),
+                new SubsystemContentHeader(
+                        "c.d;version=\"[1,2)\";start-order:=2, "
+                                + "a.b;version=\"[1,2)\";start-order:=2, "
+                                + "z.z;version=\"[1,2)\";start-order:=1")));
+    }
+
+    @Test
+    public void testLinesAreWrappedAt72Bytes() throws IOException {
+        byte[] bytes = write(headers(200));
+
+        String text = new String(bytes, StandardCharsets.UTF_8);
+        for (String line : text.split("\r\n")) {
+            assertThat(line.getBytes(StandardCharsets.UTF_8).length)
+                    .as(line).isLessThanOrEqualTo(72);
+        }
+        Attributes attributes = new Manifest(new ByteArrayInputStream(bytes))
+                .getMainAttributes();
+        assertThat(attributes.getValue("Subsystem-Name"))
+                .isEqualTo(headers(1).get(0).getValue());
+        assertThat(ManifestHeaderParser
+                .parse(attributes.getValue(Constants.IMPORT_PACKAGE)))
+                        .hasSize(200);
+    }
+
+    @Test
+    public void testOutputDoesNotDependOnTheHeadersOrder() throws IOException {
+        List<Header<?>> headers = headers(50);
+        byte[] first = write(headers);
+        Collections.reverse(headers);
+
+        assertThat(write(headers)).isEqualTo(first);
+        String text = new String(first, StandardCharsets.UTF_8);
+        assertThat(text).startsWith(
+                "Manifest-Version: 1.0\r\nSubsystem-SymbolicName: a.b\r\n");
+        assertThat(text).contains("Import-Package: pkg.n1;");
+    }
+
+    @Test
+    public void testContentIsSortedByStartOrderAndName() throws IOException {
+        String value = new Manifest(
+                new ByteArrayInputStream(write(headers(1))))
+                        .getMainAttributes().getValue("Subsystem-Content");
+
+        assertThat(value.indexOf("z.z")).isLessThan(value.indexOf("a.b"));
+        assertThat(value.indexOf("a.b")).isLessThan(value.indexOf("c.d"));
+    }
+
+    @Test
+    public void testContentClausesAreSortedByStartOrderAndName()
+            throws IOException {
+        List<ManifestClause> clauses = ManifestHeaderParser
+                .parse("c.d;start-order:=2, a.b;start-order:=2, "
+                        + "z.z;start-order:=1, y.y");
+        String value = new Manifest(new ByteArrayInputStream(write(
+                Collections.singletonList(new ClauseListHeader(
+                        "Subsystem-Content", clauses)))))
+                                .getMainAttributes()
+                                .getValue("Subsystem-Content");
+
+        assertThat(value).isEqualTo("y.y, z.z;start-order:=1, "
+                + "a.b;start-order:=2, c.d;start-order:=2");
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.subsystems.ut;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.osgi.framework.Constants;
+
+import br.com.c8tech.tools.maven.plugin.subsystems.fixtures.SyntheticSubsystemFixture;
+
+public class SyntheticSubsystemFixtureUnitTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Path artifact(Path pRoot, String pArtifactId,
+            String pVersion, String pExtension) {
+        return SyntheticSubsystemFixture.repositoryOf(pRoot)
+                .resolve(SyntheticSubsystemFixture.GROUP_ID.replace('.', '/'))
+                .resolve(pArtifactId).resolve(pVersion)
+                .resolve(pArtifactId + "-" + pVersion + "." + pExtension);
+    }
+
+    @Test
+    public void testGeneratesBundlesSubsystemsAndProject() throws Exception {
+        Path root = folder.getRoot().toPath();
+        SyntheticSubsystemFixture fixture = SyntheticSubsystemFixture
+                .newFixture().withBundles(25).withSubsystems(2)
+                .withBundlesPerSubsystem(5);
+
+        Path project = fixture.generate(root);
+
+        assertThat(fixture.getSubsystemCount()).isEqualTo(2);
+        assertThat(fixture.getProjectDependencyCount()).isEqualTo(17);
+
+        Path bundle = artifact(root, "bundle7", "1.0.7", "jar");
+        assertThat(bundle).isRegularFile();
+        assertThat(artifact(root, "bundle7", "1.0.7", "pom")).isRegularFile();
+        try (JarFile jar = new JarFile(bundle.toFile())) {
+            Manifest manifest = jar.getManifest();
+            assertThat(manifest.getMainAttributes()
+                    .getValue(Constants.BUNDLE_SYMBOLICNAME))
+                            .isEqualTo("br.com.c8tech.synthetic.bundle7");
+            assertThat(manifest.getMainAttributes()
+                    .getValue(Constants.EXPORT_PACKAGE))
+                            .contains("br.com.c8tech.synthetic.bundle7.api0")
+                            .contains("uses:=");
+            assertThat(manifest.getMainAttributes()
+                    .getValue(Constants.IMPORT_PACKAGE)).isNotEmpty();
+        }
+
+        Path esa = artifact(root, "subsystem1", "1.0.1", "esa");
+        try (ZipFile zip = new ZipFile(esa.toFile())) {
+            assertThat(zip.getEntry("bundle5-1.0.5.jar")).isNotNull();
+            assertThat(zip.getEntry("bundle9-1.0.9.jar")).isNotNull();
+            ZipEntry manifestEntry = zip.getEntry("OSGI-INF/SUBSYSTEM.MF");
+            try (InputStream in = zip.getInputStream(manifestEntry)) {
+                Manifest manifest = new Manifest(in);
+                assertThat(manifest.getMainAttributes()
+                        .getValue("Subsystem-Content"))
+                                .contains("br.com.c8tech.synthetic.bundle5;")
+                                .contains("br.com.c8tech.synthetic.bundle9;");
+            }
+        }
+
+        String pom = new String(
+                Files.readAllBytes(project.resolve("pom.xml")),
+                StandardCharsets.UTF_8);
+        assertThat(pom).contains(
+                "<packaging>osgi.subsystem.composite</packaging>")
+                .contains("<artifactId>bundle24</artifactId>")
+                .contains("<artifactId>subsystem1</artifactId>")
+                .doesNotContain("<artifactId>bundle9</artifactId>")
+                .contains(SyntheticSubsystemFixture.repositoryOf(root)
+                        .toAbsolutePath().toUri().toString());
+    }
+
+    @Test
+    public void testGeneratesTheSameFixtureForTheSameSeed() throws Exception {
+        Path first = folder.newFolder("first").toPath();
+        Path second = folder.newFolder("second").toPath();
+
+        SyntheticSubsystemFixture.newFixture().withBundles(10).withSeed(7)
+                .generate(first);
+        SyntheticSubsystemFixture.newFixture().withBundles(10).withSeed(7)
+                .generate(second);
+
+        assertThat(artifact(first, "bundle3", "1.0.3", "jar"))
+                .hasSameContentAs(artifact(second, "bundle3", "1.0.3", "jar"));
+        assertThat(SyntheticSubsystemFixture.allBundleHeaders(10, 7))
+                .isEqualTo(SyntheticSubsystemFixture.allBundleHeaders(10, 7));
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.subsystems.ut;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipFile;
+
+import org.apache.aries.subsystem.core.archive.ExportPackageHeader;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import br.com.c8tech.tools.maven.plugin.subsystems.CompositeHeadersAggregator;
+import br.com.c8tech.tools.maven.plugin.subsystems.SubsystemArchiveWriter;
+import br.com.c8tech.tools.maven.plugin.subsystems.fixtures.SyntheticSubsystemFixture;
+
+/**
+ * Checks the header aggregation and the archive writing over a large
+ * synthetic subsystem. Their timings are measured by the
+ * <code>ManifestGenerationBenchmark</code> and the
+ * <code>ArchiveCreationBenchmark</code>.
+ * <p>
+ * It is only executed when the <code>subsystem.scale</code> system property
+ * is <code>true</code>. The amount of bundles is set by
+ * <code>subsystem.scale.bundles</code>.
+ */
+public class SyntheticSubsystemScaleTest {
+
+    private static final int BUNDLES = Integer
+            .getInteger("subsystem.scale.bundles", 5000);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private List<Path> jars;
+
+    private Path root;
+
+    @Before
+    public void setUp() throws Exception {
+        assumeTrue(Boolean.getBoolean("subsystem.scale"));
+        root = folder.getRoot().toPath();
+        SyntheticSubsystemFixture.newFixture().withBundles(BUNDLES)
+                .withSubsystems(BUNDLES / 100).generate(root);
+        try (Stream<Path> files = Files
+                .walk(SyntheticSubsystemFixture.repositoryOf(root))) {
+            jars = files.filter(f -> f.toString().endsWith(".jar"))
+                    .sorted().collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    public void testAggregateHeadersOfAllBundles() throws Exception {
+        CompositeHeadersAggregator aggregator = new CompositeHeadersAggregator()
+                .withExportPackages(true).withImportPackages(true)
+                .withGenericCapabilities(true).withGenericRequirements(true);
+        for (Path jar : jars) {
+            try (JarFile jarFile = new JarFile(jar.toFile())) {
+                Attributes attributes = jarFile.getManifest()
+                        .getMainAttributes();
+                aggregator.addArtifactHeaders(attributes.entrySet().stream()
+                        .collect(Collectors.toMap(e -> e.getKey().toString(),
+                                e -> e.getValue().toString())));
+            }
+        }
+        ExportPackageHeader exportPackage = aggregator
+                .buildExportPackageHeader(null);
+        assertThat(exportPackage.getClauses()).hasSize(BUNDLES * 4);
+    }
+
+    @Test
+    public void testArchiveAllBundles() throws Exception {
+        Path esa = root.resolve("scale.esa");
+        SubsystemArchiveWriter writer = new SubsystemArchiveWriter(esa);
+        writer.setThreads(Runtime.getRuntime().availableProcessors());
+        for (Path jar : jars) {
+            writer.addFile(jar, jar.getFileName().toString());
+        }
+        writer.createArchive();
+        try (ZipFile zip = new ZipFile(esa.toFile())) {
+            assertThat(zip.size()).isEqualTo(jars.size());
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/**
+ * ============================================================================
+ *  Copyright ©  2015-2019,    Cristiano V. Gavião
+ *
+ *  All rights reserved.
+ *  This program and the accompanying materials are made available under
+ *  the terms of the Eclipse Public License v1.0 which accompanies this
+ *  distribution and is available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * ============================================================================
+ */
+package br.com.c8tech.tools.maven.plugin.subsystems.ut;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import br.com.c8tech.tools.maven.plugin.subsystems.UnchangedFileOutputStream;
+
+public class UnchangedFileOutputStreamUnitTest {
+
+    private static final FileTime OLD_TIME = FileTime.fromMillis(1000000L);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static boolean write(Path pFile, String pContent)
+            throws IOException {
+        return UnchangedFileOutputStream.write(pFile,
+                out -> out.write(pContent.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void testSameContentKeepsTheFile() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("SUBSYSTEM.MF");
+        assertThat(write(file, "a: b\r\n")).isTrue();
+        Files.setLastModifiedTime(file, OLD_TIME);
+
+        assertThat(write(file, "a: b\r\n")).isFalse();
+        assertThat(Files.getLastModifiedTime(file)).isEqualTo(OLD_TIME);
+    }
+
+    @Test
+    public void testChangedContentIsWritten() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("SUBSYSTEM.MF");
+        write(file, "a: b\r\nc: d\r\n");
+
+        assertThat(write(file, "a: b\r\nc: e\r\n")).isTrue();
+        assertThat(file).hasContent("a: b\r\nc: e\r\n");
+        assertThat(write(file, "a: b\r\n")).isTrue();
+        assertThat(file).hasContent("a: b\r\n");
+        assertThat(write(file, "a: b\r\nf: g\r\n")).isTrue();
+        assertThat(file).hasContent("a: b\r\nf: g\r\n");
+    }
+}
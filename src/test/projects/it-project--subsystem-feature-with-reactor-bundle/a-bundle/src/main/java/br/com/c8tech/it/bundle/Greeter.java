@@ -0,0 +1,8 @@
+package br.com.c8tech.it.bundle;
+
+public class Greeter {
+
+    public String greet() {
+        return "hello";
+    }
+}